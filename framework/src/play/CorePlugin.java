@@ -12,10 +12,13 @@ import java.util.Date;
 
 import org.apache.commons.lang.StringUtils;
 import play.Play.Mode;
+import play.cache.Cache;
+import play.cache.OffHeapCacheImpl;
 import play.classloading.ApplicationClasses.ApplicationClass;
 import play.classloading.enhancers.ContinuationEnhancer;
 import play.classloading.enhancers.ControllersEnhancer;
 import play.classloading.enhancers.Enhancer;
+import play.classloading.enhancers.InvokerEnhancer;
 import play.classloading.enhancers.LVEnhancer;
 import play.classloading.enhancers.MailerEnhancer;
 import play.classloading.enhancers.PropertiesEnhancer;
@@ -25,6 +28,7 @@ import play.libs.Crypto;
 import play.mvc.Http.Header;
 import play.mvc.Http.Request;
 import play.mvc.Http.Response;
+import play.templates.FragmentCache;
 
 /**
  * Plugin used for core tasks
@@ -166,7 +170,26 @@ public class CorePlugin extends PlayPlugin {
         out.println("Active count: " + Invoker.executor.getActiveCount());
         out.println("Scheduled task count: " + Invoker.executor.getTaskCount());
         out.println("Queue size: " + Invoker.executor.getQueue().size());
+        out.println("Suspended, waiting for a task: " + (Invoker.WaitForTasksCompletion.waitingForCallback.get() + Invoker.WaitForTasksCompletion.waitingForPolling.get())
+                + " (" + Invoker.WaitForTasksCompletion.waitingForPolling.get() + " polled)");
+        out.println("Suspended, waiting for a timeout: " + Invoker.WaitForTasksCompletion.waitingForTimeout.get());
         out.println();
+        out.println("Template fragments cache:");
+        out.println("~~~~~~~~~~~~~~~~~~~~~~~~~");
+        out.println("Hits: " + FragmentCache.hits.get());
+        out.println("Misses: " + FragmentCache.misses.get() + " (" + FragmentCache.waits.get() + " waited for another rendering)");
+        out.println();
+        if (Cache.cacheImpl instanceof OffHeapCacheImpl) {
+            OffHeapCacheImpl cache = (OffHeapCacheImpl) Cache.cacheImpl;
+            out.println("Off-heap cache:");
+            out.println("~~~~~~~~~~~~~~~");
+            out.println("Keys: " + cache.count());
+            out.println("Memory: " + cache.used() + " bytes of values in " + cache.allocated() + " bytes of slabs, out of " + cache.size);
+            out.println("Hits: " + cache.hits.get());
+            out.println("Misses: " + cache.misses.get());
+            out.println("Evictions: " + cache.evictions.get() + " (and " + cache.expirations.get() + " expired)");
+            out.println();
+        }
         try {
             out.println("Monitors:");
             out.println("~~~~~~~~");
@@ -219,9 +242,34 @@ public class CorePlugin extends PlayPlugin {
             pool.addProperty("active", Invoker.executor.getActiveCount());
             pool.addProperty("scheduled", Invoker.executor.getTaskCount());
             pool.addProperty("queue", Invoker.executor.getQueue().size());
+            pool.addProperty("suspendedOnCallback", Invoker.WaitForTasksCompletion.waitingForCallback.get());
+            pool.addProperty("suspendedOnPolling", Invoker.WaitForTasksCompletion.waitingForPolling.get());
+            pool.addProperty("suspendedOnTimeout", Invoker.WaitForTasksCompletion.waitingForTimeout.get());
             status.add("pool", pool);
         }
 
+        {
+            JsonObject fragments = new JsonObject();
+            fragments.addProperty("hits", FragmentCache.hits.get());
+            fragments.addProperty("misses", FragmentCache.misses.get());
+            fragments.addProperty("waits", FragmentCache.waits.get());
+            status.add("fragmentCache", fragments);
+        }
+
+        if (Cache.cacheImpl instanceof OffHeapCacheImpl) {
+            OffHeapCacheImpl cache = (OffHeapCacheImpl) Cache.cacheImpl;
+            JsonObject offHeap = new JsonObject();
+            offHeap.addProperty("keys", cache.count());
+            offHeap.addProperty("used", cache.used());
+            offHeap.addProperty("allocated", cache.allocated());
+            offHeap.addProperty("size", cache.size);
+            offHeap.addProperty("hits", cache.hits.get());
+            offHeap.addProperty("misses", cache.misses.get());
+            offHeap.addProperty("evictions", cache.evictions.get());
+            offHeap.addProperty("expirations", cache.expirations.get());
+            status.add("offHeapCache", offHeap);
+        }
+
         {
             JsonArray monitors = new JsonArray();
             try {
@@ -291,6 +339,7 @@ public class CorePlugin extends PlayPlugin {
             ControllersEnhancer.class,
             LVEnhancer.class,
             ContinuationEnhancer.class,
+            InvokerEnhancer.class,
             MailerEnhancer.class,
             PropertiesEnhancer.class
         };
@@ -2,14 +2,13 @@ package play;
 
 import java.lang.annotation.Annotation;
 import java.util.Arrays;
-import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.ThreadPoolExecutor;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import com.jamonapi.Monitor;
 import com.jamonapi.MonitorFactory;
@@ -21,7 +20,11 @@ import play.exceptions.UnexpectedException;
 import play.i18n.Lang;
 import play.libs.F;
 import play.libs.F.Promise;
+import play.utils.Action;
+import play.utils.NotifyingFutureTask;
 import play.utils.PThreadFactory;
+import play.utils.SmartFuture;
+import play.utils.Timers;
 
 /**
  * Run some code in a Play! context
@@ -54,7 +57,7 @@ public class Invoker {
     public static Future<?> invoke(final Invocation invocation, long millis) {
         Monitor monitor = MonitorFactory.getMonitor("Invocation queue", "elmts.");
         monitor.add(executor.getQueue().size());
-        return executor.schedule(invocation, millis, TimeUnit.MILLISECONDS);
+        return Timers.schedule(Executors.callable(invocation), millis, executor);
     }
 
     /**
@@ -250,7 +253,7 @@ public class Invoker {
             if (suspendRequest.task != null) {
                 WaitForTasksCompletion.waitFor(suspendRequest.task, this);
             } else {
-                Invoker.invoke(this, suspendRequest.timeout);
+                WaitForTasksCompletion.waitFor(suspendRequest.timeout, this);
             }
         }
 
@@ -366,54 +369,114 @@ public class Invoker {
 
     /**
      * Utility that track tasks completion in order to resume suspended requests.
+     * <p/>
+     * Promises and NotifyingFutureTasks call back when they complete. Other futures
+     * can't signal their completion: they are polled on the shared timer, first after 1 ms and
+     * then less and less often, up to every 50 ms. SmartFutures only call back when they are
+     * redeemed, not when their inner future fails or is cancelled, so they are polled as well.
      */
-    static class WaitForTasksCompletion extends Thread {
+    static class WaitForTasksCompletion {
 
-        static WaitForTasksCompletion instance;
-        Map<Future<?>, Invocation> queue;
+        static final long MIN_POLL_INTERVAL = 1;
+        static final long MAX_POLL_INTERVAL = 50;
 
-        public WaitForTasksCompletion() {
-            queue = new ConcurrentHashMap<Future<?>, Invocation>();
-            setName("WaitForTasksCompletion");
-            setDaemon(true);
-        }
+        /**
+         * Invocations waiting for a task that calls back on completion
+         */
+        static final AtomicInteger waitingForCallback = new AtomicInteger();
+        /**
+         * Invocations waiting for a task that is polled
+         */
+        static final AtomicInteger waitingForPolling = new AtomicInteger();
+        /**
+         * Invocations waiting for a timeout
+         */
+        static final AtomicInteger waitingForTimeout = new AtomicInteger();
 
+        @SuppressWarnings("unchecked")
         public static <V> void waitFor(Future<V> task, final Invocation invocation) {
-            if (task instanceof Promise) {
-                Promise<V> smartFuture = (Promise<V>) task;
-                smartFuture.onRedeem(new F.Action<F.Promise<V>>() {
-                    @Override
+            if (task.isDone()) {
+                executor.submit(invocation);
+            } else if (task instanceof Promise) {
+                final Resume resume = new Resume(invocation, waitingForCallback);
+                ((Promise<V>) task).onRedeem(new F.Action<F.Promise<V>>() {
                     public void invoke(Promise<V> result) {
-                        executor.submit(invocation);
+                        resume.run();
                     }
                 });
-            } else {
-                synchronized (WaitForTasksCompletion.class) {
-                    if (instance == null) {
-                        instance = new WaitForTasksCompletion();
-                        Logger.warn("Start WaitForTasksCompletion");
-                        instance.start();
+            } else if (task instanceof SmartFuture) {
+                final Resume resume = new Resume(invocation, waitingForCallback);
+                ((SmartFuture<V>) task).onCompletion(new Action<V>() {
+                    public void invoke(V result) {
+                        resume.run();
                     }
-                    instance.queue.put(task, invocation);
+                });
+                Timers.schedule(new Poll(task, resume), MIN_POLL_INTERVAL);
+            } else if (task instanceof NotifyingFutureTask) {
+                final Resume resume = new Resume(invocation, waitingForCallback);
+                ((NotifyingFutureTask<V>) task).onCompletion(new Action<Future<V>>() {
+                    public void invoke(Future<V> result) {
+                        resume.run();
+                    }
+                });
+            } else {
+                Timers.schedule(new Poll(task, new Resume(invocation, waitingForPolling)), MIN_POLL_INTERVAL);
+            }
+        }
+
+        public static void waitFor(long timeout, final Invocation invocation) {
+            waitingForTimeout.incrementAndGet();
+            Timers.schedule(new Runnable() {
+                public void run() {
+                    waitingForTimeout.decrementAndGet();
+                    executor.submit(invocation);
+                }
+            }, timeout);
+        }
+
+        /**
+         * Submit a suspended invocation again, once
+         */
+        static class Resume implements Runnable {
+
+            final Invocation invocation;
+            final AtomicInteger count;
+            final AtomicBoolean resumed = new AtomicBoolean();
+
+            Resume(Invocation invocation, AtomicInteger count) {
+                this.invocation = invocation;
+                this.count = count;
+                count.incrementAndGet();
+            }
+
+            public void run() {
+                if (resumed.compareAndSet(false, true)) {
+                    count.decrementAndGet();
+                    executor.submit(invocation);
                 }
             }
         }
 
-        @Override
-        public void run() {
-            while (true) {
-                try {
-                    if (!queue.isEmpty()) {
-                        for (Future<?> task : new HashSet<Future<?>>(queue.keySet())) {
-                            if (task.isDone()) {
-                                executor.submit(queue.get(task));
-                                queue.remove(task);
-                            }
-                        }
-                    }
-                    Thread.sleep(50);
-                } catch (InterruptedException ex) {
-                    Logger.warn(ex, "While waiting for task completions");
+        static class Poll implements Runnable {
+
+            final Future<?> task;
+            final Resume resume;
+            long interval = MIN_POLL_INTERVAL;
+
+            Poll(Future<?> task, Resume resume) {
+                this.task = task;
+                this.resume = resume;
+            }
+
+            public void run() {
+                if (resume.resumed.get()) {
+                    return;
+                }
+                if (task.isDone()) {
+                    resume.run();
+                } else {
+                    interval = Math.min(interval * 2, MAX_POLL_INTERVAL);
+                    Timers.schedule(this, interval);
                 }
             }
         }
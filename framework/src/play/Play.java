@@ -309,6 +309,9 @@ public class Play {
             mode = Mode.PROD;
             if (preCompile() && System.getProperty("precompile") == null) {
                 start();
+                if (!warmUpTemplates()) {
+                    return;
+                }
             } else {
                 return;
             }
@@ -592,7 +595,8 @@ public class Play {
                 Logger.trace("%sms to precompile the Java stuff", System.currentTimeMillis() - start);
             }
 
-            if (!lazyLoadTemplates) {
+            // Compiled after the start when warming up, the start drops the compiled templates
+            if (!lazyLoadTemplates && (!templatesWarmUp() || System.getProperty("precompile") != null)) {
                 start = System.currentTimeMillis();
                 TemplateLoader.getAllTemplate();
 
@@ -608,6 +612,34 @@ public class Play {
         }
     }
 
+    /**
+     * Whether the templates are compiled once the application is started, before the server
+     * accepts connections: <code>play.templates.warmup=true</code>
+     */
+    static boolean templatesWarmUp() {
+        return Boolean.parseBoolean(configuration.getProperty("play.templates.warmup", "false"));
+    }
+
+    /**
+     * Compile all the templates of the started application, in PROD mode
+     *
+     * @return success ?
+     */
+    static boolean warmUpTemplates() {
+        if (lazyLoadTemplates || !templatesWarmUp()) {
+            return true;
+        }
+        try {
+            Logger.info("Warming up the templates ...");
+            TemplateLoader.getAllTemplate();
+            return true;
+        } catch (Throwable e) {
+            Logger.error(e, "Cannot start in PROD mode with errors");
+            fatalServerErrorOccurred();
+            return false;
+        }
+    }
+
     /**
      * Detect sources modifications
      */
@@ -0,0 +1,35 @@
+package play.cache;
+
+import java.util.Map;
+
+import play.libs.F;
+
+/**
+ * A cache implementation that can also be called without waiting for the cache. For the other
+ * implementations, the asynchronous calls of Cache make the synchronous ones and return promises
+ * already redeemed.
+ * expiration is specified in seconds
+ * @see play.cache.Cache
+ */
+public interface AsyncCacheImpl extends CacheImpl {
+
+    /**
+     * @return the promise of the value, redeemed with null if missing
+     */
+    public F.Promise<Object> getAsync(String key);
+
+    /**
+     * @return the promise of the values, like get(String[])
+     */
+    public F.Promise<Map<String, Object>> getBulkAsync(String[] keys);
+
+    /**
+     * @return the promise of whether the value has been set, like safeSet
+     */
+    public F.Promise<Boolean> setAsync(String key, Object value, int expiration);
+
+    /**
+     * @return the promise of whether the value has been deleted, like safeDelete
+     */
+    public F.Promise<Boolean> deleteAsync(String key);
+}
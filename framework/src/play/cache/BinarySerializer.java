@@ -0,0 +1,552 @@
+package play.cache;
+
+import java.io.Serializable;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+import play.Play;
+import play.exceptions.CacheException;
+import play.exceptions.ConfigurationException;
+
+/**
+ * A compact binary serialization.
+ * <p/>
+ * Nulls, primitive wrappers, Strings, byte arrays, Dates, BigDecimals and the usual lists, sets
+ * and maps are written with a one byte tag. Objects of registered classes are written with the
+ * number of their class, and the values of their fields. Other values are written with Java
+ * serialization. Above a threshold, the result is compressed.
+ * <p/>
+ * As with Java serialization, a mutable value referenced several times, or referencing itself,
+ * is written once and then referenced by its number: it is read back shared in the same way.
+ * <p/>
+ * Data written by Java serialization is read too, so that the serializer can be changed while
+ * values remain in the cache.
+ */
+public class BinarySerializer implements CacheSerializer {
+
+    static final byte PLAIN = 1;
+    static final byte COMPRESSED = 2;
+    /**
+     * The first byte of Java serialization streams
+     */
+    static final byte JAVA_STREAM = (byte) 0xAC;
+
+    static final int NULL = 0;
+    static final int TRUE = 1;
+    static final int FALSE = 2;
+    static final int INTEGER = 3;
+    static final int LONG = 4;
+    static final int DOUBLE = 5;
+    static final int FLOAT = 6;
+    static final int SHORT = 7;
+    static final int BYTE = 8;
+    static final int CHARACTER = 9;
+    static final int STRING = 10;
+    static final int BYTES = 11;
+    static final int DATE = 12;
+    static final int BIG_DECIMAL = 13;
+    static final int ARRAY_LIST = 14;
+    static final int HASH_SET = 15;
+    static final int LINKED_HASH_SET = 16;
+    static final int HASH_MAP = 17;
+    static final int LINKED_HASH_MAP = 18;
+    static final int OBJECT = 19;
+    static final int JAVA = 20;
+    static final int REFERENCE = 21;
+
+    /**
+     * A class written field by field
+     */
+    static class Registered {
+
+        final int id;
+        final Constructor<?> constructor;
+        final Field[] fields;
+
+        Registered(int id, Class<?> type) {
+            this.id = id;
+            try {
+                this.constructor = type.getDeclaredConstructor();
+                this.constructor.setAccessible(true);
+            } catch (NoSuchMethodException e) {
+                throw new ConfigurationException("Cannot register " + type.getName() + " for the cache serialization: it has no constructor without parameters");
+            }
+            List<Field> list = new ArrayList<Field>();
+            for (Class<?> c = type; c != null && c != Object.class; c = c.getSuperclass()) {
+                List<Field> declared = new ArrayList<Field>();
+                for (Field field : c.getDeclaredFields()) {
+                    if (!Modifier.isStatic(field.getModifiers()) && !Modifier.isTransient(field.getModifiers())) {
+                        field.setAccessible(true);
+                        declared.add(field);
+                    }
+                }
+                // The same order on every server
+                Collections.sort(declared, new Comparator<Field>() {
+                    public int compare(Field f1, Field f2) {
+                        return f1.getName().compareTo(f2.getName());
+                    }
+                });
+                list.addAll(0, declared);
+            }
+            this.fields = list.toArray(new Field[list.size()]);
+        }
+    }
+
+    final Map<Class<?>, Registered> registered = new HashMap<Class<?>, Registered>();
+    final Map<Integer, Class<?>> classes = new HashMap<Integer, Class<?>>();
+    final int compressionThreshold;
+    final JavaSerializer fallback = new JavaSerializer();
+
+    /**
+     * @param types the classes written field by field, numbered in this order: it must be the
+     * same on every server sharing the cache
+     * @param compressionThreshold the size above which the result is compressed
+     */
+    public BinarySerializer(List<Class<?>> types, int compressionThreshold) {
+        this.compressionThreshold = compressionThreshold;
+        for (Class<?> type : types) {
+            int id = classes.size() + 1;
+            registered.put(type, new Registered(id, type));
+            classes.put(id, type);
+        }
+    }
+
+    /**
+     * The serializer for <code>cache.serializer.classes</code> and <code>cache.serializer.compressAbove</code>
+     */
+    public static BinarySerializer configure() {
+        List<Class<?>> types = new ArrayList<Class<?>>();
+        for (String name : Play.configuration.getProperty("cache.serializer.classes", "").split(",")) {
+            if (name.trim().length() > 0) {
+                try {
+                    types.add(Play.classloader.loadClass(name.trim()));
+                } catch (ClassNotFoundException e) {
+                    throw new ConfigurationException("Cannot register " + name.trim() + " for the cache serialization: class not found");
+                }
+            }
+        }
+        return new BinarySerializer(types, Integer.parseInt(Play.configuration.getProperty("cache.serializer.compressAbove", "1024")));
+    }
+
+    public boolean supports(Class<?> type) {
+        return registered.containsKey(type) || Serializable.class.isAssignableFrom(type);
+    }
+
+    public byte[] serialize(Object value) {
+        Output out = new Output();
+        out.writeByte(PLAIN);
+        try {
+            write(out, value, new IdentityHashMap<Object, Integer>());
+        } catch (CacheException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new CacheException("Could not serialize", e);
+        }
+        if (out.length > compressionThreshold) {
+            byte[] compressed = LZ4Block.compress(out.buffer, 1, out.length - 1);
+            if (compressed.length + 6 < out.length) {
+                Output result = new Output();
+                result.writeByte(COMPRESSED);
+                result.writeVarInt(out.length - 1);
+                result.write(compressed, 0, compressed.length);
+                return result.toByteArray();
+            }
+        }
+        return out.toByteArray();
+    }
+
+    public Object deserialize(byte[] data) {
+        if (data.length > 0 && data[0] == JAVA_STREAM) {
+            return fallback.deserialize(data);
+        }
+        try {
+            Input in;
+            if (data[0] == COMPRESSED) {
+                in = new Input(data, 1);
+                int length = in.readVarInt();
+                in = new Input(LZ4Block.decompress(data, in.position, data.length - in.position, length), 0);
+            } else if (data[0] == PLAIN) {
+                in = new Input(data, 1);
+            } else {
+                throw new IllegalStateException("Unknown format " + data[0]);
+            }
+            return read(in);
+        } catch (CacheException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new CacheException("Could not deserialize", e);
+        }
+    }
+
+    void write(Output out, Object value, IdentityHashMap<Object, Integer> written) throws Exception {
+        if (value == null) {
+            out.writeByte(NULL);
+            return;
+        }
+        Class<?> type = value.getClass();
+        if (type == String.class) {
+            out.writeByte(STRING);
+            out.writeString((String) value);
+        } else if (type == Integer.class) {
+            out.writeByte(INTEGER);
+            out.writeVarLong((Integer) value);
+        } else if (type == Long.class) {
+            out.writeByte(LONG);
+            out.writeVarLong((Long) value);
+        } else if (type == Boolean.class) {
+            out.writeByte((Boolean) value ? TRUE : FALSE);
+        } else if (type == Double.class) {
+            out.writeByte(DOUBLE);
+            out.writeLong(Double.doubleToLongBits((Double) value));
+        } else if (type == Float.class) {
+            out.writeByte(FLOAT);
+            out.writeInt(Float.floatToIntBits((Float) value));
+        } else if (type == Short.class) {
+            out.writeByte(SHORT);
+            out.writeVarLong((Short) value);
+        } else if (type == Byte.class) {
+            out.writeByte(BYTE);
+            out.writeByte((Byte) value);
+        } else if (type == Character.class) {
+            out.writeByte(CHARACTER);
+            out.writeVarLong((Character) value);
+        } else if (type == BigDecimal.class) {
+            out.writeByte(BIG_DECIMAL);
+            out.writeString(value.toString());
+        } else if (reference(out, value, written)) {
+            return;
+        } else if (type == byte[].class) {
+            byte[] bytes = (byte[]) value;
+            out.writeByte(BYTES);
+            out.writeVarInt(bytes.length);
+            out.write(bytes, 0, bytes.length);
+        } else if (type == Date.class) {
+            out.writeByte(DATE);
+            out.writeVarLong(((Date) value).getTime());
+        } else if (type == ArrayList.class || type == HashSet.class || type == LinkedHashSet.class) {
+            Collection<?> collection = (Collection<?>) value;
+            out.writeByte(type == ArrayList.class ? ARRAY_LIST : type == HashSet.class ? HASH_SET : LINKED_HASH_SET);
+            out.writeVarInt(collection.size());
+            for (Object item : collection) {
+                write(out, item, written);
+            }
+        } else if (type == HashMap.class || type == LinkedHashMap.class) {
+            Map<?, ?> map = (Map<?, ?>) value;
+            out.writeByte(type == HashMap.class ? HASH_MAP : LINKED_HASH_MAP);
+            out.writeVarInt(map.size());
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                write(out, entry.getKey(), written);
+                write(out, entry.getValue(), written);
+            }
+        } else if (registered.containsKey(type)) {
+            Registered r = registered.get(type);
+            out.writeByte(OBJECT);
+            out.writeVarInt(r.id);
+            for (Field field : r.fields) {
+                write(out, field.get(value), written);
+            }
+        } else {
+            byte[] bytes = fallback.serialize(value);
+            out.writeByte(JAVA);
+            out.writeVarInt(bytes.length);
+            out.write(bytes, 0, bytes.length);
+        }
+    }
+
+    /**
+     * Write a reference to this value if it has already been written, or else number it. Values
+     * are numbered in the order they are read back, before the values they contain.
+     * @return whether a reference has been written
+     */
+    static boolean reference(Output out, Object value, IdentityHashMap<Object, Integer> written) {
+        Integer id = written.get(value);
+        if (id != null) {
+            out.writeByte(REFERENCE);
+            out.writeVarInt(id);
+            return true;
+        }
+        written.put(value, written.size());
+        return false;
+    }
+
+    @SuppressWarnings("unchecked")
+    Object read(Input in) throws Exception {
+        int tag = in.readByte();
+        switch (tag) {
+            case NULL:
+                return null;
+            case TRUE:
+                return Boolean.TRUE;
+            case FALSE:
+                return Boolean.FALSE;
+            case INTEGER:
+                return (int) in.readVarLong();
+            case LONG:
+                return in.readVarLong();
+            case DOUBLE:
+                return Double.longBitsToDouble(in.readLong());
+            case FLOAT:
+                return Float.intBitsToFloat(in.readInt());
+            case SHORT:
+                return (short) in.readVarLong();
+            case BYTE:
+                return (byte) in.readByte();
+            case CHARACTER:
+                return (char) in.readVarLong();
+            case STRING:
+                return in.readString();
+            case BYTES:
+                return in.shared(in.readBytes(in.readVarInt()));
+            case DATE:
+                return in.shared(new Date(in.readVarLong()));
+            case BIG_DECIMAL:
+                return new BigDecimal(in.readString());
+            case ARRAY_LIST:
+            case HASH_SET:
+            case LINKED_HASH_SET: {
+                int size = in.readVarInt();
+                Collection<Object> collection = tag == ARRAY_LIST ? new ArrayList<Object>(size) : tag == HASH_SET ? new HashSet<Object>(size * 4 / 3 + 1) : new LinkedHashSet<Object>(size * 4 / 3 + 1);
+                in.shared(collection);
+                for (int i = 0; i < size; i++) {
+                    collection.add(read(in));
+                }
+                return collection;
+            }
+            case HASH_MAP:
+            case LINKED_HASH_MAP: {
+                int size = in.readVarInt();
+                Map<Object, Object> map = tag == HASH_MAP ? new HashMap<Object, Object>(size * 4 / 3 + 1) : new LinkedHashMap<Object, Object>(size * 4 / 3 + 1);
+                in.shared(map);
+                for (int i = 0; i < size; i++) {
+                    map.put(read(in), read(in));
+                }
+                return map;
+            }
+            case OBJECT: {
+                int id = in.readVarInt();
+                Class<?> type = classes.get(id);
+                if (type == null) {
+                    throw new CacheException("Could not deserialize", new IllegalStateException("No class registered with the number " + id));
+                }
+                Registered r = registered.get(type);
+                Object object = in.shared(r.constructor.newInstance());
+                for (Field field : r.fields) {
+                    Object value = read(in);
+                    if (value != null || !field.getType().isPrimitive()) {
+                        field.set(object, value);
+                    }
+                }
+                return object;
+            }
+            case JAVA: {
+                int length = in.readVarInt();
+                Object value = fallback.deserialize(in.data, in.position, length);
+                in.position += length;
+                return in.shared(value);
+            }
+            case REFERENCE:
+                return in.objects.get(in.readVarInt());
+            default:
+                throw new IllegalStateException("Unknown tag " + tag);
+        }
+    }
+
+    /**
+     * A growing byte array
+     */
+    static class Output {
+
+        byte[] buffer = new byte[64];
+        int length;
+
+        void ensure(int more) {
+            if (length + more > buffer.length) {
+                buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, length + more));
+            }
+        }
+
+        void writeByte(int b) {
+            ensure(1);
+            buffer[length++] = (byte) b;
+        }
+
+        void write(byte[] bytes, int offset, int count) {
+            ensure(count);
+            System.arraycopy(bytes, offset, buffer, length, count);
+            length += count;
+        }
+
+        void writeVarInt(int value) {
+            ensure(5);
+            while ((value & ~0x7f) != 0) {
+                buffer[length++] = (byte) ((value & 0x7f) | 0x80);
+                value >>>= 7;
+            }
+            buffer[length++] = (byte) value;
+        }
+
+        /**
+         * Zigzag encoded, so that small negative numbers are short too
+         */
+        void writeVarLong(long value) {
+            long zigzag = (value << 1) ^ (value >> 63);
+            ensure(10);
+            while ((zigzag & ~0x7fL) != 0) {
+                buffer[length++] = (byte) ((zigzag & 0x7f) | 0x80);
+                zigzag >>>= 7;
+            }
+            buffer[length++] = (byte) zigzag;
+        }
+
+        void writeInt(int value) {
+            ensure(4);
+            for (int i = 0; i < 4; i++) {
+                buffer[length++] = (byte) (value >>> (8 * i));
+            }
+        }
+
+        void writeLong(long value) {
+            ensure(8);
+            for (int i = 0; i < 8; i++) {
+                buffer[length++] = (byte) (value >>> (8 * i));
+            }
+        }
+
+        void writeString(String value) {
+            int chars = value.length();
+            // Up to 3 bytes per char in UTF-8
+            ensure(5 + chars * 3);
+            int start = length;
+            writeVarInt(chars);
+            boolean ascii = true;
+            for (int i = 0; i < chars; i++) {
+                char c = value.charAt(i);
+                if (c >= 0x80) {
+                    ascii = false;
+                    break;
+                }
+                buffer[length++] = (byte) c;
+            }
+            if (!ascii) {
+                // Encoded with its length in bytes, after a marker
+                length = start;
+                byte[] bytes;
+                try {
+                    bytes = value.getBytes("utf-8");
+                } catch (java.io.UnsupportedEncodingException e) {
+                    throw new CacheException("Could not serialize", e);
+                }
+                writeByte(0x80);
+                writeByte(0x00);
+                writeVarInt(bytes.length);
+                write(bytes, 0, bytes.length);
+            }
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(buffer, length);
+        }
+    }
+
+    static class Input {
+
+        final byte[] data;
+        int position;
+        /**
+         * The values read that may be referenced again, by number
+         */
+        final List<Object> objects = new ArrayList<Object>();
+
+        Input(byte[] data, int position) {
+            this.data = data;
+            this.position = position;
+        }
+
+        <T> T shared(T value) {
+            objects.add(value);
+            return value;
+        }
+
+        int readByte() {
+            return data[position++];
+        }
+
+        int readVarInt() {
+            int value = 0;
+            int shift = 0;
+            int b;
+            do {
+                b = data[position++];
+                value |= (b & 0x7f) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            return value;
+        }
+
+        long readVarLong() {
+            long zigzag = 0;
+            int shift = 0;
+            int b;
+            do {
+                b = data[position++];
+                zigzag |= (long) (b & 0x7f) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            return (zigzag >>> 1) ^ -(zigzag & 1);
+        }
+
+        int readInt() {
+            int value = 0;
+            for (int i = 0; i < 4; i++) {
+                value |= (data[position++] & 0xff) << (8 * i);
+            }
+            return value;
+        }
+
+        long readLong() {
+            long value = 0;
+            for (int i = 0; i < 8; i++) {
+                value |= (long) (data[position++] & 0xff) << (8 * i);
+            }
+            return value;
+        }
+
+        byte[] readBytes(int length) {
+            byte[] bytes = Arrays.copyOfRange(data, position, position + length);
+            position += length;
+            return bytes;
+        }
+
+        String readString() throws Exception {
+            // The marker of non ASCII strings is a zero length written on two bytes
+            if ((data[position] & 0xff) == 0x80 && data[position + 1] == 0) {
+                position += 2;
+                int length = readVarInt();
+                String value = new String(data, position, length, "utf-8");
+                position += length;
+                return value;
+            }
+            int chars = readVarInt();
+            char[] value = new char[chars];
+            for (int i = 0; i < chars; i++) {
+                value[i] = (char) data[position++];
+            }
+            return new String(value);
+        }
+    }
+}
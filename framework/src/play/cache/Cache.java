@@ -3,10 +3,18 @@ package play.cache;
 import java.io.NotSerializableException;
 import java.io.Serializable;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import play.Logger;
 import play.Play;
 import play.exceptions.CacheException;
+import play.exceptions.ConfigurationException;
+import play.exceptions.UnexpectedException;
+import play.libs.F;
 import play.libs.Time;
 
 /**
@@ -26,6 +34,11 @@ public abstract class Cache {
      */
     public static CacheImpl forcedCacheImpl;
 
+    /**
+     * Serializes the values stored by memcached or the off-heap cache
+     */
+    public static CacheSerializer serializer = new JavaSerializer();
+
     /**
      * Add an element only if it doesn't exist.
      * @param key Element key
@@ -220,6 +233,247 @@ public abstract class Cache {
         return (T) cacheImpl.get(key);
     }
 
+    /**
+     * Retrieve an object without waiting for the cache.
+     * @param key The element key
+     * @return The promise of the element value, redeemed with null if missing
+     */
+    public static F.Promise<Object> getAsync(String key) {
+        return getAsync(cacheImpl, key);
+    }
+
+    /**
+     * Bulk retrieve without waiting for the cache, in a single round trip when the cache is remote.
+     * @param keys List of keys
+     * @return The promise of the map of keys & values
+     */
+    public static F.Promise<Map<String, Object>> getBulkAsync(String... keys) {
+        return getBulkAsync(cacheImpl, keys);
+    }
+
+    /**
+     * Set an element without waiting for the cache.
+     * @param key Element key
+     * @param value Element value
+     * @param expiration Ex: 10s, 3mn, 8h
+     * @return The promise of whether the element has been cached
+     */
+    public static F.Promise<Boolean> setAsync(String key, Object value, String expiration) {
+        checkSerializable(value);
+        return setAsync(cacheImpl, key, value, Time.parseDuration(expiration));
+    }
+
+    /**
+     * Set an element and store it indefinitely, without waiting for the cache.
+     * @param key Element key
+     * @param value Element value
+     * @return The promise of whether the element has been cached
+     */
+    public static F.Promise<Boolean> setAsync(String key, Object value) {
+        checkSerializable(value);
+        return setAsync(cacheImpl, key, value, Time.parseDuration(null));
+    }
+
+    /**
+     * Delete an element from the cache without waiting for the cache.
+     * @param key The element key
+     * @return The promise of whether the element has been deleted
+     */
+    public static F.Promise<Boolean> deleteAsync(String key) {
+        return deleteAsync(cacheImpl, key);
+    }
+
+    // The asynchronous calls of an implementation, made synchronously if it is not an AsyncCacheImpl
+
+    static F.Promise<Object> getAsync(CacheImpl impl, String key) {
+        if (impl instanceof AsyncCacheImpl) {
+            return ((AsyncCacheImpl) impl).getAsync(key);
+        }
+        return redeemed(impl.get(key));
+    }
+
+    static F.Promise<Map<String, Object>> getBulkAsync(CacheImpl impl, String[] keys) {
+        if (impl instanceof AsyncCacheImpl) {
+            return ((AsyncCacheImpl) impl).getBulkAsync(keys);
+        }
+        return redeemed(impl.get(keys));
+    }
+
+    static F.Promise<Boolean> setAsync(CacheImpl impl, String key, Object value, int expiration) {
+        if (impl instanceof AsyncCacheImpl) {
+            return ((AsyncCacheImpl) impl).setAsync(key, value, expiration);
+        }
+        return redeemed(impl.safeSet(key, value, expiration));
+    }
+
+    static F.Promise<Boolean> deleteAsync(CacheImpl impl, String key) {
+        if (impl instanceof AsyncCacheImpl) {
+            return ((AsyncCacheImpl) impl).deleteAsync(key);
+        }
+        return redeemed(impl.safeDelete(key));
+    }
+
+    /**
+     * A computation of a missing element in progress, redeemed with its value, or null if it
+     * failed
+     */
+    static class Computation {
+
+        final F.Promise<Object> promise = new F.Promise<Object>();
+    }
+
+    static final ConcurrentMap<String, Computation> computations = new ConcurrentHashMap<String, Computation>();
+
+    /**
+     * An element stored with what is needed to refresh it before it expires
+     */
+    static class Refreshable implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+        final Object value;
+        final long expiresAt;
+        /**
+         * The time taken to compute the value
+         */
+        final long delta;
+
+        Refreshable(Object value, long expiresAt, long delta) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+            this.delta = delta;
+        }
+
+        /**
+         * Decide to refresh with a probability growing as the expiration approaches, sooner for
+         * values long to compute
+         */
+        boolean refreshNow(double beta) {
+            return beta > 0 && System.currentTimeMillis() - delta * beta * Math.log(Math.random()) >= expiresAt;
+        }
+    }
+
+    /**
+     * Retrieve an element, or compute and set it if it is missing. Concurrent calls for the same
+     * missing element in this JVM wait for a single computation, and get its value. If it fails,
+     * or takes longer than the expiration or <code>cache.compute.timeout</code>, they compute the
+     * element themselves.
+     * @param key Element key
+     * @param expiration Ex: 10s, 3mn, 8h
+     * @param compute Computes the element, not cached if null
+     * @return The element value
+     */
+    public static <T> T getOrCompute(String key, String expiration, Callable<T> compute) {
+        return getOrCompute(key, expiration, compute, 0);
+    }
+
+    /**
+     * Retrieve an element, or compute and set it if it is missing, and compute it again
+     * before it expires with a probability growing as its expiration approaches. While one
+     * thread of this JVM refreshes the element, the others get the current value.
+     * <p/>
+     * The element is cached with its expiration time: it must be retrieved with getOrCompute.
+     * @param key Element key
+     * @param expiration Ex: 10s, 3mn, 8h
+     * @param compute Computes the element, not cached if null
+     * @param beta How early the element is refreshed: 0 to never refresh it, 1 by default,
+     * more to refresh it sooner
+     * @return The element value
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> T getOrCompute(String key, String expiration, Callable<T> compute, double beta) {
+        Object cached = cacheImpl.get(key);
+        if (cached instanceof Refreshable) {
+            Refreshable refreshable = (Refreshable) cached;
+            Computation computation = new Computation();
+            if (!refreshable.refreshNow(beta) || computations.putIfAbsent(key, computation) != null) {
+                return (T) refreshable.value;
+            }
+            try {
+                T value = compute(key, expiration, compute, beta, computation);
+                return value != null ? value : (T) refreshable.value;
+            } catch (RuntimeException e) {
+                Logger.error(e, "Cannot refresh %s, its current value is kept", key);
+                return (T) refreshable.value;
+            }
+        }
+        if (cached != null) {
+            return (T) cached;
+        }
+        Computation computation = new Computation();
+        Computation running = computations.putIfAbsent(key, computation);
+        if (running != null) {
+            long timeout = Math.min(Time.parseDuration(expiration), Time.parseDuration(Play.configuration.getProperty("cache.compute.timeout", "30s")));
+            try {
+                Object value = running.promise.get(timeout, TimeUnit.SECONDS);
+                if (value != null) {
+                    return (T) value;
+                }
+            } catch (TimeoutException e) {
+                Logger.warn("%s is still being computed after %ss, computing it again", key, timeout);
+            } catch (Exception e) {
+                throw new UnexpectedException(e);
+            }
+            return call(compute);
+        }
+        return compute(key, expiration, compute, beta, computation);
+    }
+
+    /**
+     * Retrieve an element, or compute and set it if it is missing, without waiting for a
+     * computation of this element by another thread of this JVM: the promise is then redeemed
+     * with the value it computes, or with null if it fails.
+     * @param key Element key
+     * @param expiration Ex: 10s, 3mn, 8h
+     * @param compute Computes the element, not cached if null
+     * @return The element value
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> F.Promise<T> getOrComputeAsync(String key, String expiration, Callable<T> compute) {
+        final F.Promise<T> result = new F.Promise<T>();
+        Object cached = cacheImpl.get(key);
+        if (cached == null) {
+            Computation running = computations.get(key);
+            if (running != null) {
+                running.promise.onRedeem(new F.Action<F.Promise<Object>>() {
+
+                    public void invoke(F.Promise<Object> computed) {
+                        result.invoke((T) computed.getOrNull());
+                    }
+                });
+                return result;
+            }
+        }
+        result.invoke(cached instanceof Refreshable ? (T) ((Refreshable) cached).value : cached != null ? (T) cached : getOrCompute(key, expiration, compute));
+        return result;
+    }
+
+    static <T> T compute(String key, String expiration, Callable<T> compute, double beta, Computation computation) {
+        T value = null;
+        try {
+            long start = System.currentTimeMillis();
+            value = call(compute);
+            if (value != null) {
+                int seconds = Time.parseDuration(expiration);
+                long now = System.currentTimeMillis();
+                set(key, beta > 0 ? new Refreshable(value, now + seconds * 1000L, now - start) : value, expiration);
+            }
+            return value;
+        } finally {
+            computations.remove(key, computation);
+            computation.promise.invoke(value);
+        }
+    }
+
+    static <T> T call(Callable<T> compute) {
+        try {
+            return compute.call();
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new UnexpectedException(e);
+        }
+    }
+
     /**
      * Initialize the cache system.
      */
@@ -228,20 +482,43 @@ public abstract class Cache {
             cacheImpl = forcedCacheImpl;
             return;
         }
+        serializer = serializer();
         if (Play.configuration.getProperty("memcached", "disabled").equals("enabled")) {
             try {
-                cacheImpl = MemcachedImpl.getInstance(true);
+                cacheImpl = NearCacheImpl.configure(MemcachedImpl.getInstance(true));
                 Logger.info("Connected to memcached");
             } catch (Exception e) {
                 Logger.error(e, "Error while connecting to memcached");
                 Logger.warn("Fallback to local cache");
                 cacheImpl = EhCacheImpl.getInstance();
             }
+        } else if (Play.configuration.containsKey("cache.offheap.size")) {
+            long size = OffHeapCacheImpl.parseSize(Play.configuration.getProperty("cache.offheap.size"));
+            cacheImpl = OffHeapCacheImpl.getInstance(size);
+            Logger.info("Using an off-heap cache of %s bytes", size);
         } else {
             cacheImpl = EhCacheImpl.newInstance();
         }
     }
 
+    /**
+     * The serializer configured by <code>cache.serializer</code>: java, binary or a class name
+     */
+    static CacheSerializer serializer() {
+        String name = Play.configuration.getProperty("cache.serializer", "java");
+        if (name.equals("java")) {
+            return new JavaSerializer();
+        }
+        if (name.equals("binary")) {
+            return BinarySerializer.configure();
+        }
+        try {
+            return (CacheSerializer) Play.classloader.loadClass(name).newInstance();
+        } catch (Exception e) {
+            throw new ConfigurationException("Cannot use " + name + " to serialize the cached values: " + e);
+        }
+    }
+
     /**
      * Stop the cache system.
      */
@@ -249,11 +526,20 @@ public abstract class Cache {
         cacheImpl.stop();
     }
     
+    /**
+     * A promise already redeemed, for the calls answered at once
+     */
+    static <T> F.Promise<T> redeemed(T value) {
+        F.Promise<T> promise = new F.Promise<T>();
+        promise.invoke(value);
+        return promise;
+    }
+
     /**
      * Utility that check that an object is serializable.
      */
     static void checkSerializable(Object value) {
-        if(value != null && !(value instanceof Serializable)) {
+        if(value != null && !serializer.supports(value.getClass())) {
             throw new CacheException("Cannot cache a non-serializable value of type " + value.getClass().getName(), new NotSerializableException(value.getClass().getName()));
         }
     }
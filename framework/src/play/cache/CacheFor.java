@@ -10,6 +10,10 @@ import java.lang.annotation.Target;
  *
  * <p>If a time is not specified, the results will be cached for 1 hour by default.
  *
+ * <p>Concurrent requests missing the cache wait for a single invocation of the action. With
+ * <code>earlyRefresh</code>, the result is computed again by one request before it expires, with
+ * a probability growing as its expiration approaches, while the others get the cached result.
+ *
  * <p>Example: <code>@CacheFor("1h")</code>
  */
 @Retention(RetentionPolicy.RUNTIME)
@@ -17,4 +21,5 @@ import java.lang.annotation.Target;
 public @interface CacheFor {
     String value() default "1h";
     String id() default "";
+    boolean earlyRefresh() default false;
 }
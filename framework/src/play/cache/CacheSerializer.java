@@ -0,0 +1,18 @@
+package play.cache;
+
+/**
+ * Serializes the values stored out of the heap, by memcached or the off-heap cache.
+ *
+ * @see play.cache.Cache#serializer
+ */
+public interface CacheSerializer {
+
+    /**
+     * Whether values of this class can be serialized
+     */
+    public boolean supports(Class<?> type);
+
+    public byte[] serialize(Object value);
+
+    public Object deserialize(byte[] data);
+}
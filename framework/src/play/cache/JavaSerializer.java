@@ -0,0 +1,52 @@
+package play.cache;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.io.Serializable;
+
+import play.Play;
+import play.exceptions.CacheException;
+
+/**
+ * Java serialization, resolving the classes with the application class loader
+ */
+public class JavaSerializer implements CacheSerializer {
+
+    public boolean supports(Class<?> type) {
+        return Serializable.class.isAssignableFrom(type);
+    }
+
+    public byte[] serialize(Object value) {
+        try {
+            ByteArrayOutputStream bos = new ByteArrayOutputStream();
+            ObjectOutputStream oos = new ObjectOutputStream(bos);
+            oos.writeObject(value);
+            oos.close();
+            return bos.toByteArray();
+        } catch (IOException e) {
+            throw new CacheException("Could not serialize", e);
+        }
+    }
+
+    public Object deserialize(byte[] data) {
+        return deserialize(data, 0, data.length);
+    }
+
+    public Object deserialize(byte[] data, int offset, int length) {
+        try {
+            return new ObjectInputStream(new ByteArrayInputStream(data, offset, length)) {
+
+                @Override
+                protected Class<?> resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+                    return Class.forName(desc.getName(), false, Play.classloader);
+                }
+            }.readObject();
+        } catch (Exception e) {
+            throw new CacheException("Could not deserialize", e);
+        }
+    }
+}
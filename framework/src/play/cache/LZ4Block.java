@@ -0,0 +1,130 @@
+package play.cache;
+
+import java.util.Arrays;
+
+/**
+ * Compression in the LZ4 block format: sequences of literals followed by a match, copied from
+ * at most 64kb before. Fast rather than compact.
+ */
+class LZ4Block {
+
+    static final int MIN_MATCH = 4;
+    /**
+     * The last bytes are always literals
+     */
+    static final int LAST_LITERALS = 5;
+    static final int MATCH_LIMIT = 12;
+    static final int MAX_OFFSET = 65535;
+    static final int HASH_BITS = 12;
+
+    /**
+     * @return the compressed bytes, which may be larger than the source
+     */
+    static byte[] compress(byte[] src, int offset, int length) {
+        byte[] dest = new byte[length + length / 255 + 16];
+        int[] table = new int[1 << HASH_BITS];
+        Arrays.fill(table, -1);
+        int end = offset + length;
+        int anchor = offset;
+        int i = offset;
+        int o = 0;
+        int limit = end - MATCH_LIMIT;
+        while (i < limit) {
+            int sequence = readInt(src, i);
+            int hash = (sequence * -1640531535) >>> (32 - HASH_BITS);
+            int candidate = table[hash];
+            table[hash] = i;
+            if (candidate < 0 || i - candidate > MAX_OFFSET || readInt(src, candidate) != sequence) {
+                i++;
+                continue;
+            }
+            int matchEnd = i + MIN_MATCH;
+            int matchLimit = end - LAST_LITERALS;
+            while (matchEnd < matchLimit && src[matchEnd] == src[candidate + matchEnd - i]) {
+                matchEnd++;
+            }
+            o = writeSequence(src, anchor, i - anchor, dest, o, i - candidate, matchEnd - i - MIN_MATCH);
+            i = matchEnd;
+            anchor = i;
+        }
+        o = writeSequence(src, anchor, end - anchor, dest, o, 0, -1);
+        return Arrays.copyOf(dest, o);
+    }
+
+    /**
+     * @param matchLength the length of the match minus MIN_MATCH, or -1 for the last literals
+     */
+    static int writeSequence(byte[] src, int literals, int literalLength, byte[] dest, int o, int matchOffset, int matchLength) {
+        int token = o++;
+        dest[token] = (byte) (Math.min(literalLength, 15) << 4);
+        o = writeLength(dest, o, literalLength);
+        System.arraycopy(src, literals, dest, o, literalLength);
+        o += literalLength;
+        if (matchLength >= 0) {
+            dest[o++] = (byte) matchOffset;
+            dest[o++] = (byte) (matchOffset >>> 8);
+            dest[token] |= (byte) Math.min(matchLength, 15);
+            o = writeLength(dest, o, matchLength);
+        }
+        return o;
+    }
+
+    static int writeLength(byte[] dest, int o, int length) {
+        if (length >= 15) {
+            int rest = length - 15;
+            while (rest >= 255) {
+                dest[o++] = (byte) 255;
+                rest -= 255;
+            }
+            dest[o++] = (byte) rest;
+        }
+        return o;
+    }
+
+    static byte[] decompress(byte[] src, int offset, int length, int originalLength) {
+        byte[] dest = new byte[originalLength];
+        int i = offset;
+        int end = offset + length;
+        int o = 0;
+        while (i < end) {
+            int token = src[i++] & 0xff;
+            int literalLength = token >>> 4;
+            if (literalLength == 15) {
+                int b;
+                do {
+                    b = src[i++] & 0xff;
+                    literalLength += b;
+                } while (b == 255);
+            }
+            System.arraycopy(src, i, dest, o, literalLength);
+            i += literalLength;
+            o += literalLength;
+            if (i >= end) {
+                break;
+            }
+            int matchOffset = (src[i++] & 0xff) | ((src[i++] & 0xff) << 8);
+            int matchLength = token & 0x0f;
+            if (matchLength == 15) {
+                int b;
+                do {
+                    b = src[i++] & 0xff;
+                    matchLength += b;
+                } while (b == 255);
+            }
+            matchLength += MIN_MATCH;
+            // The match may overlap the bytes it produces
+            int from = o - matchOffset;
+            for (int k = 0; k < matchLength; k++) {
+                dest[o++] = dest[from + k];
+            }
+        }
+        if (o != originalLength) {
+            throw new IllegalStateException("Corrupted compressed data");
+        }
+        return dest;
+    }
+
+    static int readInt(byte[] b, int i) {
+        return (b[i] & 0xff) | ((b[i + 1] & 0xff) << 8) | ((b[i + 2] & 0xff) << 16) | ((b[i + 3] & 0xff) << 24);
+    }
+}
@@ -1,14 +1,12 @@
 package play.cache;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
-import java.io.ObjectStreamClass;
 import java.util.Collections;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
 import net.spy.memcached.AddrUtil;
 import net.spy.memcached.MemcachedClient;
@@ -16,13 +14,15 @@ import net.spy.memcached.transcoders.SerializingTranscoder;
 import play.Logger;
 import play.Play;
 import play.exceptions.ConfigurationException;
+import play.libs.F;
+import play.utils.PThreadFactory;
 
 /**
  * Memcached implementation (using http://code.google.com/p/spymemcached/)
  *
  * expiration is specified in seconds
  */
-public class MemcachedImpl implements CacheImpl {
+public class MemcachedImpl implements AsyncCacheImpl {
 
     private static MemcachedImpl uniqueInstance;
 
@@ -30,6 +30,18 @@ public class MemcachedImpl implements CacheImpl {
 
     SerializingTranscoder tc;
 
+    /**
+     * Waits for the asynchronous operations, one after the other
+     */
+    ExecutorService waiter;
+
+    /**
+     * Redeems the promises of the asynchronous operations, out of the waiter thread
+     */
+    ExecutorService completions;
+
+    static final long TIMEOUT = 1000;
+
     public static MemcachedImpl getInstance() throws IOException {
       return getInstance(false);
     }
@@ -53,14 +65,7 @@ public class MemcachedImpl implements CacheImpl {
             @Override
             protected Object deserialize(byte[] data) {
                 try {
-                    return new ObjectInputStream(new ByteArrayInputStream(data)) {
-
-                        @Override
-                        protected Class<?> resolveClass(ObjectStreamClass desc)
-                                throws IOException, ClassNotFoundException {
-                            return Class.forName(desc.getName(), false, Play.classloader);
-                        }
-                    }.readObject();
+                    return Cache.serializer.deserialize(data);
                 } catch (Exception e) {
                     Logger.error(e, "Could not deserialize");
                 }
@@ -70,10 +75,8 @@ public class MemcachedImpl implements CacheImpl {
             @Override
             protected byte[] serialize(Object object) {
                 try {
-                    ByteArrayOutputStream bos = new ByteArrayOutputStream();
-                    new ObjectOutputStream(bos).writeObject(object);
-                    return bos.toByteArray();
-                } catch (IOException e) {
+                    return Cache.serializer.serialize(object);
+                } catch (Exception e) {
                     Logger.error(e, "Could not serialize");
                 }
                 return null;
@@ -83,6 +86,12 @@ public class MemcachedImpl implements CacheImpl {
     }
 
     public void initClient() throws IOException {
+        if (waiter == null || waiter.isShutdown()) {
+            waiter = Executors.newSingleThreadExecutor(new PThreadFactory("memcached-waiter"));
+        }
+        if (completions == null || completions.isShutdown()) {
+            completions = Executors.newCachedThreadPool(new PThreadFactory("memcached"));
+        }
         System.setProperty("net.spy.log.LoggerImpl", "net.spy.memcached.compat.log.Log4JLogger");
         if (Play.configuration.containsKey("memcached.host")) {
             client = new MemcachedClient(AddrUtil.getAddresses(Play.configuration.getProperty("memcached.host")));
@@ -187,7 +196,82 @@ public class MemcachedImpl implements CacheImpl {
         client.set(key, expiration, value, tc);
     }
 
+    public F.Promise<Object> getAsync(String key) {
+        return promise(client.asyncGet(key, tc), null);
+    }
+
+    public F.Promise<Map<String, Object>> getBulkAsync(String[] keys) {
+        return promise(client.asyncGetBulk(tc, keys), Collections.<String, Object>emptyMap());
+    }
+
+    public F.Promise<Boolean> setAsync(String key, Object value, int expiration) {
+        return promise(client.set(key, expiration, value, tc), false);
+    }
+
+    public F.Promise<Boolean> deleteAsync(String key) {
+        return promise(client.delete(key), false);
+    }
+
+    /**
+     * The promise of the result of an operation, or of the given value if it fails or takes
+     * more than a second, like the synchronous operations.
+     * <p/>
+     * The futures of this client do not call back when done, so a single waiter thread waits for
+     * them in turn, and the promise is redeemed as soon as the operation is done. Each server
+     * answers in order, so only a slower operation sent to another server can hold one up.
+     */
+    <T> F.Promise<T> promise(final Future<T> future, final T otherwise) {
+        final F.Promise<T> promise = new F.Promise<T>();
+        final long deadline = System.currentTimeMillis() + TIMEOUT;
+        if (future.isDone()) {
+            promise.invoke(result(future, otherwise, deadline));
+            return promise;
+        }
+        try {
+            waiter.execute(new Runnable() {
+
+                public void run() {
+                    redeem(promise, result(future, otherwise, deadline));
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // Stopped
+            promise.invoke(result(future, otherwise, deadline));
+        }
+        return promise;
+    }
+
+    <T> void redeem(final F.Promise<T> promise, final T result) {
+        Runnable redeem = new Runnable() {
+
+            public void run() {
+                promise.invoke(result);
+            }
+        };
+        try {
+            completions.execute(redeem);
+        } catch (RejectedExecutionException e) {
+            // Stopped
+            redeem.run();
+        }
+    }
+
+    /**
+     * Wait for the result until the deadline
+     */
+    static <T> T result(Future<T> future, T otherwise, long deadline) {
+        try {
+            return future.get(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+        } catch (Exception e) {
+            Logger.debug(e, "Memcached operation failed");
+        }
+        future.cancel(false);
+        return otherwise;
+    }
+
     public void stop() {
         client.shutdown();
+        waiter.shutdown();
+        completions.shutdown();
     }
 }
@@ -0,0 +1,461 @@
+package play.cache;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import play.Logger;
+import play.Play;
+import play.libs.F;
+import play.libs.Time;
+
+/**
+ * An in-process cache of deserialized values in front of a remote cache (memcached).
+ * <p/>
+ * Only the keys starting with one of the configured prefixes are kept near, for at most the
+ * configured ttl or the expiration they were written with, and at most size of them. Values got from the near cache are shared: they
+ * must not be modified.
+ * <p/>
+ * Writes go through to the remote cache. To invalidate the near caches of the other servers,
+ * each write of a near key increments a version key of its prefix in the remote cache; each
+ * server reads these versions at most once per check interval, and drops its near keys of the
+ * prefixes whose version changed. Clearing the cache changes the versions of all the prefixes.
+ * <p/>
+ * A value fetched after a miss is only kept if no near key changed meanwhile, so that it can't
+ * replace a newer value written by this server.
+ *
+ * expiration is specified in seconds
+ */
+public class NearCacheImpl implements AsyncCacheImpl {
+
+    static final String VERSION_KEY = "play.nearcache.version.";
+
+    /**
+     * A value kept near
+     */
+    static class Near {
+
+        final Object value;
+        final long expiresAt;
+
+        Near(Object value, long expiresAt) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    public final CacheImpl remote;
+    final List<String> prefixes;
+    final long ttl;
+    final long checkInterval;
+    final Map<String, Near> entries;
+    /**
+     * The version of each prefix seen at the last check
+     */
+    final Map<String, String> versions = new HashMap<String, String>();
+    /**
+     * Incremented each time near keys are written or dropped
+     */
+    long changes;
+    final AtomicLong nextCheck = new AtomicLong();
+
+    public final AtomicLong hits = new AtomicLong();
+    public final AtomicLong misses = new AtomicLong();
+
+    /**
+     * @param prefixes the prefixes of the keys to keep near
+     * @param size the maximum number of keys kept near
+     * @param ttl the maximum time a key is kept near, in milliseconds
+     * @param checkInterval the time between two reads of the versions, in milliseconds
+     */
+    public NearCacheImpl(CacheImpl remote, List<String> prefixes, final int size, long ttl, long checkInterval) {
+        this.remote = remote;
+        this.prefixes = prefixes;
+        this.ttl = ttl;
+        this.checkInterval = checkInterval;
+        this.entries = new LinkedHashMap<String, Near>(16, 0.75f, true) {
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Near> eldest) {
+                return size() > size;
+            }
+        };
+    }
+
+    /**
+     * Put a near cache in front of this cache if <code>memcached.nearcache.prefixes</code> is set
+     */
+    public static CacheImpl configure(CacheImpl remote) {
+        String prefixes = Play.configuration.getProperty("memcached.nearcache.prefixes", "").trim();
+        if (prefixes.length() == 0) {
+            return remote;
+        }
+        List<String> list = new ArrayList<String>();
+        for (String prefix : Arrays.asList(prefixes.split(","))) {
+            if (prefix.trim().length() > 0) {
+                list.add(prefix.trim());
+            }
+        }
+        int size = Integer.parseInt(Play.configuration.getProperty("memcached.nearcache.size", "10000"));
+        long ttl = Time.parseDuration(Play.configuration.getProperty("memcached.nearcache.ttl", "10s")) * 1000L;
+        long checkInterval = Time.parseDuration(Play.configuration.getProperty("memcached.nearcache.check", "1s")) * 1000L;
+        Logger.info("Keeping the cache keys starting with %s near, for %ss at most", list, ttl / 1000);
+        return new NearCacheImpl(remote, list, size, ttl, checkInterval);
+    }
+
+    /**
+     * The prefix of this key that is kept near, or null
+     */
+    String prefix(String key) {
+        for (String prefix : prefixes) {
+            if (key.startsWith(prefix)) {
+                return prefix;
+            }
+        }
+        return null;
+    }
+
+    public Object get(String key) {
+        String prefix = prefix(key);
+        if (prefix == null) {
+            return remote.get(key);
+        }
+        checkVersions();
+        Near entry = near(key);
+        if (entry != null) {
+            hits.incrementAndGet();
+            return entry.value;
+        }
+        misses.incrementAndGet();
+        long seen = changes();
+        Object value = remote.get(key);
+        fetched(key, value, seen);
+        return value;
+    }
+
+    public Map<String, Object> get(String[] keys) {
+        checkVersions();
+        Map<String, Object> result = new HashMap<String, Object>();
+        List<String> missing = new ArrayList<String>();
+        for (String key : keys) {
+            Near entry = prefix(key) != null ? near(key) : null;
+            if (entry != null) {
+                hits.incrementAndGet();
+                result.put(key, entry.value);
+            } else {
+                missing.add(key);
+            }
+        }
+        if (!missing.isEmpty()) {
+            long seen = changes();
+            Map<String, Object> fetched = remote.get(missing.toArray(new String[missing.size()]));
+            for (String key : missing) {
+                if (prefix(key) != null) {
+                    misses.incrementAndGet();
+                    fetched(key, fetched.get(key), seen);
+                }
+            }
+            result.putAll(fetched);
+        }
+        return result;
+    }
+
+    public F.Promise<Object> getAsync(final String key) {
+        if (prefix(key) == null) {
+            return Cache.getAsync(remote, key);
+        }
+        checkVersions();
+        Near entry = near(key);
+        if (entry != null) {
+            hits.incrementAndGet();
+            return Cache.redeemed(entry.value);
+        }
+        misses.incrementAndGet();
+        final long seen = changes();
+        final F.Promise<Object> result = new F.Promise<Object>();
+        Cache.getAsync(remote, key).onRedeem(new F.Action<F.Promise<Object>>() {
+
+            public void invoke(F.Promise<Object> fetched) {
+                fetched(key, fetched.getOrNull(), seen);
+                result.invoke(fetched.getOrNull());
+            }
+        });
+        return result;
+    }
+
+    public F.Promise<Map<String, Object>> getBulkAsync(String[] keys) {
+        checkVersions();
+        final Map<String, Object> result = new HashMap<String, Object>();
+        final List<String> missing = new ArrayList<String>();
+        for (String key : keys) {
+            Near entry = prefix(key) != null ? near(key) : null;
+            if (entry != null) {
+                hits.incrementAndGet();
+                result.put(key, entry.value);
+            } else {
+                missing.add(key);
+            }
+        }
+        if (missing.isEmpty()) {
+            return Cache.redeemed(result);
+        }
+        final long seen = changes();
+        final F.Promise<Map<String, Object>> promise = new F.Promise<Map<String, Object>>();
+        Cache.getBulkAsync(remote, missing.toArray(new String[missing.size()])).onRedeem(new F.Action<F.Promise<Map<String, Object>>>() {
+
+            public void invoke(F.Promise<Map<String, Object>> fetched) {
+                for (String key : missing) {
+                    if (prefix(key) != null) {
+                        misses.incrementAndGet();
+                        fetched(key, fetched.getOrNull().get(key), seen);
+                    }
+                }
+                result.putAll(fetched.getOrNull());
+                promise.invoke(result);
+            }
+        });
+        return promise;
+    }
+
+    Near near(String key) {
+        synchronized (entries) {
+            Near entry = entries.get(key);
+            if (entry != null && entry.expiresAt <= System.currentTimeMillis()) {
+                entries.remove(key);
+                return null;
+            }
+            return entry;
+        }
+    }
+
+    long changes() {
+        synchronized (entries) {
+            return changes;
+        }
+    }
+
+    /**
+     * Keep a value fetched after a miss, unless near keys changed since <code>seen</code>
+     */
+    void fetched(String key, Object value, long seen) {
+        if (value == null) {
+            return;
+        }
+        synchronized (entries) {
+            if (changes == seen) {
+                entries.put(key, new Near(value, System.currentTimeMillis() + ttl));
+            }
+        }
+    }
+
+    /**
+     * @param expiration the expiration the value was written with, in seconds
+     */
+    void keep(String key, Object value, int expiration) {
+        long keep = expiration > 0 ? Math.min(ttl, expiration * 1000L) : ttl;
+        synchronized (entries) {
+            changes++;
+            entries.put(key, new Near(value, System.currentTimeMillis() + keep));
+        }
+    }
+
+    void forget(String key) {
+        synchronized (entries) {
+            changes++;
+            entries.remove(key);
+        }
+    }
+
+    /**
+     * Drop the near keys of the prefixes changed by other servers, once per check interval
+     */
+    void checkVersions() {
+        long now = System.currentTimeMillis();
+        long next = nextCheck.get();
+        if (now < next || !nextCheck.compareAndSet(next, now + checkInterval)) {
+            return;
+        }
+        String[] keys = new String[prefixes.size()];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = VERSION_KEY + prefixes.get(i);
+        }
+        Map<String, Object> current = remote.get(keys);
+        synchronized (entries) {
+            for (String prefix : prefixes) {
+                Object version = current.get(VERSION_KEY + prefix);
+                String stamp = version == null ? null : version.toString().trim();
+                if (versions.containsKey(prefix) && !equal(stamp, versions.get(prefix))) {
+                    drop(prefix);
+                }
+                versions.put(prefix, stamp);
+            }
+        }
+    }
+
+    static boolean equal(String s1, String s2) {
+        return s1 == null ? s2 == null : s1.equals(s2);
+    }
+
+    void drop(String prefix) {
+        changes++;
+        for (Iterator<String> keys = entries.keySet().iterator(); keys.hasNext();) {
+            if (keys.next().startsWith(prefix)) {
+                keys.remove();
+            }
+        }
+    }
+
+    /**
+     * Tell the other servers this key changed. When no other server changed the prefix
+     * meanwhile, this server takes the new version as seen: its own near key is up to date.
+     */
+    void changed(String key) {
+        String prefix = prefix(key);
+        if (prefix != null) {
+            changedPrefix(prefix);
+        }
+    }
+
+    void changedPrefix(String prefix) {
+        long version = remote.incr(VERSION_KEY + prefix, 1);
+        if (version < 0) {
+            remote.add(VERSION_KEY + prefix, 1L, 0);
+            version = 1;
+        }
+        synchronized (entries) {
+            if (Long.toString(version - 1).equals(versions.get(prefix))) {
+                versions.put(prefix, Long.toString(version));
+            }
+        }
+    }
+
+    public void set(String key, Object value, int expiration) {
+        remote.set(key, value, expiration);
+        written(key, value, expiration);
+    }
+
+    public boolean safeSet(String key, Object value, int expiration) {
+        boolean set = remote.safeSet(key, value, expiration);
+        written(key, set ? value : null, expiration);
+        return set;
+    }
+
+    public void add(String key, Object value, int expiration) {
+        remote.add(key, value, expiration);
+        written(key, null, 0);
+    }
+
+    public boolean safeAdd(String key, Object value, int expiration) {
+        boolean added = remote.safeAdd(key, value, expiration);
+        if (added) {
+            written(key, value, expiration);
+        }
+        return added;
+    }
+
+    public void replace(String key, Object value, int expiration) {
+        remote.replace(key, value, expiration);
+        written(key, null, 0);
+    }
+
+    public boolean safeReplace(String key, Object value, int expiration) {
+        boolean replaced = remote.safeReplace(key, value, expiration);
+        if (replaced) {
+            written(key, value, expiration);
+        }
+        return replaced;
+    }
+
+    public long incr(String key, int by) {
+        long value = remote.incr(key, by);
+        written(key, null, 0);
+        return value;
+    }
+
+    public long decr(String key, int by) {
+        long value = remote.decr(key, by);
+        written(key, null, 0);
+        return value;
+    }
+
+    public void delete(String key) {
+        remote.delete(key);
+        written(key, null, 0);
+    }
+
+    public boolean safeDelete(String key) {
+        boolean deleted = remote.safeDelete(key);
+        written(key, null, 0);
+        return deleted;
+    }
+
+    public F.Promise<Boolean> setAsync(final String key, final Object value, final int expiration) {
+        if (prefix(key) == null) {
+            return Cache.setAsync(remote, key, value, expiration);
+        }
+        final F.Promise<Boolean> result = new F.Promise<Boolean>();
+        Cache.setAsync(remote, key, value, expiration).onRedeem(new F.Action<F.Promise<Boolean>>() {
+
+            public void invoke(F.Promise<Boolean> set) {
+                written(key, set.getOrNull() ? value : null, expiration);
+                result.invoke(set.getOrNull());
+            }
+        });
+        return result;
+    }
+
+    public F.Promise<Boolean> deleteAsync(final String key) {
+        if (prefix(key) == null) {
+            return Cache.deleteAsync(remote, key);
+        }
+        final F.Promise<Boolean> result = new F.Promise<Boolean>();
+        Cache.deleteAsync(remote, key).onRedeem(new F.Action<F.Promise<Boolean>>() {
+
+            public void invoke(F.Promise<Boolean> deleted) {
+                written(key, null, 0);
+                result.invoke(deleted.getOrNull());
+            }
+        });
+        return result;
+    }
+
+    /**
+     * @param value the new value to keep near, or null to forget the key
+     * @param expiration the expiration it was written with, in seconds
+     */
+    void written(String key, Object value, int expiration) {
+        if (prefix(key) == null) {
+            return;
+        }
+        if (value == null) {
+            forget(key);
+        } else {
+            keep(key, value, expiration);
+        }
+        changed(key);
+    }
+
+    public void clear() {
+        remote.clear();
+        synchronized (entries) {
+            changes++;
+            entries.clear();
+        }
+        for (String prefix : prefixes) {
+            changedPrefix(prefix);
+        }
+    }
+
+    public void stop() {
+        synchronized (entries) {
+            entries.clear();
+            versions.clear();
+        }
+        remote.stop();
+    }
+}
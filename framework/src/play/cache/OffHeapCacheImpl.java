@@ -0,0 +1,692 @@
+package play.cache;
+
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+import play.Logger;
+import play.exceptions.ConfigurationException;
+
+/**
+ * A cache storing serialized values out of the heap, in direct buffers.
+ * <p/>
+ * The memory is allocated by slabs, as it is needed, until the configured size. Each slab is cut
+ * in chunks of one size class, and a value is stored in a chunk of the smallest class it fits in,
+ * so values larger than a slab are not cached. When a class has no free chunk and no slab is left,
+ * a chunk of this class is taken back from a value not read recently (CLOCK eviction). A class
+ * that got no slab before the memory ran out takes one from the class that has the most.
+ * <p/>
+ * The keys and the location of their value are indexed in the heap, by segments locked
+ * separately.
+ *
+ * expiration is specified in seconds
+ */
+public class OffHeapCacheImpl implements CacheImpl {
+
+    private static OffHeapCacheImpl uniqueInstance;
+
+    static final int SEGMENTS = 16;
+    static final int MIN_CHUNK = 64;
+    static final double GROWTH_FACTOR = 1.25;
+
+    /**
+     * A value stored in a chunk
+     */
+    static class Entry {
+
+        final String key;
+        final int length;
+        final long expiresAt;
+        final SizeClass sizeClass;
+        int slab;
+        int chunk;
+        /**
+         * Read since it was stored or since the clock hand last passed: values never read are
+         * evicted first
+         */
+        volatile boolean referenced;
+
+        Entry(String key, int length, long expiresAt, SizeClass sizeClass) {
+            this.key = key;
+            this.length = length;
+            this.expiresAt = expiresAt;
+            this.sizeClass = sizeClass;
+        }
+
+        boolean expired(long now) {
+            return expiresAt > 0 && expiresAt <= now;
+        }
+    }
+
+    /**
+     * A part of the index
+     */
+    static class Segment extends ReentrantLock {
+
+        final Map<String, Entry> entries = new HashMap<String, Entry>();
+    }
+
+    /**
+     * The chunks of one size, in the slabs given to this class
+     */
+    class SizeClass {
+
+        final int chunkSize;
+        final int chunksPerSlab;
+        /**
+         * Read out of the lock of the class, by the readers of the entries allocated in them
+         */
+        final ByteBuffer[] slabs = new ByteBuffer[(int) (size / slabSize)];
+        final Entry[][] owners = new Entry[slabs.length][];
+        int slabCount;
+        int[] free = new int[16];
+        int freeCount;
+        int handSlab;
+        int handChunk;
+
+        SizeClass(int chunkSize) {
+            this.chunkSize = chunkSize;
+            this.chunksPerSlab = slabSize / chunkSize;
+        }
+
+        /**
+         * Find a chunk for this entry: a free one, one of a new slab, or one of an evicted entry
+         * @return false if every chunk of this class is in use and nothing can be evicted
+         */
+        synchronized boolean allocate(Entry entry) {
+            if (freeCount == 0 && !grow()) {
+                if (!evict()) {
+                    return false;
+                }
+            }
+            int id = free[--freeCount];
+            entry.slab = id / chunksPerSlab;
+            entry.chunk = id % chunksPerSlab;
+            owners[entry.slab][entry.chunk] = entry;
+            return true;
+        }
+
+        synchronized void free(Entry entry) {
+            if (owners[entry.slab] == null || owners[entry.slab][entry.chunk] != entry) {
+                return;
+            }
+            owners[entry.slab][entry.chunk] = null;
+            push(entry.slab * chunksPerSlab + entry.chunk);
+        }
+
+        void push(int id) {
+            if (freeCount == free.length) {
+                int[] larger = new int[free.length * 2];
+                System.arraycopy(free, 0, larger, 0, freeCount);
+                free = larger;
+            }
+            free[freeCount++] = id;
+        }
+
+        boolean grow() {
+            long current;
+            do {
+                current = allocated.get();
+                if (current + slabSize > size) {
+                    return false;
+                }
+            } while (!allocated.compareAndSet(current, current + slabSize));
+            ByteBuffer buffer;
+            try {
+                buffer = ByteBuffer.allocateDirect(slabSize);
+            } catch (OutOfMemoryError e) {
+                allocated.addAndGet(-slabSize);
+                Logger.warn("Cannot allocate a slab of the off-heap cache: %s", e.getMessage());
+                return false;
+            }
+            add(buffer);
+            return true;
+        }
+
+        synchronized void add(ByteBuffer slab) {
+            int id = slabCount;
+            slabs[id] = slab;
+            owners[id] = new Entry[chunksPerSlab];
+            slabCount++;
+            for (int chunk = chunksPerSlab - 1; chunk >= 0; chunk--) {
+                push(id * chunksPerSlab + chunk);
+            }
+        }
+
+        /**
+         * Give the last slab of this class away, evicting its entries
+         * @return the slab, or null if one of its chunks is being written or freed
+         */
+        synchronized ByteBuffer release() {
+            int slab = slabCount - 1;
+            boolean busy = false;
+            for (int chunk = 0; chunk < chunksPerSlab; chunk++) {
+                Entry owner = owners[slab][chunk];
+                if (owner == null) {
+                    continue;
+                }
+                if (unindex(owner)) {
+                    owners[slab][chunk] = null;
+                    push(slab * chunksPerSlab + chunk);
+                    evictions.incrementAndGet();
+                } else {
+                    busy = true;
+                }
+            }
+            if (busy) {
+                return null;
+            }
+            int first = slab * chunksPerSlab;
+            int kept = 0;
+            for (int i = 0; i < freeCount; i++) {
+                if (free[i] < first) {
+                    free[kept++] = free[i];
+                }
+            }
+            freeCount = kept;
+            ByteBuffer buffer = slabs[slab];
+            slabs[slab] = null;
+            owners[slab] = null;
+            slabCount--;
+            if (handSlab >= slabCount) {
+                handSlab = 0;
+                handChunk = 0;
+            }
+            return buffer;
+        }
+
+        synchronized int slabCount() {
+            return slabCount;
+        }
+
+        /**
+         * Move the clock hand over the chunks, giving a second chance to the entries read since
+         * it last passed, until an entry can be removed
+         */
+        boolean evict() {
+            if (slabCount == 0) {
+                return false;
+            }
+            int chunks = slabCount * chunksPerSlab;
+            long now = System.currentTimeMillis();
+            for (int i = 0; i < chunks * 2; i++) {
+                Entry owner = owners[handSlab][handChunk];
+                if (++handChunk == chunksPerSlab) {
+                    handChunk = 0;
+                    handSlab = (handSlab + 1) % slabCount;
+                }
+                if (owner == null) {
+                    continue;
+                }
+                if (owner.referenced && !owner.expired(now)) {
+                    owner.referenced = false;
+                    continue;
+                }
+                if (unindex(owner)) {
+                    owners[owner.slab][owner.chunk] = null;
+                    push(owner.slab * chunksPerSlab + owner.chunk);
+                    if (owner.expired(now)) {
+                        expirations.incrementAndGet();
+                    } else {
+                        evictions.incrementAndGet();
+                    }
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        ByteBuffer chunk(Entry entry) {
+            ByteBuffer buffer = slabs[entry.slab].duplicate();
+            buffer.position(entry.chunk * chunkSize);
+            return buffer;
+        }
+    }
+
+    public final long size;
+    final int slabSize;
+    final Segment[] segments = new Segment[SEGMENTS];
+    final SizeClass[] sizeClasses;
+    /**
+     * The memory taken by the slabs
+     */
+    final AtomicLong allocated = new AtomicLong();
+    /**
+     * The memory taken by the values
+     */
+    final AtomicLong used = new AtomicLong();
+
+    public final AtomicLong hits = new AtomicLong();
+    public final AtomicLong misses = new AtomicLong();
+    public final AtomicLong evictions = new AtomicLong();
+    public final AtomicLong expirations = new AtomicLong();
+
+    /**
+     * @param size the maximum memory taken by the slabs
+     * @param slabSize the size of a slab, and of the largest value cached
+     */
+    public OffHeapCacheImpl(long size, int slabSize) {
+        this.size = size;
+        this.slabSize = (int) Math.min(slabSize, size);
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment();
+        }
+        List<SizeClass> classes = new ArrayList<SizeClass>();
+        int chunkSize = Math.min(MIN_CHUNK, this.slabSize);
+        while (true) {
+            classes.add(new SizeClass(chunkSize));
+            if (chunkSize == this.slabSize) {
+                break;
+            }
+            chunkSize = Math.min(this.slabSize, Math.max(chunkSize + 8, (int) (chunkSize * GROWTH_FACTOR) & ~7));
+        }
+        this.sizeClasses = classes.toArray(new SizeClass[classes.size()]);
+    }
+
+    /**
+     * The instance for this size, kept across restarts in DEV mode so that its memory is reused
+     */
+    public static OffHeapCacheImpl getInstance(long size) {
+        long max = maxDirectMemory();
+        if (size > max) {
+            throw new ConfigurationException("cache.offheap.size is " + size + " bytes, but the JVM allocates at most " + max + " bytes out of the heap: raise -XX:MaxDirectMemorySize");
+        }
+        if (uniqueInstance == null || uniqueInstance.size != size) {
+            uniqueInstance = new OffHeapCacheImpl(size, 1024 * 1024);
+        }
+        return uniqueInstance;
+    }
+
+    /**
+     * The memory the JVM allocates out of the heap at most: -XX:MaxDirectMemorySize, which is the
+     * maximum heap size by default
+     */
+    static long maxDirectMemory() {
+        try {
+            for (String argument : ManagementFactory.getRuntimeMXBean().getInputArguments()) {
+                if (argument.startsWith("-XX:MaxDirectMemorySize=")) {
+                    return parseSize(argument.substring(argument.indexOf('=') + 1));
+                }
+            }
+        } catch (Exception e) {
+            // No management
+        }
+        try {
+            return ((Number) Class.forName("sun.misc.VM").getMethod("maxDirectMemory").invoke(null)).longValue();
+        } catch (Exception e) {
+            return Runtime.getRuntime().maxMemory();
+        }
+    }
+
+    /**
+     * Give a slab to a class that has none once the memory ran out, taken from the class with the
+     * most slabs if it has several. Classes are locked one at a time.
+     * @return whether the class has a slab
+     */
+    boolean rebalance(SizeClass needy) {
+        synchronized (sizeClasses) {
+            if (needy.slabCount() > 0) {
+                return true;
+            }
+            SizeClass donor = null;
+            int most = 1;
+            for (SizeClass sizeClass : sizeClasses) {
+                int count = sizeClass.slabCount();
+                if (count > most) {
+                    donor = sizeClass;
+                    most = count;
+                }
+            }
+            ByteBuffer slab = donor == null ? null : donor.release();
+            if (slab == null) {
+                return false;
+            }
+            needy.add(slab);
+            return true;
+        }
+    }
+
+    /**
+     * Parse a memory size
+     * @param size Ex: 2g, 512m, 64k, 1000000
+     * @return The size in bytes
+     */
+    public static long parseSize(String size) {
+        String value = size.trim().toLowerCase();
+        long unit = 1;
+        if (value.endsWith("b")) {
+            value = value.substring(0, value.length() - 1);
+        }
+        if (value.endsWith("k")) {
+            unit = 1024L;
+        } else if (value.endsWith("m")) {
+            unit = 1024L * 1024;
+        } else if (value.endsWith("g")) {
+            unit = 1024L * 1024 * 1024;
+        }
+        if (unit > 1) {
+            value = value.substring(0, value.length() - 1);
+        }
+        try {
+            return Long.parseLong(value.trim()) * unit;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid size: " + size);
+        }
+    }
+
+    Segment segment(String key) {
+        int hash = key.hashCode();
+        hash ^= (hash >>> 16);
+        return segments[hash & (SEGMENTS - 1)];
+    }
+
+    SizeClass sizeClass(int length) {
+        for (SizeClass sizeClass : sizeClasses) {
+            if (length <= sizeClass.chunkSize) {
+                return sizeClass;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Remove an entry from the index, if it is still there
+     */
+    boolean unindex(Entry entry) {
+        Segment segment = segment(entry.key);
+        segment.lock();
+        try {
+            if (segment.entries.get(entry.key) != entry) {
+                return false;
+            }
+            segment.entries.remove(entry.key);
+        } finally {
+            segment.unlock();
+        }
+        used.addAndGet(-entry.length);
+        return true;
+    }
+
+    /**
+     * Remove an entry and free its chunk. Chunks are freed out of the segment locks.
+     */
+    void discard(Entry entry) {
+        if (entry != null) {
+            entry.sizeClass.free(entry);
+        }
+    }
+
+    /**
+     * The bytes of a key, and mark it read
+     */
+    byte[] read(String key) {
+        Segment segment = segment(key);
+        Entry expired = null;
+        segment.lock();
+        try {
+            Entry entry = segment.entries.get(key);
+            if (entry == null) {
+                return null;
+            }
+            if (entry.expired(System.currentTimeMillis())) {
+                segment.entries.remove(key);
+                used.addAndGet(-entry.length);
+                expired = entry;
+                return null;
+            }
+            entry.referenced = true;
+            byte[] data = new byte[entry.length];
+            entry.sizeClass.chunk(entry).get(data);
+            return data;
+        } finally {
+            segment.unlock();
+            if (expired != null) {
+                expirations.incrementAndGet();
+                discard(expired);
+            }
+        }
+    }
+
+    static final int SET = 0;
+    static final int ADD = 1;
+    static final int REPLACE = 2;
+
+    /**
+     * Store a value
+     * @param mode SET, ADD if absent or REPLACE if present
+     * @param expected for REPLACE, the entry to replace, or null for any
+     * @return if the value has been stored
+     */
+    boolean store(String key, byte[] data, long expiresAt, int mode, Entry expected) {
+        SizeClass sizeClass = sizeClass(data.length);
+        if (sizeClass == null) {
+            Logger.warn("Cannot cache %s: %s bytes is more than the %s bytes of a slab", key, data.length, slabSize);
+            if (mode == SET) {
+                delete(key);
+            }
+            return false;
+        }
+        Entry entry = new Entry(key, data.length, expiresAt, sizeClass);
+        if (!sizeClass.allocate(entry) && !(rebalance(sizeClass) && sizeClass.allocate(entry))) {
+            Logger.warn("Cannot cache %s: no memory left for values of %s bytes", key, sizeClass.chunkSize);
+            if (mode == SET) {
+                delete(key);
+            }
+            return false;
+        }
+        sizeClass.chunk(entry).put(data);
+        Segment segment = segment(key);
+        Entry previous;
+        Entry expired = null;
+        boolean stored;
+        segment.lock();
+        try {
+            previous = segment.entries.get(key);
+            if (previous != null && previous.expired(System.currentTimeMillis())) {
+                segment.entries.remove(key);
+                used.addAndGet(-previous.length);
+                expired = previous;
+                previous = null;
+            }
+            stored = mode == SET || (mode == ADD && previous == null) || (mode == REPLACE && previous != null && (expected == null || previous == expected));
+            if (stored) {
+                segment.entries.put(key, entry);
+                used.addAndGet(data.length - (previous == null ? 0 : previous.length));
+            }
+        } finally {
+            segment.unlock();
+        }
+        discard(expired);
+        discard(stored ? previous : entry);
+        return stored;
+    }
+
+    static long expiresAt(int expiration) {
+        return expiration > 0 ? System.currentTimeMillis() + expiration * 1000L : 0;
+    }
+
+    public void add(String key, Object value, int expiration) {
+        store(key, serialize(value), expiresAt(expiration), ADD, null);
+    }
+
+    public boolean safeAdd(String key, Object value, int expiration) {
+        try {
+            return store(key, serialize(value), expiresAt(expiration), ADD, null);
+        } catch (Exception e) {
+            Logger.error(e.toString());
+            return false;
+        }
+    }
+
+    public void set(String key, Object value, int expiration) {
+        store(key, serialize(value), expiresAt(expiration), SET, null);
+    }
+
+    public boolean safeSet(String key, Object value, int expiration) {
+        try {
+            return store(key, serialize(value), expiresAt(expiration), SET, null);
+        } catch (Exception e) {
+            Logger.error(e.toString());
+            return false;
+        }
+    }
+
+    public void replace(String key, Object value, int expiration) {
+        store(key, serialize(value), expiresAt(expiration), REPLACE, null);
+    }
+
+    public boolean safeReplace(String key, Object value, int expiration) {
+        try {
+            return store(key, serialize(value), expiresAt(expiration), REPLACE, null);
+        } catch (Exception e) {
+            Logger.error(e.toString());
+            return false;
+        }
+    }
+
+    public Object get(String key) {
+        byte[] data = read(key);
+        if (data == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        return deserialize(data);
+    }
+
+    public Map<String, Object> get(String[] keys) {
+        Map<String, Object> result = new HashMap<String, Object>(keys.length);
+        for (String key : keys) {
+            result.put(key, get(key));
+        }
+        return result;
+    }
+
+    public long incr(String key, int by) {
+        return increment(key, by);
+    }
+
+    public long decr(String key, int by) {
+        return increment(key, -by);
+    }
+
+    /**
+     * Add to a number, keeping its expiration
+     */
+    long increment(String key, long by) {
+        while (true) {
+            Segment segment = segment(key);
+            Entry entry;
+            byte[] data;
+            segment.lock();
+            try {
+                entry = segment.entries.get(key);
+                if (entry == null || entry.expired(System.currentTimeMillis())) {
+                    return -1;
+                }
+                data = new byte[entry.length];
+                entry.sizeClass.chunk(entry).get(data);
+            } finally {
+                segment.unlock();
+            }
+            long value = ((Number) deserialize(data)).longValue() + by;
+            if (store(key, serialize(value), entry.expiresAt, REPLACE, entry)) {
+                return value;
+            }
+        }
+    }
+
+    public void delete(String key) {
+        Segment segment = segment(key);
+        Entry entry;
+        segment.lock();
+        try {
+            entry = segment.entries.remove(key);
+            if (entry != null) {
+                used.addAndGet(-entry.length);
+            }
+        } finally {
+            segment.unlock();
+        }
+        discard(entry);
+    }
+
+    public boolean safeDelete(String key) {
+        try {
+            delete(key);
+            return true;
+        } catch (Exception e) {
+            Logger.error(e.toString());
+            return false;
+        }
+    }
+
+    public void clear() {
+        for (Segment segment : segments) {
+            List<Entry> entries;
+            segment.lock();
+            try {
+                entries = new ArrayList<Entry>(segment.entries.values());
+                segment.entries.clear();
+            } finally {
+                segment.unlock();
+            }
+            for (Entry entry : entries) {
+                used.addAndGet(-entry.length);
+                discard(entry);
+            }
+        }
+    }
+
+    public void stop() {
+        clear();
+    }
+
+    /**
+     * The number of keys cached
+     */
+    public int count() {
+        int count = 0;
+        for (Segment segment : segments) {
+            segment.lock();
+            try {
+                count += segment.entries.size();
+            } finally {
+                segment.unlock();
+            }
+        }
+        return count;
+    }
+
+    /**
+     * The memory taken by the slabs
+     */
+    public long allocated() {
+        return allocated.get();
+    }
+
+    /**
+     * The memory taken by the values
+     */
+    public long used() {
+        return used.get();
+    }
+
+    static byte[] serialize(Object value) {
+        return Cache.serializer.serialize(value);
+    }
+
+    static Object deserialize(byte[] data) {
+        try {
+            return Cache.serializer.deserialize(data);
+        } catch (Exception e) {
+            Logger.error(e, "Could not deserialize");
+        }
+        return null;
+    }
+}
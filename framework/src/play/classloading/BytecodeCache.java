@@ -54,6 +54,7 @@ public class BytecodeCache {
                     offset++;
                 }
                 if (!hash(source).equals(hash.toString())) {
+                    fis.close();
 
                     if (Logger.isTraceEnabled()) {
                         Logger.trace("Bytecode too old (%s != %s)", hash, hash(source));
@@ -87,11 +88,19 @@ public class BytecodeCache {
                 return;
             }
             File f = cacheFile(name.replace("/", "_").replace("{", "_").replace("}", "_").replace(":", "_"));
-            FileOutputStream fos = new FileOutputStream(f);
+            // Written aside then renamed, so that a concurrent reader never sees a partial file
+            File tmp = new File(f.getParentFile(), f.getName() + "." + Thread.currentThread().getId() + ".tmp");
+            FileOutputStream fos = new FileOutputStream(tmp);
             fos.write(hash(source).getBytes("utf-8"));
             fos.write(0);
             fos.write(byteCode);
             fos.close();
+            if (!tmp.renameTo(f)) {
+                f.delete();
+                if (!tmp.renameTo(f)) {
+                    tmp.delete();
+                }
+            }
 
             if (Logger.isTraceEnabled()) {
                 Logger.trace("%s cached", name);
@@ -48,7 +48,7 @@ public class ControllersEnhancer extends Enhancer {
                     try {
                         if (isThreadedFieldAccess(fieldAccess.getField())) {
                             if (fieldAccess.isReader()) {
-                                fieldAccess.replace("$_ = ($r)play.utils.Java.invokeStatic($type, \"current\");");
+                                fieldAccess.replace("$_ = ($r)" + fieldAccess.getField().getType().getName() + ".current();");
                             }
                         }
                     } catch (Exception e) {
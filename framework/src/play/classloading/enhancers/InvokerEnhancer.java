@@ -0,0 +1,256 @@
+package play.classloading.enhancers;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javassist.CtClass;
+import javassist.CtMethod;
+import javassist.CtNewMethod;
+import javassist.Modifier;
+import javassist.NotFoundException;
+import javassist.bytecode.annotation.Annotation;
+import play.classloading.ApplicationClasses.ApplicationClass;
+
+/**
+ * Let controllers call their actions and interceptors without reflection.
+ * <p/>
+ * The controller class implements DirectInvoker: $methods lists its static actions and @Before,
+ * @After, @Finally and @Catch methods, and $invoke calls one of them with a switch on its position
+ * in that list. An instance of the controller is only used as a handle to these two methods.
+ * Methods that are not listed (Scala controllers, abstract controllers, instance methods) are
+ * still invoked with reflection.
+ * <p/>
+ * The generated code only calls methods of this class, so that enhancing doesn't need to read the
+ * class files of the JDK.
+ */
+public class InvokerEnhancer extends Enhancer {
+
+    /**
+     * Implemented by enhanced controllers
+     */
+    public interface DirectInvoker {
+
+        /**
+         * @return the signatures of the methods that can be invoked, see signature()
+         */
+        String[] $methods();
+
+        /**
+         * Invoke a static method
+         * @param index the position of the method in $methods()
+         * @param args the arguments
+         * @return the returned value, boxed, or null for void methods
+         */
+        Object $invoke(int index, Object[] args) throws Exception;
+    }
+
+    @Override
+    public void enhanceThisClass(ApplicationClass<?> applicationClass) throws Exception {
+        if (isScala(applicationClass) || isAnon(applicationClass)) {
+            return;
+        }
+
+        CtClass ctClass = makeClass(applicationClass);
+
+        if (!ctClass.subtypeOf(classPool.get(ControllersEnhancer.ControllerSupport.class.getName()))) {
+            return;
+        }
+        if (Modifier.isAbstract(ctClass.getModifiers()) || ctClass.isInterface() || isScalaObject(ctClass)) {
+            return;
+        }
+        try {
+            ctClass.getDeclaredConstructor(new CtClass[0]);
+        } catch (NotFoundException e) {
+            return;
+        }
+
+        List<CtMethod> methods = new ArrayList<CtMethod>();
+        for (CtMethod ctMethod : ctClass.getDeclaredMethods()) {
+            if (isInvokable(ctMethod)) {
+                methods.add(ctMethod);
+            }
+        }
+        if (methods.isEmpty()) {
+            return;
+        }
+
+        StringBuilder signatures = new StringBuilder();
+        signatures.append("public String[] $methods() { return new String[] {");
+        StringBuilder invoke = new StringBuilder();
+        invoke.append("public Object $invoke(int index, Object[] args) throws Exception {");
+        invoke.append("switch ($1) {");
+        for (int i = 0; i < methods.size(); i++) {
+            CtMethod ctMethod = methods.get(i);
+            CtClass[] parameterTypes = ctMethod.getParameterTypes();
+            String[] names = new String[parameterTypes.length];
+            StringBuilder call = new StringBuilder();
+            call.append(ctMethod.getName()).append("(");
+            for (int j = 0; j < parameterTypes.length; j++) {
+                names[j] = parameterTypes[j].getName();
+                if (j > 0) {
+                    call.append(", ");
+                }
+                if (parameterTypes[j].isPrimitive()) {
+                    call.append(HELPERS).append(".unbox").append(capitalize(names[j])).append("($2[").append(j).append("])");
+                } else {
+                    call.append("(").append(names[j]).append(") $2[").append(j).append("]");
+                }
+            }
+            call.append(")");
+
+            if (i > 0) {
+                signatures.append(", ");
+            }
+            signatures.append("\"").append(signature(ctMethod.getName(), names)).append("\"");
+
+            invoke.append("case ").append(i).append(": ");
+            CtClass returnType = ctMethod.getReturnType();
+            if (returnType == CtClass.voidType) {
+                invoke.append(call).append("; return null;");
+            } else if (returnType.isPrimitive()) {
+                invoke.append("return ").append(HELPERS).append(".box(").append(call).append(");");
+            } else {
+                invoke.append("return ").append(call).append(";");
+            }
+        }
+        signatures.append("}; }");
+        invoke.append("}");
+        invoke.append("return ").append(HELPERS).append(".noSuchMethod(this, $1);");
+        invoke.append("}");
+
+        CtClass directInvoker = classPool.get(DirectInvoker.class.getName());
+        ctClass.addInterface(directInvoker);
+        ctClass.addMethod(CtNewMethod.make(signatures.toString(), ctClass));
+        ctClass.addMethod(CtNewMethod.make(invoke.toString(), ctClass));
+
+        applicationClass.enhancedByteCode = ctClass.toBytecode();
+        ctClass.defrost();
+    }
+
+    /**
+     * Static actions and interceptors
+     */
+    boolean isInvokable(CtMethod ctMethod) throws Exception {
+        int modifiers = ctMethod.getModifiers();
+        if (!Modifier.isStatic(modifiers) || Modifier.isAbstract(modifiers) || Modifier.isNative(modifiers)) {
+            return false;
+        }
+        if (ctMethod.getName().contains("$") || (ctMethod.getMethodInfo().getAccessFlags() & javassist.bytecode.AccessFlag.SYNTHETIC) != 0) {
+            return false;
+        }
+        if (Modifier.isPublic(modifiers)) {
+            return true;
+        }
+        for (Annotation annotation : getAnnotations(ctMethod).getAnnotations()) {
+            String type = annotation.getTypeName();
+            if (type.equals("play.mvc.Before") || type.equals("play.mvc.After") || type.equals("play.mvc.Finally") || type.equals("play.mvc.Catch")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    static String capitalize(String primitive) {
+        return Character.toUpperCase(primitive.charAt(0)) + primitive.substring(1);
+    }
+
+    // ~~~~~~~~~ Runtime part needed by the generated code
+
+    static final String HELPERS = InvokerEnhancer.class.getName();
+
+    public static Object noSuchMethod(Object invoker, int index) {
+        throw new IllegalArgumentException("No method " + index + " in " + invoker.getClass().getName());
+    }
+
+    public static Object box(boolean value) {
+        return value;
+    }
+
+    public static Object box(byte value) {
+        return value;
+    }
+
+    public static Object box(char value) {
+        return value;
+    }
+
+    public static Object box(short value) {
+        return value;
+    }
+
+    public static Object box(int value) {
+        return value;
+    }
+
+    public static Object box(long value) {
+        return value;
+    }
+
+    public static Object box(float value) {
+        return value;
+    }
+
+    public static Object box(double value) {
+        return value;
+    }
+
+    public static boolean unboxBoolean(Object value) {
+        return (Boolean) value;
+    }
+
+    public static byte unboxByte(Object value) {
+        return (Byte) value;
+    }
+
+    public static char unboxChar(Object value) {
+        return (Character) value;
+    }
+
+    public static short unboxShort(Object value) {
+        return (Short) value;
+    }
+
+    public static int unboxInt(Object value) {
+        return (Integer) value;
+    }
+
+    public static long unboxLong(Object value) {
+        return (Long) value;
+    }
+
+    public static float unboxFloat(Object value) {
+        return (Float) value;
+    }
+
+    public static double unboxDouble(Object value) {
+        return (Double) value;
+    }
+
+    /**
+     * The signature of a method, as given to DirectInvoker.$index
+     */
+    public static String signature(String name, Class<?>[] parameterTypes) {
+        String[] names = new String[parameterTypes.length];
+        for (int i = 0; i < parameterTypes.length; i++) {
+            Class<?> type = parameterTypes[i];
+            String dimensions = "";
+            while (type.isArray()) {
+                dimensions += "[]";
+                type = type.getComponentType();
+            }
+            names[i] = type.getName() + dimensions;
+        }
+        return signature(name, names);
+    }
+
+    static String signature(String name, String[] parameterTypes) {
+        StringBuilder signature = new StringBuilder(name).append("(");
+        for (int i = 0; i < parameterTypes.length; i++) {
+            if (i > 0) {
+                signature.append(",");
+            }
+            signature.append(parameterTypes[i]);
+        }
+        return signature.append(")").toString();
+    }
+}
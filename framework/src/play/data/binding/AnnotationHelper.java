@@ -4,7 +4,9 @@ import java.lang.annotation.Annotation;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.Locale;
+import java.util.Map;
 
 import org.apache.commons.lang.StringUtils;
 
@@ -44,15 +46,38 @@ public class AnnotationHelper {
                 if (StringUtils.isEmpty(format)) {
                     format = I18N.getDateFormat();
                 }
-                SimpleDateFormat sdf = new SimpleDateFormat(format, locale);
-                sdf.setLenient(false);
-                return sdf.parse(value);
+                return getDateFormat(format, locale).parse(value);
 
             }
         }
         return null;
     }
 
+    private static final ThreadLocal<Map<String, SimpleDateFormat>> dateFormats = new ThreadLocal<Map<String, SimpleDateFormat>>() {
+
+        @Override
+        protected Map<String, SimpleDateFormat> initialValue() {
+            return new HashMap<String, SimpleDateFormat>();
+        }
+    };
+
+    /**
+     * A strict (non lenient) date format, reused by the current thread
+     * @param pattern the SimpleDateFormat pattern
+     * @param locale the locale
+     */
+    public static SimpleDateFormat getDateFormat(String pattern, Locale locale) {
+        Map<String, SimpleDateFormat> formats = dateFormats.get();
+        String key = locale + "|" + pattern;
+        SimpleDateFormat format = formats.get(key);
+        if (format == null) {
+            format = new SimpleDateFormat(pattern, locale);
+            format.setLenient(false);
+            formats.put(key, format);
+        }
+        return format;
+    }
+
     public static Tuple getLocale(String[] langs) {
         int i = 0;
         for (String l : langs) {
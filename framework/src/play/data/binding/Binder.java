@@ -1,6 +1,9 @@
 package play.data.binding;
 
 import java.io.File;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
 import java.lang.annotation.Annotation;
 import java.lang.reflect.Array;
 import java.lang.reflect.Method;
@@ -13,6 +16,9 @@ import java.util.regex.*;
 import org.apache.commons.lang.StringUtils;
 import org.joda.time.DateTime;
 
+import com.google.gson.Gson;
+import com.google.gson.stream.JsonReader;
+
 import play.Logger;
 import play.Play;
 import play.data.Upload;
@@ -20,6 +26,8 @@ import play.data.binding.types.*;
 import play.data.validation.Validation;
 import play.db.Model;
 import play.exceptions.UnexpectedException;
+import play.mvc.Http;
+import play.mvc.Scope;
 import play.utils.Utils;
 
 /**
@@ -46,6 +54,7 @@ public class Binder {
 
     public static <T> void register(Class<T> clazz, TypeBinder<T> typeBinder) {
         supportedTypes.put(clazz, typeBinder);
+        BindingPlan.clear();
     }
 
 
@@ -56,8 +65,20 @@ public class Binder {
     public final static Object MISSING = new Object();
     public final static Object NO_BINDING = new Object();
 
-    @SuppressWarnings({ "unchecked", "rawtypes" })
     static Object bindInternal(String name, Class<?> clazz, Type type, Annotation[] annotations, Map<String, String[]> params, String suffix, String[] profiles) {
+        try {
+            return bindInternal(name, BindingPlan.of(clazz, type, annotations), params, suffix, profiles);
+        } catch (Exception e) {
+            Validation.addError(name + suffix, "validation.invalid");
+            return MISSING;
+        }
+    }
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    static Object bindInternal(String name, BindingPlan plan, Map<String, String[]> params, String suffix, String[] profiles) {
+        Class<?> clazz = plan.clazz;
+        Type type = plan.type;
+        Annotation[] annotations = plan.annotations;
         try {
             if (Logger.isTraceEnabled()) {
                 Logger.trace("bindInternal: name [" + name + "] suffix [" + suffix + "]");
@@ -71,25 +92,15 @@ public class Binder {
             }
 
             // Let see if we have a BindAs annotation and a separator. If so, we need to split the values
-            // Look up for the BindAs annotation. Extract the profile if there is any.
-            if (annotations != null) {
-                for (Annotation annotation : annotations) {
-                    if ((clazz.isArray() || Collection.class.isAssignableFrom(clazz)) && value != null && value.length > 0 && annotation.annotationType().equals(As.class)) {
-                        As as = ((As) annotation);
-                        final String separator = as.value()[0];
-                        value = value[0].split(separator);
-                    }
-                    if (annotation.annotationType().equals(NoBinding.class)) {
-                        NoBinding bind = ((NoBinding) annotation);
-                        String[] localUnbindProfiles = bind.value();
-                        if (Logger.isTraceEnabled()) {
-                            Logger.trace("bindInternal: localUnbindProfiles [" + Utils.join(localUnbindProfiles, ",") + "]");
-                        }
-
-                        if (localUnbindProfiles != null && contains(profiles, localUnbindProfiles)) {
-                            return NO_BINDING;
-                        }
-                    }
+            if (plan.separator != null && value != null && value.length > 0) {
+                value = value[0].split(plan.separator);
+            }
+            if (plan.noBindingProfiles != null) {
+                if (Logger.isTraceEnabled()) {
+                    Logger.trace("bindInternal: localUnbindProfiles [" + Utils.join(plan.noBindingProfiles, ",") + "]");
+                }
+                if (contains(profiles, plan.noBindingProfiles)) {
+                    return NO_BINDING;
                 }
             }
 
@@ -103,9 +114,10 @@ public class Binder {
                     return MISSING;
                 }
                 Object r = Array.newInstance(clazz.getComponentType(), value.length);
+                BindingPlan componentPlan = BindingPlan.of(clazz.getComponentType(), null, annotations);
                 for (int i = 0; i <= value.length; i++) {
                     try {
-                        Array.set(r, i, directBind(name, annotations, value[i], clazz.getComponentType()));
+                        Array.set(r, i, directBind(name, componentPlan, value[i]));
                     } catch (Exception e) {
                         // ?? One item was bad
                     }
@@ -140,8 +152,8 @@ public class Binder {
 
                 // Search for all params
                 Map<Object, Object> r = new HashMap<Object, Object>();
-                for (String param : params.keySet()) {
-                    Pattern p = Pattern.compile("^" + name + suffix + "\\[([^\\]]+)\\](.*)$");
+                Pattern p = Pattern.compile("^" + name + suffix + "\\[([^\\]]+)\\](.*)$");
+                for (String param : Utils.Maps.startingWith(params, name + suffix + "[").keySet()) {
                     Matcher m = p.matcher(param);
                     if (m.matches()) {
                         String key = m.group(1);
@@ -208,8 +220,8 @@ public class Binder {
                 if (value == null) {
                     value = params.get(name + suffix + "[]");
                     if (value == null && r instanceof List) {
-                        for (String param : params.keySet()) {
-                            Pattern p = Pattern.compile("^" + escape(name + suffix) + "\\[([0-9]+)\\](.*)$");
+                        Pattern p = Pattern.compile("^" + escape(name + suffix) + "\\[([0-9]+)\\](.*)$");
+                        for (String param : Utils.Maps.startingWith(params, name + suffix + "[").keySet()) {
                             Matcher m = p.matcher(param);
                             if (m.matches()) {
                                 int key = Integer.parseInt(m.group(1));
@@ -236,9 +248,10 @@ public class Binder {
                 if (value == null) {
                     return MISSING;
                 }
+                BindingPlan componentPlan = BindingPlan.of(componentClass, null, annotations);
                 for (String v : value) {
                     try {
-                        ((List<Object>) r).add(directBind(name, annotations, v, componentClass));
+                        ((List<Object>) r).add(directBind(name, componentPlan, v));
                     } catch (Exception e) {
                         // ?? One item was bad
                         Logger.debug(e, "error:");
@@ -262,7 +275,7 @@ public class Binder {
                 return MISSING;
             }
 
-            return directBind(name, annotations, value[0], clazz, type);
+            return directBind(name, plan, value[0]);
         } catch (Exception e) {
             Validation.addError(name + suffix, "validation.invalid");
             return MISSING;
@@ -314,25 +327,29 @@ public class Binder {
             Logger.trace("bind: name [" + name + "] annotation [" + Utils.join(annotations, " ") + "] ");
         }
 
-        // Let a chance to plugins to bind this object
-        Object result = Play.pluginCollection.bind(name, clazz, type, annotations, params);
-        if (result != null) {
-            return result;
+        BindingPlan plan;
+        try {
+            plan = BindingPlan.of(clazz, type, annotations);
+        } catch (Exception e) {
+            throw new UnexpectedException(e);
         }
-        String[] profiles = null;
-        if (annotations != null) {
-            for (Annotation annotation : annotations) {
-                if (annotation.annotationType().equals(As.class)) {
-                    As as = ((As) annotation);
-                    profiles = as.value();
-                }
-                if (annotation.annotationType().equals(NoBinding.class)) {
-                    NoBinding bind = ((NoBinding) annotation);
-                    profiles = bind.value();
-                }
+
+        Object result;
+        if (plan.jsonBody) {
+            result = bindJsonBody(name, plan);
+            if (result != MISSING) {
+                return result;
+            }
+        }
+
+        // Let a chance to plugins to bind this object
+        if (plan.pluginsMayBind) {
+            result = Play.pluginCollection.bind(name, clazz, type, annotations, params);
+            if (result != null) {
+                return result;
             }
         }
-        result = bindInternal(name, clazz, type, annotations, params, "", profiles);
+        result = bindInternal(name, plan, params, "", plan.profiles);
 
         if (result == MISSING) {
             // Try the scala default
@@ -372,9 +389,40 @@ public class Binder {
         return result;
     }
 
+    /**
+     * Bind the JSON body of the request with Gson, reading it as a stream, from its start again
+     * if the body has already been parsed to params
+     * @return the object, or MISSING if the body can't be read
+     */
+    static Object bindJsonBody(String name, BindingPlan plan) {
+        Scope.Params params = Scope.Params.current();
+        InputStream body = params == null ? null : params.takeBody();
+        if (body == null) {
+            return MISSING;
+        }
+        Reader reader;
+        try {
+            reader = new InputStreamReader(body, Http.Request.current().encoding);
+        } catch (Exception e) {
+            throw new UnexpectedException(e);
+        }
+        try {
+            return new Gson().fromJson(new JsonReader(reader), plan.type != null ? plan.type : plan.clazz);
+        } catch (Exception e) {
+            Validation.addError(name, "validation.invalid");
+            return null;
+        } finally {
+            try {
+                reader.close();
+            } catch (Exception e) {
+                //
+            }
+        }
+    }
+
     static boolean isComposite(String name, Map<String, String[]> params) {
-        for (String pName : params.keySet()) {
-            if (pName.startsWith(name + ".") && params.get(pName) != null && params.get(pName).length > 0) {
+        for (String[] values : Utils.Maps.startingWith(params, name + ".").values()) {
+            if (values != null && values.length > 0) {
                 return true;
             }
         }
@@ -389,49 +437,27 @@ public class Binder {
         return directBind(name, annotations, value, clazz, null);
     }
 
-    @SuppressWarnings({ "unchecked", "rawtypes" })
     public static Object directBind(String name, Annotation[] annotations, String value, Class<?> clazz, Type type) throws Exception {
+        return directBind(name, BindingPlan.of(clazz, type, annotations), value);
+    }
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    static Object directBind(String name, BindingPlan plan, String value) throws Exception {
+        Class<?> clazz = plan.clazz;
+        Annotation[] annotations = plan.annotations;
         if (Logger.isTraceEnabled()) {
             Logger.trace("directBind: value [" + value + "] annotation [" + Utils.join(annotations, " ") + "] Class [" + clazz + "]");
         }
 
         boolean nullOrEmpty = value == null || value.trim().length() == 0;
 
-        if (annotations != null) {
-            for (Annotation annotation : annotations) {
-                if (annotation.annotationType().equals(As.class)) {
-                    Class<? extends TypeBinder<?>> toInstanciate = ((As) annotation).binder();
-                    if (!(toInstanciate.equals(As.DEFAULT.class))) {
-                        // Instantiate the binder
-                        TypeBinder<?> myInstance = toInstanciate.newInstance();
-                        return myInstance.bind(name, annotations, value, clazz, type);
-                    }
-                }
-            }
-        }
-
-        // application custom types have higher priority
-        for (Class<? extends TypeBinder<?>> c : Play.classloader.getAssignableClasses((Class<TypeBinder<?>>)(Class<?>)TypeBinder.class)) {
-            if (c.isAnnotationPresent(Global.class)) {
-                Class<?> forType = (Class<?>) ((ParameterizedType) c.getGenericInterfaces()[0]).getActualTypeArguments()[0];
-                if (forType.isAssignableFrom(clazz)) {
-                    return c.newInstance().bind(name, annotations, value, clazz, type);
-                }
-            }
-        }
-
-         // custom types
-        for (Class<?> c : supportedTypes.keySet()) {
+        // @As binder, application custom types (they have higher priority) or custom types
+        TypeBinder<?> binder = plan.binder();
+        if (binder != null) {
             if (Logger.isTraceEnabled()) {
-                Logger.trace("directBind: value [" + value + "] c [" + c + "] Class [" + clazz + "]");
-            }
-
-            if (c.isAssignableFrom(clazz)) {
-                if (Logger.isTraceEnabled()) {
-                    Logger.trace("directBind: isAssignableFrom is true");
-                }
-                return supportedTypes.get(c).bind(name, annotations, value, clazz, type);
+                Logger.trace("directBind: value [" + value + "] binder [" + binder + "] Class [" + clazz + "]");
             }
+            return binder.bind(name, annotations, value, clazz, plan.type);
         }
 
         // raw String
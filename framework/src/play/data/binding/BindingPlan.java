@@ -0,0 +1,277 @@
+package play.data.binding;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Method;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import play.Play;
+import play.PlayPlugin;
+import play.classloading.ApplicationClassloaderState;
+
+/**
+ * What Binder needs to know to bind a class with some annotations, worked out once: the @As and
+ * @NoBinding and @JsonBody annotations, the TypeBinder that converts a single value and whether a plugin may
+ * bind it first.
+ * <p/>
+ * Plans are cached until the application classes are reloaded, the enabled plugins change or a
+ * TypeBinder is registered. As before, the binders of @As and the @Global application binders
+ * are instantiated for each value, so they may keep state; only their lookup is cached.
+ */
+class BindingPlan {
+
+    final Class<?> clazz;
+    final Type type;
+    final Annotation[] annotations;
+    /**
+     * The separator given by @As to split the value of arrays and collections, or null
+     */
+    final String separator;
+    /**
+     * The profiles of @NoBinding, or null
+     */
+    final String[] noBindingProfiles;
+    /**
+     * The profiles given by the last @As or @NoBinding annotation, or null
+     */
+    final String[] profiles;
+    /**
+     * The class of the binder for a single value: the binder of @As or a @Global application
+     * binder, instantiated for each value. Null if there is none.
+     */
+    final Class<? extends TypeBinder<?>> binderClass;
+    /**
+     * Otherwise the binder registered for the class, shared. Null when directBind converts the
+     * value itself.
+     */
+    final TypeBinder<?> binder;
+    /**
+     * Whether an enabled plugin overrides PlayPlugin.bind and may bind the class itself
+     */
+    final boolean pluginsMayBind;
+    /**
+     * Whether the value is read from the JSON body of the request (@JsonBody)
+     */
+    final boolean jsonBody;
+
+    BindingPlan(Class<?> clazz, Type type, Annotation[] annotations, Cache cache) throws Exception {
+        this.clazz = clazz;
+        this.type = type;
+        this.annotations = annotations;
+        String separator = null;
+        String[] noBindingProfiles = null;
+        String[] profiles = null;
+        Class<? extends TypeBinder<?>> binderClass = null;
+        boolean jsonBody = false;
+        if (annotations != null) {
+            for (Annotation annotation : annotations) {
+                if (annotation.annotationType().equals(As.class)) {
+                    As as = (As) annotation;
+                    if (clazz.isArray() || Collection.class.isAssignableFrom(clazz)) {
+                        separator = as.value()[0];
+                    }
+                    profiles = as.value();
+                    if (binderClass == null && !as.binder().equals(As.DEFAULT.class)) {
+                        binderClass = as.binder();
+                    }
+                }
+                if (annotation.annotationType().equals(NoBinding.class)) {
+                    noBindingProfiles = ((NoBinding) annotation).value();
+                    profiles = noBindingProfiles;
+                }
+                if (annotation.annotationType().equals(JsonBody.class)) {
+                    jsonBody = true;
+                }
+            }
+        }
+        if (binderClass == null) {
+            binderClass = cache.globalBinderFor(clazz);
+        }
+        this.separator = separator;
+        this.noBindingProfiles = noBindingProfiles;
+        this.profiles = profiles;
+        this.binderClass = binderClass;
+        this.binder = binderClass == null ? cache.registeredBinderFor(clazz) : null;
+        this.pluginsMayBind = cache.pluginsMayBind;
+        this.jsonBody = jsonBody;
+    }
+
+    /**
+     * The binder for a single value, or null
+     */
+    TypeBinder<?> binder() throws Exception {
+        return binderClass != null ? binderClass.newInstance() : binder;
+    }
+
+    // ~~~~~~~~~ Cache
+
+    static class Key {
+
+        final Class<?> clazz;
+        final Type type;
+        final Annotation[] annotations;
+        final int hash;
+
+        Key(Class<?> clazz, Type type, Annotation[] annotations) {
+            this.clazz = clazz;
+            this.type = type;
+            this.annotations = annotations;
+            this.hash = (clazz.hashCode() * 31 + (type == null ? 0 : type.hashCode())) * 31 + Arrays.hashCode(annotations);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return clazz == key.clazz && (type == null ? key.type == null : type.equals(key.type)) && Arrays.equals(annotations, key.annotations);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    /**
+     * The plans built for one state of the application classloader and one set of plugins
+     */
+    static class Cache {
+
+        final ApplicationClassloaderState state;
+        final List<PlayPlugin> plugins;
+        final boolean pluginsMayBind;
+        final ConcurrentMap<Key, BindingPlan> plans = new ConcurrentHashMap<Key, BindingPlan>();
+        /**
+         * The @Global binders of the application, with the class they bind, in the order they are
+         * tried
+         */
+        List<GlobalBinder> globalBinders;
+
+        Cache(ApplicationClassloaderState state, List<PlayPlugin> plugins) {
+            this.state = state;
+            this.plugins = plugins;
+            boolean pluginsMayBind = false;
+            if (plugins != null) {
+                for (PlayPlugin plugin : plugins) {
+                    if (overridesBind(plugin.getClass())) {
+                        pluginsMayBind = true;
+                        break;
+                    }
+                }
+            }
+            this.pluginsMayBind = pluginsMayBind;
+        }
+
+        @SuppressWarnings("unchecked")
+        synchronized List<GlobalBinder> globalBinders() {
+            if (globalBinders == null) {
+                List<GlobalBinder> binders = new ArrayList<GlobalBinder>();
+                if (Play.classloader != null) {
+                    for (Class<? extends TypeBinder<?>> c : Play.classloader.getAssignableClasses((Class<TypeBinder<?>>) (Class<?>) TypeBinder.class)) {
+                        if (c.isAnnotationPresent(Global.class)) {
+                            Class<?> forType = (Class<?>) ((ParameterizedType) c.getGenericInterfaces()[0]).getActualTypeArguments()[0];
+                            binders.add(new GlobalBinder(forType, c));
+                        }
+                    }
+                }
+                globalBinders = binders;
+            }
+            return globalBinders;
+        }
+
+        /**
+         * The first @Global application binder for this class: application custom types have
+         * higher priority
+         */
+        Class<? extends TypeBinder<?>> globalBinderFor(Class<?> clazz) {
+            for (GlobalBinder global : globalBinders()) {
+                if (global.forType.isAssignableFrom(clazz)) {
+                    return global.binderClass;
+                }
+            }
+            return null;
+        }
+
+        TypeBinder<?> registeredBinderFor(Class<?> clazz) {
+            // custom types
+            for (Map.Entry<Class<?>, TypeBinder<?>> entry : Binder.supportedTypes.entrySet()) {
+                if (entry.getKey().isAssignableFrom(clazz)) {
+                    return entry.getValue();
+                }
+            }
+            return null;
+        }
+    }
+
+    static class GlobalBinder {
+
+        final Class<?> forType;
+        final Class<? extends TypeBinder<?>> binderClass;
+
+        GlobalBinder(Class<?> forType, Class<? extends TypeBinder<?>> binderClass) {
+            this.forType = forType;
+            this.binderClass = binderClass;
+        }
+    }
+
+    static final ConcurrentMap<Class<?>, Boolean> overridesBind = new ConcurrentHashMap<Class<?>, Boolean>();
+
+    static boolean overridesBind(Class<?> pluginClass) {
+        Boolean overrides = overridesBind.get(pluginClass);
+        if (overrides == null) {
+            try {
+                Method bind = pluginClass.getMethod("bind", String.class, Class.class, Type.class, Annotation[].class, Map.class);
+                overrides = bind.getDeclaringClass() != PlayPlugin.class;
+            } catch (NoSuchMethodException e) {
+                overrides = true;
+            }
+            overridesBind.put(pluginClass, overrides);
+        }
+        return overrides;
+    }
+
+    static volatile Cache cache;
+
+    static Cache cache() {
+        ApplicationClassloaderState state = Play.classloader == null ? null : Play.classloader.currentState;
+        List<PlayPlugin> plugins = Play.pluginCollection == null ? null : Play.pluginCollection.getEnabledPlugins();
+        Cache cache = BindingPlan.cache;
+        if (cache == null || cache.plugins != plugins || (state == null ? cache.state != null : !state.equals(cache.state))) {
+            cache = new Cache(state, plugins);
+            BindingPlan.cache = cache;
+        }
+        return cache;
+    }
+
+    /**
+     * Drop the plans, for example when a TypeBinder is registered
+     */
+    static void clear() {
+        cache = null;
+    }
+
+    /**
+     * Get the plan to bind a class
+     * @param type the generic type, or null
+     * @param annotations the annotations, or null
+     */
+    static BindingPlan of(Class<?> clazz, Type type, Annotation[] annotations) throws Exception {
+        Cache cache = cache();
+        Key key = new Key(clazz, type, annotations);
+        BindingPlan plan = cache.plans.get(key);
+        if (plan == null) {
+            plan = new BindingPlan(clazz, type, annotations, cache);
+            cache.plans.put(key, plan);
+        }
+        return plan;
+    }
+}
@@ -0,0 +1,16 @@
+package play.data.binding;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Bind the whole JSON body of the request to this action parameter with Gson, reading it as a
+ * stream. If the body has already been parsed to params, it is read again from its start.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.PARAMETER})
+public @interface JsonBody {
+
+}
@@ -4,9 +4,9 @@ import play.data.binding.TypeBinder;
 import java.lang.annotation.Annotation;
 import java.lang.reflect.Type;
 import java.text.ParseException;
-import java.text.SimpleDateFormat;
 import java.util.Calendar;
 import java.util.Date;
+import java.util.Locale;
 
 import play.data.binding.AnnotationHelper;
 import play.i18n.Lang;
@@ -27,9 +27,7 @@ public class CalendarBinder implements TypeBinder<Calendar> {
             if (date != null) {
                 cal.setTime(date);
             } else {
-                SimpleDateFormat sdf = new SimpleDateFormat(I18N.getDateFormat());
-                sdf.setLenient(false);
-                cal.setTime(sdf.parse(value));
+                cal.setTime(AnnotationHelper.getDateFormat(I18N.getDateFormat(), Locale.getDefault()).parse(value));
             }
         } catch (ParseException e) {
             throw new IllegalArgumentException("Cannot convert [" + value + "] to a Calendar: " + e.toString());
@@ -4,8 +4,8 @@ import play.data.binding.TypeBinder;
 import java.lang.annotation.Annotation;
 import java.lang.reflect.Type;
 import java.text.ParseException;
-import java.text.SimpleDateFormat;
 import java.util.Date;
+import java.util.Locale;
 import play.data.binding.AnnotationHelper;
 import play.libs.I18N;
 
@@ -27,17 +27,13 @@ public class DateBinder implements TypeBinder<Date> {
         }
 
         try {
-            SimpleDateFormat sdf = new SimpleDateFormat(I18N.getDateFormat());
-            sdf.setLenient(false);
-            return sdf.parse(value);
+            return AnnotationHelper.getDateFormat(I18N.getDateFormat(), Locale.getDefault()).parse(value);
         } catch (ParseException e) {
             // Ignore
         }
 
         try {
-            SimpleDateFormat sdf = new SimpleDateFormat(ISO8601);
-            sdf.setLenient(false);
-            return sdf.parse(value);
+            return AnnotationHelper.getDateFormat(ISO8601, Locale.getDefault()).parse(value);
         } catch (Exception e) {
             throw new IllegalArgumentException("Cannot convert [" + value + "] to a Date: " + e.toString());
         }
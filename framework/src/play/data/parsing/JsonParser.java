@@ -0,0 +1,103 @@
+package play.data.parsing;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import play.exceptions.UnexpectedException;
+import play.mvc.Http;
+
+/**
+ * Parse a JSON body, reading it as a stream, to the params the Binder understands:
+ * <ul>
+ * <li>the fields of the root object are params named after them, the fields of nested objects
+ * are prefixed with the name of the object and a dot (<code>user.address.city</code>)</li>
+ * <li>the items of an array of values are the values of one param (<code>tags</code>), the
+ * objects and arrays of an array are indexed (<code>users[0].name</code>)</li>
+ * <li>numbers and booleans are given as written, null values are left out</li>
+ * </ul>
+ * A document that is not an object, or not valid JSON, gives no params. The raw body is only read
+ * when the <code>body</code> param is asked for (see Scope.Params). To bind the whole body to an
+ * object with Gson, annotate the action parameter with @JsonBody.
+ */
+public class JsonParser extends DataParser {
+
+    @Override
+    public Map<String, String[]> parse(InputStream is) {
+        return parse(is, Http.Request.current().encoding);
+    }
+
+    public static Map<String, String[]> parse(InputStream is, String encoding) {
+        JsonReader reader;
+        try {
+            reader = new JsonReader(new InputStreamReader(is, encoding));
+        } catch (Exception e) {
+            throw new UnexpectedException(e);
+        }
+        try {
+            return parse(reader);
+        } catch (Exception e) {
+            // Not JSON after all, the application will find it in the body
+            return new HashMap<String, String[]>();
+        }
+    }
+
+    /**
+     * @return the params of the root object, none for other documents
+     */
+    public static Map<String, String[]> parse(JsonReader reader) throws IOException {
+        Map<String, String[]> params = new HashMap<String, String[]>();
+        reader.setLenient(true);
+        if (reader.peek() == JsonToken.BEGIN_OBJECT) {
+            readObject(reader, "", params);
+        }
+        return params;
+    }
+
+    static void readObject(JsonReader reader, String prefix, Map<String, String[]> params) throws IOException {
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            readValue(reader, prefix.length() == 0 ? name : prefix + "." + name, params);
+        }
+        reader.endObject();
+    }
+
+    static void readArray(JsonReader reader, String name, Map<String, String[]> params) throws IOException {
+        reader.beginArray();
+        for (int i = 0; reader.hasNext(); i++) {
+            JsonToken token = reader.peek();
+            if (token == JsonToken.BEGIN_OBJECT) {
+                readObject(reader, name + "[" + i + "]", params);
+            } else if (token == JsonToken.BEGIN_ARRAY) {
+                readArray(reader, name + "[" + i + "]", params);
+            } else {
+                readValue(reader, name, params);
+            }
+        }
+        reader.endArray();
+    }
+
+    static void readValue(JsonReader reader, String name, Map<String, String[]> params) throws IOException {
+        switch (reader.peek()) {
+            case BEGIN_OBJECT:
+                readObject(reader, name, params);
+                break;
+            case BEGIN_ARRAY:
+                readArray(reader, name, params);
+                break;
+            case BOOLEAN:
+                putMapEntry(params, name, String.valueOf(reader.nextBoolean()));
+                break;
+            case NULL:
+                reader.nextNull();
+                break;
+            default:
+                putMapEntry(params, name, reader.nextString());
+        }
+    }
+}
@@ -35,12 +35,24 @@ public class UrlEncodedParser extends DataParser {
         return parser.parse(is);
     }
 
+    /**
+     * Parse a query string without going through bytes
+     * @param queryString the query string, without the leading ?
+     * @param encoding the encoding of the escaped characters, unless the query string has a _charset_ param
+     */
+    public static Map<String, String[]> parseQueryString(CharSequence queryString, String encoding) {
+        try {
+            return parse(queryString.toString(), encoding);
+        } catch (Exception e) {
+            throw new UnexpectedException(e);
+        }
+    }
+
     @Override
     public Map<String, String[]> parse(InputStream is) {
         // Encoding is either retrieved from contentType or it is the default encoding
         final String encoding = Http.Request.current().encoding;
         try {
-            Map<String, String[]> params = new HashMap<String, String[]>();
             ByteArrayOutputStream os = new ByteArrayOutputStream();
             byte[] buffer = new byte[1024];
             int bytesRead;
@@ -54,62 +66,7 @@ public class UrlEncodedParser extends DataParser {
                 return new HashMap<String, String[]>(0);
             }
 
-            // data is o the form:
-            // a=b&b=c%12...
-
-            // Let us parse in two phases - we wait until everything is parsed before
-            // we decoded it - this makes it possible for use to look for the
-            // special _charset_ param which can hold the charset the form is encoded in.
-            //
-            // http://www.crazysquirrel.com/computing/general/form-encoding.jspx
-            // https://bugzilla.mozilla.org/show_bug.cgi?id=18643
-            //
-            // NB: _charset_ must always be used with accept-charset and it must have the same value
-
-            String[] keyValues = data.split("&");
-            for (String keyValue : keyValues) {
-                // split this key-value on the first '='
-                int i = keyValue.indexOf('=');
-                String key=null;
-                String value=null;
-                if ( i > 0) {
-                    key = keyValue.substring(0,i);
-                    value = keyValue.substring(i+1);
-                } else {
-                    key = keyValue;
-                }
-                if (key.length()>0) {
-                    Utils.Maps.mergeValueInMap(params, key, value);
-                }
-            }
-
-            // Second phase - look for _charset_ param and do the encoding
-            String charset = encoding;
-            if (params.containsKey("_charset_")) {
-                // The form contains a _charset_ param - When this is used together
-                // with accept-charset, we can use _charset_ to extract the encoding.
-                // PS: When rendering the view/form, _charset_ and accept-charset must be given the
-                // same value - since only Firefox and sometimes IE actually sets it when Posting
-                String providedCharset = params.get("_charset_")[0];
-                // Must be sure the providedCharset is a valid encoding..
-                try {
-                    "test".getBytes(providedCharset);
-                    charset = providedCharset; // it works..
-                } catch (Exception e) {
-                    Logger.debug("Got invalid _charset_ in form: " + providedCharset);
-                    // lets just use the default one..
-                }
-            }
-
-            // We're ready to decode the params
-            Map<String, String[]> decodedParams = new HashMap<String, String[]>(params.size());
-            for (Map.Entry<String, String[]> e : params.entrySet()) {
-                String key = URLDecoder.decode(e.getKey(),charset);
-                for (String value : e.getValue()) {
-
-                    Utils.Maps.mergeValueInMap(decodedParams, key, (value==null ? null : URLDecoder.decode(value,charset)));
-                }
-            }
+            Map<String, String[]> decodedParams = parse(data, encoding);
 
             // add the complete body as a parameters
             if(!forQueryString) {
@@ -122,4 +79,81 @@ public class UrlEncodedParser extends DataParser {
         }
     }
 
+    /**
+     * Parse and decode url-encoded data in a single pass over the string
+     */
+    static Map<String, String[]> parse(String data, String encoding) throws UnsupportedEncodingException {
+        Map<String, String[]> params = new HashMap<String, String[]>();
+        if (data.length() == 0) {
+            return params;
+        }
+
+        // data is of the form:
+        // a=b&b=c%12...
+
+        // The special _charset_ param can hold the charset the form is encoded in, so it is
+        // looked up before decoding anything.
+        //
+        // http://www.crazysquirrel.com/computing/general/form-encoding.jspx
+        // https://bugzilla.mozilla.org/show_bug.cgi?id=18643
+        //
+        // NB: _charset_ must always be used with accept-charset and it must have the same value
+        String charset = charset(data, encoding);
+
+        int length = data.length();
+        int start = 0;
+        while (start < length) {
+            int end = data.indexOf('&', start);
+            if (end < 0) {
+                end = length;
+            }
+            // split this key-value on the first '='
+            int i = data.indexOf('=', start);
+            if (i < 0 || i > end) {
+                i = -1;
+            }
+            int keyEnd = i < 0 ? end : i;
+            if (keyEnd > start) {
+                String key = decode(data, start, keyEnd, charset);
+                String value = i < 0 ? null : decode(data, i + 1, end, charset);
+                Utils.Maps.mergeValueInMap(params, key, value);
+            }
+            start = end + 1;
+        }
+        return params;
+    }
+
+    static String charset(String data, String encoding) {
+        int i = data.startsWith("_charset_=") ? 0 : data.indexOf("&_charset_=");
+        if (i < 0) {
+            return encoding;
+        }
+        int start = data.indexOf('=', i) + 1;
+        int end = data.indexOf('&', start);
+        String providedCharset = end < 0 ? data.substring(start) : data.substring(start, end);
+        // The form contains a _charset_ param - When this is used together
+        // with accept-charset, we can use _charset_ to extract the encoding.
+        // PS: When rendering the view/form, _charset_ and accept-charset must be given the
+        // same value - since only Firefox and sometimes IE actually sets it when Posting
+        // Must be sure the providedCharset is a valid encoding..
+        try {
+            "test".getBytes(providedCharset);
+            return providedCharset; // it works..
+        } catch (Exception e) {
+            Logger.debug("Got invalid _charset_ in form: " + providedCharset);
+            // lets just use the default one..
+            return encoding;
+        }
+    }
+
+    static String decode(String data, int start, int end, String charset) throws UnsupportedEncodingException {
+        for (int i = start; i < end; i++) {
+            char c = data.charAt(i);
+            if (c == '%' || c == '+') {
+                return URLDecoder.decode(data.substring(start, end), charset);
+            }
+        }
+        return data.substring(start, end);
+    }
+
 }
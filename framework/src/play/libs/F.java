@@ -7,8 +7,7 @@ import java.util.Collections;
 import java.util.List;
 import java.util.Iterator;
 import java.util.ListIterator;
-import java.util.Timer;
-import java.util.TimerTask;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
@@ -18,6 +17,7 @@ import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicLong;
 
 import play.exceptions.UnexpectedException;
+import play.utils.Timers;
 
 public class F {
 
@@ -44,11 +44,17 @@ public class F {
 
         public V get() throws InterruptedException, ExecutionException {
             taskLock.await();
+            if (cancelled) {
+                throw new CancellationException();
+            }
             return result;
         }
 
         public V get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
             taskLock.await(timeout, unit);
+            if (cancelled) {
+                throw new CancellationException();
+            }
             return result;
         }
         List<F.Action<Promise<V>>> callbacks = new ArrayList<F.Action<Promise<V>>>();
@@ -362,9 +368,13 @@ public class F {
 
     public static class Timeout extends Promise<Timeout> {
 
-        static Timer timer = new Timer("F.Timeout", true);
         final public String token;
         final public long delay;
+        final org.jboss.netty.util.Timeout task;
+        /**
+         * Set by the timer, under the lock, once it is bound to redeem the timeout
+         */
+        boolean fired = false;
 
         public Timeout(String delay) {
             this(Time.parseDuration(delay) * 1000);
@@ -382,15 +392,46 @@ public class F {
             this.delay = delay;
             this.token = token;
             final Timeout timeout = this;
-            timer.schedule(new TimerTask() {
+            this.task = Timers.schedule(new Runnable() {
 
-                @Override
                 public void run() {
+                    synchronized (timeout) {
+                        if (timeout.cancelled) {
+                            return;
+                        }
+                        timeout.fired = true;
+                    }
                     timeout.invoke(timeout);
                 }
             }, delay);
         }
 
+        /**
+         * Cancel the pending timer: the timeout is done, its callbacks are called and get() throws
+         * a CancellationException
+         */
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            synchronized (this) {
+                if (invoked || fired) {
+                    return false;
+                }
+                cancelled = true;
+                invoked = true;
+                taskLock.countDown();
+            }
+            task.cancel();
+            for (F.Action<Promise<Timeout>> callback : callbacks) {
+                callback.invoke(this);
+            }
+            return true;
+        }
+
+        @Override
+        public synchronized boolean isCancelled() {
+            return cancelled;
+        }
+
         @Override
         public String toString() {
             return "Timeout(" + delay + ")";
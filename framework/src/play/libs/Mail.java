@@ -6,6 +6,7 @@ import org.apache.commons.mail.EmailException;
 import play.Logger;
 import play.Play;
 import play.exceptions.MailException;
+import play.utils.NotifyingFutureTask;
 
 import javax.mail.*;
 import javax.mail.internet.InternetAddress;
@@ -171,7 +172,8 @@ public class Mail {
      */
     public static Future<Boolean> sendMessage(final Email msg) {
         if (asynchronousSend) {
-            return executor.submit(new Callable<Boolean>() {
+            // A notifying task lets requests awaiting the email resume as soon as it is sent
+            NotifyingFutureTask<Boolean> task = new NotifyingFutureTask<Boolean>(new Callable<Boolean>() {
 
                 public Boolean call() {
                     try {
@@ -185,6 +187,8 @@ public class Mail {
                     }
                 }
             });
+            executor.execute(task);
+            return task;
         } else {
             final StringBuffer result = new StringBuffer();
             try {
@@ -1,5 +1,6 @@
 package play.mvc;
 
+import java.util.HashMap;
 import java.util.Map;
 import java.util.List;
 import java.util.ArrayList;
@@ -7,6 +8,8 @@ import java.io.UnsupportedEncodingException;
 import java.net.URI;
 import java.net.URLEncoder;
 import java.net.URISyntaxException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import play.utils.Default;
 import play.exceptions.UnexpectedException;
@@ -75,6 +78,8 @@ public class ActionDefinition extends AbstractActionDefinition {
             }
         }
 
+        PathTemplate template = PathTemplate.get(path);
+        Map<String, String> pathValues = new HashMap<String, String>(8);
         for (Map.Entry<String, Object> entry : args.entrySet()) {
             String key = entry.getKey();
             Object value = entry.getValue();
@@ -83,13 +88,13 @@ public class ActionDefinition extends AbstractActionDefinition {
                     @SuppressWarnings("unchecked")
                     List<Object> vals = (List<Object>) value;
                     try {
-                        path = path.replaceAll("\\{(<[^>]+>)?" + key + "\\}", URLEncoder.encode(vals.get(0).toString().replace("$", "\\$"), encoding));
+                        pathValues.put(key, URLEncoder.encode(vals.get(0).toString(), encoding));
                     } catch (UnsupportedEncodingException e) {
                         throw new UnexpectedException(e);
                     }
                 } else {
                     try {
-                        path = path.replaceAll("\\{(<[^>]+>)?" + key + "\\}", URLEncoder.encode(value.toString().replace("$", "\\$"), encoding).replace("%3A", ":").replace("%40", "@"));
+                        pathValues.put(key, URLEncoder.encode(value.toString(), encoding).replace("%3A", ":").replace("%40", "@"));
                         if (host != null)
                             host = host.replaceAll("\\{(<[^>]+>)?" + key + "\\}", URLEncoder.encode(value.toString().replace("$", "\\$"), encoding).replace("%3A", ":").replace("%40", "@"));
                     } catch (UnsupportedEncodingException e) {
@@ -134,6 +139,7 @@ public class ActionDefinition extends AbstractActionDefinition {
                 }
             }
         }
+        path = template.build(pathValues);
         String qs = queryString.toString();
         if (qs.endsWith("&")) {
             qs = qs.substring(0, qs.length() - 1);
@@ -146,6 +152,97 @@ public class ActionDefinition extends AbstractActionDefinition {
         }
     }
 
+    /**
+     * A route path split into its text and its <code>{name}</code> or <code>{&lt;regex&gt;name}</code>
+     * arguments, so URLs are built by concatenation. Templates are cached by path.
+     */
+    static class PathTemplate {
+
+        static final ConcurrentMap<String, PathTemplate> templates = new ConcurrentHashMap<String, PathTemplate>();
+
+        /**
+         * Text before each argument, and after the last one
+         */
+        final String[] texts;
+        /**
+         * Name and original text of each argument
+         */
+        final String[] names;
+        final String[] sources;
+
+        static PathTemplate get(String path) {
+            PathTemplate template = templates.get(path);
+            if (template == null) {
+                template = new PathTemplate(path);
+                templates.put(path, template);
+            }
+            return template;
+        }
+
+        PathTemplate(String path) {
+            List<String> texts = new ArrayList<String>(4);
+            List<String> names = new ArrayList<String>(4);
+            List<String> sources = new ArrayList<String>(4);
+            int start = 0;
+            int i = 0;
+            while ((i = path.indexOf('{', i)) != -1) {
+                int end = argumentEnd(path, i);
+                if (end == -1) {
+                    i++;
+                    continue;
+                }
+                String source = path.substring(i, end);
+                texts.add(path.substring(start, i));
+                names.add(source.substring(source.startsWith("{<") ? source.indexOf('>') + 1 : 1, source.length() - 1));
+                sources.add(source);
+                start = i = end;
+            }
+            texts.add(path.substring(start));
+            this.texts = texts.toArray(new String[texts.size()]);
+            this.names = names.toArray(new String[names.size()]);
+            this.sources = sources.toArray(new String[sources.size()]);
+        }
+
+        /**
+         * The end of the argument starting at position <code>i</code>, or -1 if there is none
+         */
+        private static int argumentEnd(String path, int i) {
+            i++;
+            if (i < path.length() && path.charAt(i) == '<') {
+                int close = path.indexOf('>', i);
+                if (close <= i + 1) {
+                    return -1;
+                }
+                i = close + 1;
+            }
+            int nameStart = i;
+            while (i < path.length() && (Character.isLetterOrDigit(path.charAt(i)) || path.charAt(i) == '_')) {
+                i++;
+            }
+            if (i == nameStart || i >= path.length() || path.charAt(i) != '}') {
+                return -1;
+            }
+            return i + 1;
+        }
+
+        /**
+         * Replace the arguments with the given values, the other arguments are left as they are
+         */
+        String build(Map<String, String> values) {
+            if (names.length == 0) {
+                return texts[0];
+            }
+            StringBuilder path = new StringBuilder(64);
+            for (int i = 0; i < names.length; i++) {
+                path.append(texts[i]);
+                String value = values.get(names[i]);
+                path.append(value == null ? sources[i] : value);
+            }
+            path.append(texts[names.length]);
+            return path.toString();
+        }
+    }
+
     @Override
     public String toString() {
         return getUri().toString();
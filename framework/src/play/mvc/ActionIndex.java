@@ -0,0 +1,91 @@
+package play.mvc;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Index of the routes by action, used for reverse routing.
+ * <p/>
+ * Routes with a plain action (<code>Application.index</code>) are found by name. Routes with
+ * a dynamic action (<code>{controller}.{action}</code>) are candidates for every action and
+ * are still matched with their action pattern. Candidates are returned in routes file order.
+ */
+class ActionIndex {
+
+    final RouterImpl.RouteImpl[] routes;
+    final Map<String, int[]> byAction = new HashMap<String, int[]>();
+    final int[] dynamic;
+    final int[] staticDirs;
+
+    ActionIndex(List<RouterImpl.RouteImpl> routes) {
+        this.routes = routes.toArray(new RouterImpl.RouteImpl[routes.size()]);
+        List<Integer> dynamic = new ArrayList<Integer>();
+        List<Integer> staticDirs = new ArrayList<Integer>();
+        for (int position = 0; position < this.routes.length; position++) {
+            RouterImpl.RouteImpl route = this.routes[position];
+            if (route.getStaticDir() != null) {
+                staticDirs.add(position);
+            }
+            if (route.getActionPattern() == null) {
+                continue;
+            }
+            if (isPlain(route.getAction())) {
+                // Action patterns ignore case
+                String key = route.getAction().toLowerCase();
+                int[] positions = byAction.get(key);
+                if (positions == null) {
+                    positions = new int[] {position};
+                } else {
+                    positions = Arrays.copyOf(positions, positions.length + 1);
+                    positions[positions.length - 1] = position;
+                }
+                byAction.put(key, positions);
+            } else {
+                dynamic.add(position);
+            }
+        }
+        this.dynamic = toArray(dynamic);
+        this.staticDirs = toArray(staticDirs);
+    }
+
+    /**
+     * The positions of the routes that may reverse an action, in ascending order
+     */
+    int[] candidates(String action) {
+        int[] named = byAction.get(action.toLowerCase());
+        if (named == null) {
+            return dynamic;
+        }
+        if (dynamic.length == 0) {
+            return named;
+        }
+        int[] merged = new int[named.length + dynamic.length];
+        System.arraycopy(named, 0, merged, 0, named.length);
+        System.arraycopy(dynamic, 0, merged, named.length, dynamic.length);
+        Arrays.sort(merged);
+        return merged;
+    }
+
+    /**
+     * Whether the action pattern of a route only matches the action itself
+     */
+    static boolean isPlain(String action) {
+        for (int i = 0; i < action.length(); i++) {
+            if ("\\^$|?*+()[]{}".indexOf(action.charAt(i)) != -1) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int[] toArray(List<Integer> list) {
+        int[] array = new int[list.size()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = list.get(i);
+        }
+        return array;
+    }
+}
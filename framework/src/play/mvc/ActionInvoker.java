@@ -1,22 +1,19 @@
 package play.mvc;
 
-import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.InputStream;
 import java.lang.annotation.Annotation;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
-import java.util.Collections;
-import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
 
 import org.apache.commons.lang.StringUtils;
 import play.Logger;
 import play.Play;
-import play.cache.CacheFor;
 import play.classloading.enhancers.ControllersEnhancer.ControllerInstrumentation;
 import play.classloading.enhancers.ControllersEnhancer.ControllerSupport;
 import play.data.binding.Binder;
@@ -27,6 +24,7 @@ import play.exceptions.JavaExecutionException;
 import play.exceptions.PlayException;
 import play.exceptions.UnexpectedException;
 import play.mvc.results.NoResult;
+import play.mvc.results.RenderTemplate;
 import play.mvc.results.Result;
 import play.utils.Java;
 import play.utils.Utils;
@@ -79,17 +77,15 @@ public class ActionInvoker {
 
         // Find the action method
         try {
-            Method actionMethod = null;
-            Object[] ca = getActionMethod(request.action);
-            actionMethod = (Method) ca[1];
-            request.controller = ((Class<?>) ca[0]).getName().substring(12).replace("$", "");
-            request.controllerClass = ((Class<? extends Controller>) ca[0]);
-            request.actionMethod = actionMethod.getName();
-            request.action = request.controller + "." + request.actionMethod;
-            request.invokedMethod = actionMethod;
+            ActionPlan plan = ActionPlan.get(request.action);
+            request.controller = plan.controller;
+            request.controllerClass = plan.controllerClass;
+            request.actionMethod = plan.actionMethod.getName();
+            request.action = plan.action;
+            request.invokedMethod = plan.actionMethod;
 
             if (Logger.isTraceEnabled()) {
-                Logger.trace("------- %s", actionMethod);
+                Logger.trace("------- %s", plan.actionMethod);
             }
 
             request.resolved = true;
@@ -108,13 +104,13 @@ public class ActionInvoker {
 
             resolve(request, response);
             Method actionMethod = request.invokedMethod;
+            ActionPlan plan = ActionPlan.get(request.action);
 
             // 1. Prepare request params
             Scope.Params.current().__mergeWith(request.routeArgs);
 
             // add parameters from the URI query string
-            String encoding = Http.Request.current().encoding;
-            Scope.Params.current()._mergeWith(UrlEncodedParser.parseQueryString(new ByteArrayInputStream(request.querystring.getBytes(encoding))));
+            Scope.Params.current()._mergeWith(UrlEncodedParser.parseQueryString(request.querystring, request.encoding));
 
             // 2. Easy debugging ...
             if (Play.mode == Play.Mode.DEV) {
@@ -137,69 +133,25 @@ public class ActionInvoker {
             // 3. Invoke the action
             try {
                 // @Before
-                handleBefores(request);
+                handleBefores(plan);
 
                 // Action
 
                 Result actionResult = null;
-                String cacheKey = null;
 
                 // Check the cache (only for GET or HEAD)
-                if ((request.method.equals("GET") || request.method.equals("HEAD")) && actionMethod.isAnnotationPresent(CacheFor.class)) {
-                    cacheKey = actionMethod.getAnnotation(CacheFor.class).id();
+                if ((request.method.equals("GET") || request.method.equals("HEAD")) && plan.cacheFor != null) {
+                    String cacheKey = plan.cacheFor.id();
                     if ("".equals(cacheKey)) {
                         cacheKey = "urlcache:" + request.url + request.querystring;
                     }
-                    actionResult = (Result) play.cache.Cache.get(cacheKey);
-                }
-
-                if (actionResult == null) {
-                    ControllerInstrumentation.initActionCall();
-                    try {
-                        inferResult(invokeControllerMethod(actionMethod));
-                    } catch (InvocationTargetException ex) {
-                        // It's a Result ? (expected)
-                        if (ex.getTargetException() instanceof Result) {
-                            actionResult = (Result) ex.getTargetException();
-                            // Cache it if needed
-                            if (cacheKey != null) {
-                                play.cache.Cache.set(cacheKey, actionResult, actionMethod.getAnnotation(CacheFor.class).value());
-                            }
-
-                        } else {
-                            // @Catch
-                            Object[] args = new Object[]{ex.getTargetException()};
-                            List<Method> catches = Java.findAllAnnotatedMethods(Controller.getControllerClass(), Catch.class);
-                            Collections.sort(catches, new Comparator<Method>() {
-
-                                public int compare(Method m1, Method m2) {
-                                    Catch catch1 = m1.getAnnotation(Catch.class);
-                                    Catch catch2 = m2.getAnnotation(Catch.class);
-                                    return catch1.priority() - catch2.priority();
-                                }
-                            });
-                            ControllerInstrumentation.stopActionCall();
-                            for (Method mCatch : catches) {
-                                Class<?>[] exceptions = mCatch.getAnnotation(Catch.class).value();
-                                if (exceptions.length == 0) {
-                                    exceptions = new Class[]{Exception.class};
-                                }
-                                for (Class<?> exception : exceptions) {
-                                    if (exception.isInstance(args[0])) {
-                                        mCatch.setAccessible(true);
-                                        inferResult(invokeControllerMethod(mCatch, args));
-                                        break;
-                                    }
-                                }
-                            }
-
-                            throw ex;
-                        }
-                    }
+                    actionResult = invokeCached(plan, actionMethod, cacheKey);
+                } else {
+                    actionResult = invokeAction(plan, actionMethod);
                 }
 
                 // @After
-                handleAfters(request);
+                handleAfters(plan);
 
                 monitor.stop();
                 monitor = null;
@@ -238,10 +190,15 @@ public class ActionInvoker {
             // OK there is a result to apply
             // Save session & flash scope now
 
-            Scope.Session.current().save();
-            Scope.Flash.current().save();
+            saveScopes(result);
 
-            result.apply(request, response);
+            try {
+                result.apply(request, response);
+            } catch (RuntimeException e) {
+                // A streamed template fails as it is rendered
+                handleFinallies(request, e);
+                throw e;
+            }
 
             Play.pluginCollection.afterActionInvocation();
 
@@ -261,6 +218,18 @@ public class ActionInvoker {
         }
     }
 
+    /**
+     * Save the session and flash scopes before the result is applied
+     */
+    static void saveScopes(Result result) {
+        if (result instanceof RenderTemplate && ((RenderTemplate) result).isStreamed()) {
+            // The template is rendered once the session cookie is set, create the token its forms use now
+            Scope.Session.current().getAuthenticityToken();
+        }
+        Scope.Session.current().save();
+        Scope.Flash.current().save();
+    }
+
     private static boolean isActionMethod(Method method) {
         if (method.isAnnotationPresent(Before.class)) {
             return false;
@@ -280,87 +249,69 @@ public class ActionInvoker {
         return true;
     }
 
-    private static void handleBefores(Http.Request request) throws Exception {
-        List<Method> befores = Java.findAllAnnotatedMethods(Controller.getControllerClass(), Before.class);
-        Collections.sort(befores, new Comparator<Method>() {
+    private static void handleBefores(ActionPlan plan) throws Exception {
+        ControllerInstrumentation.stopActionCall();
+        for (Method before : plan.befores) {
+            inferResult(invokeControllerMethod(before));
+        }
+    }
 
-            public int compare(Method m1, Method m2) {
-                Before before1 = m1.getAnnotation(Before.class);
-                Before before2 = m2.getAnnotation(Before.class);
-                return before1.priority() - before2.priority();
+    /**
+     * Invoke the action, and its @Catch methods if it fails
+     * @return the Result thrown by the action, or null
+     */
+    static Result invokeAction(ActionPlan plan, Method actionMethod) throws Exception {
+        ControllerInstrumentation.initActionCall();
+        try {
+            inferResult(invokeControllerMethod(actionMethod));
+        } catch (InvocationTargetException ex) {
+            // It's a Result ? (expected)
+            if (ex.getTargetException() instanceof Result) {
+                return (Result) ex.getTargetException();
             }
-        });
-        ControllerInstrumentation.stopActionCall();
-        for (Method before : befores) {
-            String[] unless = before.getAnnotation(Before.class).unless();
-            String[] only = before.getAnnotation(Before.class).only();
-            boolean skip = false;
-            for (String un : only) {
-                if (!un.contains(".")) {
-                    un = before.getDeclaringClass().getName().substring(12).replace("$", "") + "." + un;
-                }
-                if (un.equals(request.action)) {
-                    skip = false;
-                    break;
-                } else {
-                    skip = true;
+            // @Catch
+            Object[] args = new Object[]{ex.getTargetException()};
+            ControllerInstrumentation.stopActionCall();
+            for (ActionPlan.CatchCall mCatch : plan.catches) {
+                if (mCatch.handles(ex.getTargetException())) {
+                    inferResult(invokeControllerMethod(mCatch.method, args));
                 }
             }
-            for (String un : unless) {
-                if (!un.contains(".")) {
-                    un = before.getDeclaringClass().getName().substring(12).replace("$", "") + "." + un;
-                }
-                if (un.equals(request.action)) {
-                    skip = true;
-                    break;
+            throw ex;
+        }
+        return null;
+    }
+
+    /**
+     * Get the result of a @CacheFor action from the cache, or invoke the action and cache its
+     * result. Concurrent requests missing the cache wait for a single invocation of the action.
+     */
+    static Result invokeCached(final ActionPlan plan, final Method actionMethod, String cacheKey) throws Exception {
+        final Exception[] failure = new Exception[1];
+        Result result = play.cache.Cache.getOrCompute(cacheKey, plan.cacheFor.value(), new Callable<Result>() {
+
+            public Result call() {
+                try {
+                    return invokeAction(plan, actionMethod);
+                } catch (RuntimeException e) {
+                    throw e;
+                } catch (Exception e) {
+                    // Not cached, and thrown as is by this request
+                    failure[0] = e;
+                    return null;
                 }
             }
-            if (!skip) {
-                before.setAccessible(true);
-                inferResult(invokeControllerMethod(before));
-            }
+        }, plan.cacheFor.earlyRefresh() ? 1 : 0);
+        if (failure[0] != null) {
+            throw failure[0];
         }
+        return result;
     }
 
-    private static void handleAfters(Http.Request request) throws Exception {
-        List<Method> afters = Java.findAllAnnotatedMethods(Controller.getControllerClass(), After.class);
-        Collections.sort(afters, new Comparator<Method>() {
-
-            public int compare(Method m1, Method m2) {
-                After after1 = m1.getAnnotation(After.class);
-                After after2 = m2.getAnnotation(After.class);
-                return after1.priority() - after2.priority();
-            }
-        });
+    private static void handleAfters(ActionPlan plan) throws Exception {
         ControllerInstrumentation.stopActionCall();
-        for (Method after : afters) {
-            String[] unless = after.getAnnotation(After.class).unless();
-            String[] only = after.getAnnotation(After.class).only();
-            boolean skip = false;
-            for (String un : only) {
-                if (!un.contains(".")) {
-                    un = after.getDeclaringClass().getName().substring(12) + "." + un;
-                }
-                if (un.equals(request.action)) {
-                    skip = false;
-                    break;
-                } else {
-                    skip = true;
-                }
-            }
-            for (String un : unless) {
-                if (!un.contains(".")) {
-                    un = after.getDeclaringClass().getName().substring(12) + "." + un;
-                }
-                if (un.equals(request.action)) {
-                    skip = true;
-                    break;
-                }
-            }
-            if (!skip) {
-                after.setAccessible(true);
-                inferResult(invokeControllerMethod(after));
-            }
+        for (Method after : plan.afters) {
+            inferResult(invokeControllerMethod(after));
         }
     }
 
@@ -379,52 +330,16 @@ public class ActionInvoker {
         }
 
         try {
-            List<Method> allFinally = Java.findAllAnnotatedMethods(Controller.getControllerClass(), Finally.class);
-            Collections.sort(allFinally, new Comparator<Method>() {
-
-                public int compare(Method m1, Method m2) {
-                    Finally finally1 = m1.getAnnotation(Finally.class);
-                    Finally finally2 = m2.getAnnotation(Finally.class);
-                    return finally1.priority() - finally2.priority();
-                }
-            });
+            ActionPlan plan = ActionPlan.get(request.action);
             ControllerInstrumentation.stopActionCall();
-            for (Method aFinally : allFinally) {
-                String[] unless = aFinally.getAnnotation(Finally.class).unless();
-                String[] only = aFinally.getAnnotation(Finally.class).only();
-                boolean skip = false;
-                for (String un : only) {
-                    if (!un.contains(".")) {
-                        un = aFinally.getDeclaringClass().getName().substring(12) + "." + un;
-                    }
-                    if (un.equals(request.action)) {
-                        skip = false;
-                        break;
-                    } else {
-                        skip = true;
-                    }
-                }
-                for (String un : unless) {
-                    if (!un.contains(".")) {
-                        un = aFinally.getDeclaringClass().getName().substring(12) + "." + un;
-                    }
-                    if (un.equals(request.action)) {
-                        skip = true;
-                        break;
-                    }
-                }
-                if (!skip) {
-                    aFinally.setAccessible(true);
-
-                    //check if method accepts Throwable as only parameter
-                    Class<?>[] parameterTypes = aFinally.getParameterTypes();
-                    if (parameterTypes.length == 1 && parameterTypes[0] == Throwable.class) {
-                        //invoking @Finally method with caughtException as parameter
-                        invokeControllerMethod(aFinally, new Object[]{caughtException});
-                    } else {
-                        //invoce @Finally-method the regular way without caughtException
-                        invokeControllerMethod(aFinally, null);
-                    }
+            for (Method aFinally : plan.finallies) {
+                //check if method accepts Throwable as only parameter
+                if (ActionPlan.call(aFinally).takesThrowable()) {
+                    //invoking @Finally method with caughtException as parameter
+                    invokeControllerMethod(aFinally, new Object[]{caughtException});
+                } else {
+                    //invoce @Finally-method the regular way without caughtException
+                    invokeControllerMethod(aFinally, null);
                 }
             }
         } catch (InvocationTargetException ex) {
@@ -499,7 +414,7 @@ public class ActionInvoker {
         if(isActionMethod(method)) {
             return invokeWithContinuation(method, instance, realArgs);
         } else {
-            return method.invoke(instance, realArgs);
+            return ActionPlan.call(method).invoke(instance, realArgs);
         }
     }
     static final String C = "__continuation";
@@ -516,12 +431,10 @@ public class ActionInvoker {
             instance = Http.Request.current().args.get(A);
             Future<?> f = (Future<?>) Http.Request.current().args.get(F);
             if (f == null) {
-                method = instance.getClass().getDeclaredMethod("invoke");
-                method.setAccessible(true);
+                method = ActionPlan.callback(instance.getClass(), false);
                 return method.invoke(instance);
             } else {
-                method = instance.getClass().getDeclaredMethod("invoke", Object.class);
-                method.setAccessible(true);
+                method = ActionPlan.callback(instance.getClass(), true);
                 return method.invoke(instance, f.get());
             }
 
@@ -541,7 +454,7 @@ public class ActionInvoker {
             pStackRecorder.isRestoring = !pStackRecorder.isEmpty();
 
             // Execute code
-            result = method.invoke(instance, realArgs);
+            result = ActionPlan.call(method).invoke(instance, realArgs);
 
             if (pStackRecorder.isCapturing) {
                 if (pStackRecorder.isEmpty()) {
@@ -583,8 +496,16 @@ public class ActionInvoker {
         return retval;
     }
 
-    @SuppressWarnings("unchecked")
     public static Object[] getActionMethod(String fullAction) {
+        ActionPlan plan = ActionPlan.get(fullAction);
+        return new Object[]{plan.controllerClass, plan.actionMethod};
+    }
+
+    /**
+     * Look up the controller class and the method of an action, without caching
+     */
+    @SuppressWarnings("unchecked")
+    static Object[] findActionMethod(String fullAction) {
         Method actionMethod = null;
         Class<? extends Controller> controllerClass = null;
         try {
@@ -617,26 +538,40 @@ public class ActionInvoker {
     }
 
     public static Object[] getActionMethodArgs(Method method, Object o) throws Exception {
-        String[] paramsNames = Java.parameterNames(method);
-        if (paramsNames == null && method.getParameterTypes().length > 0) {
+        ActionPlan.Call call = ActionPlan.call(method);
+        String[] paramsNames = call.parameterNames;
+        if (paramsNames == null && call.parameterTypes.length > 0) {
             throw new UnexpectedException("Parameter names not found for method " + method);
         }
-        Object[] rArgs = new Object[method.getParameterTypes().length];
-        for (int i = 0; i < method.getParameterTypes().length; i++) {
+        Object[] rArgs = new Object[call.parameterTypes.length];
+        // The @JsonBody parameter reads the body before the other parameters get it parsed,
+        // otherwise the params read it again from its start
+        if (call.jsonBodyIndex >= 0) {
+            int i = call.jsonBodyIndex;
+            Scope.Params current = Scope.Params.current();
+            Map<String, String[]> params = Utils.Maps.sorted(current.requestIsParsed ? current.all() : new HashMap<String, String[]>());
+            rArgs[i] = Binder.bind(paramsNames[i], call.parameterTypes[i], call.genericParameterTypes[i], call.parameterAnnotations[i], params, o, method, i + 1);
+        }
+        for (int i = 0; i < call.parameterTypes.length; i++) {
+            if (i == call.jsonBodyIndex) {
+                continue;
+            }
 
-            Class<?> type = method.getParameterTypes()[i];
-            Map<String, String[]> params = new HashMap<String, String[]>();
+            Class<?> type = call.parameterTypes[i];
+            Map<String, String[]> params;
             if (type.equals(String.class) || Number.class.isAssignableFrom(type) || type.isPrimitive()) {
+                params = new HashMap<String, String[]>();
                 params.put(paramsNames[i], Scope.Params.current().getAll(paramsNames[i]));
             } else {
-                params.putAll(Scope.Params.current().all());
+                // Sorted, so that binders find the params of an object without scanning all of them
+                params = Utils.Maps.sorted(Scope.Params.current().all());
             }
 
             if (Logger.isTraceEnabled()) {
-                Logger.trace("getActionMethodArgs name [" + paramsNames[i] + "] annotation [" + Utils.join(method.getParameterAnnotations()[i], " ") + "]");
+                Logger.trace("getActionMethodArgs name [" + paramsNames[i] + "] annotation [" + Utils.join(call.parameterAnnotations[i], " ") + "]");
             }
 
-            rArgs[i] = Binder.bind(paramsNames[i], method.getParameterTypes()[i], method.getGenericParameterTypes()[i], method.getParameterAnnotations()[i], params, o, method, i + 1);
+            rArgs[i] = Binder.bind(paramsNames[i], type, call.genericParameterTypes[i], call.parameterAnnotations[i], params, o, method, i + 1);
         }
         return rArgs;
     }
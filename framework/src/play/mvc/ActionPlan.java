@@ -0,0 +1,379 @@
+package play.mvc;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import play.Play;
+import play.cache.CacheFor;
+import play.classloading.ApplicationClassloaderState;
+import play.data.binding.JsonBody;
+import play.exceptions.UnexpectedException;
+import play.classloading.enhancers.InvokerEnhancer;
+import play.classloading.enhancers.InvokerEnhancer.DirectInvoker;
+import play.utils.Java;
+
+/**
+ * Everything ActionInvoker needs to know about an action that doesn't depend on the request:
+ * the controller and action method, the @Before, @After, @Finally and @Catch interceptors that
+ * apply to it in priority order, its @CacheFor annotation and the parameters of the methods.
+ * Static methods of enhanced controllers are called through their DirectInvoker, the others
+ * with reflection.
+ * <p/>
+ * Plans are immutable and cached without locking. The cache is dropped when the application
+ * classes are reloaded.
+ */
+public class ActionPlan {
+
+    /**
+     * A controller method with its parameters and the way to invoke it
+     */
+    public static class Call {
+
+        public final Method method;
+        /**
+         * Names of the parameters, null when the class has not been enhanced
+         */
+        public final String[] parameterNames;
+        public final Class<?>[] parameterTypes;
+        public final Type[] genericParameterTypes;
+        public final Annotation[][] parameterAnnotations;
+        /**
+         * Position of the @JsonBody parameter, or -1
+         */
+        public final int jsonBodyIndex;
+        final DirectInvoker invoker;
+        final int index;
+
+        Call(Method method, Invokers invokers) {
+            this.method = method;
+            this.parameterTypes = method.getParameterTypes();
+            this.parameterNames = parameterTypes.length > 0 ? parameterNames(method) : new String[0];
+            this.genericParameterTypes = method.getGenericParameterTypes();
+            this.parameterAnnotations = method.getParameterAnnotations();
+            this.jsonBodyIndex = jsonBodyIndex(parameterAnnotations);
+            Integer index = Modifier.isStatic(method.getModifiers()) ? invokers.indexes.get(InvokerEnhancer.signature(method.getName(), parameterTypes)) : null;
+            this.invoker = index != null ? invokers.invoker : null;
+            this.index = index != null ? index : -1;
+        }
+
+        /**
+         * Invoke the method, like Method.invoke does
+         * @param instance the instance, or null for static methods
+         * @throws InvocationTargetException if the method throws an exception
+         */
+        public Object invoke(Object instance, Object[] args) throws Exception {
+            if (invoker != null && instance == null) {
+                try {
+                    return invoker.$invoke(index, args);
+                } catch (Throwable e) {
+                    throw new InvocationTargetException(e);
+                }
+            }
+            return method.invoke(instance, args);
+        }
+
+        /**
+         * The parameter names recorded by the enhancer, or null if the method was not enhanced
+         */
+        private static String[] parameterNames(Method method) {
+            try {
+                return Java.parameterNames(method);
+            } catch (UnexpectedException e) {
+                return null;
+            } catch (Exception e) {
+                throw new UnexpectedException(e);
+            }
+        }
+
+        private static int jsonBodyIndex(Annotation[][] parameterAnnotations) {
+            for (int i = 0; i < parameterAnnotations.length; i++) {
+                for (Annotation annotation : parameterAnnotations[i]) {
+                    if (annotation instanceof JsonBody) {
+                        return i;
+                    }
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * Whether the method takes the caught exception (a @Finally method with a Throwable parameter)
+         */
+        public boolean takesThrowable() {
+            return parameterTypes.length == 1 && parameterTypes[0] == Throwable.class;
+        }
+    }
+
+    /**
+     * A @Catch method with the exceptions it handles
+     */
+    public static class CatchCall {
+
+        public final Method method;
+        public final Class<?>[] exceptions;
+
+        CatchCall(Method method) {
+            this.method = method;
+            Class<?>[] exceptions = method.getAnnotation(Catch.class).value();
+            this.exceptions = exceptions.length == 0 ? new Class<?>[]{Exception.class} : exceptions;
+        }
+
+        public boolean handles(Throwable e) {
+            for (Class<?> exception : exceptions) {
+                if (exception.isInstance(e)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    public final Class<? extends Controller> controllerClass;
+    /**
+     * Controller name, without the controllers. package
+     */
+    public final String controller;
+    /**
+     * Resolved action name, Controller.action
+     */
+    public final String action;
+    public final Method actionMethod;
+    public final CacheFor cacheFor;
+    public final List<Method> befores;
+    public final List<Method> afters;
+    public final List<Method> finallies;
+    public final List<CatchCall> catches;
+
+    ActionPlan(Class<? extends Controller> controllerClass, Method actionMethod) {
+        this.controllerClass = controllerClass;
+        this.controller = controllerClass.getName().substring(12).replace("$", "");
+        this.action = controller + "." + actionMethod.getName();
+        this.actionMethod = actionMethod;
+        this.cacheFor = actionMethod.getAnnotation(CacheFor.class);
+        this.befores = interceptors(Before.class, true);
+        this.afters = interceptors(After.class, false);
+        this.finallies = interceptors(Finally.class, false);
+        List<CatchCall> catches = new ArrayList<CatchCall>();
+        for (Method method : sorted(Catch.class)) {
+            method.setAccessible(true);
+            catches.add(new CatchCall(method));
+        }
+        this.catches = Collections.unmodifiableList(catches);
+    }
+
+    private List<Method> sorted(final Class<? extends Annotation> annotationType) {
+        List<Method> methods = new ArrayList<Method>(Java.findAllAnnotatedMethods(controllerClass, annotationType));
+        Collections.sort(methods, new Comparator<Method>() {
+
+            public int compare(Method m1, Method m2) {
+                return priority(m1.getAnnotation(annotationType)) - priority(m2.getAnnotation(annotationType));
+            }
+        });
+        return methods;
+    }
+
+    /**
+     * The interceptors of this action, in priority order, after applying their only and unless lists
+     * @param stripDollar whether the $ of Scala controller names are removed when qualifying action names
+     */
+    private List<Method> interceptors(Class<? extends Annotation> annotationType, boolean stripDollar) {
+        List<Method> interceptors = new ArrayList<Method>();
+        for (Method method : sorted(annotationType)) {
+            Annotation annotation = method.getAnnotation(annotationType);
+            String[] only;
+            String[] unless;
+            if (annotation instanceof Before) {
+                only = ((Before) annotation).only();
+                unless = ((Before) annotation).unless();
+            } else if (annotation instanceof After) {
+                only = ((After) annotation).only();
+                unless = ((After) annotation).unless();
+            } else {
+                only = ((Finally) annotation).only();
+                unless = ((Finally) annotation).unless();
+            }
+            String prefix = method.getDeclaringClass().getName().substring(12);
+            if (stripDollar) {
+                prefix = prefix.replace("$", "");
+            }
+            boolean skip = false;
+            for (String un : only) {
+                if (!un.contains(".")) {
+                    un = prefix + "." + un;
+                }
+                if (un.equals(action)) {
+                    skip = false;
+                    break;
+                } else {
+                    skip = true;
+                }
+            }
+            for (String un : unless) {
+                if (!un.contains(".")) {
+                    un = prefix + "." + un;
+                }
+                if (un.equals(action)) {
+                    skip = true;
+                    break;
+                }
+            }
+            if (!skip) {
+                method.setAccessible(true);
+                interceptors.add(method);
+            }
+        }
+        return Collections.unmodifiableList(interceptors);
+    }
+
+    private static int priority(Annotation annotation) {
+        if (annotation instanceof Before) {
+            return ((Before) annotation).priority();
+        }
+        if (annotation instanceof After) {
+            return ((After) annotation).priority();
+        }
+        if (annotation instanceof Finally) {
+            return ((Finally) annotation).priority();
+        }
+        return ((Catch) annotation).priority();
+    }
+
+    // ~~~~~~~~~ Cache
+
+    /**
+     * The DirectInvoker of a controller class, and the positions of its methods
+     */
+    static class Invokers {
+
+        static final Invokers NONE = new Invokers(null);
+
+        final DirectInvoker invoker;
+        final Map<String, Integer> indexes = new HashMap<String, Integer>();
+
+        Invokers(DirectInvoker invoker) {
+            this.invoker = invoker;
+            if (invoker != null) {
+                String[] methods = invoker.$methods();
+                for (int i = 0; i < methods.length; i++) {
+                    indexes.put(methods[i], i);
+                }
+            }
+        }
+
+        static Invokers of(Class<?> type) {
+            if (!DirectInvoker.class.isAssignableFrom(type)) {
+                return NONE;
+            }
+            try {
+                Constructor<?> constructor = type.getDeclaredConstructor();
+                constructor.setAccessible(true);
+                return new Invokers((DirectInvoker) constructor.newInstance());
+            } catch (Exception e) {
+                return NONE;
+            }
+        }
+    }
+
+    /**
+     * The plans and calls built for one state of the application classloader
+     */
+    static class Cache {
+
+        final ApplicationClassloaderState state;
+        final ConcurrentMap<String, ActionPlan> plans = new ConcurrentHashMap<String, ActionPlan>();
+        final ConcurrentMap<Method, Call> calls = new ConcurrentHashMap<Method, Call>();
+        final ConcurrentMap<Class<?>, Invokers> invokers = new ConcurrentHashMap<Class<?>, Invokers>();
+        final ConcurrentMap<Class<?>, Method> callbacks = new ConcurrentHashMap<Class<?>, Method>();
+
+        Cache(ApplicationClassloaderState state) {
+            this.state = state;
+        }
+    }
+
+    static volatile Cache cache;
+
+    static Cache cache() {
+        ApplicationClassloaderState state = Play.classloader.currentState;
+        Cache cache = ActionPlan.cache;
+        if (cache == null || !cache.state.equals(state)) {
+            cache = new Cache(state);
+            ActionPlan.cache = cache;
+        }
+        return cache;
+    }
+
+    /**
+     * Get the plan of an action
+     * @param action the action as found in the routes (Controller.action, case insensitive),
+     * with or without the controllers. package
+     */
+    @SuppressWarnings("unchecked")
+    public static ActionPlan get(String action) {
+        Cache cache = cache();
+        // Actions are resolved ignoring case: one key for all the spellings a client may send
+        String key = key(action);
+        ActionPlan plan = cache.plans.get(key);
+        if (plan == null) {
+            Object[] ca = ActionInvoker.findActionMethod(action);
+            plan = new ActionPlan((Class<? extends Controller>) ca[0], (Method) ca[1]);
+            ActionPlan resolved = cache.plans.putIfAbsent(key(plan.action), plan);
+            if (resolved != null) {
+                plan = resolved;
+            }
+            cache.plans.putIfAbsent(key, plan);
+        }
+        return plan;
+    }
+
+    static String key(String action) {
+        if (action.startsWith(ActionInvoker.CONTROLLERS_PACKAGE_PREFIX)) {
+            action = action.substring(ActionInvoker.CONTROLLERS_PACKAGE_PREFIX.length());
+        }
+        return action.toLowerCase();
+    }
+
+    /**
+     * Get the parameters of a controller method
+     */
+    public static Call call(Method method) {
+        Cache cache = cache();
+        Call call = cache.calls.get(method);
+        if (call == null) {
+            Class<?> type = method.getDeclaringClass();
+            Invokers invokers = cache.invokers.get(type);
+            if (invokers == null) {
+                invokers = Invokers.of(type);
+                cache.invokers.put(type, invokers);
+            }
+            call = new Call(method, invokers);
+            cache.calls.put(method, call);
+        }
+        return call;
+    }
+
+    /**
+     * Get the invoke method of a continuation callback (an F.Action0 or an F.Action)
+     */
+    public static Method callback(Class<?> type, boolean withResult) throws NoSuchMethodException {
+        Cache cache = cache();
+        Method method = cache.callbacks.get(type);
+        if (method == null || method.getParameterTypes().length != (withResult ? 1 : 0)) {
+            method = withResult ? type.getDeclaredMethod("invoke", Object.class) : type.getDeclaredMethod("invoke");
+            method.setAccessible(true);
+            cache.callbacks.put(type, method);
+        }
+        return method;
+    }
+}
@@ -336,6 +336,11 @@ public class Http {
             cookies = new HashMap<String, Http.Cookie>(16);
         }
 
+        private Request(Map<String, Http.Header> headers, Map<String, Http.Cookie> cookies) {
+            this.headers = headers;
+            this.cookies = cookies;
+        }
+
         /**
          * All creation / initing of new requests should use this method.
          * The purpose of this is to "show" what is needed when creating new Requests.
@@ -357,7 +362,13 @@ public class Http {
                 Map<String, Http.Header> _headers,
                 Map<String, Http.Cookie> _cookies
         ) {
-            Request newRequest = new Request();
+            if(_headers == null) {
+                _headers = new HashMap<String, Http.Header>(16);
+            }
+            if(_cookies == null) {
+                _cookies = new HashMap<String, Http.Cookie>(16);
+            }
+            Request newRequest = new Request(_headers, _cookies);
 
             newRequest.remoteAddress = _remoteAddress;
             newRequest.method = _method;
@@ -386,16 +397,6 @@ public class Http {
             newRequest.domain = _domain;
             newRequest.secure = _secure;
 
-            if(_headers == null) {
-                _headers = new HashMap<String, Http.Header>(16);
-            }
-            newRequest.headers = _headers;
-
-            if(_cookies == null) {
-                _cookies = new HashMap<String, Http.Cookie>(16);
-            }
-            newRequest.cookies = _cookies;
-
             newRequest.parseXForwarded();
 
             newRequest.resolveFormat();
@@ -832,6 +833,13 @@ public class Http {
         public void onWriteChunk(F.Action<Object> handler) {
             writeChunkHandlers.add(handler);
         }
+
+        /**
+         * @return whether the HTTP server supports writeChunk
+         */
+        public boolean supportsChunks() {
+            return !writeChunkHandlers.isEmpty();
+        }
     }
 
     /**
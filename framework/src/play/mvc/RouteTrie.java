@@ -0,0 +1,165 @@
+package play.mvc;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import play.Play;
+
+/**
+ * Index of the routes by HTTP verb and static path segments.
+ * <p/>
+ * Each route is stored under the leading segments of its path that are plain text, so a request
+ * only has to be matched against the routes whose static segments are a prefix of its path.
+ * Candidates are returned in the order of the routes file, and the regular expressions of the
+ * routes are still run on them, so the first matching route wins as before.
+ */
+class RouteTrie {
+
+    static final int[] NONE = new int[0];
+
+    static class Node {
+        final Map<String, Node> children = new HashMap<String, Node>(4);
+        int[] routes = NONE;
+
+        Node child(String segment) {
+            Node child = children.get(segment);
+            if (child == null) {
+                child = new Node();
+                children.put(segment, child);
+            }
+            return child;
+        }
+
+        void add(int position) {
+            int[] added = new int[routes.length + 1];
+            System.arraycopy(routes, 0, added, 0, routes.length);
+            added[routes.length] = position;
+            routes = added;
+        }
+    }
+
+    final RouterImpl.RouteImpl[] routes;
+    final Map<Http.Verb, Node> roots = new EnumMap<Http.Verb, Node>(Http.Verb.class);
+
+    RouteTrie(List<RouterImpl.RouteImpl> routes) {
+        this.routes = routes.toArray(new RouterImpl.RouteImpl[routes.size()]);
+        for (int position = 0; position < this.routes.length; position++) {
+            RouterImpl.RouteImpl route = this.routes[position];
+            List<String> segments = staticSegments(route);
+            for (Http.Verb verb : Http.Verb.values()) {
+                // HEAD requests are also served by GET routes
+                if (route.methods.contains(verb) || (verb == Http.Verb.HEAD && route.methods.contains(Http.Verb.GET))) {
+                    Node node = roots.get(verb);
+                    if (node == null) {
+                        node = new Node();
+                        roots.put(verb, node);
+                    }
+                    for (String segment : segments) {
+                        node = node.child(segment);
+                    }
+                    node.add(position);
+                }
+            }
+        }
+    }
+
+    /**
+     * The positions of the routes that may match a request, in ascending order
+     */
+    int[] candidates(Http.Verb method, String path) {
+        Node node = method == null ? null : roots.get(method);
+        if (node == null) {
+            return NONE;
+        }
+        if (path.equals(Play.ctxPath)) {
+            path = path + "/";
+        }
+        int[] found = node.routes;
+        List<int[]> more = null;
+        if (path.startsWith("/")) {
+            int start = 1;
+            while (true) {
+                int end = path.indexOf('/', start);
+                node = node.children.get(end == -1 ? path.substring(start) : path.substring(start, end));
+                if (node == null) {
+                    break;
+                }
+                if (node.routes.length > 0) {
+                    if (found.length == 0) {
+                        found = node.routes;
+                    } else {
+                        if (more == null) {
+                            more = new ArrayList<int[]>(4);
+                        }
+                        more.add(node.routes);
+                    }
+                }
+                if (end == -1) {
+                    break;
+                }
+                start = end + 1;
+            }
+        }
+        if (more == null) {
+            return found;
+        }
+        int length = found.length;
+        for (int[] routes : more) {
+            length += routes.length;
+        }
+        int[] merged = new int[length];
+        System.arraycopy(found, 0, merged, 0, found.length);
+        length = found.length;
+        for (int[] routes : more) {
+            System.arraycopy(routes, 0, merged, length, routes.length);
+            length += routes.length;
+        }
+        Arrays.sort(merged);
+        return merged;
+    }
+
+    /**
+     * The leading path segments that a request must have for the route to match it.
+     * Only the text before the first regular expression construct of the path is used.
+     */
+    static List<String> staticSegments(RouterImpl.RouteImpl route) {
+        List<String> segments = new ArrayList<String>(4);
+        String path = route.path;
+        if (route.pattern == null || path == null || !path.startsWith("/") || path.indexOf('|') != -1) {
+            return segments;
+        }
+        int length = path.length();
+        for (int i = 0; i < path.length(); i++) {
+            char c = path.charAt(i);
+            if ("?*+".indexOf(c) != -1 || (c == '{' && i + 1 < path.length() && (Character.isDigit(path.charAt(i + 1)) || path.charAt(i + 1) == ','))) {
+                // A quantifier makes the previous character optional
+                length = i - 1;
+                break;
+            }
+            if ("\\^$.()[]{}".indexOf(c) != -1) {
+                length = i;
+                break;
+            }
+        }
+        // The pattern of a staticDir route goes on after its path
+        boolean literal = length == path.length() && route.staticDir == null;
+        int start = 1;
+        while (start <= length) {
+            int end = path.indexOf('/', start);
+            if (end == -1 || end > length - 1) {
+                // The last segment is only complete when the whole path is plain text
+                if (literal) {
+                    segments.add(path.substring(start, length));
+                }
+                break;
+            }
+            segments.add(path.substring(start, end));
+            start = end + 1;
+        }
+        return segments;
+    }
+}
@@ -47,6 +47,7 @@ public class RouterImpl extends Router {
             position = routes.size();
         }
         routes.add(position, createRoute(methods, path, action, params, headers));
+        routesChanged();
     }
 
     /**
@@ -55,6 +56,7 @@ public class RouterImpl extends Router {
      */
     void appendRoute(EnumSet<Http.Verb> methods, String path, String action, String params, String headers, String sourceFile, int line) {
         routes.add(createRoute(methods, path, action, params, headers, sourceFile, line));
+        routesChanged();
     }
 
     RouteImpl createRoute(EnumSet<Http.Verb> methods, String path, String action, String params, String headers, String sourceFile, int line) {
@@ -141,13 +143,48 @@ public class RouterImpl extends Router {
      */
     List<RouteImpl> routes = new ArrayList<RouteImpl>(500);
 
+    /**
+     * The routes indexed by verb and static path segments, built on first use
+     */
+    volatile RouteTrie index;
+
+    /**
+     * The routes indexed by action, built on first use
+     */
+    volatile ActionIndex actionIndex;
+
+    RouteTrie getIndex() {
+        RouteTrie index = this.index;
+        if (index == null) {
+            index = new RouteTrie(routes);
+            this.index = index;
+        }
+        return index;
+    }
+
+    ActionIndex getActionIndex() {
+        ActionIndex actionIndex = this.actionIndex;
+        if (actionIndex == null) {
+            actionIndex = new ActionIndex(routes);
+            this.actionIndex = actionIndex;
+        }
+        return actionIndex;
+    }
+
+    void routesChanged() {
+        index = null;
+        actionIndex = null;
+    }
+
     @SuppressWarnings("unchecked")
     public Iterable<Route> getRoutes() {
         return (Iterable<Route>)(List<?>)routes;
     }
 
     public void routeOnlyStatic(Http.Request request) {
-        for (RouteImpl route : routes) {
+        RouteTrie index = getIndex();
+        for (int position : index.candidates(request.method, request.path)) {
+            RouteImpl route = index.routes[position];
             try {
                 String format = request.format;
                 String host = request.host;
@@ -179,7 +216,9 @@ public class RouterImpl extends Router {
                 request.method = Http.Verb.valueOf(matcher.group("method"));
             }
         }
-        for (RouteImpl route : routes) {
+        RouteTrie index = getIndex();
+        for (int position : index.candidates(request.method, request.path)) {
+            RouteImpl route = index.routes[position];
             String format = request.format;
             String host = request.host;
             Map<String, String> args = route.matches(request.method, request.path, format, host);
@@ -213,7 +252,9 @@ public class RouterImpl extends Router {
     }
 
     public Map<String, String> route(Http.Verb method, String path, String headers, String host) {
-        for (RouteImpl route : routes) {
+        RouteTrie index = getIndex();
+        for (int position : index.candidates(method, path)) {
+            RouteImpl route = index.routes[position];
             Map<String, String> args = route.matches(method, path, headers, host);
             if (args != null) {
                 args.put("action", route.getAction());
@@ -229,7 +270,9 @@ public class RouterImpl extends Router {
         }
         String path = file.relativePath();
         path = path.substring(path.indexOf("}") + 1);
-        for (RouteImpl route : routes) {
+        ActionIndex actionIndex = getActionIndex();
+        for (int position : actionIndex.staticDirs) {
+            RouteImpl route = actionIndex.routes[position];
             String staticDir = route.getStaticDir();
             if (staticDir != null) {
                 if (!staticDir.startsWith("/")) {
@@ -268,7 +311,9 @@ public class RouterImpl extends Router {
             }
         }
         ActionDefinition actionDef = null;
-        for (RouteImpl route : routes) {
+        ActionIndex actionIndex = getActionIndex();
+        for (int position : actionIndex.candidates(action)) {
+            RouteImpl route = actionIndex.routes[position];
             ActionDefinition _actionDef = route.reverse(action, verb, args);
             if (_actionDef != null) {
                 if (Play.mode == Play.Mode.PROD)
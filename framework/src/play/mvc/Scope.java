@@ -1,10 +1,14 @@
 package play.mvc;
 
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.lang.annotation.Annotation;
 import java.net.URLDecoder;
 import java.net.URLEncoder;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.TreeMap;
 import java.util.UUID;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -13,6 +17,7 @@ import play.Logger;
 import play.Play;
 import play.data.binding.Binder;
 import play.data.parsing.DataParser;
+import play.data.parsing.JsonParser;
 import play.data.parsing.TextParser;
 import play.data.validation.Validation;
 import play.exceptions.UnexpectedException;
@@ -340,7 +345,8 @@ public class Scope {
     }
 
     /**
-     * HTTP params
+     * HTTP params, sorted by name so that the params of an object (its name followed by a dot)
+     * are found without scanning all of them
      */
     public static class Params {
         // ThreadLocal access
@@ -351,7 +357,10 @@ public class Scope {
             return current.get();
         }
         boolean requestIsParsed;
-        private Map<String, String[]> data = new HashMap<String, String[]>();
+        // A JSON body parsed to params is rewound, and only read again for the body param or @JsonBody
+        boolean bodyIsKept;
+        long bodyMark;
+        private TreeMap<String, String[]> data = new TreeMap<String, String[]>(Utils.Maps.NULLS_FIRST);
 
         public void checkAndParse() {
             if (!requestIsParsed) {
@@ -360,6 +369,7 @@ public class Scope {
                 if (contentType != null) {
                     DataParser dataParser = DataParser.parsers.get(contentType);
                     if (dataParser != null) {
+                        bodyIsKept = dataParser instanceof JsonParser && markBody(request.body);
                         _mergeWith(dataParser.parse(request.body));
                     } else {
                         if (contentType.startsWith("text/")) {
@@ -367,15 +377,80 @@ public class Scope {
                         }
                     }
                 }
-                try {
-                    request.body.close();
-                } catch (Exception e) {
-                    //
+                if (bodyIsKept) {
+                    bodyIsKept = resetBody(request.body);
+                }
+                if (!bodyIsKept) {
+                    closeBody(request.body);
                 }
                 requestIsParsed = true;
             }
         }
 
+        /**
+         * Take the body of the request to read it yourself: it won't be parsed to params.
+         * @return the body, or null if it has already been parsed and can't be read again
+         */
+        public InputStream takeBody() {
+            if (requestIsParsed) {
+                if (!bodyIsKept) {
+                    return null;
+                }
+                bodyIsKept = false;
+            }
+            requestIsParsed = true;
+            return Http.Request.current().body;
+        }
+
+        /**
+         * Read the raw body kept by checkAndParse() into the body param, unless the request has one
+         */
+        void readBody(String key) {
+            if (bodyIsKept && "body".equals(key) && !data.containsKey(key)) {
+                bodyIsKept = false;
+                InputStream body = Http.Request.current().body;
+                _mergeWith(new TextParser().parse(body));
+                closeBody(body);
+            }
+        }
+
+        boolean markBody(InputStream body) {
+            if (body instanceof FileInputStream) {
+                try {
+                    bodyMark = ((FileInputStream) body).getChannel().position();
+                    return true;
+                } catch (IOException e) {
+                    return false;
+                }
+            }
+            if (body != null && body.markSupported()) {
+                body.mark(Integer.MAX_VALUE);
+                return true;
+            }
+            return false;
+        }
+
+        boolean resetBody(InputStream body) {
+            try {
+                if (body instanceof FileInputStream) {
+                    ((FileInputStream) body).getChannel().position(bodyMark);
+                } else {
+                    body.reset();
+                }
+                return true;
+            } catch (IOException e) {
+                return false;
+            }
+        }
+
+        static void closeBody(InputStream body) {
+            try {
+                body.close();
+            } catch (Exception e) {
+                //
+            }
+        }
+
         public void put(String key, String value) {
             checkAndParse();
             data.put(key, new String[]{value});
@@ -394,6 +469,7 @@ public class Scope {
         public String get(String key) {
             if (!_contains(key)) {
                 checkAndParse();
+                readBody(key);
             }
             if (data.containsKey(key)) {
                 return data.get(key)[0];
@@ -429,6 +505,7 @@ public class Scope {
         public String[] getAll(String key) {
             if (!_contains(key)) {
                 checkAndParse();
+                readBody(key);
             }
             return data.get(key);
         }
@@ -441,10 +518,8 @@ public class Scope {
         public Map<String, String[]> sub(String prefix) {
             checkAndParse();
             Map<String, String[]> result = new HashMap<String, String[]>();
-            for (String key : data.keySet()) {
-                if (key.startsWith(prefix + ".")) {
-                    result.put(key.substring(prefix.length() + 1), data.get(key));
-                }
+            for (Map.Entry<String, String[]> entry : Utils.Maps.startingWith(data, prefix + ".").entrySet()) {
+                result.put(entry.getKey().substring(prefix.length() + 1), entry.getValue());
             }
             return result;
         }
@@ -1,25 +1,40 @@
 package play.mvc.results;
 
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.Map;
 
+import play.Play;
+import play.cache.CacheFor;
+import play.exceptions.PlayException;
 import play.exceptions.UnexpectedException;
 import play.libs.MimeTypes;
 import play.mvc.Http.Request;
 import play.mvc.Http.Response;
+import play.templates.EncodedPrintWriter;
 import play.templates.Template;
 
 /**
  * 200 OK with a template rendering
+ * <p/>
+ * With <code>play.templates.streaming=true</code>, the template is rendered when the result is
+ * applied and written to a chunked response as it is rendered, instead of being rendered to a
+ * String first. Results of @CacheFor actions are still rendered first, to be cached. The session
+ * is saved before, so the authenticity token is created beforehand, but other session changes made
+ * by the template are lost.
  */
 public class RenderTemplate extends Result {
 
     /**
-     * 
+     *
      */
     private static final long serialVersionUID = 1L;
     private final String name;
-    private final String content;
+    private String content;
     private final String contentType;
+    private final transient Template template;
+    private final transient Map<String, Object> args;
 
     public RenderTemplate(Template template, Map<String, Object> args) {
         this(template, args, MimeTypes.getContentType(template.name, "text/plain"));
@@ -30,19 +45,51 @@ public class RenderTemplate extends Result {
         if (args.containsKey("out")) {
             throw new RuntimeException("Assertion failed! args shouldn't contain out");
         }
-        this.content = template.render(args);
+        if (streaming()) {
+            this.template = template;
+            this.args = new HashMap<String, Object>(args);
+        } else {
+            this.template = null;
+            this.args = null;
+            this.content = template.render(args);
+        }
         this.contentType = contentType;
     }
 
+    static boolean streaming() {
+        if (!Boolean.parseBoolean(Play.configuration.getProperty("play.templates.streaming", "false"))) {
+            return false;
+        }
+        Response response = Response.current();
+        Request request = Request.current();
+        return response != null && response.supportsChunks() && request != null && (request.invokedMethod == null || !request.invokedMethod.isAnnotationPresent(CacheFor.class));
+    }
+
     public void apply(Request request, Response response) {
         try {
-            response.out.write(content.getBytes(getEncoding()));
             setContentTypeIfNotSet(response, contentType);
+            if (content == null && template != null) {
+                EncodedPrintWriter out = new EncodedPrintWriter(new ChunkOutputStream(response), getEncoding());
+                template.render(args, out);
+                out.flush();
+            } else {
+                response.out.write(getContent().getBytes(getEncoding()));
+            }
+        } catch (PlayException e) {
+            // A template error rendered when streaming, for its error page
+            throw e;
         } catch (Exception e) {
             throw new UnexpectedException(e);
         }
     }
 
+    /**
+     * @return whether the template is rendered as the result is applied, after the scopes are saved
+     */
+    public boolean isStreamed() {
+        return content == null && template != null;
+    }
+
     public String getName() {
         return name;
     }
@@ -52,6 +99,33 @@ public class RenderTemplate extends Result {
     }
 
     public String getContent() {
+        if (content == null && template != null) {
+            content = template.render(args);
+        }
         return content;
     }
+
+    /**
+     * Write each block of the template output as a chunk of the response
+     */
+    static class ChunkOutputStream extends OutputStream {
+
+        final Response response;
+
+        ChunkOutputStream(Response response) {
+            this.response = response;
+        }
+
+        @Override
+        public void write(int b) {
+            response.writeChunk(new byte[]{(byte) b});
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            if (len > 0) {
+                response.writeChunk(Arrays.copyOfRange(b, off, off + len));
+            }
+        }
+    }
 }
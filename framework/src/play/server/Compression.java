@@ -0,0 +1,243 @@
+package play.server;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.handler.codec.compression.ZlibEncoder;
+import org.jboss.netty.handler.codec.compression.ZlibWrapper;
+import org.jboss.netty.handler.codec.embedder.EncoderEmbedder;
+import org.jboss.netty.handler.codec.http.HttpMessage;
+import org.jboss.netty.handler.codec.http.HttpMethod;
+import org.jboss.netty.handler.codec.http.HttpRequest;
+import org.jboss.netty.handler.codec.http.HttpResponse;
+import org.jboss.netty.handler.codec.http.HttpResponseStatus;
+import play.Play;
+import play.utils.HTTP;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static org.jboss.netty.handler.codec.http.HttpHeaders.Names.*;
+
+/**
+ * HTTP response compression, negotiated from the Accept-Encoding request header.
+ * Disabled by default, enable it in application.conf: <code>http.compression = true</code>
+ */
+public class Compression {
+
+    public static final String GZIP = "gzip";
+    public static final String DEFLATE = "deflate";
+
+    /**
+     * Extension of the precompressed siblings of static files (foo.css.gz for foo.css)
+     */
+    public static final String PRECOMPRESSED_EXTENSION = ".gz";
+
+    static final boolean enabled;
+
+    /**
+     * Responses smaller than this size (in bytes) are not worth compressing: <code>http.compression.minSize = 1024</code>
+     */
+    static final int minSize;
+
+    /**
+     * Compression level, from 1 (fastest) to 9 (best): <code>http.compression.level = 6</code>
+     */
+    static final int level;
+
+    /**
+     * Content types that are compressed: <code>http.compression.mimeTypes = text/html, text/css, ...</code>
+     */
+    static final Set<String> mimeTypes = new HashSet<String>();
+
+    static {
+        enabled = "true".equals(Play.configuration.getProperty("http.compression", "false"));
+        minSize = Integer.parseInt(Play.configuration.getProperty("http.compression.minSize", "1024"));
+        level = Integer.parseInt(Play.configuration.getProperty("http.compression.level", "6"));
+        String types = Play.configuration.getProperty("http.compression.mimeTypes",
+                "text/html, text/plain, text/css, text/csv, text/xml, text/javascript, application/javascript, application/x-javascript, application/json, application/xml, application/xhtml+xml, application/rss+xml, application/atom+xml, image/svg+xml");
+        for (String type : types.split(",")) {
+            if (type.trim().length() > 0) {
+                mimeTypes.add(type.trim().toLowerCase());
+            }
+        }
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    public static boolean isCompressible(String contentType) {
+        if (contentType == null) {
+            return false;
+        }
+        return mimeTypes.contains(HTTP.parseContentType(contentType).contentType);
+    }
+
+    /**
+     * Choose the content coding to use from an Accept-Encoding header
+     * @param acceptEncoding the Accept-Encoding header value
+     * @return gzip, deflate or null if the client doesn't accept any of them
+     */
+    public static String negotiate(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return null;
+        }
+        float gzip = -1;
+        float deflate = -1;
+        float any = -1;
+        for (String part : acceptEncoding.split(",")) {
+            HTTP.ParameterizedHeaderValue coding = HTTP.parseParameterizedHeaderValue(part);
+            float q = 1;
+            String qValue = coding.parameters.get("q");
+            if (qValue != null) {
+                try {
+                    q = Float.parseFloat(qValue);
+                } catch (NumberFormatException e) {
+                    q = 0;
+                }
+            }
+            if (GZIP.equals(coding.value) || "x-gzip".equals(coding.value)) {
+                gzip = q;
+            } else if (DEFLATE.equals(coding.value)) {
+                deflate = q;
+            } else if ("*".equals(coding.value)) {
+                any = q;
+            }
+        }
+        if (gzip == -1) {
+            gzip = any;
+        }
+        if (deflate == -1) {
+            deflate = any;
+        }
+        if (gzip > 0 && gzip >= deflate) {
+            return GZIP;
+        }
+        if (deflate > 0) {
+            return DEFLATE;
+        }
+        return null;
+    }
+
+    /**
+     * Check whether the client accepts gzip, to serve a precompressed file
+     */
+    public static boolean acceptsGzip(HttpRequest nettyRequest) {
+        return GZIP.equals(negotiate(nettyRequest.getHeader(ACCEPT_ENCODING)));
+    }
+
+    /**
+     * Choose the content coding for a response
+     * @param contentLength the length of the uncompressed content, or -1 if unknown
+     * @return the content coding to apply, or null if the response must not be compressed
+     */
+    public static String getContentEncoding(HttpRequest nettyRequest, HttpResponse nettyResponse, long contentLength) {
+        if (!enabled || nettyRequest.getMethod().equals(HttpMethod.HEAD)) {
+            return null;
+        }
+        HttpResponseStatus status = nettyResponse.getStatus();
+        if (status.getCode() < 200 || status.equals(HttpResponseStatus.NO_CONTENT) || status.equals(HttpResponseStatus.NOT_MODIFIED)
+                || status.equals(HttpResponseStatus.PARTIAL_CONTENT)) {
+            return null;
+        }
+        if (nettyResponse.containsHeader(CONTENT_ENCODING) || !isCompressible(nettyResponse.getHeader(CONTENT_TYPE))) {
+            return null;
+        }
+        addVary(nettyResponse);
+        if (contentLength >= 0 && contentLength < minSize) {
+            return null;
+        }
+        return negotiate(nettyRequest.getHeader(ACCEPT_ENCODING));
+    }
+
+    /**
+     * Mark a message as encoded with the given content coding
+     */
+    public static void setContentEncoding(HttpMessage message, String contentEncoding) {
+        message.setHeader(CONTENT_ENCODING, contentEncoding);
+        addVary(message);
+    }
+
+    /**
+     * Tell caches that the representation depends on the Accept-Encoding request header
+     */
+    public static void addVary(HttpMessage message) {
+        if (!message.getHeaders(VARY).contains(ACCEPT_ENCODING)) {
+            message.addHeader(VARY, ACCEPT_ENCODING);
+        }
+    }
+
+    /**
+     * Compress an in-memory body
+     */
+    public static byte[] compress(byte[] content, String contentEncoding) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(content.length / 4 + 64);
+        if (GZIP.equals(contentEncoding)) {
+            GZIPOutputStream gzip = new GZIPOutputStream(out) {
+
+                {
+                    def.setLevel(level);
+                }
+            };
+            gzip.write(content);
+            gzip.close();
+        } else {
+            Deflater deflater = new Deflater(level);
+            try {
+                DeflaterOutputStream zlib = new DeflaterOutputStream(out, deflater);
+                zlib.write(content);
+                zlib.close();
+            } finally {
+                deflater.end();
+            }
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Create a streaming compressor, each offered buffer is flushed so it can be sent as its own chunk
+     */
+    public static EncoderEmbedder<ChannelBuffer> newCompressor(String contentEncoding) {
+        return new EncoderEmbedder<ChannelBuffer>(new ZlibEncoder(GZIP.equals(contentEncoding) ? ZlibWrapper.GZIP : ZlibWrapper.ZLIB, level));
+    }
+
+    /**
+     * Compress a buffer with a streaming compressor
+     */
+    public static ChannelBuffer compress(EncoderEmbedder<ChannelBuffer> compressor, ChannelBuffer data) {
+        compressor.offer(data);
+        return ChannelBuffers.wrappedBuffer(compressor.pollAll(new ChannelBuffer[compressor.size()]));
+    }
+
+    /**
+     * Terminate a streaming compressor
+     * @return the remaining compressed bytes
+     */
+    public static ChannelBuffer finish(EncoderEmbedder<ChannelBuffer> compressor) {
+        if (compressor.finish()) {
+            return ChannelBuffers.wrappedBuffer(compressor.pollAll(new ChannelBuffer[compressor.size()]));
+        }
+        return ChannelBuffers.EMPTY_BUFFER;
+    }
+
+    /**
+     * Find the precompressed sibling of a static file (foo.css.gz for foo.css)
+     * @return the sibling, or null if there is none or if it is older than the file
+     */
+    public static File getPrecompressed(File file) {
+        if (!enabled) {
+            return null;
+        }
+        File gzip = new File(file.getPath() + PRECOMPRESSED_EXTENSION);
+        if (gzip.isFile() && gzip.lastModified() >= file.lastModified()) {
+            return gzip;
+        }
+        return null;
+    }
+}
@@ -0,0 +1,232 @@
+package play.server;
+
+import org.jboss.netty.handler.codec.http.Cookie;
+import org.jboss.netty.handler.codec.http.CookieDecoder;
+import org.jboss.netty.handler.codec.http.HttpRequest;
+import play.mvc.Http;
+
+import java.io.ObjectStreamException;
+import java.io.Serializable;
+import java.util.AbstractMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.jboss.netty.handler.codec.http.HttpHeaders.Names.COOKIE;
+
+/**
+ * Lazy views of the headers and cookies of a Netty request, used as Http.Request.headers
+ * and Http.Request.cookies. Most actions only read a few headers: single lookups go
+ * straight to the Netty request and the whole map is only built when it is iterated or modified.
+ */
+public class NettyHeaders {
+
+    /**
+     * Request headers, keyed by lower case name
+     */
+    public static Map<String, Http.Header> headers(HttpRequest nettyRequest) {
+        return new Headers(nettyRequest);
+    }
+
+    /**
+     * Request cookies, keyed by name
+     */
+    public static Map<String, Http.Cookie> cookies(HttpRequest nettyRequest) {
+        return new Cookies(nettyRequest);
+    }
+
+    /**
+     * A map that answers single lookups from its source and materializes itself on any other access
+     */
+    abstract static class LazyMap<V> extends AbstractMap<String, V> implements Serializable {
+
+        private Map<String, V> fetched;
+        private Map<String, V> map;
+
+        /**
+         * Look up a single entry in the source
+         */
+        abstract V fetch(String key);
+
+        /**
+         * Read all the entries of the source
+         */
+        abstract Map<String, V> load();
+
+        Map<String, V> materialize() {
+            if (map == null) {
+                Map<String, V> loaded = load();
+                if (fetched != null) {
+                    // Keep the instances already handed out
+                    for (Map.Entry<String, V> entry : fetched.entrySet()) {
+                        if (loaded.containsKey(entry.getKey())) {
+                            loaded.put(entry.getKey(), entry.getValue());
+                        }
+                    }
+                    fetched = null;
+                }
+                map = loaded;
+            }
+            return map;
+        }
+
+        @Override
+        public V get(Object key) {
+            if (map != null) {
+                return map.get(key);
+            }
+            if (!(key instanceof String)) {
+                return null;
+            }
+            if (fetched == null) {
+                fetched = new HashMap<String, V>(8);
+            } else if (fetched.containsKey(key)) {
+                return fetched.get(key);
+            }
+            V value = fetch((String) key);
+            if (map != null) {
+                // The lookup materialized the map
+                return map.get(key);
+            }
+            fetched.put((String) key, value);
+            return value;
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return get(key) != null;
+        }
+
+        @Override
+        public V put(String key, V value) {
+            return materialize().put(key, value);
+        }
+
+        @Override
+        public V remove(Object key) {
+            return materialize().remove(key);
+        }
+
+        @Override
+        public void clear() {
+            materialize().clear();
+        }
+
+        @Override
+        public int size() {
+            return materialize().size();
+        }
+
+        @Override
+        public Set<Map.Entry<String, V>> entrySet() {
+            return materialize().entrySet();
+        }
+
+        Object writeReplace() throws ObjectStreamException {
+            return new HashMap<String, V>(materialize());
+        }
+    }
+
+    static class Headers extends LazyMap<Http.Header> {
+
+        private transient final HttpRequest nettyRequest;
+
+        Headers(HttpRequest nettyRequest) {
+            this.nettyRequest = nettyRequest;
+        }
+
+        @Override
+        Http.Header fetch(String name) {
+            // Keys are lower case names, Netty lookups are case insensitive
+            for (int i = 0; i < name.length(); i++) {
+                if (Character.isUpperCase(name.charAt(i))) {
+                    return null;
+                }
+            }
+            List<String> values = nettyRequest.getHeaders(name);
+            if (values.isEmpty()) {
+                return null;
+            }
+            return new Http.Header(name, values);
+        }
+
+        @Override
+        Map<String, Http.Header> load() {
+            return PlayHandler.getHeaders(nettyRequest);
+        }
+    }
+
+    static class Cookies extends LazyMap<Http.Cookie> {
+
+        private transient final HttpRequest nettyRequest;
+
+        Cookies(HttpRequest nettyRequest) {
+            this.nettyRequest = nettyRequest;
+        }
+
+        @Override
+        Http.Cookie fetch(String name) {
+            return materialize().get(name);
+        }
+
+        @Override
+        Map<String, Http.Cookie> load() {
+            return parseCookies(nettyRequest.getHeader(COOKIE));
+        }
+    }
+
+    /**
+     * Parse a Cookie header. Plain <code>name=value</code> lists, which is what browsers send,
+     * are split by hand; quoted values and attributes go through Netty's CookieDecoder.
+     */
+    static Map<String, Http.Cookie> parseCookies(String value) {
+        Map<String, Http.Cookie> cookies = new HashMap<String, Http.Cookie>(16);
+        if (value == null) {
+            return cookies;
+        }
+        if (value.indexOf('"') != -1 || value.indexOf('\'') != -1 || value.indexOf('$') != -1) {
+            Set<Cookie> cookieSet = new CookieDecoder().decode(value);
+            if (cookieSet != null) {
+                for (Cookie cookie : cookieSet) {
+                    Http.Cookie playCookie = new Http.Cookie();
+                    playCookie.name = cookie.getName();
+                    playCookie.path = cookie.getPath();
+                    playCookie.domain = cookie.getDomain();
+                    playCookie.secure = cookie.isSecure();
+                    playCookie.value = cookie.getValue();
+                    playCookie.httpOnly = cookie.isHttpOnly();
+                    cookies.put(playCookie.name, playCookie);
+                }
+            }
+            return cookies;
+        }
+        final int length = value.length();
+        int start = 0;
+        while (start < length) {
+            int end = start;
+            while (end < length && value.charAt(end) != ';' && value.charAt(end) != ',') {
+                end++;
+            }
+            int eq = value.indexOf('=', start);
+            String name;
+            String cookieValue;
+            if (eq != -1 && eq < end) {
+                name = value.substring(start, eq).trim();
+                cookieValue = value.substring(eq + 1, end).trim();
+            } else {
+                name = value.substring(start, end).trim();
+                cookieValue = "";
+            }
+            if (name.length() > 0 && !cookies.containsKey(name)) {
+                Http.Cookie playCookie = new Http.Cookie();
+                playCookie.name = name;
+                playCookie.path = null;
+                playCookie.value = cookieValue;
+                cookies.put(name, playCookie);
+            }
+            start = end + 1;
+        }
+        return cookies;
+    }
+}
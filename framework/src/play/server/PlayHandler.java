@@ -6,11 +6,13 @@ import org.jboss.netty.buffer.ChannelBuffer;
 import org.jboss.netty.buffer.ChannelBufferInputStream;
 import org.jboss.netty.buffer.ChannelBuffers;
 import org.jboss.netty.channel.*;
+import org.jboss.netty.handler.codec.embedder.EncoderEmbedder;
 import org.jboss.netty.handler.codec.http.*;
 import org.jboss.netty.handler.codec.http.websocket.DefaultWebSocketFrame;
 import org.jboss.netty.handler.codec.http.websocket.WebSocketFrame;
 import org.jboss.netty.handler.codec.http.websocket.WebSocketFrameDecoder;
 import org.jboss.netty.handler.codec.http.websocket.WebSocketFrameEncoder;
+import org.jboss.netty.handler.ssl.SslHandler;
 import org.jboss.netty.handler.stream.ChunkedFile;
 import org.jboss.netty.handler.stream.ChunkedInput;
 import org.jboss.netty.handler.stream.ChunkedStream;
@@ -23,6 +25,7 @@ import play.data.validation.Validation;
 import play.exceptions.PlayException;
 import play.exceptions.UnexpectedException;
 import play.i18n.Messages;
+import play.libs.Codec;
 import play.libs.F.Action;
 import play.libs.F.Promise;
 import play.libs.MimeTypes;
@@ -61,8 +64,22 @@ public class PlayHandler extends SimpleChannelUpstreamHandler {
     private final static String signature = "Play! Framework;" + Play.version + ";" + Play.mode.name().toLowerCase();
     private final static boolean exposePlayServer;
 
+    /**
+     * If true (the default), files are sent with a zero-copy FileRegion (sendfile) when the connection
+     * is not encrypted. You can disable it in application.conf: <code>play.netty.zeroCopy = false</code>
+     */
+    private final static boolean zeroCopy;
+
+    /**
+     * Size of the chunks used when a file has to be streamed through the heap (SSL connections or zero-copy
+     * disabled): <code>play.netty.fileChunkSize = 8192</code>
+     */
+    private final static int fileChunkSize;
+
     static {
         exposePlayServer = !"false".equals(Play.configuration.getProperty("http.exposePlayServer"));
+        zeroCopy = !"false".equals(Play.configuration.getProperty("play.netty.zeroCopy"));
+        fileChunkSize = Integer.parseInt(Play.configuration.getProperty("play.netty.fileChunkSize", "8192"));
     }
 
     @Override
@@ -132,7 +149,7 @@ public class PlayHandler extends SimpleChannelUpstreamHandler {
         }
     }
 
-    private static final Map<String, RenderStatic> staticPathsCache = new HashMap<String, RenderStatic>();
+    private static final Map<String, RenderStatic> staticPathsCache = new ConcurrentHashMap<String, RenderStatic>();
 
     public class NettyInvocation extends Invoker.Invocation {
 
@@ -164,11 +181,8 @@ public class PlayHandler extends SimpleChannelUpstreamHandler {
             Request.current.set(request);
             Response.current.set(response);
             try {
-                if (Play.mode == Play.Mode.PROD && staticPathsCache.containsKey(request.path)) {
-                    RenderStatic rs = null;
-                    synchronized (staticPathsCache) {
-                        rs = staticPathsCache.get(request.path);
-                    }
+                RenderStatic rs = Play.mode == Play.Mode.PROD ? staticPathsCache.get(request.path) : null;
+                if (rs != null) {
                     serveStatic(rs, ctx, request, response, nettyRequest, event);
                     if (Logger.isTraceEnabled()) {
                         Logger.trace("init: end false");
@@ -185,9 +199,7 @@ public class PlayHandler extends SimpleChannelUpstreamHandler {
                 return false;
             } catch (RenderStatic rs) {
                 if (Play.mode == Play.Mode.PROD) {
-                    synchronized (staticPathsCache) {
-                        staticPathsCache.put(request.path, rs);
-                    }
+                    staticPathsCache.put(request.path, rs);
                 }
                 serveStatic(rs, ctx, request, response, nettyRequest, this.event);
                 if (Logger.isTraceEnabled()) {
@@ -218,7 +230,13 @@ public class PlayHandler extends SimpleChannelUpstreamHandler {
                 }
                 super.run();
             } catch (Exception e) {
-                serve500(e, ctx, nettyRequest);
+                if (response.chunked) {
+                    // Part of the response is sent, it can't be replaced by the error page
+                    Logger.error(e, "Error while streaming the response to %s", request.path);
+                    ctx.getChannel().close();
+                } else {
+                    serve500(e, ctx, nettyRequest);
+                }
             }
             if (Logger.isTraceEnabled()) {
                 Logger.trace("run: end");
@@ -336,22 +354,33 @@ public class PlayHandler extends SimpleChannelUpstreamHandler {
         }
 
         byte[] content = null;
+        long contentLength = response.out.size();
 
         final boolean keepAlive = isKeepAlive(nettyRequest);
         if (nettyRequest.getMethod().equals(HttpMethod.HEAD)) {
             content = new byte[0];
         } else {
             content = response.out.toByteArray();
+            String contentEncoding = Compression.getContentEncoding(nettyRequest, nettyResponse, content.length);
+            if (contentEncoding != null) {
+                try {
+                    content = Compression.compress(content, contentEncoding);
+                } catch (IOException e) {
+                    throw new UnexpectedException(e);
+                }
+                Compression.setContentEncoding(nettyResponse, contentEncoding);
+            }
+            contentLength = content.length;
         }
 
-        ChannelBuffer buf = ChannelBuffers.copiedBuffer(content);
+        ChannelBuffer buf = ChannelBuffers.wrappedBuffer(content);
         nettyResponse.setContent(buf);
 
         if (Logger.isTraceEnabled()) {
-            Logger.trace("writeResponse: content length [" + response.out.size() + "]");
+            Logger.trace("writeResponse: content length [" + contentLength + "]");
         }
 
-        setContentLength(nettyResponse, response.out.size());
+        setContentLength(nettyResponse, contentLength);
 
         ChannelFuture f = ctx.getChannel().write(nettyResponse);
 
@@ -422,27 +451,8 @@ public class PlayHandler extends SimpleChannelUpstreamHandler {
                     nettyResponse.setHeader(CONTENT_TYPE, MimeTypes.getContentType(file.getName(), "text/plain"));
                     final RandomAccessFile raf = new RandomAccessFile(file, "r");
                     try {
-                        long fileLength = raf.length();
-
-                        if (!nettyResponse.getStatus().equals(HttpResponseStatus.NOT_MODIFIED)) {
-                            if (Logger.isTraceEnabled()) {
-                                Logger.trace("file length is [" + fileLength + "]");
-                            }
-                            setContentLength(nettyResponse, fileLength);
-                        }
-
-                        Channel ch = ctx.getChannel();
-
-                        // Write the initial line and the header.
-                        ChannelFuture writeFuture = ch.write(nettyResponse);
-
-                        // Write the content.
-                        // If it is not a HEAD
-                        if (!nettyRequest.getMethod().equals(HttpMethod.HEAD)) {
-                            writeFuture = ch.write(new ChunkedFile(raf, 0, fileLength, 8192));
-                        } else {
-                            raf.close();
-                        }
+                        // Write the initial line, the header and the content.
+                        ChannelFuture writeFuture = writeFileResponse(ctx.getChannel(), nettyRequest, nettyResponse, file, raf);
                         if (!keepAlive) {
                             // Close the connection when the whole content is written out.
                             writeFuture.addListener(ChannelFutureListener.CLOSE);
@@ -461,9 +471,23 @@ public class PlayHandler extends SimpleChannelUpstreamHandler {
                 throw e;
             }
         } else if (is != null) {
+            // Compressing a stream of unknown compressed length needs a chunked response
+            String contentEncoding = null;
+            if (nettyRequest.getProtocolVersion().equals(HttpVersion.HTTP_1_1)) {
+                contentEncoding = Compression.getContentEncoding(nettyRequest, nettyResponse, getContentLength(nettyResponse));
+            }
+            if (contentEncoding != null) {
+                Compression.setContentEncoding(nettyResponse, contentEncoding);
+                nettyResponse.removeHeader(CONTENT_LENGTH);
+                nettyResponse.setHeader(TRANSFER_ENCODING, HttpHeaders.Values.CHUNKED);
+            }
             ChannelFuture writeFuture = ctx.getChannel().write(nettyResponse);
             if (!nettyRequest.getMethod().equals(HttpMethod.HEAD) && !nettyResponse.getStatus().equals(HttpResponseStatus.NOT_MODIFIED)) {
-                writeFuture = ctx.getChannel().write(new ChunkedStream(is));
+                if (contentEncoding != null) {
+                    writeFuture = ctx.getChannel().write(new CompressedChunkedInput(new ChunkedStream(is), contentEncoding));
+                } else {
+                    writeFuture = ctx.getChannel().write(new ChunkedStream(is));
+                }
             } else {
                 is.close();
             }
@@ -471,6 +495,13 @@ public class PlayHandler extends SimpleChannelUpstreamHandler {
                 writeFuture.addListener(ChannelFutureListener.CLOSE);
             }
         } else if (stream != null) {
+            if (stream instanceof LazyChunkedInput) {
+                String contentEncoding = Compression.getContentEncoding(nettyRequest, nettyResponse, -1);
+                if (contentEncoding != null) {
+                    Compression.setContentEncoding(nettyResponse, contentEncoding);
+                    ((LazyChunkedInput) stream).compress(contentEncoding);
+                }
+            }
             ChannelFuture writeFuture = ctx.getChannel().write(nettyResponse);
             if (!nettyRequest.getMethod().equals(HttpMethod.HEAD) && !nettyResponse.getStatus().equals(HttpResponseStatus.NOT_MODIFIED)) {
                 writeFuture = ctx.getChannel().write(stream);
@@ -490,15 +521,44 @@ public class PlayHandler extends SimpleChannelUpstreamHandler {
 
     static String getRemoteIPAddress(ChannelHandlerContext ctx) {
         String fullAddress = ((InetSocketAddress) ctx.getChannel().getRemoteAddress()).getAddress().getHostAddress();
-        if (fullAddress.matches("/[0-9]+[.][0-9]+[.][0-9]+[.][0-9]+[:][0-9]+")) {
-            fullAddress = fullAddress.substring(1);
-            fullAddress = fullAddress.substring(0, fullAddress.indexOf(":"));
-        } else if (fullAddress.matches(".*[%].*")) {
-            fullAddress = fullAddress.substring(0, fullAddress.indexOf("%"));
+        return stripAddress(fullAddress);
+    }
+
+    /**
+     * Remove the port of a /a.b.c.d:port address, or the scope of an IPv6 address
+     */
+    static String stripAddress(String fullAddress) {
+        int colon = fullAddress.indexOf(':');
+        if (fullAddress.startsWith("/") && colon != -1 && fullAddress.indexOf(':', colon + 1) == -1) {
+            return fullAddress.substring(1, colon);
+        }
+        int percent = fullAddress.indexOf('%');
+        if (percent != -1) {
+            return fullAddress.substring(0, percent);
         }
         return fullAddress;
     }
 
+    /**
+     * Whether the host header is 127.0.0.1, with an optional port
+     */
+    static boolean isLoopbackHost(String host) {
+        if (host == null || !host.startsWith("127.0.0.1")) {
+            return false;
+        }
+        int i = "127.0.0.1".length();
+        if (i < host.length() && host.charAt(i) == ':') {
+            i++;
+        }
+        for (; i < host.length(); i++) {
+            char c = host.charAt(i);
+            if (c < '0' || c > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+
     static final Map<HttpMethod, Http.Verb> toHttpVerbMap;
 
     static {
@@ -544,10 +604,12 @@ public class PlayHandler extends SimpleChannelUpstreamHandler {
 
         final int i = uri.indexOf("?");
         String querystring = "";
-        String path = URLDecoder.decode(uri, encoding);
+        String path;
         if (i != -1) {
             path = URLDecoder.decode(uri.substring(0, i), encoding);
             querystring = uri.substring(i + 1);
+        } else {
+            path = URLDecoder.decode(uri, encoding);
         }
 
         String remoteAddress = getRemoteIPAddress(ctx);
@@ -560,26 +622,17 @@ public class PlayHandler extends SimpleChannelUpstreamHandler {
         InputStream body = null;
         ChannelBuffer b = nettyRequest.getContent();
         if (b instanceof FileChannelBuffer) {
-            FileChannelBuffer buffer = (FileChannelBuffer) b;
-            // An error occurred
-            Integer max = Integer.valueOf(Play.configuration.getProperty("play.netty.maxContentLength", "-1"));
-
-            body = buffer.getInputStream();
-            if (!(max == -1 || body.available() < max)) {
-                body = new ByteArrayInputStream(new byte[0]);
-            }
-
+            // Large body spilled to disk by the StreamChunkAggregator
+            body = ((FileChannelBuffer) b).getInputStream();
         } else {
-            ByteArrayOutputStream out = new ByteArrayOutputStream();
-            IOUtils.copy(new ChannelBufferInputStream(b), out);
-            byte[] n = out.toByteArray();
-            body = new ByteArrayInputStream(n);
+            // In memory body, read in place
+            body = new ChannelBufferInputStream(b);
         }
 
         String host = nettyRequest.getHeader(HOST);
         boolean isLoopback = false;
         try {
-            isLoopback = ((InetSocketAddress) ctx.getChannel().getRemoteAddress()).getAddress().isLoopbackAddress() && host.matches("^127\\.0\\.0\\.1:?[0-9]*$");
+            isLoopback = ((InetSocketAddress) ctx.getChannel().getRemoteAddress()).getAddress().isLoopbackAddress() && isLoopbackHost(host);
         } catch (Exception e) {
             // ignore it
         }
@@ -591,10 +644,11 @@ public class PlayHandler extends SimpleChannelUpstreamHandler {
             port = 80;
             domain = "";
         } else {
-            if (host.contains(":")) {
-                final String[] hosts = host.split(":");
-                port = Integer.parseInt(hosts[1]);
-                domain = hosts[0];
+            final int colon = host.indexOf(':');
+            if (colon != -1) {
+                final int end = host.indexOf(':', colon + 1);
+                port = Integer.parseInt(end == -1 ? host.substring(colon + 1) : host.substring(colon + 1, end));
+                domain = host.substring(0, colon);
             } else {
                 port = 80;
                 domain = host;
@@ -616,8 +670,8 @@ public class PlayHandler extends SimpleChannelUpstreamHandler {
                 port,
                 domain,
                 secure,
-                getHeaders(nettyRequest),
-                getCookies(nettyRequest));
+                NettyHeaders.headers(nettyRequest),
+                NettyHeaders.cookies(nettyRequest));
 
 
         if (Logger.isTraceEnabled()) {
@@ -643,24 +697,7 @@ public class PlayHandler extends SimpleChannelUpstreamHandler {
     }
 
     protected static Map<String, Http.Cookie> getCookies(HttpRequest nettyRequest) {
-        Map<String, Http.Cookie> cookies = new HashMap<String, Http.Cookie>(16);
-        String value = nettyRequest.getHeader(COOKIE);
-        if (value != null) {
-            Set<Cookie> cookieSet = new CookieDecoder().decode(value);
-            if (cookieSet != null) {
-                for (Cookie cookie : cookieSet) {
-                    Http.Cookie playCookie = new Http.Cookie();
-                    playCookie.name = cookie.getName();
-                    playCookie.path = cookie.getPath();
-                    playCookie.domain = cookie.getDomain();
-                    playCookie.secure = cookie.isSecure();
-                    playCookie.value = cookie.getValue();
-                    playCookie.httpOnly = cookie.isHttpOnly();
-                    cookies.put(playCookie.name, playCookie);
-                }
-            }
-        }
-        return cookies;
+        return NettyHeaders.parseCookies(nettyRequest.getHeader(COOKIE));
     }
 
 
@@ -833,7 +870,20 @@ public class PlayHandler extends SimpleChannelUpstreamHandler {
         if (exposePlayServer) {
             nettyResponse.setHeader(SERVER, signature);
         }
+        final String path = renderStatic.file;
         try {
+            // Hot assets are served from memory
+            if (StaticAssetCache.isEnabled() && !nettyRequest.containsHeader(RANGE)) {
+                StaticAssetCache.Asset asset = StaticAssetCache.get(path);
+                if (asset != null) {
+                    writeAsset(e.getChannel(), asset, nettyRequest, nettyResponse);
+                    if (Logger.isTraceEnabled()) {
+                        Logger.trace("serveStatic: end (cached)");
+                    }
+                    return;
+                }
+            }
+
             VirtualFile file = Play.getVirtualFile(renderStatic.file);
             if (file != null && file.exists() && file.isDirectory()) {
                 file = file.child("index.html");
@@ -850,7 +900,29 @@ public class PlayHandler extends SimpleChannelUpstreamHandler {
                 } else {
                     final File localFile = file.getRealFile();
                     final boolean keepAlive = isKeepAlive(nettyRequest);
-                    nettyResponse = addEtag(nettyRequest, nettyResponse, localFile);
+
+                    if (StaticAssetCache.isEnabled() && !nettyRequest.containsHeader(RANGE)) {
+                        StaticAssetCache.Asset asset = StaticAssetCache.put(path, localFile);
+                        if (asset != null) {
+                            writeAsset(e.getChannel(), asset, nettyRequest, nettyResponse);
+                            if (Logger.isTraceEnabled()) {
+                                Logger.trace("serveStatic: end (cached)");
+                            }
+                            return;
+                        }
+                    }
+
+                    // Serve the precompressed sibling (foo.css.gz) if there is a fresh one
+                    File contentFile = localFile;
+                    File precompressed = Compression.getPrecompressed(localFile);
+                    if (precompressed != null) {
+                        Compression.addVary(nettyResponse);
+                        if (Compression.acceptsGzip(nettyRequest)) {
+                            Compression.setContentEncoding(nettyResponse, Compression.GZIP);
+                            contentFile = precompressed;
+                        }
+                    }
+                    nettyResponse = addEtag(nettyRequest, nettyResponse, contentFile);
 
                     if (nettyResponse.getStatus().equals(HttpResponseStatus.NOT_MODIFIED)) {
 
@@ -864,36 +936,17 @@ public class PlayHandler extends SimpleChannelUpstreamHandler {
                         }
                     } else {
 
-                        final RandomAccessFile raf = new RandomAccessFile(localFile, "r");
+                        final RandomAccessFile raf = new RandomAccessFile(contentFile, "r");
                         try {
-                            long fileLength = raf.length();
-
                             if (Logger.isTraceEnabled()) {
                                 Logger.trace("keep alive " + keepAlive);
                                 Logger.trace("content type " + (MimeTypes.getContentType(localFile.getName(), "text/plain")));
                             }
 
-                            if (!nettyResponse.getStatus().equals(HttpResponseStatus.NOT_MODIFIED)) {
-                                // Add 'Content-Length' header only for a keep-alive connection.
-                                if (Logger.isTraceEnabled()) {
-                                    Logger.trace("file length " + fileLength);
-                                }
-                                setContentLength(nettyResponse, fileLength);
-                            }
-
                             nettyResponse.setHeader(CONTENT_TYPE, (MimeTypes.getContentType(localFile.getName(), "text/plain")));
 
-                            Channel ch = e.getChannel();
-
-                            // Write the initial line and the header.
-                            ChannelFuture writeFuture = ch.write(nettyResponse);
-
-                            // Write the content.
-                            if (!nettyRequest.getMethod().equals(HttpMethod.HEAD)) {
-                                writeFuture = ch.write(new ChunkedFile(raf, 0, fileLength, 8192));
-                            } else {
-                                raf.close();
-                            }
+                            // Write the initial line, the header and the content.
+                            ChannelFuture writeFuture = writeFileResponse(e.getChannel(), nettyRequest, nettyResponse, contentFile, raf);
 
                             if (!keepAlive) {
                                 // Close the connection when the whole content is written out.
@@ -958,7 +1011,7 @@ public class PlayHandler extends SimpleChannelUpstreamHandler {
         return true;
     }
 
-    private static HttpResponse addEtag(HttpRequest nettyRequest, HttpResponse httpResponse, File file) {
+    private static void setCacheControl(HttpResponse httpResponse) {
         if (Play.mode == Play.Mode.DEV) {
             httpResponse.setHeader(CACHE_CONTROL, "no-cache");
         } else {
@@ -969,9 +1022,13 @@ public class PlayHandler extends SimpleChannelUpstreamHandler {
                 httpResponse.setHeader(CACHE_CONTROL, "max-age=" + maxAge);
             }
         }
+    }
+
+    private static HttpResponse addEtag(HttpRequest nettyRequest, HttpResponse httpResponse, File file) {
+        setCacheControl(httpResponse);
         boolean useEtag = Play.configuration.getProperty("http.useETag", "true").equals("true");
         long last = file.lastModified();
-        final String etag = "\"" + last + "-" + file.hashCode() + "\"";
+        final String etag = getEtag(file, last);
         if (!isModified(etag, last, nettyRequest)) {
             if (nettyRequest.getMethod().equals(HttpMethod.GET)) {
                 httpResponse.setStatus(HttpResponseStatus.NOT_MODIFIED);
@@ -989,6 +1046,182 @@ public class PlayHandler extends SimpleChannelUpstreamHandler {
         return httpResponse;
     }
 
+    static String getEtag(File file, long lastModified) {
+        return "\"" + lastModified + "-" + file.hashCode() + "\"";
+    }
+
+    /**
+     * Write a static file from the in-memory cache, the gzipped body is used if the client accepts it.
+     */
+    static void writeAsset(Channel ch, StaticAssetCache.Asset asset, HttpRequest nettyRequest, HttpResponse nettyResponse) {
+        final boolean gzip = asset.gzipContent != null && Compression.acceptsGzip(nettyRequest);
+        final String etag = gzip ? asset.gzipEtag : asset.etag;
+        final boolean useEtag = Play.configuration.getProperty("http.useETag", "true").equals("true");
+
+        setCacheControl(nettyResponse);
+        if (asset.gzipContent != null) {
+            Compression.addVary(nettyResponse);
+        }
+        if (!isModified(etag, asset.lastModified, nettyRequest)) {
+            if (nettyRequest.getMethod().equals(HttpMethod.GET)) {
+                nettyResponse.setStatus(HttpResponseStatus.NOT_MODIFIED);
+            }
+        } else {
+            nettyResponse.setHeader(LAST_MODIFIED, asset.lastModifiedHeader);
+        }
+        if (useEtag) {
+            nettyResponse.setHeader(ETAG, etag);
+        }
+
+        if (!nettyResponse.getStatus().equals(HttpResponseStatus.NOT_MODIFIED)) {
+            byte[] content = gzip ? asset.gzipContent : asset.content;
+            nettyResponse.setHeader(CONTENT_TYPE, asset.contentType);
+            nettyResponse.setHeader(ACCEPT_RANGES, HttpHeaders.Values.BYTES);
+            if (gzip) {
+                Compression.setContentEncoding(nettyResponse, Compression.GZIP);
+            }
+            setContentLength(nettyResponse, content.length);
+            if (!nettyRequest.getMethod().equals(HttpMethod.HEAD)) {
+                nettyResponse.setContent(wrappedBuffer(content));
+            }
+        }
+
+        ChannelFuture writeFuture = ch.write(nettyResponse);
+        if (!isKeepAlive(nettyRequest)) {
+            writeFuture.addListener(ChannelFutureListener.CLOSE);
+        }
+    }
+
+    /**
+     * Check the If-Range precondition: the ranges are only served if the entity tag or the
+     * last modification date sent by the browser still match the file.
+     */
+    static boolean isRangeValid(String ifRange, File file) {
+        long last = file.lastModified();
+        if (ifRange.startsWith("\"") || ifRange.startsWith("W/")) {
+            return ifRange.equals(getEtag(file, last));
+        }
+        try {
+            Date browserDate = Utils.getHttpDateFormatter().parse(ifRange);
+            return browserDate.getTime() / 1000 == last / 1000;
+        } catch (ParseException ex) {
+            return false;
+        }
+    }
+
+    /**
+     * Get the byte ranges to serve for a file.
+     * @return the ranges, an empty list if they can't be satisfied, or null if the whole file must be sent
+     */
+    static List<HTTP.ByteRange> getRanges(HttpRequest nettyRequest, HttpResponse nettyResponse, File file, long fileLength) {
+        if (!nettyRequest.getMethod().equals(HttpMethod.GET) || !nettyResponse.getStatus().equals(HttpResponseStatus.OK)) {
+            return null;
+        }
+        String range = nettyRequest.getHeader(RANGE);
+        if (range == null) {
+            return null;
+        }
+        String ifRange = nettyRequest.getHeader(IF_RANGE);
+        if (ifRange != null && !isRangeValid(ifRange, file)) {
+            return null;
+        }
+        return HTTP.parseRange(range, fileLength);
+    }
+
+    /**
+     * Write the initial line, the headers and the content of a file, honouring the Range header of GET requests.
+     * A single range is answered with 206 Partial Content, several ranges with a multipart/byteranges body and
+     * unsatisfiable ranges with 416. Ranges are written straight from the file.
+     * @return the future of the last write
+     */
+    protected static ChannelFuture writeFileResponse(Channel ch, HttpRequest nettyRequest, HttpResponse nettyResponse, File file, RandomAccessFile raf) throws IOException {
+        final long fileLength = raf.length();
+        if (Logger.isTraceEnabled()) {
+            Logger.trace("file length is [" + fileLength + "]");
+        }
+        nettyResponse.setHeader(ACCEPT_RANGES, HttpHeaders.Values.BYTES);
+        final List<HTTP.ByteRange> ranges = getRanges(nettyRequest, nettyResponse, file, fileLength);
+
+        if (ranges == null) {
+            setContentLength(nettyResponse, fileLength);
+            ChannelFuture writeFuture = ch.write(nettyResponse);
+            // If it is not a HEAD
+            if (!nettyRequest.getMethod().equals(HttpMethod.HEAD)) {
+                writeFuture = writeFile(ch, raf, 0, fileLength);
+            } else {
+                raf.close();
+            }
+            return writeFuture;
+        }
+
+        if (ranges.isEmpty()) {
+            raf.close();
+            nettyResponse.setStatus(HttpResponseStatus.REQUESTED_RANGE_NOT_SATISFIABLE);
+            nettyResponse.setHeader(CONTENT_RANGE, "bytes */" + fileLength);
+            setContentLength(nettyResponse, 0);
+            return ch.write(nettyResponse);
+        }
+
+        nettyResponse.setStatus(HttpResponseStatus.PARTIAL_CONTENT);
+        if (ranges.size() == 1) {
+            HTTP.ByteRange range = ranges.get(0);
+            nettyResponse.setHeader(CONTENT_RANGE, range.toContentRange(fileLength));
+            setContentLength(nettyResponse, range.length());
+            ch.write(nettyResponse);
+            return writeFile(ch, raf, range.start, range.length());
+        }
+
+        // multipart/byteranges: each part is written from its own file region
+        raf.close();
+        String boundary = Codec.UUID();
+        String contentType = nettyResponse.getHeader(CONTENT_TYPE);
+        List<byte[]> partHeaders = new ArrayList<byte[]>(ranges.size());
+        long contentLength = 0;
+        for (HTTP.ByteRange range : ranges) {
+            StringBuilder partHeader = new StringBuilder();
+            partHeader.append("\r\n--").append(boundary).append("\r\n");
+            if (contentType != null) {
+                partHeader.append(CONTENT_TYPE).append(": ").append(contentType).append("\r\n");
+            }
+            partHeader.append(CONTENT_RANGE).append(": ").append(range.toContentRange(fileLength)).append("\r\n\r\n");
+            byte[] bytes = partHeader.toString().getBytes("ISO-8859-1");
+            partHeaders.add(bytes);
+            contentLength += bytes.length + range.length();
+        }
+        byte[] end = ("\r\n--" + boundary + "--\r\n").getBytes("ISO-8859-1");
+        contentLength += end.length;
+
+        nettyResponse.setHeader(CONTENT_TYPE, "multipart/byteranges; boundary=" + boundary);
+        setContentLength(nettyResponse, contentLength);
+        ch.write(nettyResponse);
+        for (int i = 0; i < ranges.size(); i++) {
+            HTTP.ByteRange range = ranges.get(i);
+            ch.write(wrappedBuffer(partHeaders.get(i)));
+            writeFile(ch, new RandomAccessFile(file, "r"), range.start, range.length());
+        }
+        return ch.write(wrappedBuffer(end));
+    }
+
+    /**
+     * Write a region of a file to the channel. When the pipeline has no SSL handler the file is
+     * transferred with a FileRegion (zero-copy), otherwise it is streamed through a ChunkedFile.
+     * The file is closed once the transfer is complete.
+     */
+    protected static ChannelFuture writeFile(Channel ch, RandomAccessFile raf, long offset, long length) throws IOException {
+        if (zeroCopy && ch.getPipeline().get(SslHandler.class) == null) {
+            final FileRegion region = new DefaultFileRegion(raf.getChannel(), offset, length);
+            ChannelFuture writeFuture = ch.write(region);
+            writeFuture.addListener(new ChannelFutureListener() {
+
+                public void operationComplete(ChannelFuture future) throws Exception {
+                    region.releaseExternalResources();
+                }
+            });
+            return writeFuture;
+        }
+        return ch.write(new ChunkedFile(raf, offset, length, fileChunkSize));
+    }
+
     public static boolean isKeepAlive(HttpMessage message) {
         return HttpHeaders.isKeepAlive(message) && message.getProtocolVersion().equals(HttpVersion.HTTP_1_1);
     }
@@ -997,42 +1230,133 @@ public class PlayHandler extends SimpleChannelUpstreamHandler {
         message.setHeader(HttpHeaders.Names.CONTENT_LENGTH, String.valueOf(contentLength));
     }
 
+    static long getContentLength(HttpMessage message) {
+        String contentLength = message.getHeader(HttpHeaders.Names.CONTENT_LENGTH);
+        if (contentLength != null) {
+            try {
+                return Long.parseLong(contentLength.trim());
+            } catch (NumberFormatException e) {
+                // Unknown length
+            }
+        }
+        return -1;
+    }
+
     // ~~~~~~~~~~~ Chunked response
     final ChunkedWriteHandler chunkedWriteHandler = new ChunkedWriteHandler();
 
+    private static final byte[] CRLF = {'\r', '\n'};
+    private static final byte[] LAST_CHUNK = {'0', '\r', '\n', '\r', '\n'};
+
+    /**
+     * Frame some data as an HTTP chunk
+     */
+    static ChannelBuffer httpChunk(ChannelBuffer data) {
+        if (!data.readable()) {
+            return ChannelBuffers.EMPTY_BUFFER;
+        }
+        byte[] size = Integer.toHexString(data.readableBytes()).getBytes();
+        return wrappedBuffer(wrappedBuffer(size), wrappedBuffer(CRLF), data, wrappedBuffer(CRLF));
+    }
+
     static class LazyChunkedInput implements org.jboss.netty.handler.stream.ChunkedInput {
 
         private boolean closed = false;
-        private ConcurrentLinkedQueue<Object> nextChunks = new ConcurrentLinkedQueue<Object>();
+        private ConcurrentLinkedQueue<ChannelBuffer> nextChunks = new ConcurrentLinkedQueue<ChannelBuffer>();
+        private EncoderEmbedder<ChannelBuffer> compressor;
 
         public boolean hasNextChunk() throws Exception {
             return !nextChunks.isEmpty();
         }
 
         public Object nextChunk() throws Exception {
-            if (nextChunks.isEmpty()) {
-                return null;
-            }
-            return wrappedBuffer(((String) nextChunks.poll()).getBytes());
+            return nextChunks.poll();
         }
 
         public boolean isEndOfInput() throws Exception {
             return closed && nextChunks.isEmpty();
         }
 
+        /**
+         * Compress the chunks written from now on with the given content coding
+         */
+        public void compress(String contentEncoding) {
+            compressor = Compression.newCompressor(contentEncoding);
+        }
+
         public void close() throws Exception {
             if (!closed) {
-                nextChunks.offer("0\r\n\r\n");
+                if (compressor != null) {
+                    offer(Compression.finish(compressor));
+                }
+                nextChunks.offer(wrappedBuffer(LAST_CHUNK));
             }
             closed = true;
         }
 
+        /**
+         * Write a byte[] as it is, or a message followed by a line break
+         */
         public void writeChunk(Object chunk) throws Exception {
-            String message = chunk == null ? "" : chunk.toString();
-            StringWriter writer = new StringWriter();
-            Integer l = message.getBytes(Response.current().encoding).length + 2;
-            writer.append(Integer.toHexString(l)).append("\r\n").append(message).append("\r\n\r\n");
-            nextChunks.offer(writer.toString());
+            ChannelBuffer data;
+            if (chunk instanceof byte[]) {
+                data = wrappedBuffer((byte[]) chunk);
+            } else {
+                String message = chunk == null ? "" : chunk.toString();
+                data = wrappedBuffer(message.getBytes(Response.current().encoding), CRLF);
+            }
+            if (compressor != null) {
+                data = Compression.compress(compressor, data);
+            }
+            offer(data);
+        }
+
+        private void offer(ChannelBuffer data) {
+            if (data.readable()) {
+                nextChunks.offer(httpChunk(data));
+            }
+        }
+    }
+
+    /**
+     * Compress a ChunkedInput and frame it as an HTTP chunked body
+     */
+    static class CompressedChunkedInput implements org.jboss.netty.handler.stream.ChunkedInput {
+
+        private final ChunkedInput input;
+        private final EncoderEmbedder<ChannelBuffer> compressor;
+        private boolean finished = false;
+
+        public CompressedChunkedInput(ChunkedInput input, String contentEncoding) {
+            this.input = input;
+            this.compressor = Compression.newCompressor(contentEncoding);
+        }
+
+        public boolean hasNextChunk() throws Exception {
+            return !finished;
+        }
+
+        public Object nextChunk() throws Exception {
+            if (finished) {
+                return null;
+            }
+            if (input.hasNextChunk()) {
+                ChannelBuffer data = (ChannelBuffer) input.nextChunk();
+                if (data == null) {
+                    return null;
+                }
+                return httpChunk(Compression.compress(compressor, data));
+            }
+            finished = true;
+            return wrappedBuffer(httpChunk(Compression.finish(compressor)), wrappedBuffer(LAST_CHUNK));
+        }
+
+        public boolean isEndOfInput() throws Exception {
+            return finished;
+        }
+
+        public void close() throws Exception {
+            input.close();
         }
     }
 
@@ -0,0 +1,203 @@
+package play.server;
+
+import play.Logger;
+import play.Play;
+import play.libs.IO;
+import play.libs.MimeTypes;
+import play.utils.Utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-memory cache of small static files, so hot assets are served without touching the file system.
+ * Each entry keeps the body, the pre-built headers and optionally a gzipped body.
+ * <p/>
+ * In DEV mode an entry is checked against the file modification date on each hit. In PROD mode
+ * the files are a snapshot taken when they are first served, as the application files don't change.
+ * <p/>
+ * The total size of the cache is bounded (<code>http.staticCache.size</code>, in bytes, 0 to disable),
+ * the least recently used entries are evicted first. Only the files smaller than
+ * <code>http.staticCache.maxFileSize</code> are cached.
+ */
+public class StaticAssetCache {
+
+    public static class Asset {
+
+        public final File file;
+        public final long lastModified;
+        public final long length;
+        public final String contentType;
+        public final String etag;
+        public final String lastModifiedHeader;
+        public final byte[] content;
+        public final File gzipFile;
+        public final long gzipLastModified;
+        public final String gzipEtag;
+        public final byte[] gzipContent;
+        volatile long lastAccess;
+
+        Asset(File file, long lastModified, byte[] content, File gzipFile, long gzipLastModified, String gzipEtag, byte[] gzipContent) {
+            this.file = file;
+            this.lastModified = lastModified;
+            this.length = content.length;
+            this.contentType = MimeTypes.getContentType(file.getName(), "text/plain");
+            this.etag = PlayHandler.getEtag(file, lastModified);
+            this.lastModifiedHeader = Utils.getHttpDateFormatter().format(new Date(lastModified));
+            this.content = content;
+            this.gzipFile = gzipFile;
+            this.gzipLastModified = gzipLastModified;
+            this.gzipEtag = gzipEtag;
+            this.gzipContent = gzipContent;
+        }
+
+        long size() {
+            return content.length + (gzipContent == null ? 0 : gzipContent.length);
+        }
+
+        boolean isStale() {
+            if (file.lastModified() != lastModified || file.length() != length) {
+                return true;
+            }
+            if (gzipFile != null) {
+                return gzipFile.lastModified() != gzipLastModified;
+            }
+            // A precompressed file may have been created since
+            return Compression.getPrecompressed(file) != null;
+        }
+    }
+
+    static final long budget;
+    static final long maxFileSize;
+
+    private static final ConcurrentMap<String, Asset> assets = new ConcurrentHashMap<String, Asset>();
+    private static final AtomicLong size = new AtomicLong();
+    private static final AtomicLong clock = new AtomicLong();
+
+    static {
+        budget = Long.parseLong(Play.configuration.getProperty("http.staticCache.size", "10485760"));
+        maxFileSize = Long.parseLong(Play.configuration.getProperty("http.staticCache.maxFileSize", "65536"));
+    }
+
+    public static boolean isEnabled() {
+        return budget > 0;
+    }
+
+    /**
+     * Get a cached asset
+     * @param path the path of the static file, relative to the application
+     * @return the asset, or null if it is not cached or not fresh anymore
+     */
+    public static Asset get(String path) {
+        Asset asset = assets.get(path);
+        if (asset == null) {
+            return null;
+        }
+        if (Play.mode == Play.Mode.DEV && asset.isStale()) {
+            remove(path, asset);
+            return null;
+        }
+        asset.lastAccess = clock.incrementAndGet();
+        return asset;
+    }
+
+    /**
+     * Load a file in the cache
+     * @param path the path of the static file, relative to the application
+     * @param file the file
+     * @return the cached asset, or null if the file can't be cached
+     */
+    public static Asset put(String path, File file) {
+        long length = file.length();
+        if (!file.isFile() || length > maxFileSize || length > budget) {
+            return null;
+        }
+        Asset asset;
+        try {
+            asset = load(file);
+        } catch (Exception e) {
+            Logger.warn(e, "Cannot cache the static file %s", file);
+            return null;
+        }
+        asset.lastAccess = clock.incrementAndGet();
+        Asset previous = assets.put(path, asset);
+        size.addAndGet(asset.size() - (previous == null ? 0 : previous.size()));
+        evict();
+        return asset;
+    }
+
+    public static void clear() {
+        assets.clear();
+        size.set(0);
+    }
+
+    static long size() {
+        return size.get();
+    }
+
+    private static Asset load(File file) throws IOException {
+        long lastModified = file.lastModified();
+        byte[] content = IO.readContent(file);
+        File gzipFile = null;
+        long gzipLastModified = 0;
+        String gzipEtag = null;
+        byte[] gzipContent = null;
+        if (Compression.isEnabled()) {
+            gzipFile = Compression.getPrecompressed(file);
+            if (gzipFile != null) {
+                gzipLastModified = gzipFile.lastModified();
+                gzipEtag = PlayHandler.getEtag(gzipFile, gzipLastModified);
+                gzipContent = IO.readContent(gzipFile);
+            } else if (content.length >= Compression.minSize && Compression.isCompressible(MimeTypes.getContentType(file.getName(), "text/plain"))) {
+                byte[] compressed = Compression.compress(content, Compression.GZIP);
+                if (compressed.length < content.length) {
+                    String etag = PlayHandler.getEtag(file, lastModified);
+                    gzipEtag = etag.substring(0, etag.length() - 1) + "-gzip\"";
+                    gzipContent = compressed;
+                }
+            }
+        }
+        return new Asset(file, lastModified, content, gzipFile, gzipLastModified, gzipEtag, gzipContent);
+    }
+
+    private static void remove(String path, Asset asset) {
+        if (assets.remove(path, asset)) {
+            size.addAndGet(-asset.size());
+        }
+    }
+
+    /**
+     * Evict the least recently used assets until the cache fits in its budget
+     */
+    private static void evict() {
+        if (size.get() <= budget) {
+            return;
+        }
+        synchronized (assets) {
+            List<Map.Entry<String, Asset>> entries = new ArrayList<Map.Entry<String, Asset>>(assets.entrySet());
+            Collections.sort(entries, new Comparator<Map.Entry<String, Asset>>() {
+
+                public int compare(Map.Entry<String, Asset> e1, Map.Entry<String, Asset> e2) {
+                    long a1 = e1.getValue().lastAccess;
+                    long a2 = e2.getValue().lastAccess;
+                    return a1 < a2 ? -1 : (a1 == a2 ? 0 : 1);
+                }
+            });
+            for (Map.Entry<String, Asset> entry : entries) {
+                if (size.get() <= budget) {
+                    break;
+                }
+                remove(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+}
@@ -1,7 +1,7 @@
 package play.server;
 
-import org.apache.commons.io.IOUtils;
-import org.jboss.netty.buffer.ChannelBufferInputStream;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
 import org.jboss.netty.channel.*;
 import org.jboss.netty.handler.codec.http.HttpChunk;
 import org.jboss.netty.handler.codec.http.HttpHeaders;
@@ -9,21 +9,43 @@ import org.jboss.netty.handler.codec.http.HttpMessage;
 import play.Play;
 
 import java.io.*;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.UUID;
 
+/**
+ * Aggregates the chunks of a request body. Bodies are buffered in memory up to
+ * <code>play.netty.memoryThreshold</code> bytes and spilled to a temporary file beyond it.
+ * Bodies larger than <code>play.netty.maxContentLength</code> are rejected as soon as the limit
+ * is crossed: the message is passed on with an empty content and a warning header, and the
+ * remaining chunks are discarded.
+ */
 public class StreamChunkAggregator extends SimpleChannelUpstreamHandler {
 
     private volatile HttpMessage currentMessage;
+    private volatile List<ChannelBuffer> chunks;
     private volatile OutputStream out;
-    private final int maxContentLength;
     private volatile File file;
+    private volatile long contentLength;
+    private volatile boolean discarding;
+    private final int maxContentLength;
+    private final int memoryThreshold;
 
     /**
      * Creates a new instance.
      */
     public StreamChunkAggregator(int maxContentLength) {
+        this(maxContentLength, Integer.parseInt(Play.configuration.getProperty("play.netty.memoryThreshold", "65536")));
+    }
+
+    /**
+     * Creates a new instance.
+     * @param maxContentLength the maximum length of a body, -1 for no limit
+     * @param memoryThreshold the maximum length of a body kept in memory
+     */
+    public StreamChunkAggregator(int maxContentLength, int memoryThreshold) {
         this.maxContentLength = maxContentLength;
+        this.memoryThreshold = memoryThreshold;
     }
 
     @Override
@@ -35,11 +57,9 @@ public class StreamChunkAggregator extends SimpleChannelUpstreamHandler {
         }
 
         HttpMessage currentMessage = this.currentMessage;
-        File localFile = this.file;
         if (currentMessage == null) {
             HttpMessage m = (HttpMessage) msg;
             if (m.isChunked()) {
-                final String localName = UUID.randomUUID().toString();
                 // A chunked message - remove 'Transfer-Encoding' header,
                 // initialize the cumulative buffer, and wait for incoming chunks.
                 List<String> encodings = m.getHeaders(HttpHeaders.Names.TRANSFER_ENCODING);
@@ -47,39 +67,123 @@ public class StreamChunkAggregator extends SimpleChannelUpstreamHandler {
                 if (encodings.isEmpty()) {
                     m.removeHeader(HttpHeaders.Names.TRANSFER_ENCODING);
                 }
+                m.setChunked(false);
                 this.currentMessage = m;
-                this.file = new File(Play.tmpDir, localName);
-                this.out = new FileOutputStream(file, true);
+                this.contentLength = 0;
+                this.chunks = new ArrayList<ChannelBuffer>();
+
+                // Large bodies announce their length, they can be rejected before reading them
+                long announcedLength = PlayHandler.getContentLength(m);
+                if (isTooLarge(announcedLength)) {
+                    reject(ctx, e, m, announcedLength);
+                } else if (announcedLength > memoryThreshold) {
+                    spill();
+                }
             } else {
                 // Not a chunked message - pass through.
                 ctx.sendUpstream(e);
             }
         } else {
-            // TODO: If less that threshold then in memory
             // Merge the received chunk into the content of the current message.
             final HttpChunk chunk = (HttpChunk) msg;
-            if (maxContentLength != -1 && (localFile.length() > (maxContentLength - chunk.getContent().readableBytes()))) {
-                currentMessage.setHeader(HttpHeaders.Names.WARNING, "play.netty.content.length.exceeded");
-            } else {
-                IOUtils.copyLarge(new ChannelBufferInputStream(chunk.getContent()), this.out);
+            final ChannelBuffer content = chunk.getContent();
+            if (!discarding) {
+                contentLength += content.readableBytes();
+                if (isTooLarge(contentLength)) {
+                    reject(ctx, e, currentMessage, contentLength);
+                } else {
+                    if (out == null && contentLength > memoryThreshold) {
+                        spill();
+                    }
+                    if (out != null) {
+                        content.readBytes(out, content.readableBytes());
+                    } else if (content.readable()) {
+                        chunks.add(content);
+                    }
+                }
+            }
 
-                if (chunk.isLast()) {
-                    this.out.flush();
-                    this.out.close();
+            if (chunk.isLast()) {
+                if (discarding) {
+                    reset();
+                } else {
+                    complete(ctx, e, currentMessage);
+                }
+            }
+        }
 
-                    currentMessage.setHeader(
-                            HttpHeaders.Names.CONTENT_LENGTH,
-                            String.valueOf(localFile.length()));
+    }
 
-                    currentMessage.setContent(new FileChannelBuffer(localFile));
-                    this.out = null;
-                    this.currentMessage = null;
-                    this.file = null;
-                    Channels.fireMessageReceived(ctx, currentMessage, e.getRemoteAddress());
-                }
+    private boolean isTooLarge(long length) {
+        return maxContentLength != -1 && length > maxContentLength;
+    }
+
+    /**
+     * Move the buffered chunks to a temporary file, the next chunks will be appended to it
+     */
+    private void spill() throws IOException {
+        this.file = new File(Play.tmpDir, UUID.randomUUID().toString());
+        this.out = new BufferedOutputStream(new FileOutputStream(file, true));
+        for (ChannelBuffer buffered : chunks) {
+            buffered.readBytes(out, buffered.readableBytes());
+        }
+        chunks.clear();
+    }
+
+    private void complete(ChannelHandlerContext ctx, MessageEvent e, HttpMessage message) throws IOException {
+        if (out != null) {
+            out.close();
+            message.setContent(new FileChannelBuffer(file));
+        } else {
+            message.setContent(ChannelBuffers.wrappedBuffer(chunks.toArray(new ChannelBuffer[chunks.size()])));
+        }
+        message.setHeader(HttpHeaders.Names.CONTENT_LENGTH, String.valueOf(contentLength));
+        reset();
+        Channels.fireMessageReceived(ctx, message, e.getRemoteAddress());
+    }
+
+    /**
+     * Pass the message on with an empty body, the remaining chunks are discarded
+     */
+    private void reject(ChannelHandlerContext ctx, MessageEvent e, HttpMessage message, long length) {
+        discardBuffered();
+        discarding = true;
+        message.setHeader(HttpHeaders.Names.WARNING, "play.netty.content.length.exceeded");
+        message.setHeader(HttpHeaders.Names.CONTENT_LENGTH, String.valueOf(length));
+        message.setContent(ChannelBuffers.EMPTY_BUFFER);
+        Channels.fireMessageReceived(ctx, message, e.getRemoteAddress());
+    }
+
+    private void discardBuffered() {
+        chunks.clear();
+        if (out != null) {
+            try {
+                out.close();
+            } catch (IOException ex) {
+                // Ignore
             }
+            file.delete();
+            out = null;
+            file = null;
         }
+    }
 
+    private void reset() {
+        this.currentMessage = null;
+        this.chunks = null;
+        this.out = null;
+        this.file = null;
+        this.contentLength = 0;
+        this.discarding = false;
     }
-}
 
+    @Override
+    public void channelClosed(ChannelHandlerContext ctx, ChannelStateEvent e) throws Exception {
+        // The connection was closed in the middle of a body
+        if (currentMessage != null) {
+            discardBuffered();
+            reset();
+        }
+        super.channelClosed(ctx, e);
+    }
+}
@@ -18,6 +18,7 @@ public class SslHttpServerPipelineFactory implements ChannelPipelineFactory {
     public ChannelPipeline getPipeline() throws Exception {
 
         Integer max = Integer.valueOf(Play.configuration.getProperty("play.netty.maxContentLength", "-1"));
+        Integer memoryThreshold = Integer.valueOf(Play.configuration.getProperty("play.netty.memoryThreshold", "65536"));
         String mode = Play.configuration.getProperty("play.netty.clientAuth", "none");
 
         ChannelPipeline pipeline = pipeline();
@@ -36,7 +37,7 @@ public class SslHttpServerPipelineFactory implements ChannelPipelineFactory {
 
         pipeline.addLast("ssl", new SslHandler(engine));
         pipeline.addLast("decoder", new HttpRequestDecoder());
-        pipeline.addLast("aggregator", new StreamChunkAggregator(max));
+        pipeline.addLast("aggregator", new StreamChunkAggregator(max, memoryThreshold));
         pipeline.addLast("encoder", new HttpResponseEncoder());
         pipeline.addLast("chunkedWriter", new ChunkedWriteHandler());
 
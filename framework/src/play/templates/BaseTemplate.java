@@ -51,7 +51,7 @@ public abstract class BaseTemplate extends Template {
     public boolean loadFromCache() {
         try {
             long start = System.currentTimeMillis();
-            byte[] bc = BytecodeCache.getBytecode(name, source);
+            byte[] bc = BytecodeCache.getBytecode(name, cacheKey());
             if (bc != null) {
                 directLoad(bc);
                 if (Logger.isTraceEnabled()) {
@@ -65,6 +65,14 @@ public abstract class BaseTemplate extends Template {
         return false;
     }
 
+    /**
+     * The source the bytecode cache is keyed with: the same source compiles differently in the
+     * static compilation mode
+     */
+    String cacheKey() {
+        return GroovyTemplateCompiler.staticDispatch() ? source + "\n//static" : source;
+    }
+
     abstract void directLoad(byte[] code) throws Exception;
 
     void throwException(Throwable e) {
@@ -97,6 +105,10 @@ public abstract class BaseTemplate extends Template {
     public static ThreadLocal<BaseTemplate> layout = new ThreadLocal<BaseTemplate>();
     public static ThreadLocal<Map<Object, Object>> layoutData = new ThreadLocal<Map<Object, Object>>();
     public static ThreadLocal<BaseTemplate> currentTemplate = new ThreadLocal<BaseTemplate>();
+    /**
+     * The rendered template that #{doLayout/} writes when a layout is streamed, null otherwise
+     */
+    public static ThreadLocal<CharSequence> layoutBody = new ThreadLocal<CharSequence>();
 
     public static class RawData {
 
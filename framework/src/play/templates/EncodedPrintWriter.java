@@ -0,0 +1,149 @@
+package play.templates;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+
+/**
+ * A PrintWriter that encodes the text itself, so that text encoded beforehand (the static text of
+ * templates) can be written between it as bytes. The bytes are buffered and written to the
+ * stream in blocks of the buffer size.
+ */
+public class EncodedPrintWriter extends PrintWriter {
+
+    public final String encoding;
+    final OutputStream stream;
+    final CharsetEncoder encoder;
+    final byte[] buffer;
+    final ByteBuffer bytes;
+    /**
+     * The high surrogate at the end of the last text written, encoded with the next one
+     */
+    char pending;
+
+    public EncodedPrintWriter(OutputStream stream, String encoding) {
+        this(stream, encoding, 8192);
+    }
+
+    public EncodedPrintWriter(OutputStream stream, String encoding, int bufferSize) {
+        // Everything written goes through the methods below, the PrintWriter's own writer is unused
+        super(stream);
+        this.encoding = encoding;
+        this.stream = stream;
+        this.encoder = Charset.forName(encoding).newEncoder().onMalformedInput(CodingErrorAction.REPLACE).onUnmappableCharacter(CodingErrorAction.REPLACE);
+        this.buffer = new byte[bufferSize];
+        this.bytes = ByteBuffer.wrap(buffer);
+    }
+
+    /**
+     * Write text already encoded with this writer's encoding
+     */
+    public void writeEncoded(byte[] data) {
+        try {
+            encodePending();
+            if (data.length > bytes.remaining()) {
+                drain();
+            }
+            if (data.length >= buffer.length) {
+                stream.write(data);
+            } else {
+                bytes.put(data);
+            }
+        } catch (IOException e) {
+            setError();
+        }
+    }
+
+    @Override
+    public void write(int c) {
+        write(new char[]{(char) c}, 0, 1);
+    }
+
+    @Override
+    public void write(char[] buf, int off, int len) {
+        encode(CharBuffer.wrap(buf, off, len));
+    }
+
+    @Override
+    public void write(String s, int off, int len) {
+        encode(CharBuffer.wrap(s, off, off + len));
+    }
+
+    @Override
+    public void println() {
+        write(System.getProperty("line.separator"));
+    }
+
+    @Override
+    public void flush() {
+        try {
+            encodePending();
+            drain();
+            stream.flush();
+        } catch (IOException e) {
+            setError();
+        }
+    }
+
+    @Override
+    public void close() {
+        flush();
+        try {
+            stream.close();
+        } catch (IOException e) {
+            setError();
+        }
+    }
+
+    void encode(CharBuffer chars) {
+        try {
+            if (pending != 0 && chars.hasRemaining()) {
+                CharBuffer pair = CharBuffer.wrap(new char[]{pending, chars.get()});
+                pending = 0;
+                encode(pair, false);
+            }
+            encode(chars, false);
+        } catch (IOException e) {
+            setError();
+        }
+    }
+
+    void encode(CharBuffer chars, boolean endOfInput) throws IOException {
+        while (true) {
+            CoderResult result = encoder.encode(chars, bytes, endOfInput);
+            if (result.isOverflow()) {
+                drain();
+            } else {
+                break;
+            }
+        }
+        if (chars.hasRemaining()) {
+            pending = chars.get();
+        }
+    }
+
+    /**
+     * Encode a high surrogate that no low surrogate followed
+     */
+    void encodePending() throws IOException {
+        if (pending != 0) {
+            CharBuffer single = CharBuffer.wrap(new char[]{pending});
+            pending = 0;
+            encode(single, true);
+            encoder.reset();
+        }
+    }
+
+    void drain() throws IOException {
+        if (bytes.position() > 0) {
+            stream.write(buffer, 0, bytes.position());
+            bytes.clear();
+        }
+    }
+}
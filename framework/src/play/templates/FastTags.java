@@ -13,9 +13,9 @@ import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.Callable;
 
 import org.apache.commons.lang.StringUtils;
-import play.cache.Cache;
 import play.data.validation.Error;
 import play.data.validation.Validation;
 import play.exceptions.TagInternalException;
@@ -36,20 +36,25 @@ import play.utils.HTML;
  */
 public class FastTags {
 
-    public static void _cache(Map<?, ?> args, Closure body, PrintWriter out, ExecutableTemplate template, int fromLine) {
-        String key = args.get("arg").toString();
+    /**
+     * Cache the rendered body: #{cache 'sidebar', for:'10min', vary:lang}...#{/cache}. The key
+     * can also be given as key:..., and vary takes a value or a list of values.
+     */
+    public static void _cache(Map<?, ?> args, final Closure body, PrintWriter out, ExecutableTemplate template, int fromLine) {
+        Object key = args.containsKey("arg") ? args.get("arg") : args.get("key");
+        if (key == null) {
+            throw new TemplateExecutionException(template.template, fromLine, "Specify a cache key", new TagInternalException("Specify a cache key"));
+        }
         String duration = null;
         if (args.containsKey("for")) {
             duration = args.get("for").toString();
         }
-        Object cached = Cache.get(key);
-        if (cached != null) {
-            out.print(cached);
-            return;
-        }
-        String result = JavaExtensions.toString(body);
-        Cache.set(key, result, duration);
-        out.print(result);
+        out.print(FragmentCache.get(FragmentCache.key(key, args.get("vary")), duration, new Callable<String>() {
+
+            public String call() {
+                return JavaExtensions.toString(body);
+            }
+        }));
     }
 
     public static void _verbatim(Map<?, ?> args, Closure body, PrintWriter out, ExecutableTemplate template, int fromLine) {
@@ -270,7 +275,12 @@ public class FastTags {
     }
 
     public static void _doLayout(Map<?, ?> args, Closure body, PrintWriter out, ExecutableTemplate template, int fromLine) {
-        out.print("____%LAYOUT%____");
+        CharSequence layoutBody = BaseTemplate.layoutBody.get();
+        if (layoutBody != null) {
+            out.append(layoutBody);
+        } else {
+            out.print("____%LAYOUT%____");
+        }
     }
 
     public static void _get(Map<?, ?> args, Closure body, PrintWriter out, ExecutableTemplate template, int fromLine) {
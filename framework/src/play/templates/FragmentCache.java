@@ -0,0 +1,75 @@
+package play.templates;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import play.cache.Cache;
+
+/**
+ * The fragments of templates cached by #{cache}.
+ * <p/>
+ * When a fragment is missing from the cache, only one thread of this server renders it: the
+ * others rendering the same fragment wait for it and print its result. If it fails, they render
+ * the fragment themselves. See Cache.getOrCompute.
+ */
+public class FragmentCache {
+
+    public static final AtomicLong hits = new AtomicLong();
+    public static final AtomicLong misses = new AtomicLong();
+    /**
+     * Misses served by waiting for another thread to render the fragment
+     */
+    public static final AtomicLong waits = new AtomicLong();
+
+    /**
+     * Get a fragment from the cache, or render and cache it
+     * @param expiration the expiration of the fragment, as given to Cache.set, or null for the default
+     * @param render renders the fragment
+     */
+    public static String get(String key, String expiration, final Callable<String> render) {
+        Object cached = Cache.get(key);
+        if (cached != null) {
+            hits.incrementAndGet();
+            return cached.toString();
+        }
+        misses.incrementAndGet();
+        final AtomicBoolean rendered = new AtomicBoolean();
+        String result = Cache.getOrCompute(key, expiration, new Callable<String>() {
+
+            public String call() throws Exception {
+                rendered.set(true);
+                return render.call();
+            }
+        });
+        if (!rendered.get()) {
+            waits.incrementAndGet();
+        }
+        return result;
+    }
+
+    /**
+     * The key of a fragment that varies with some values
+     * @param vary a value, an array or a collection of values, or null
+     */
+    public static String key(Object key, Object vary) {
+        if (vary == null) {
+            return key.toString();
+        }
+        StringBuilder result = new StringBuilder(key.toString());
+        Iterable<?> values;
+        if (vary instanceof Object[]) {
+            values = Arrays.asList((Object[]) vary);
+        } else if (vary instanceof Iterable) {
+            values = (Iterable<?>) vary;
+        } else {
+            values = Collections.singleton(vary);
+        }
+        for (Object value : values) {
+            result.append('|').append(value);
+        }
+        return result.toString();
+    }
+}
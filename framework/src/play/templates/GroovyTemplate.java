@@ -13,10 +13,14 @@ import java.io.File;
 import java.io.FileOutputStream;
 import java.io.PrintWriter;
 import java.io.StringWriter;
+import java.io.UnsupportedEncodingException;
+import java.io.Writer;
 import java.lang.reflect.Field;
 import java.lang.reflect.Method;
 import java.net.URI;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.codehaus.groovy.control.CompilationUnit;
 import org.codehaus.groovy.control.CompilationUnit.GroovyClassOperation;
@@ -98,8 +102,36 @@ public class GroovyTemplate extends BaseTemplate {
         }
     }
 
+    /**
+     * The static text of the template, by encoding, encoded once. The texts are the string
+     * literals of the compiled template, so their hash code is computed once too.
+     */
+    final ConcurrentMap<String, ConcurrentMap<String, byte[]>> encodedTexts = new ConcurrentHashMap<String, ConcurrentMap<String, byte[]>>();
+
+    byte[] encode(String text, String encoding) {
+        ConcurrentMap<String, byte[]> texts = encodedTexts.get(encoding);
+        if (texts == null) {
+            texts = new ConcurrentHashMap<String, byte[]>();
+            ConcurrentMap<String, byte[]> existing = encodedTexts.putIfAbsent(encoding, texts);
+            if (existing != null) {
+                texts = existing;
+            }
+        }
+        byte[] encoded = texts.get(text);
+        if (encoded == null) {
+            try {
+                encoded = text.getBytes(encoding);
+            } catch (UnsupportedEncodingException e) {
+                throw new UnexpectedException(e);
+            }
+            texts.put(text, encoded);
+        }
+        return encoded;
+    }
+
     public void compile() {
         if (compiledTemplate == null) {
+            encodedTexts.clear();
             try {
                 long start = System.currentTimeMillis();
 
@@ -141,7 +173,7 @@ public class GroovyTemplate extends BaseTemplate {
                     sb.append("\n");
                 }
                 // Cache
-                BytecodeCache.cacheBytecode(sb.toString().getBytes("utf-8"), name, source);
+                BytecodeCache.cacheBytecode(sb.toString().getBytes("utf-8"), name, cacheKey());
                 compiledTemplate = tClassLoader.loadClass(groovyClassesForThisTemplate.get(0).getName());
                 if (System.getProperty("precompile") != null) {
                     try {
@@ -193,18 +225,9 @@ public class GroovyTemplate extends BaseTemplate {
 
     @Override
     protected String internalRender(Map<String, Object> args) {
-        compile();
-        Binding binding = new Binding(args);
-        binding.setVariable("play", new Play());
-        binding.setVariable("messages", new Messages());
-        binding.setVariable("lang", Lang.get());
-        // If current response-object is present, add _response_encoding'
-        Http.Response currentResponse = Http.Response.current();
-        if (currentResponse != null) {
-            binding.setVariable("_response_encoding", currentResponse.encoding);
-        }
         StringWriter writer = null;
         Boolean applyLayouts = false;
+        CharSequence outerLayoutBody = null;
 
         // must check if this is the first template being rendered..
         // If this template is called from inside another template,
@@ -217,8 +240,111 @@ public class GroovyTemplate extends BaseTemplate {
             applyLayouts = true;
             layout.set(null);
             writer = new StringWriter();
-            binding.setProperty("out", new PrintWriter(writer));
+            args.put("out", new PrintWriter(writer));
             currentTemplate.set(this);
+            // This rendering may happen while another template is streamed
+            outerLayoutBody = layoutBody.get();
+            layoutBody.remove();
+        }
+        try {
+            execute(args);
+        } finally {
+            if (outerLayoutBody != null) {
+                layoutBody.set(outerLayoutBody);
+            }
+        }
+        if (applyLayouts && layout.get() != null) {
+            Map<String, Object> layoutArgs = new HashMap<String, Object>(args);
+            layoutArgs.remove("out");
+            layoutArgs.put("_isLayout", true);
+            String layoutR = layout.get().internalRender(layoutArgs);
+
+            // Must replace '____%LAYOUT%____' inside the string layoutR with the content from writer..
+            final String whatToFind = "____%LAYOUT%____";
+            final int pos = layoutR.indexOf(whatToFind);
+            if (pos >=0) {
+                // prepending and appending directly to writer/buffer to prevent us
+                // from having to duplicate the string.
+                // this makes us use half of the memory!
+                writer.getBuffer().insert(0,layoutR.substring(0,pos));
+                writer.append(layoutR.substring(pos+whatToFind.length()));
+                return writer.toString().trim();
+            }
+            return layoutR;
+        }
+        if (writer != null) {
+            return writer.toString();
+        }
+        return null;
+    }
+
+    /**
+     * Render the template to a writer, its layouts first: only what a layout includes with
+     * #{doLayout/} is buffered, everything else is written as it is rendered. Unlike render(args),
+     * the result is not trimmed. Give an EncodedPrintWriter to write the static text of the
+     * templates as bytes encoded once.
+     */
+    @Override
+    public void render(Map<String, Object> args, Writer out) {
+        layout.set(null);
+        currentTemplate.set(this);
+        PrintWriter writer = out instanceof PrintWriter ? (PrintWriter) out : new PrintWriter(out);
+        internalStream(new HashMap<String, Object>(args), writer, null);
+        writer.flush();
+    }
+
+    /**
+     * Stream this template, or buffer it when it may extend a layout and stream the layout
+     * @param body what #{doLayout/} writes, null if this template is not a layout
+     */
+    void internalStream(Map<String, Object> args, PrintWriter out, CharSequence body) {
+        CharSequence outerLayoutBody = layoutBody.get();
+        layoutBody.set(body);
+        try {
+            if (!mayExtend()) {
+                args.put("out", out);
+                execute(args);
+                return;
+            }
+            StringWriter writer = new StringWriter();
+            args.put("out", new PrintWriter(writer));
+            execute(args);
+            GroovyTemplate layoutTemplate = (GroovyTemplate) layout.get();
+            if (layoutTemplate == null) {
+                out.append(writer.getBuffer());
+                return;
+            }
+            layout.set(null);
+            currentTemplate.set(layoutTemplate);
+            Map<String, Object> layoutArgs = new HashMap<String, Object>(args);
+            layoutArgs.remove("out");
+            layoutArgs.put("_isLayout", true);
+            layoutTemplate.internalStream(layoutArgs, out, writer.getBuffer());
+        } finally {
+            layoutBody.set(outerLayoutBody);
+        }
+    }
+
+    /**
+     * Whether the template may set a layout with #{extends}. Those that don't are streamed.
+     */
+    boolean mayExtend() {
+        return source == null || source.contains("extends");
+    }
+
+    /**
+     * Run the template, writing to the out argument
+     */
+    void execute(Map<String, Object> args) {
+        compile();
+        Binding binding = new Binding(args);
+        binding.setVariable("play", new Play());
+        binding.setVariable("messages", new Messages());
+        binding.setVariable("lang", Lang.get());
+        // If current response-object is present, add _response_encoding'
+        Http.Response currentResponse = Http.Response.current();
+        if (currentResponse != null) {
+            binding.setVariable("_response_encoding", currentResponse.encoding);
         }
         if (!args.containsKey("_body") && !args.containsKey("_isLayout") && !args.containsKey("_isInclude")) {
             layoutData.set(new HashMap<Object, Object>());
@@ -261,29 +387,6 @@ public class GroovyTemplate extends BaseTemplate {
                 monitor.stop();
             }
         }
-        if (applyLayouts && layout.get() != null) {
-            Map<String, Object> layoutArgs = new HashMap<String, Object>(args);
-            layoutArgs.remove("out");
-            layoutArgs.put("_isLayout", true);
-            String layoutR = layout.get().internalRender(layoutArgs);
-
-            // Must replace '____%LAYOUT%____' inside the string layoutR with the content from writer..
-            final String whatToFind = "____%LAYOUT%____";
-            final int pos = layoutR.indexOf(whatToFind);
-            if (pos >=0) {
-                // prepending and appending directly to writer/buffer to prevent us
-                // from having to duplicate the string.
-                // this makes us use half of the memory!
-                writer.getBuffer().insert(0,layoutR.substring(0,pos));
-                writer.append(layoutR.substring(pos+whatToFind.length()));
-                return writer.toString().trim();
-            }
-            return layoutR;
-        }
-        if (writer != null) {
-            return writer.toString();
-        }
-        return null;
     }
 
     Throwable cleanStackTrace(Throwable e) {
@@ -394,6 +497,22 @@ public class GroovyTemplate extends BaseTemplate {
             }
         }
 
+        /**
+         * Print static text of the template, already encoded when the output is encoded by an
+         * EncodedPrintWriter
+         */
+        public void __plain(String text) {
+            Object out = getBinding().getVariable("out");
+            if (out instanceof EncodedPrintWriter) {
+                EncodedPrintWriter writer = (EncodedPrintWriter) out;
+                writer.writeEncoded(template.encode(text, writer.encoding));
+            } else if (out instanceof PrintWriter) {
+                ((PrintWriter) out).print(text);
+            } else {
+                InvokerHelper.invokeMethod(out, "print", text);
+            }
+        }
+
         /**
          * This method is faster to call from groovy than __safe() since we only evaluate val.toString()
          * if we need to
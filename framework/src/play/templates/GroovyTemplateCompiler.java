@@ -3,13 +3,17 @@ package play.templates;
 import groovy.lang.Closure;
 import java.io.PrintWriter;
 import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.regex.Pattern;
+import play.Logger;
 import play.Play;
 import play.exceptions.TemplateCompilationException;
 import play.templates.GroovyInlineTags.CALL;
@@ -19,22 +23,39 @@ import play.templates.GroovyInlineTags.CALL;
  */
 public class GroovyTemplateCompiler extends TemplateCompiler {
 
-    public static List<String> extensionsClassnames = new ArrayList<String>();
+    public static volatile List<String> extensionsClassnames = new ArrayList<String>();
 
     // [#714] The groovy-compiler complaints if a line is more than 65535 unicode units long..
     // Have to split it if it is really that big
     protected static final int maxPlainTextLength = 60000;
 
 
+    /**
+     * Whether templates are compiled to call FastTags and JavaExtensions methods directly when
+     * they can: <code>play.templates.compilation=static</code>
+     */
+    public static boolean staticDispatch() {
+        return "static".equals(Play.configuration.getProperty("play.templates.compilation", "dynamic"));
+    }
+
+    boolean staticDispatch;
+    /**
+     * The types declared with *{@args name:Type, ...}*
+     */
+    Map<String, Class<?>> argTypes = new HashMap<String, Class<?>>();
+    Set<String> declaredArgs = new HashSet<String>();
+
     @Override
     public BaseTemplate compile(BaseTemplate template) {
+        staticDispatch = staticDispatch();
         try {
-            extensionsClassnames.clear();
-            extensionsClassnames.addAll( Play.pluginCollection.addTemplateExtensions());
+            // Replaced rather than cleared, templates may be compiled concurrently
+            List<String> classnames = new ArrayList<String>(Play.pluginCollection.addTemplateExtensions());
             List<Class<? extends JavaExtensions>> extensionsClasses = Play.classloader.getAssignableClasses(JavaExtensions.class);
             for (Class<? extends JavaExtensions> extensionsClass : extensionsClasses) {
-                extensionsClassnames.add(extensionsClass.getName());
+                classnames.add(extensionsClass.getName());
             }
+            extensionsClassnames = classnames;
         } catch (Throwable e) {
             //
         }
@@ -123,7 +144,7 @@ public class GroovyTemplateCompiler extends TemplateCompiler {
         String className = "Template_" + uniqueNumberForTemplateFile;
         print(className);
         println(" extends play.templates.GroovyTemplate.ExecutableTemplate {");
-        println("public Object run() { use(play.templates.JavaExtensions) {");
+        println("public Object run() { def __encoded = out instanceof play.templates.EncodedPrintWriter; use(play.templates.JavaExtensions) {");
         for (String n : extensionsClassnames) {
             println("use(_('" + n + "')) {");
         }
@@ -145,6 +166,8 @@ public class GroovyTemplateCompiler extends TemplateCompiler {
      * Calling print(); from java (in ExecutableTemplate) called from groovy is MUCH slower than
      * java returning string to groovy
      * which then prints with out.print();
+     * Static text is the exception when the output is an EncodedPrintWriter: __plain() writes it
+     * already encoded, which saves more than the call costs.
      */
 
     @Override
@@ -161,7 +184,7 @@ public class GroovyTemplateCompiler extends TemplateCompiler {
         // Have to split it if it is really that big
         if (text.length() <maxPlainTextLength) {
             // text is "short" - just print it
-            println("out.print(\""+text+"\");");
+            printPlain(text);
         } else {
             // text is long - must split it
             int offset = 0;
@@ -177,12 +200,20 @@ public class GroovyTemplateCompiler extends TemplateCompiler {
                         endPos++;
                     }
                 }
-                println("out.print(\""+text.substring(offset, endPos)+"\");");
+                printPlain(text.substring(offset, endPos));
                 offset+= (endPos - offset);
             }while(offset < text.length());
         }
     }
 
+    void printPlain(String text) {
+        println("if (__encoded) {");
+        println("__plain(\""+text+"\");");
+        println("} else {");
+        println("out.print(\""+text+"\");");
+        println("}");
+    }
+
     @Override
     void script() {
         String text = parser.getToken();
@@ -201,9 +232,66 @@ public class GroovyTemplateCompiler extends TemplateCompiler {
         skipLineBreak = true;
     }
 
+    /**
+     * In static mode, *{@args name:Type, ...}* declares the types of some args (render args,
+     * tag args...): they are read once from the binding, and the JavaExtensions methods called
+     * on them are called directly. Args whose name appears as a string in the template, such as
+     * the as:'name' of a #{list}, stay in the binding.
+     */
+    @Override
+    void comment() {
+        String text = parser.getToken().trim();
+        if (staticDispatch && text.startsWith("@args")) {
+            for (String declaration : splitTopLevel(text.substring(5).trim(), ',')) {
+                int colon = declaration.indexOf(':');
+                if (colon <= 0) {
+                    throw new TemplateCompilationException(template, parser.getLine(), "Declare args as name:Type, not " + declaration.trim());
+                }
+                String name = declaration.substring(0, colon).trim();
+                String typeName = declaration.substring(colon + 1).trim();
+                if (typeName.indexOf('<') > 0) {
+                    typeName = typeName.substring(0, typeName.indexOf('<')).trim();
+                }
+                Class<?> type = loadType(typeName);
+                if (type != null) {
+                    argTypes.put(name, type);
+                }
+                String source = template.source;
+                if (!declaredArgs.contains(name) && !source.contains("'" + name + "'") && !source.contains("\"" + name + "\"")) {
+                    declaredArgs.add(name);
+                    print("def " + name + " = getBinding().getVariables().get('" + name + "');");
+                }
+            }
+            markLine(parser.getLine());
+            println();
+        }
+        skipLineBreak = true;
+    }
+
+    static Class<?> loadType(String name) {
+        String[] candidates = name.indexOf('.') < 0 ? new String[]{"java.lang." + name, "java.util." + name, name} : new String[]{name};
+        for (String candidate : candidates) {
+            try {
+                return Play.classloader.loadClass(candidate);
+            } catch (Exception e) {
+                // try the next one
+            } catch (NoClassDefFoundError e) {
+                // try the next one
+            }
+        }
+        Logger.warn("Unknown type %s declared in a template, it will be dispatched dynamically", name);
+        return null;
+    }
+
     @Override
     void expr() {
         String expr = parser.getToken().trim();
+        if (staticDispatch) {
+            String direct = directExtensionCall(expr);
+            if (direct != null) {
+                expr = direct;
+            }
+        }
         print(";out.print(__safeFaster("+expr+"))");
         markLine(parser.getLine());
         println();
@@ -366,7 +454,11 @@ public class GroovyTemplateCompiler extends TemplateCompiler {
                 }
                 if (m != null) {
                     print("play.templates.TagContext.enterTag('" + tag.name + "');");
-                    print("_('" + m.getDeclaringClass().getName() + "')._" + tName + "(attrs" + tagIndex + ",body" + tagIndex + ", out, this, " + tag.startLine + ");");
+                    if (staticDispatch && !isApplicationClass(m.getDeclaringClass())) {
+                        print(m.getDeclaringClass().getName() + "._" + tName + "(attrs" + tagIndex + ",body" + tagIndex + ", out, this, " + tag.startLine + ");");
+                    } else {
+                        print("_('" + m.getDeclaringClass().getName() + "')._" + tName + "(attrs" + tagIndex + ",body" + tagIndex + ", out, this, " + tag.startLine + ");");
+                    }
                     print("play.templates.TagContext.exitTag();");
                 } else {
                     print("invokeTag(" + tag.startLine + ",'" + tagName + "',attrs" + tagIndex + ",body" + tagIndex + ");");
@@ -378,6 +470,229 @@ public class GroovyTemplateCompiler extends TemplateCompiler {
         tagIndex--;
         skipLineBreak = true;
     }
+
+    // ~~~~~~~~~ Static dispatch
+
+    /**
+     * Classes that are reloaded with the application, and must be looked up by name
+     */
+    static boolean isApplicationClass(Class<?> c) {
+        return c.getName().indexOf('$') >= 0 || (Play.classes != null && Play.classes.getApplicationClass(c.getName()) != null);
+    }
+
+    /**
+     * Rewrite an expression ending with calls to JavaExtensions methods, such as
+     * post.content.nl2br() or post.comments.size().pluralize(), as direct calls of these methods
+     * when the type of their receiver is known: it starts with an arg whose type is declared,
+     * followed by public fields, getters, methods without parameters or other extensions.
+     * @return the rewritten expression, or null to dispatch it dynamically
+     */
+    String directExtensionCall(String expr) {
+        int pos = identifierEnd(expr, 0);
+        if (pos == 0) {
+            return null;
+        }
+        String receiver = expr.substring(0, pos);
+        Class<?> type = argTypes.get(receiver);
+        boolean rewritten = false;
+        while (type != null && pos < expr.length()) {
+            if (expr.charAt(pos) != '.') {
+                return null;
+            }
+            int nameEnd = identifierEnd(expr, pos + 1);
+            if (nameEnd == pos + 1) {
+                return null;
+            }
+            String name = expr.substring(pos + 1, nameEnd);
+            if (nameEnd < expr.length() && expr.charAt(nameEnd) == '(') {
+                int close = closingParenthesis(expr, nameEnd);
+                if (close < 0) {
+                    return null;
+                }
+                String args = expr.substring(nameEnd + 1, close).trim();
+                Class<?> returned = args.length() == 0 ? returnType(type, name) : null;
+                if (returned != null) {
+                    receiver += expr.substring(pos, close + 1);
+                    type = returned;
+                } else {
+                    // Methods of the class itself have priority over the extensions
+                    for (Method m : type.getMethods()) {
+                        if (m.getName().equals(name)) {
+                            return null;
+                        }
+                    }
+                    int argsCount = args.length() == 0 ? 0 : splitTopLevel(args, ',').size();
+                    Method extension = extension(type, name, argsCount);
+                    if (extension == null) {
+                        return null;
+                    }
+                    receiver = JavaExtensions.class.getName() + "." + name + "(" + receiver + (argsCount > 0 ? ", " + args : "") + ")";
+                    type = extension.getReturnType();
+                    rewritten = true;
+                }
+                pos = close + 1;
+            } else {
+                receiver += expr.substring(pos, nameEnd);
+                type = propertyType(type, name);
+                pos = nameEnd;
+            }
+        }
+        return type != null && rewritten ? receiver : null;
+    }
+
+    /**
+     * The JavaExtensions method applying to this type, if there is exactly one that is not
+     * redefined by another template extension
+     */
+    static Method extension(Class<?> type, String method, int argsCount) {
+        Method extension = null;
+        for (Method m : JavaExtensions.class.getMethods()) {
+            if (m.getName().equals(method) && Modifier.isStatic(m.getModifiers()) && m.getParameterTypes().length == argsCount + 1 && boxed(m.getParameterTypes()[0]).isAssignableFrom(boxed(type))) {
+                if (extension != null) {
+                    // Overloaded, depends on the types of the arguments
+                    return null;
+                }
+                extension = m;
+            }
+        }
+        if (extension == null || isOverridden(method)) {
+            return null;
+        }
+        return extension;
+    }
+
+    /**
+     * Whether a template extension of the application or a plugin defines this method too
+     */
+    static boolean isOverridden(String method) {
+        for (String className : extensionsClassnames) {
+            try {
+                for (Method m : Play.classloader.loadClass(className).getDeclaredMethods()) {
+                    if (m.getName().equals(method)) {
+                        return true;
+                    }
+                }
+            } catch (Exception e) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    static Class<?> propertyType(Class<?> type, String name) {
+        try {
+            return type.getField(name).getType();
+        } catch (NoSuchFieldException e) {
+            String suffix = Character.toUpperCase(name.charAt(0)) + name.substring(1);
+            Class<?> getter = returnType(type, "get" + suffix);
+            return getter != null ? getter : returnType(type, "is" + suffix);
+        }
+    }
+
+    static Class<?> returnType(Class<?> type, String method) {
+        try {
+            Class<?> returned = type.getMethod(method).getReturnType();
+            return returned == void.class ? null : returned;
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+
+    static Class<?> boxed(Class<?> type) {
+        if (!type.isPrimitive()) {
+            return type;
+        }
+        if (type == int.class) {
+            return Integer.class;
+        }
+        if (type == long.class) {
+            return Long.class;
+        }
+        if (type == boolean.class) {
+            return Boolean.class;
+        }
+        if (type == double.class) {
+            return Double.class;
+        }
+        if (type == float.class) {
+            return Float.class;
+        }
+        if (type == short.class) {
+            return Short.class;
+        }
+        if (type == byte.class) {
+            return Byte.class;
+        }
+        return Character.class;
+    }
+
+    static int identifierEnd(String expr, int start) {
+        int pos = start;
+        while (pos < expr.length() && (pos == start ? Character.isJavaIdentifierStart(expr.charAt(pos)) : Character.isJavaIdentifierPart(expr.charAt(pos)))) {
+            pos++;
+        }
+        return pos;
+    }
+
+    /**
+     * The position of the parenthesis closing the one at open, skipping nested brackets and strings
+     * @return the position, or -1
+     */
+    static int closingParenthesis(String expr, int open) {
+        int depth = 0;
+        char quote = 0;
+        for (int i = open; i < expr.length(); i++) {
+            char c = expr.charAt(i);
+            if (quote != 0) {
+                if (c == '\\') {
+                    i++;
+                } else if (c == quote) {
+                    quote = 0;
+                }
+            } else if (c == '\'' || c == '"') {
+                quote = c;
+            } else if (c == '(' || c == '[' || c == '{') {
+                depth++;
+            } else if (c == ')' || c == ']' || c == '}') {
+                depth--;
+                if (depth == 0) {
+                    return c == ')' ? i : -1;
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Split on a separator that is not in brackets or strings
+     */
+    static List<String> splitTopLevel(String text, char separator) {
+        List<String> parts = new ArrayList<String>();
+        int depth = 0;
+        char quote = 0;
+        int start = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (quote != 0) {
+                if (c == '\\') {
+                    i++;
+                } else if (c == quote) {
+                    quote = 0;
+                }
+            } else if (c == '\'' || c == '"') {
+                quote = c;
+            } else if (c == '(' || c == '[' || c == '{' || c == '<') {
+                depth++;
+            } else if (c == ')' || c == ']' || c == '}' || c == '>') {
+                depth--;
+            } else if (c == separator && depth == 0) {
+                parts.add(text.substring(start, i));
+                start = i + 1;
+            }
+        }
+        parts.add(text.substring(start));
+        return parts;
+    }
 }
 
 
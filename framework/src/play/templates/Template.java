@@ -1,8 +1,12 @@
 package play.templates;
 
+import java.io.IOException;
+import java.io.Writer;
 import java.util.HashMap;
 import java.util.Map;
 
+import play.exceptions.UnexpectedException;
+
 public abstract class Template {
 
     public String name;
@@ -27,6 +31,20 @@ public abstract class Template {
     }
 
 
+    /**
+     * Starts the rendering process without modifying the args-map, writing the result as it
+     * is rendered when the template engine can
+     * @param args map containing data binding info
+     * @param out where to write the result, not flushed
+     */
+    public void render(Map<String, Object> args, Writer out) {
+        try {
+            out.write(render(args));
+        } catch (IOException e) {
+            throw new UnexpectedException(e);
+        }
+    }
+
     /**
      * The internal rendering method - When one templated calls another template,
      * this method is used. The input args-map is constantly being modified, as different
@@ -84,7 +84,7 @@ public abstract class TemplateCompiler {
                     action(true);
                     break;
                 case COMMENT:
-                    skipLineBreak = true;
+                    comment();
                     break;
                 case START_TAG:
                     startTag();
@@ -125,6 +125,10 @@ public abstract class TemplateCompiler {
 
     abstract void expr();
 
+    void comment() {
+        skipLineBreak = true;
+    }
+
     abstract void message();
 
     abstract void action(boolean absolute);
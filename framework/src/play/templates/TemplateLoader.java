@@ -1,9 +1,16 @@
 package play.templates;
 
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicLong;
 
 import play.Logger;
@@ -11,18 +18,20 @@ import play.Play;
 import play.vfs.VirtualFile;
 import play.exceptions.TemplateCompilationException;
 import play.exceptions.TemplateNotFoundException;
+import play.exceptions.UnexpectedException;
+import play.utils.PThreadFactory;
 
 /**
  * Load templates
  */
 public class TemplateLoader {
 
-    protected static Map<String, BaseTemplate> templates = new HashMap<String, BaseTemplate>();
+    protected static Map<String, BaseTemplate> templates = new ConcurrentHashMap<String, BaseTemplate>();
     /**
      * See getUniqueNumberForTemplateFile() for more info
      */
     private static AtomicLong nextUniqueNumber = new AtomicLong(1000);//we start on 1000
-    private static Map<String, String> templateFile2UniqueNumber = new HashMap<String, String>();
+    private static ConcurrentHashMap<String, String> templateFile2UniqueNumber = new ConcurrentHashMap<String, String>();
 
     /**
      * All loaded templates is cached in the templates-list using a key.
@@ -45,7 +54,10 @@ public class TemplateLoader {
         if (uniqueNumber == null) {
             //this is the first time we see this path - must assign a unique number to it.
             uniqueNumber = Long.toString(nextUniqueNumber.getAndIncrement());
-            templateFile2UniqueNumber.put(path, uniqueNumber);
+            String existing = templateFile2UniqueNumber.putIfAbsent(path, uniqueNumber);
+            if (existing != null) {
+                uniqueNumber = existing;
+            }
         }
         return uniqueNumber;
     }
@@ -196,45 +208,105 @@ public class TemplateLoader {
     }
 
     /**
-     * List all found templates
+     * List all found templates, compiling them on <code>play.templates.precompile.threads</code>
+     * threads (the number of processors by default)
      * @return A list of executable templates
      */
     public static List<Template> getAllTemplate() {
-        List<Template> res = new ArrayList<Template>();
+        List<VirtualFile> files = new ArrayList<VirtualFile>();
         for (VirtualFile virtualFile : Play.templatesPath) {
-            scan(res, virtualFile);
+            scan(files, virtualFile);
         }
+        int listed = files.size();
         for (VirtualFile root : Play.roots) {
             VirtualFile vf = root.child("conf/routes");
             if (vf != null && vf.exists()) {
-                Template template = load(vf);
-                if (template != null) {
-                    template.compile();
+                files.add(vf);
+            }
+        }
+        int threads = Integer.parseInt(Play.configuration.getProperty("play.templates.precompile.threads", Runtime.getRuntime().availableProcessors() + ""));
+        long start = System.currentTimeMillis();
+        List<Compilation> compilations = new ArrayList<Compilation>();
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, threads), new PThreadFactory("templates"));
+        try {
+            List<Future<Compilation>> results = new ArrayList<Future<Compilation>>();
+            for (VirtualFile file : files) {
+                results.add(executor.submit(new Compilation(file, Thread.currentThread().getContextClassLoader())));
+            }
+            for (Future<Compilation> result : results) {
+                try {
+                    compilations.add(result.get());
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof TemplateCompilationException) {
+                        TemplateCompilationException compilationException = (TemplateCompilationException) e.getCause();
+                        Logger.error("Template %s does not compile at line %d", compilationException.getTemplate().name, compilationException.getLineNumber());
+                    }
+                    if (e.getCause() instanceof RuntimeException) {
+                        throw (RuntimeException) e.getCause();
+                    }
+                    throw new UnexpectedException(e.getCause());
+                } catch (InterruptedException e) {
+                    throw new UnexpectedException(e);
                 }
             }
+        } finally {
+            executor.shutdownNow();
+        }
+        List<Template> res = new ArrayList<Template>();
+        for (Compilation compilation : compilations.subList(0, listed)) {
+            if (compilation.template != null) {
+                res.add(compilation.template);
+            }
         }
+        Collections.sort(compilations, new Comparator<Compilation>() {
+            public int compare(Compilation c1, Compilation c2) {
+                return c1.time < c2.time ? 1 : (c1.time == c2.time ? 0 : -1);
+            }
+        });
+        StringBuilder slowest = new StringBuilder();
+        for (Compilation compilation : compilations.subList(0, Math.min(5, compilations.size()))) {
+            slowest.append(slowest.length() == 0 ? "" : ", ").append(compilation.file.relativePath()).append(" (").append(compilation.time).append("ms)");
+        }
+        Logger.info("%d templates compiled in %sms on %d threads, slowest: %s", compilations.size(), System.currentTimeMillis() - start, threads, slowest);
         return res;
     }
 
-    private static void scan(List<Template> templates, VirtualFile current) {
-        if (!current.isDirectory() && !current.getName().startsWith(".")) {
+    /**
+     * The loading and compilation of a template file, timed
+     */
+    static class Compilation implements Callable<Compilation> {
+
+        final VirtualFile file;
+        final ClassLoader classLoader;
+        Template template;
+        long time;
+
+        Compilation(VirtualFile file, ClassLoader classLoader) {
+            this.file = file;
+            this.classLoader = classLoader;
+        }
+
+        public Compilation call() {
+            Thread.currentThread().setContextClassLoader(classLoader);
             long start = System.currentTimeMillis();
-            Template template = load(current);
+            template = load(file);
             if (template != null) {
-                try {
-                    template.compile();
-                    if (Logger.isTraceEnabled()) {
-                        Logger.trace("%sms to load %s", System.currentTimeMillis() - start, current.getName());
-                    }
-                } catch (TemplateCompilationException e) {
-                    Logger.error("Template %s does not compile at line %d", e.getTemplate().name, e.getLineNumber());
-                    throw e;
-                }
-                templates.add(template);
+                template.compile();
             }
+            time = System.currentTimeMillis() - start;
+            if (Logger.isDebugEnabled()) {
+                Logger.debug("%sms to compile %s", time, file.relativePath());
+            }
+            return this;
+        }
+    }
+
+    private static void scan(List<VirtualFile> files, VirtualFile current) {
+        if (!current.isDirectory() && !current.getName().startsWith(".")) {
+            files.add(current);
         } else if (!current.getName().startsWith(".")) {
             for (VirtualFile virtualFile : current.list()) {
-                scan(templates, virtualFile);
+                scan(files, virtualFile);
             }
         }
     }
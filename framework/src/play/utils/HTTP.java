@@ -1,5 +1,8 @@
 package play.utils;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 import java.util.HashMap;
 
@@ -24,6 +27,128 @@ public class HTTP {
         }
     }
 
+    /**
+     * A satisfiable byte range of an entity, bounds are inclusive
+     */
+    public static class ByteRange implements Comparable<ByteRange> {
+        public final long start;
+        public final long end;
+
+        public ByteRange(long start, long end) {
+            this.start = start;
+            this.end = end;
+        }
+
+        public long length() {
+            return end - start + 1;
+        }
+
+        public String toContentRange(long entityLength) {
+            return "bytes " + start + "-" + end + "/" + entityLength;
+        }
+
+        public int compareTo(ByteRange other) {
+            return start < other.start ? -1 : (start == other.start ? 0 : 1);
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof ByteRange && ((ByteRange) other).start == start && ((ByteRange) other).end == end;
+        }
+
+        @Override
+        public int hashCode() {
+            return (int) (start ^ (end >>> 32) ^ end);
+        }
+
+        @Override
+        public String toString() {
+            return start + "-" + end;
+        }
+    }
+
+    /**
+     * Parse the value of a Range header against an entity of the given length.
+     * Overlapping and adjacent ranges are coalesced.
+     * @param value the Range header value, for example <code>bytes=0-499,-500</code>
+     * @param entityLength the length of the entity
+     * @return the satisfiable ranges, an empty list if none of them can be satisfied (416),
+     *         or null if the header is invalid and must be ignored
+     */
+    public static List<ByteRange> parseRange(String value, long entityLength) {
+        if (value == null) {
+            return null;
+        }
+        final int eq = value.indexOf('=');
+        if (eq == -1 || !"bytes".equalsIgnoreCase(value.substring(0, eq).trim())) {
+            return null;
+        }
+        final List<ByteRange> ranges = new ArrayList<ByteRange>();
+        int specs = 0;
+        for (String spec : value.substring(eq + 1).split(",")) {
+            spec = spec.trim();
+            if (spec.length() == 0) {
+                continue;
+            }
+            specs++;
+            final int dash = spec.indexOf('-');
+            if (dash == -1) {
+                return null;
+            }
+            final long start;
+            final long end;
+            try {
+                if (dash == 0) {
+                    // Suffix range: the last n bytes
+                    final long suffix = Long.parseLong(spec.substring(1).trim());
+                    if (suffix < 0) {
+                        return null;
+                    }
+                    if (suffix == 0 || entityLength == 0) {
+                        continue;
+                    }
+                    start = Math.max(0, entityLength - suffix);
+                    end = entityLength - 1;
+                } else {
+                    start = Long.parseLong(spec.substring(0, dash).trim());
+                    final String last = spec.substring(dash + 1).trim();
+                    final long requestedEnd = last.length() == 0 ? Long.MAX_VALUE : Long.parseLong(last);
+                    if (start < 0 || requestedEnd < start) {
+                        return null;
+                    }
+                    if (start >= entityLength) {
+                        continue;
+                    }
+                    end = Math.min(requestedEnd, entityLength - 1);
+                }
+            } catch (NumberFormatException e) {
+                return null;
+            }
+            ranges.add(new ByteRange(start, end));
+        }
+        if (specs == 0) {
+            // No range at all, as in "bytes="
+            return null;
+        }
+        if (ranges.size() <= 1) {
+            return ranges;
+        }
+        Collections.sort(ranges);
+        final List<ByteRange> coalesced = new ArrayList<ByteRange>(ranges.size());
+        ByteRange current = ranges.get(0);
+        for (int i = 1; i < ranges.size(); i++) {
+            final ByteRange next = ranges.get(i);
+            if (next.start <= current.end + 1) {
+                current = new ByteRange(current.start, Math.max(current.end, next.end));
+            } else {
+                coalesced.add(current);
+                current = next;
+            }
+        }
+        coalesced.add(current);
+        return coalesced;
+    }
+
     public static ParameterizedHeaderValue parseParameterizedHeaderValue(String value) {
         final String[] parts = value.split(";");
         final Map<String, String> params = new HashMap<String, String>();
@@ -0,0 +1,51 @@
+package play.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+/**
+ * A FutureTask that calls back when it completes, normally, with an exception or by being cancelled.
+ * Requests suspended on such a task are resumed as soon as it is done, without polling.
+ */
+public class NotifyingFutureTask<V> extends FutureTask<V> {
+
+    private List<Action<Future<V>>> callbacks = new ArrayList<Action<Future<V>>>(1);
+    private boolean completed = false;
+
+    public NotifyingFutureTask(Callable<V> callable) {
+        super(callable);
+    }
+
+    public NotifyingFutureTask(Runnable runnable, V result) {
+        super(runnable, result);
+    }
+
+    @Override
+    protected void done() {
+        List<Action<Future<V>>> toCall;
+        synchronized (this) {
+            completed = true;
+            toCall = callbacks;
+            callbacks = null;
+        }
+        for (Action<Future<V>> callback : toCall) {
+            callback.invoke(this);
+        }
+    }
+
+    /**
+     * Register a callback, called at once if the task is already done
+     */
+    public void onCompletion(Action<Future<V>> callback) {
+        synchronized (this) {
+            if (!completed) {
+                callbacks.add(callback);
+                return;
+            }
+        }
+        callback.invoke(this);
+    }
+}
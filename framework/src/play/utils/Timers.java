@@ -0,0 +1,95 @@
+package play.utils;
+
+import org.jboss.netty.util.HashedWheelTimer;
+import org.jboss.netty.util.Timeout;
+import org.jboss.netty.util.TimerTask;
+import play.Play;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Shared hashed-wheel timer for short lived delays: F.Timeout, await(millis) and delayed invocations.
+ * Scheduling and cancelling a delay are constant time operations, which matters when thousands
+ * of delays are pending and most of them are cancelled before they expire.
+ * <p/>
+ * Delays are rounded up to the timer tick (<code>play.timer.tick</code>, in milliseconds, 10 by default).
+ * Expired tasks run on the timer thread, so they must only hand the work over to an executor.
+ */
+public class Timers {
+
+    private static HashedWheelTimer timer;
+
+    static synchronized HashedWheelTimer getTimer() {
+        if (timer == null) {
+            long tick = Long.parseLong(Play.configuration.getProperty("play.timer.tick", "10"));
+            int ticksPerWheel = Integer.parseInt(Play.configuration.getProperty("play.timer.ticksPerWheel", "512"));
+            timer = new HashedWheelTimer(new ThreadFactory() {
+
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "play-timer");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            }, tick, TimeUnit.MILLISECONDS, ticksPerWheel);
+        }
+        return timer;
+    }
+
+    /**
+     * Run a task on the timer thread after a delay
+     * @param task a short task
+     * @param delay the delay, in milliseconds
+     * @return the timeout, to cancel the task
+     */
+    public static Timeout schedule(final Runnable task, long delay) {
+        return getTimer().newTimeout(new TimerTask() {
+
+            public void run(Timeout timeout) {
+                task.run();
+            }
+        }, delay, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Run a task on an executor after a delay
+     * @param task the task
+     * @param delay the delay, in milliseconds
+     * @param executor the executor that runs the task
+     * @return the future of the task. Cancelling it cancels the delay.
+     */
+    public static <V> Future<V> schedule(Callable<V> task, long delay, final Executor executor) {
+        final DelayedTask<V> future = new DelayedTask<V>(task);
+        future.timeout = schedule(new Runnable() {
+
+            public void run() {
+                if (!future.isCancelled()) {
+                    executor.execute(future);
+                }
+            }
+        }, delay);
+        return future;
+    }
+
+    static class DelayedTask<V> extends NotifyingFutureTask<V> {
+
+        volatile Timeout timeout;
+
+        DelayedTask(Callable<V> callable) {
+            super(callable);
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            boolean cancelled = super.cancel(mayInterruptIfRunning);
+            Timeout timeout = this.timeout;
+            if (cancelled && timeout != null) {
+                timeout.cancel();
+            }
+            return cancelled;
+        }
+    }
+}
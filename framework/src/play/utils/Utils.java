@@ -5,6 +5,7 @@ import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Comparator;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Iterator;
@@ -12,7 +13,9 @@ import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.SortedMap;
 import java.util.TimeZone;
+import java.util.TreeMap;
 
 import play.Play;
 import play.mvc.Scope;
@@ -81,6 +84,28 @@ public class Utils {
      */
     public static class Maps {
 
+        /**
+         * The natural order of strings, with null first: the order of the params, which may have a null name
+         */
+        public static final Comparator<String> NULLS_FIRST = new Comparator<String>() {
+
+            public int compare(String a, String b) {
+                if (a == null) {
+                    return b == null ? 0 : -1;
+                }
+                return b == null ? 1 : a.compareTo(b);
+            }
+        };
+
+        /**
+         * @return a copy of the map sorted as the params are, by name with null first
+         */
+        public static <V> TreeMap<String, V> sorted(Map<String, V> map) {
+            TreeMap<String, V> sorted = new TreeMap<String, V>(NULLS_FIRST);
+            sorted.putAll(map);
+            return sorted;
+        }
+
         public static void mergeValueInMap(Map<String, String[]> map, String name, String value) {
             String[] newValues = null;
             String[] oldValues = map.get(name);
@@ -96,11 +121,44 @@ public class Utils {
         }
 
         public static void mergeValueInMap(Map<String, String[]> map, String name, String[] values) {
-            for (String value : values) {
-                mergeValueInMap(map, name, value);
+            String[] oldValues = map.get(name);
+            if (oldValues == null) {
+                map.put(name, values.clone());
+            } else {
+                String[] newValues = new String[oldValues.length + values.length];
+                System.arraycopy(oldValues, 0, newValues, 0, oldValues.length);
+                System.arraycopy(values, 0, newValues, oldValues.length, values.length);
+                map.put(name, newValues);
             }
         }
 
+        /**
+         * The entries of a map whose keys start with a prefix.
+         * For a SortedMap in the natural order (null first or not) this is a view found in O(log n),
+         * other maps are scanned.
+         */
+        @SuppressWarnings("unchecked")
+        public static <V> Map<String, V> startingWith(Map<String, V> map, String prefix) {
+            if (map instanceof SortedMap && isNaturalOrder(((SortedMap<String, V>) map).comparator()) && prefix.length() > 0) {
+                char last = prefix.charAt(prefix.length() - 1);
+                if (last != Character.MAX_VALUE) {
+                    String end = prefix.substring(0, prefix.length() - 1) + (char) (last + 1);
+                    return ((SortedMap<String, V>) map).subMap(prefix, end);
+                }
+            }
+            Map<String, V> result = new LinkedHashMap<String, V>();
+            for (Map.Entry<String, V> entry : map.entrySet()) {
+                if (entry.getKey() != null && entry.getKey().startsWith(prefix)) {
+                    result.put(entry.getKey(), entry.getValue());
+                }
+            }
+            return result;
+        }
+
+        static boolean isNaturalOrder(Comparator<?> comparator) {
+            return comparator == null || comparator == NULLS_FIRST;
+        }
+
         public static <K, V> Map<K, V> filterMap(Map<K, V> map, String keypattern) {
             try {
                 @SuppressWarnings("unchecked")
@@ -144,13 +202,11 @@ public class Utils {
     public static Map<String, String> filterParams(Map<String, String[]> params, String prefix, String separator) {
         Map<String, String> filteredMap = new LinkedHashMap<String, String>();
         prefix += ".";
-        for(Map.Entry<String, String[]> e: params.entrySet()){
-            if(e.getKey().startsWith(prefix)) {
-                filteredMap.put(
-                        e.getKey().substring(prefix.length()),
-                        Utils.join(e.getValue(), separator)
-                );
-            }
+        for(Map.Entry<String, String[]> e: Maps.startingWith(params, prefix).entrySet()){
+            filteredMap.put(
+                    e.getKey().substring(prefix.length()),
+                    Utils.join(e.getValue(), separator)
+            );
         }
         return filteredMap;
     }
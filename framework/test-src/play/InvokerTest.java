@@ -0,0 +1,99 @@
+package play;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import play.libs.F;
+import play.utils.NotifyingFutureTask;
+import play.utils.SmartFuture;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class InvokerTest {
+
+    @BeforeClass
+    public static void setUp() {
+        new PlayBuilder().build();
+    }
+
+    static class CountingInvocation extends Invoker.Invocation {
+
+        final CountDownLatch ran = new CountDownLatch(1);
+
+        @Override
+        public void execute() {
+        }
+
+        @Override
+        public Invoker.InvocationContext getInvocationContext() {
+            return new Invoker.InvocationContext("Test");
+        }
+
+        @Override
+        public void run() {
+            ran.countDown();
+        }
+    }
+
+    @Test
+    public void verifyThatPromisesResumeOnRedeem() throws Exception {
+        F.Promise<String> promise = new F.Promise<String>();
+        CountingInvocation invocation = new CountingInvocation();
+        Invoker.WaitForTasksCompletion.waitFor(promise, invocation);
+        assertThat(Invoker.WaitForTasksCompletion.waitingForCallback.get()).isEqualTo(1);
+        promise.invoke("done");
+        assertThat(invocation.ran.await(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(Invoker.WaitForTasksCompletion.waitingForCallback.get()).isEqualTo(0);
+    }
+
+    @Test
+    public void verifyThatNotifyingTasksResumeOnCompletion() throws Exception {
+        NotifyingFutureTask<Boolean> task = new NotifyingFutureTask<Boolean>(new Callable<Boolean>() {
+            public Boolean call() {
+                return true;
+            }
+        });
+        CountingInvocation invocation = new CountingInvocation();
+        Invoker.WaitForTasksCompletion.waitFor(task, invocation);
+        assertThat(Invoker.WaitForTasksCompletion.waitingForPolling.get()).isEqualTo(0);
+        task.run();
+        assertThat(invocation.ran.await(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(Invoker.WaitForTasksCompletion.waitingForCallback.get()).isEqualTo(0);
+    }
+
+    @Test
+    public void verifyThatOtherFuturesArePolled() throws Exception {
+        FutureTask<Boolean> task = new FutureTask<Boolean>(new Callable<Boolean>() {
+            public Boolean call() {
+                return true;
+            }
+        });
+        CountingInvocation invocation = new CountingInvocation();
+        Invoker.WaitForTasksCompletion.waitFor(task, invocation);
+        assertThat(Invoker.WaitForTasksCompletion.waitingForPolling.get()).isEqualTo(1);
+        task.run();
+        assertThat(invocation.ran.await(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(Invoker.WaitForTasksCompletion.waitingForPolling.get()).isEqualTo(0);
+    }
+
+    @Test
+    public void verifyThatFailedSmartFuturesResume() throws Exception {
+        FutureTask<Boolean> inner = new FutureTask<Boolean>(new Callable<Boolean>() {
+            public Boolean call() {
+                throw new IllegalStateException("failed");
+            }
+        });
+        SmartFuture<Boolean> future = new SmartFuture<Boolean>();
+        future.wrap(inner);
+        CountingInvocation invocation = new CountingInvocation();
+        Invoker.WaitForTasksCompletion.waitFor(future, invocation);
+        // Never redeemed
+        inner.run();
+        assertThat(invocation.ran.await(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(Invoker.WaitForTasksCompletion.waitingForCallback.get()).isEqualTo(0);
+    }
+}
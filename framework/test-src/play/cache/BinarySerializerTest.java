@@ -0,0 +1,237 @@
+package play.cache;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import play.Logger;
+import play.PlayBuilder;
+import play.exceptions.CacheException;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class BinarySerializerTest {
+
+    @BeforeClass
+    public static void setUp() {
+        new PlayBuilder().build();
+    }
+
+    public static class Base {
+
+        long id;
+    }
+
+    public static class Post extends Base implements Serializable {
+
+        String title;
+        String content;
+        Date postedAt;
+        int views;
+        List<String> tags;
+        transient String rendered;
+    }
+
+    /**
+     * Registered but not Serializable
+     */
+    public static class Node {
+
+        String name;
+        Node next;
+    }
+
+    static Post post(int i) {
+        Post post = new Post();
+        post.id = i;
+        post.title = "The post " + i;
+        post.content = "Lorem ipsum dolor sit amet, consectetur adipiscing elit, sed do eiusmod tempor incididunt ut labore et dolore magna aliqua.";
+        post.postedAt = new Date(1300000000000L + i);
+        post.views = i * 7;
+        post.tags = new ArrayList<String>(Arrays.asList("play", "cache"));
+        post.rendered = "<p>" + post.content + "</p>";
+        return post;
+    }
+
+    static BinarySerializer serializer() {
+        return new BinarySerializer(Arrays.<Class<?>>asList(Post.class, Node.class), 1024);
+    }
+
+    @SuppressWarnings("unchecked")
+    static <T> T roundTrip(BinarySerializer serializer, T value) {
+        return (T) serializer.deserialize(serializer.serialize(value));
+    }
+
+    @Test
+    public void verifyRoundTrips() {
+        BinarySerializer serializer = serializer();
+        assertThat((Object) roundTrip(serializer, null)).isNull();
+        assertThat(roundTrip(serializer, true)).isEqualTo(true);
+        assertThat(roundTrip(serializer, -5)).isEqualTo(-5);
+        assertThat(roundTrip(serializer, Long.MIN_VALUE)).isEqualTo(Long.MIN_VALUE);
+        assertThat(roundTrip(serializer, 3.25)).isEqualTo(3.25);
+        assertThat(roundTrip(serializer, -1.5f)).isEqualTo(-1.5f);
+        assertThat(roundTrip(serializer, (short) 300)).isEqualTo((short) 300);
+        assertThat(roundTrip(serializer, (byte) -2)).isEqualTo((byte) -2);
+        assertThat(roundTrip(serializer, 'é')).isEqualTo('é');
+        assertThat(roundTrip(serializer, "")).isEqualTo("");
+        assertThat(roundTrip(serializer, "ascii")).isEqualTo("ascii");
+        assertThat(roundTrip(serializer, "café 日本")).isEqualTo("café 日本");
+        assertThat(roundTrip(serializer, new byte[] {1, 2, 3})).isEqualTo(new byte[] {1, 2, 3});
+        assertThat(roundTrip(serializer, new Date(123456789L))).isEqualTo(new Date(123456789L));
+        assertThat(roundTrip(serializer, new BigDecimal("12.340"))).isEqualTo(new BigDecimal("12.340"));
+        Map<String, Object> map = new LinkedHashMap<String, Object>();
+        map.put("b", Arrays.asList(1, 2));
+        map.put("a", new HashSet<String>(Arrays.asList("x", "y")));
+        map.put("c", new HashMap<Integer, String>());
+        assertThat(roundTrip(serializer, map)).isEqualTo(map);
+        assertThat(new ArrayList<String>(roundTrip(serializer, map).keySet())).isEqualTo(Arrays.asList("b", "a", "c"));
+        // Not a fast path type
+        TreeMap<String, Integer> tree = new TreeMap<String, Integer>();
+        tree.put("z", 1);
+        assertThat(roundTrip(serializer, tree)).isEqualTo(tree);
+    }
+
+    @Test
+    public void verifyRegisteredClasses() {
+        BinarySerializer serializer = serializer();
+        Post post = roundTrip(serializer, post(3));
+        assertThat(post.id).isEqualTo(3L);
+        assertThat(post.title).isEqualTo("The post 3");
+        assertThat(post.postedAt).isEqualTo(new Date(1300000000003L));
+        assertThat(post.views).isEqualTo(21);
+        assertThat(post.tags).isEqualTo(Arrays.asList("play", "cache"));
+        assertThat(post.rendered).isNull();
+        // Smaller than Java serialization
+        assertThat(serializer.serialize(post(3)).length).isLessThan(new JavaSerializer().serialize(post(3)).length / 2);
+        // Another server with the class unregistered
+        try {
+            new BinarySerializer(new ArrayList<Class<?>>(), 1024).deserialize(serializer.serialize(post(3)));
+            throw new AssertionError("The class should be unknown");
+        } catch (CacheException e) {
+            assertThat(e.getCause().getMessage()).contains("No class registered");
+        }
+    }
+
+    @Test
+    public void verifyCompression() {
+        BinarySerializer serializer = serializer();
+        List<Post> posts = new ArrayList<Post>();
+        for (int i = 0; i < 50; i++) {
+            posts.add(post(i));
+        }
+        byte[] data = serializer.serialize(posts);
+        assertThat(data[0]).isEqualTo(BinarySerializer.COMPRESSED);
+        assertThat(data.length).isLessThan(new BinarySerializer(Arrays.<Class<?>>asList(Post.class), Integer.MAX_VALUE).serialize(posts).length / 2);
+        List<Post> read = roundTrip(serializer, posts);
+        assertThat(read.size()).isEqualTo(50);
+        assertThat(read.get(49).title).isEqualTo("The post 49");
+        // Incompressible values are left as is
+        byte[] random = new byte[4096];
+        new java.util.Random(1).nextBytes(random);
+        assertThat(serializer.serialize(random)[0]).isEqualTo(BinarySerializer.PLAIN);
+        assertThat(roundTrip(serializer, random)).isEqualTo(random);
+    }
+
+    @Test
+    public void verifySharedReferences() {
+        BinarySerializer serializer = serializer();
+        // Values referencing themselves
+        List<Object> list = new ArrayList<Object>();
+        list.add("item");
+        list.add(list);
+        byte[] data = serializer.serialize(list);
+        assertThat(data[0]).isEqualTo(BinarySerializer.PLAIN);
+        List<?> read = roundTrip(serializer, list);
+        assertThat(read.get(0)).isEqualTo("item");
+        assertThat(read.get(1)).isSameAs(read);
+        // Values referenced twice
+        Post post = post(1);
+        Date date = new Date(1000);
+        TreeMap<String, Integer> tree = new TreeMap<String, Integer>();
+        List<Object> shared = new ArrayList<Object>(Arrays.asList(post, post, date, date, tree, tree, post.tags));
+        read = roundTrip(serializer, shared);
+        assertThat(read.get(1)).isSameAs(read.get(0));
+        assertThat(read.get(3)).isSameAs(read.get(2));
+        assertThat(read.get(5)).isSameAs(read.get(4));
+        assertThat(read.get(6)).isSameAs(((Post) read.get(0)).tags);
+        // Registered classes that are not Serializable
+        Node first = new Node();
+        first.name = "first";
+        first.next = new Node();
+        first.next.name = "second";
+        first.next.next = first;
+        assertThat(serializer.supports(Node.class)).isTrue();
+        Node node = roundTrip(serializer, first);
+        assertThat(node.name).isEqualTo("first");
+        assertThat(node.next.name).isEqualTo("second");
+        assertThat(node.next.next).isSameAs(node);
+    }
+
+    @Test
+    public void verifyJavaSerializationFallback() {
+        BinarySerializer serializer = serializer();
+        // Values cached before the serializer changed
+        assertThat(serializer.deserialize(new JavaSerializer().serialize("cached"))).isEqualTo("cached");
+        assertThat(serializer.supports(Post.class)).isTrue();
+        assertThat(serializer.supports(TreeMap.class)).isTrue();
+        assertThat(serializer.supports(Object.class)).isFalse();
+    }
+
+    @Test
+    public void verifyLZ4Blocks() {
+        byte[] data = ("abcabcabcabcabcabcabcabcabcabc" + new String(new char[1000]) + "xyz").getBytes();
+        byte[] compressed = LZ4Block.compress(data, 0, data.length);
+        assertThat(compressed.length).isLessThan(50);
+        assertThat(LZ4Block.decompress(compressed, 0, compressed.length, data.length)).isEqualTo(data);
+        byte[] small = "abc".getBytes();
+        compressed = LZ4Block.compress(small, 0, small.length);
+        assertThat(LZ4Block.decompress(compressed, 0, compressed.length, small.length)).isEqualTo(small);
+    }
+
+    /**
+     * Compares the sizes and the speed of both serializers, and logs them
+     */
+    @Test
+    public void compareWithJavaSerialization() {
+        BinarySerializer binary = serializer();
+        JavaSerializer java = new JavaSerializer();
+        List<Post> posts = new ArrayList<Post>();
+        for (int i = 0; i < 20; i++) {
+            posts.add(post(i));
+        }
+        Object[] values = {"a short string", 42L, post(1), posts};
+        for (Object value : values) {
+            String name = value instanceof List ? "20 posts" : value.getClass().getSimpleName();
+            int binarySize = binary.serialize(value).length;
+            int javaSize = java.serialize(value).length;
+            long binaryTime = time(binary, value);
+            long javaTime = time(java, value);
+            Logger.info("%s: %s bytes (Java serialization: %s), %s us per round trip (Java serialization: %s)", name, binarySize, javaSize, binaryTime, javaTime);
+            assertThat(binarySize).isLessThanOrEqualTo(javaSize);
+        }
+    }
+
+    static long time(CacheSerializer serializer, Object value) {
+        int iterations = 2000;
+        // Warm up
+        for (int i = 0; i < iterations; i++) {
+            serializer.deserialize(serializer.serialize(value));
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            serializer.deserialize(serializer.serialize(value));
+        }
+        return (System.nanoTime() - start) / iterations / 1000;
+    }
+}
@@ -0,0 +1,206 @@
+package play.cache;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import play.Play;
+import play.PlayBuilder;
+import play.libs.F;
+
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class CacheTest {
+
+    @BeforeClass
+    public static void setUp() {
+        new PlayBuilder().build();
+        Cache.cacheImpl = EhCacheImpl.getInstance();
+        if (Cache.cacheImpl == null) {
+            Cache.cacheImpl = EhCacheImpl.newInstance();
+        }
+    }
+
+    /**
+     * Counts its computations, which wait for a release once started
+     */
+    static class SlowComputation implements Callable<String> {
+
+        final AtomicInteger computations = new AtomicInteger();
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final String value;
+
+        SlowComputation(String value) {
+            this.value = value;
+        }
+
+        public String call() throws Exception {
+            computations.incrementAndGet();
+            started.countDown();
+            release.await(5, TimeUnit.SECONDS);
+            return value;
+        }
+    }
+
+    @Test
+    public void verifyThatConcurrentMissesAreComputedOnce() throws Exception {
+        final SlowComputation computation = new SlowComputation("computed");
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            Callable<String> get = new Callable<String>() {
+                public String call() {
+                    return Cache.getOrCompute("CacheTest_once", "10s", computation);
+                }
+            };
+            Future<String> first = executor.submit(get);
+            assertThat(computation.started.await(5, TimeUnit.SECONDS)).isTrue();
+            Future<String> second = executor.submit(get);
+            Future<String> third = executor.submit(get);
+            Thread.sleep(100);
+            computation.release.countDown();
+            assertThat(first.get(5, TimeUnit.SECONDS)).isEqualTo("computed");
+            assertThat(second.get(5, TimeUnit.SECONDS)).isEqualTo("computed");
+            assertThat(third.get(5, TimeUnit.SECONDS)).isEqualTo("computed");
+            assertThat(computation.computations.get()).isEqualTo(1);
+            assertThat(Cache.get("CacheTest_once")).isEqualTo("computed");
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void verifyThatWaitingCallsComputeAfterTheTimeout() throws Exception {
+        final SlowComputation computation = new SlowComputation("slow");
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        Play.configuration.setProperty("cache.compute.timeout", "1s");
+        try {
+            Future<String> slow = executor.submit(new Callable<String>() {
+                public String call() {
+                    return Cache.getOrCompute("CacheTest_timeout", "10s", computation);
+                }
+            });
+            assertThat(computation.started.await(5, TimeUnit.SECONDS)).isTrue();
+            Future<String> waiting = executor.submit(new Callable<String>() {
+                public String call() {
+                    return Cache.getOrCompute("CacheTest_timeout", "10s", new Callable<String>() {
+                        public String call() {
+                            return "local";
+                        }
+                    });
+                }
+            });
+            assertThat(waiting.get(3, TimeUnit.SECONDS)).isEqualTo("local");
+            computation.release.countDown();
+            assertThat(slow.get(5, TimeUnit.SECONDS)).isEqualTo("slow");
+        } finally {
+            Play.configuration.remove("cache.compute.timeout");
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void verifyThatWaitingCallsComputeWhenTheComputationFails() throws Exception {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<String> failing = executor.submit(new Callable<String>() {
+                public String call() {
+                    return Cache.getOrCompute("CacheTest_failure", "10s", new Callable<String>() {
+                        public String call() throws Exception {
+                            started.countDown();
+                            release.await(5, TimeUnit.SECONDS);
+                            throw new IllegalStateException("failed");
+                        }
+                    });
+                }
+            });
+            assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+            Future<String> waiting = executor.submit(new Callable<String>() {
+                public String call() {
+                    return Cache.getOrCompute("CacheTest_failure", "10s", new Callable<String>() {
+                        public String call() {
+                            return "recomputed";
+                        }
+                    });
+                }
+            });
+            Thread.sleep(100);
+            release.countDown();
+            try {
+                failing.get(5, TimeUnit.SECONDS);
+                throw new AssertionError("The computation should have failed");
+            } catch (java.util.concurrent.ExecutionException e) {
+                assertThat(e.getCause()).isInstanceOf(IllegalStateException.class);
+            }
+            assertThat(waiting.get(5, TimeUnit.SECONDS)).isEqualTo("recomputed");
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void verifyThatPromisesAreRedeemedByTheRunningComputation() throws Exception {
+        final SlowComputation computation = new SlowComputation("async");
+        ExecutorService executor = Executors.newFixedThreadPool(1);
+        try {
+            Future<String> first = executor.submit(new Callable<String>() {
+                public String call() {
+                    return Cache.getOrCompute("CacheTest_async", "10s", computation);
+                }
+            });
+            assertThat(computation.started.await(5, TimeUnit.SECONDS)).isTrue();
+            F.Promise<String> promise = Cache.getOrComputeAsync("CacheTest_async", "10s", computation);
+            assertThat(promise.isDone()).isFalse();
+            computation.release.countDown();
+            assertThat(promise.get(5, TimeUnit.SECONDS)).isEqualTo("async");
+            assertThat(first.get()).isEqualTo("async");
+            assertThat(computation.computations.get()).isEqualTo(1);
+            // Cached now
+            assertThat(Cache.getOrComputeAsync("CacheTest_async", "10s", computation).isDone()).isTrue();
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void verifyEarlyRefresh() throws Exception {
+        final AtomicInteger computations = new AtomicInteger();
+        Callable<Integer> compute = new Callable<Integer>() {
+            public Integer call() throws Exception {
+                Thread.sleep(10);
+                return computations.incrementAndGet();
+            }
+        };
+        assertThat(Cache.getOrCompute("CacheTest_never", "1h", compute, 0)).isEqualTo(1);
+        assertThat(Cache.getOrCompute("CacheTest_never", "1h", compute, 0)).isEqualTo(1);
+        // So early that it is always refreshed
+        assertThat(Cache.getOrCompute("CacheTest_early", "1s", compute, 1000000)).isEqualTo(2);
+        assertThat(Cache.getOrCompute("CacheTest_early", "1s", compute, 1000000)).isEqualTo(3);
+        assertThat(Cache.getOrCompute("CacheTest_early", "1s", compute, 0)).isEqualTo(3);
+    }
+
+    @Test
+    public void verifyAsynchronousOperations() throws Exception {
+        // EhCache only makes synchronous calls
+        assertThat(Cache.cacheImpl instanceof AsyncCacheImpl).isFalse();
+        F.Promise<Boolean> set = Cache.setAsync("CacheTest_async_set", "value", "10s");
+        assertThat(set.isDone()).isTrue();
+        assertThat(set.get()).isTrue();
+        assertThat(Cache.getAsync("CacheTest_async_set").get()).isEqualTo("value");
+        Cache.set("CacheTest_async_other", 2);
+        Map<String, Object> values = Cache.getBulkAsync("CacheTest_async_set", "CacheTest_async_other").get();
+        assertThat(values.get("CacheTest_async_set")).isEqualTo("value");
+        assertThat(values.get("CacheTest_async_other")).isEqualTo(2);
+        assertThat(Cache.deleteAsync("CacheTest_async_set").get()).isTrue();
+        assertThat(Cache.getAsync("CacheTest_async_set").get()).isNull();
+    }
+}
@@ -0,0 +1,104 @@
+package play.cache;
+
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import play.Play;
+import play.PlayBuilder;
+import play.libs.F;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class MemcachedImplTest {
+
+    static MemcachedStandIn memcached;
+    static MemcachedImpl cache;
+
+    @BeforeClass
+    public static void setUp() throws Exception {
+        new PlayBuilder().build();
+        memcached = new MemcachedStandIn();
+        Play.configuration.setProperty("memcached.host", memcached.address());
+        cache = MemcachedImpl.getInstance(true);
+    }
+
+    @AfterClass
+    public static void tearDown() throws Exception {
+        cache.stop();
+        memcached.stop();
+    }
+
+    @Before
+    public void clear() {
+        memcached.items.clear();
+    }
+
+    @Test
+    public void verifyAsynchronousOperations() throws Exception {
+        F.Promise<Boolean> set = cache.setAsync("color", "blue", 0);
+        assertThat(set.get(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(cache.get("color")).isEqualTo("blue");
+        assertThat(cache.getAsync("color").get(5, TimeUnit.SECONDS)).isEqualTo("blue");
+        assertThat(cache.getAsync("missing").get(5, TimeUnit.SECONDS)).isNull();
+        assertThat(cache.deleteAsync("color").get(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(cache.deleteAsync("color").get(5, TimeUnit.SECONDS)).isFalse();
+        assertThat(cache.get("color")).isNull();
+    }
+
+    @Test
+    public void verifyThatPromisesAreRedeemedOnceDone() throws Exception {
+        cache.safeSet("fast", "value", 0);
+        // Warm up
+        cache.getAsync("fast").get(5, TimeUnit.SECONDS);
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < 50; i++) {
+            assertThat(cache.getAsync("fast").get(5, TimeUnit.SECONDS)).isEqualTo("value");
+        }
+        // Not a timer tick (10ms) for each
+        assertThat(System.currentTimeMillis() - start).isLessThan(250);
+    }
+
+    @Test
+    public void verifyThatGetsDoNotWaitForEachOther() throws Exception {
+        List<F.Promise<Object>> promises = new ArrayList<F.Promise<Object>>();
+        for (int i = 0; i < 20; i++) {
+            cache.safeSet("key" + i, i, 0);
+        }
+        for (int i = 0; i < 20; i++) {
+            promises.add(cache.getAsync("key" + i));
+        }
+        List<Object> values = F.Promise.waitAll(promises).get(5, TimeUnit.SECONDS);
+        for (int i = 0; i < 20; i++) {
+            assertThat(values.get(i)).isEqualTo(i);
+        }
+    }
+
+    @Test
+    public void verifyBulkGets() throws Exception {
+        cache.safeSet("a", "value a", 0);
+        cache.safeSet("b", "value b", 0);
+        Map<String, Object> values = cache.getBulkAsync(new String[] {"a", "b", "c"}).get(5, TimeUnit.SECONDS);
+        assertThat(values.size()).isEqualTo(2);
+        assertThat(values.get("a")).isEqualTo("value a");
+        assertThat(values.get("b")).isEqualTo("value b");
+    }
+
+    @Test
+    public void verifyThatPromisesCallBack() throws Exception {
+        cache.safeSet("callback", "value", 0);
+        final F.Promise<Object> called = new F.Promise<Object>();
+        cache.getAsync("callback").onRedeem(new F.Action<F.Promise<Object>>() {
+
+            public void invoke(F.Promise<Object> result) {
+                called.invoke(result.getOrNull());
+            }
+        });
+        assertThat(called.get(5, TimeUnit.SECONDS)).isEqualTo("value");
+    }
+}
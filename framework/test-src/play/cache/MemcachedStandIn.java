@@ -0,0 +1,153 @@
+package play.cache;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * An in-process server speaking enough of the memcached text protocol for the tests.
+ * Expirations are ignored.
+ */
+public class MemcachedStandIn {
+
+    static class Item {
+
+        final int flags;
+        final byte[] data;
+
+        Item(int flags, byte[] data) {
+            this.flags = flags;
+            this.data = data;
+        }
+    }
+
+    final ServerSocket server;
+    final Map<String, Item> items = new ConcurrentHashMap<String, Item>();
+    /**
+     * The number of keys requested by get commands
+     */
+    public final AtomicInteger gets = new AtomicInteger();
+
+    public MemcachedStandIn() throws IOException {
+        server = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+        Thread acceptor = new Thread("memcached-stand-in") {
+            @Override
+            public void run() {
+                while (!server.isClosed()) {
+                    try {
+                        final Socket socket = server.accept();
+                        Thread connection = new Thread("memcached-stand-in-connection") {
+                            @Override
+                            public void run() {
+                                serve(socket);
+                            }
+                        };
+                        connection.setDaemon(true);
+                        connection.start();
+                    } catch (IOException e) {
+                        // Closed
+                    }
+                }
+            }
+        };
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    public String address() {
+        return "127.0.0.1:" + server.getLocalPort();
+    }
+
+    public void stop() throws IOException {
+        server.close();
+    }
+
+    void serve(Socket socket) {
+        try {
+            InputStream in = new BufferedInputStream(socket.getInputStream());
+            OutputStream out = socket.getOutputStream();
+            String line;
+            while ((line = readLine(in)) != null) {
+                String[] command = line.trim().split(" +");
+                String name = command[0];
+                if (name.equals("get") || name.equals("gets")) {
+                    StringBuilder reply = new StringBuilder();
+                    ByteArrayOutputStream values = new ByteArrayOutputStream();
+                    for (int i = 1; i < command.length; i++) {
+                        gets.incrementAndGet();
+                        Item item = items.get(command[i]);
+                        if (item != null) {
+                            values.write(("VALUE " + command[i] + " " + item.flags + " " + item.data.length + "\r\n").getBytes("us-ascii"));
+                            values.write(item.data);
+                            values.write("\r\n".getBytes("us-ascii"));
+                        }
+                    }
+                    values.write("END\r\n".getBytes("us-ascii"));
+                    out.write(values.toByteArray());
+                } else if (name.equals("set") || name.equals("add") || name.equals("replace")) {
+                    byte[] data = new byte[Integer.parseInt(command[4])];
+                    int read = 0;
+                    while (read < data.length) {
+                        read += in.read(data, read, data.length - read);
+                    }
+                    readLine(in);
+                    String key = command[1];
+                    boolean exists = items.containsKey(key);
+                    if (name.equals("set") || (name.equals("add") && !exists) || (name.equals("replace") && exists)) {
+                        items.put(key, new Item(Integer.parseInt(command[2]), data));
+                        out.write("STORED\r\n".getBytes("us-ascii"));
+                    } else {
+                        out.write("NOT_STORED\r\n".getBytes("us-ascii"));
+                    }
+                } else if (name.equals("delete")) {
+                    out.write((items.remove(command[1]) != null ? "DELETED\r\n" : "NOT_FOUND\r\n").getBytes("us-ascii"));
+                } else if (name.equals("incr") || name.equals("decr")) {
+                    synchronized (items) {
+                        Item item = items.get(command[1]);
+                        if (item == null) {
+                            out.write("NOT_FOUND\r\n".getBytes("us-ascii"));
+                        } else {
+                            long by = Long.parseLong(command[2]);
+                            long value = Math.max(0, Long.parseLong(new String(item.data, "us-ascii").trim()) + (name.equals("incr") ? by : -by));
+                            items.put(command[1], new Item(item.flags, Long.toString(value).getBytes("us-ascii")));
+                            out.write((value + "\r\n").getBytes("us-ascii"));
+                        }
+                    }
+                } else if (name.equals("flush_all")) {
+                    items.clear();
+                    out.write("OK\r\n".getBytes("us-ascii"));
+                } else if (name.equals("version")) {
+                    out.write("VERSION 1.4.0\r\n".getBytes("us-ascii"));
+                } else {
+                    out.write("ERROR\r\n".getBytes("us-ascii"));
+                }
+                out.flush();
+            }
+            socket.close();
+        } catch (IOException e) {
+            // Disconnected
+        }
+    }
+
+    static String readLine(InputStream in) throws IOException {
+        StringBuilder line = new StringBuilder();
+        int c;
+        while ((c = in.read()) != -1) {
+            if (c == '\n') {
+                return line.toString();
+            }
+            if (c != '\r') {
+                line.append((char) c);
+            }
+        }
+        return line.length() > 0 ? line.toString() : null;
+    }
+}
@@ -0,0 +1,167 @@
+package play.cache;
+
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import play.Play;
+import play.PlayBuilder;
+import play.libs.F;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.fest.assertions.MapAssert.entry;
+
+public class NearCacheImplTest {
+
+    static MemcachedStandIn memcached;
+    static MemcachedImpl remote;
+
+    @BeforeClass
+    public static void setUp() throws Exception {
+        new PlayBuilder().build();
+        memcached = new MemcachedStandIn();
+        Play.configuration.setProperty("memcached.host", memcached.address());
+        remote = MemcachedImpl.getInstance(true);
+    }
+
+    @AfterClass
+    public static void tearDown() throws Exception {
+        remote.stop();
+        memcached.stop();
+    }
+
+    @Before
+    public void clear() {
+        memcached.items.clear();
+    }
+
+    NearCacheImpl node(long checkInterval) {
+        List<String> prefixes = Arrays.asList("config.");
+        return new NearCacheImpl(remote, prefixes, 100, 60000, checkInterval);
+    }
+
+    @Test
+    public void verifyThatNearKeysAreReadOnce() {
+        NearCacheImpl node = node(60000);
+        remote.safeSet("config.color", "blue", 0);
+        remote.safeSet("other.color", "red", 0);
+        int gets = memcached.gets.get();
+        for (int i = 0; i < 10; i++) {
+            assertThat(node.get("config.color")).isEqualTo("blue");
+        }
+        // The key, then the version of its prefix
+        assertThat(memcached.gets.get() - gets).isEqualTo(2);
+        assertThat(node.hits.get()).isEqualTo(9);
+        gets = memcached.gets.get();
+        for (int i = 0; i < 10; i++) {
+            assertThat(node.get("other.color")).isEqualTo("red");
+        }
+        assertThat(memcached.gets.get() - gets).isEqualTo(10);
+    }
+
+    @Test
+    public void verifyThatWritesGoThrough() {
+        NearCacheImpl node = node(60000);
+        assertThat(node.safeSet("config.size", 12, 0)).isTrue();
+        assertThat(remote.get("config.size")).isEqualTo(12);
+        assertThat(node.get("config.size")).isEqualTo(12);
+        assertThat(node.safeDelete("config.size")).isTrue();
+        assertThat(node.get("config.size")).isNull();
+        assertThat(remote.get("config.size")).isNull();
+    }
+
+    @Test
+    public void verifyThatOtherNodesSeeChangesAfterTheirCheck() throws Exception {
+        NearCacheImpl first = node(100);
+        NearCacheImpl second = node(100);
+        first.safeSet("config.mode", "on", 0);
+        assertThat(first.get("config.mode")).isEqualTo("on");
+        assertThat(second.get("config.mode")).isEqualTo("on");
+
+        second.safeSet("config.mode", "off", 0);
+        assertThat(second.get("config.mode")).isEqualTo("off");
+        // Still near until the next check
+        assertThat(first.get("config.mode")).isEqualTo("on");
+        Thread.sleep(150);
+        assertThat(first.get("config.mode")).isEqualTo("off");
+
+        first.safeDelete("config.mode");
+        Thread.sleep(150);
+        assertThat(second.get("config.mode")).isNull();
+    }
+
+    @Test
+    public void verifyThatExpirationsBoundTheTtl() {
+        NearCacheImpl node = node(60000);
+        node.safeSet("config.short", "short", 2);
+        node.safeSet("config.long", "long", 3600);
+        assertThat(node.entries.get("config.short").expiresAt).isLessThanOrEqualTo(System.currentTimeMillis() + 2000);
+        assertThat(node.entries.get("config.long").expiresAt).isGreaterThan(System.currentTimeMillis() + 50000);
+    }
+
+    @Test
+    public void verifyThatMissesDoNotReplaceNewerWrites() {
+        NearCacheImpl node = node(60000);
+        // A get missed and fetched the old value while the key was set
+        long seen = node.changes();
+        node.safeSet("config.race", "new", 0);
+        node.fetched("config.race", "old", seen);
+        assertThat(node.get("config.race")).isEqualTo("new");
+        node.fetched("config.fetched", "fetched", node.changes());
+        assertThat(node.get("config.fetched")).isEqualTo("fetched");
+    }
+
+    @Test
+    public void verifyThatOtherNodesSeeClears() throws Exception {
+        NearCacheImpl first = node(100);
+        NearCacheImpl second = node(100);
+        remote.safeSet("config.cleared", "value", 0);
+        assertThat(first.get("config.cleared")).isEqualTo("value");
+        assertThat(second.get("config.cleared")).isEqualTo("value");
+        first.clear();
+        assertThat(first.get("config.cleared")).isNull();
+        Thread.sleep(150);
+        assertThat(second.get("config.cleared")).isNull();
+    }
+
+    @Test
+    public void verifyBulkGets() {
+        NearCacheImpl node = node(60000);
+        remote.safeSet("config.a", "a", 0);
+        remote.safeSet("config.b", "b", 0);
+        remote.safeSet("other.c", "c", 0);
+        assertThat(node.get("config.a")).isEqualTo("a");
+        int gets = memcached.gets.get();
+        Map<String, Object> values = node.get(new String[]{"config.a", "config.b", "other.c"});
+        assertThat(values).hasSize(3).includes(entry("config.a", "a"), entry("config.b", "b"), entry("other.c", "c"));
+        // Only config.b and other.c were fetched
+        assertThat(memcached.gets.get() - gets).isEqualTo(2);
+        assertThat(node.get(new String[]{"config.b"}).get("config.b")).isEqualTo("b");
+        assertThat(memcached.gets.get() - gets).isEqualTo(2);
+    }
+
+    @Test
+    public void verifyAsynchronousOperations() throws Exception {
+        NearCacheImpl node = node(60000);
+        assertThat(node.setAsync("config.async", "near", 0).get(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(remote.get("config.async")).isEqualTo("near");
+        assertThat(node.getAsync("config.async").get(5, TimeUnit.SECONDS)).isEqualTo("near");
+        // Near
+        int gets = memcached.gets.get();
+        F.Promise<Object> near = node.getAsync("config.async");
+        assertThat(near.isDone()).isTrue();
+        assertThat(near.get()).isEqualTo("near");
+        assertThat(memcached.gets.get()).isEqualTo(gets);
+        remote.safeSet("config.other", "other", 0);
+        Map<String, Object> values = node.getBulkAsync(new String[]{"config.async", "config.other"}).get(5, TimeUnit.SECONDS);
+        assertThat(values).hasSize(2).includes(entry("config.async", "near"), entry("config.other", "other"));
+        assertThat(memcached.gets.get() - gets).isEqualTo(1);
+        assertThat(node.deleteAsync("config.async").get(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(node.getAsync("config.async").get(5, TimeUnit.SECONDS)).isNull();
+    }
+}
@@ -0,0 +1,150 @@
+package play.cache;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import play.PlayBuilder;
+import play.exceptions.ConfigurationException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class OffHeapCacheImplTest {
+
+    @BeforeClass
+    public static void setUp() {
+        new PlayBuilder().build();
+    }
+
+    @Test
+    public void verifyCacheOperations() {
+        OffHeapCacheImpl cache = new OffHeapCacheImpl(64 * 1024, 16 * 1024);
+        cache.set("a", "value a", 0);
+        assertThat(cache.get("a")).isEqualTo("value a");
+        cache.add("a", "other", 0);
+        assertThat(cache.get("a")).isEqualTo("value a");
+        assertThat(cache.safeAdd("b", 2, 0)).isTrue();
+        assertThat(cache.safeReplace("c", 3, 0)).isFalse();
+        assertThat(cache.get("c")).isNull();
+        cache.replace("b", 20, 0);
+        assertThat(cache.incr("b", 5)).isEqualTo(25L);
+        assertThat(cache.decr("b", 10)).isEqualTo(15L);
+        assertThat(cache.get("b")).isEqualTo(15L);
+        assertThat(cache.incr("c", 1)).isEqualTo(-1L);
+        assertThat(cache.count()).isEqualTo(2);
+        cache.delete("a");
+        assertThat(cache.get("a")).isNull();
+        cache.clear();
+        assertThat(cache.get("b")).isNull();
+        assertThat(cache.used()).isEqualTo(0);
+    }
+
+    @Test
+    public void verifyThatTTLSurvivesIncrDecr() throws Exception {
+        OffHeapCacheImpl cache = new OffHeapCacheImpl(64 * 1024, 16 * 1024);
+        cache.add("counter", 1, 1);
+        cache.incr("counter", 4);
+        cache.decr("counter", 3);
+        assertThat(cache.get("counter")).isEqualTo(2L);
+        Thread.sleep(1100);
+        assertThat(cache.get("counter")).isNull();
+        assertThat(cache.expirations.get()).isEqualTo(1);
+    }
+
+    @Test
+    public void verifyThatValuesNotReadRecentlyAreEvicted() {
+        // 4 slabs of 1kb, all taken by the chunks of 64 bytes
+        OffHeapCacheImpl cache = new OffHeapCacheImpl(4 * 1024, 1024);
+        byte[] value = new byte[20];
+        for (int i = 0; i < 1000; i++) {
+            cache.set("key" + i, value, 0);
+            // Keep key0 in use
+            assertThat(cache.get("key0")).isNotNull();
+        }
+        assertThat(cache.allocated()).isEqualTo(4 * 1024);
+        assertThat(cache.evictions.get()).isGreaterThan(900);
+        assertThat(cache.get("key0")).isNotNull();
+        assertThat(cache.get("key999")).isNotNull();
+        assertThat(cache.get("key1")).isNull();
+    }
+
+    @Test
+    public void verifyThatClassesWithoutSlabsTakeOne() {
+        // All the slabs taken by the chunks of 64 bytes
+        OffHeapCacheImpl cache = new OffHeapCacheImpl(4 * 1024, 1024);
+        for (int i = 0; i < 100; i++) {
+            cache.set("small" + i, new byte[20], 0);
+        }
+        assertThat(cache.sizeClass(20).slabCount()).isEqualTo(4);
+        assertThat(cache.safeSet("large", new byte[200], 0)).isTrue();
+        assertThat(cache.get("large")).isEqualTo(new byte[200]);
+        assertThat(cache.sizeClass(20).slabCount()).isEqualTo(3);
+        assertThat(cache.allocated()).isEqualTo(4 * 1024);
+        assertThat(cache.safeSet("small100", new byte[20], 0)).isTrue();
+    }
+
+    @Test
+    public void verifyThatTheDirectMemoryIsChecked() {
+        assertThat(OffHeapCacheImpl.maxDirectMemory()).isGreaterThan(0);
+        try {
+            OffHeapCacheImpl.getInstance(Long.MAX_VALUE);
+            throw new AssertionError("The size should be checked");
+        } catch (ConfigurationException e) {
+            assertThat(e.getMessage()).contains("MaxDirectMemorySize");
+        }
+    }
+
+    @Test
+    public void verifyThatValuesLargerThanASlabAreNotCached() {
+        OffHeapCacheImpl cache = new OffHeapCacheImpl(64 * 1024, 1024);
+        cache.set("large", "small", 0);
+        assertThat(cache.safeSet("large", new byte[2048], 0)).isFalse();
+        // The previous value is not kept
+        assertThat(cache.get("large")).isNull();
+    }
+
+    @Test
+    public void verifyConcurrentUse() throws Exception {
+        final OffHeapCacheImpl cache = new OffHeapCacheImpl(32 * 1024, 4 * 1024);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Boolean>> results = new ArrayList<Future<Boolean>>();
+            for (int t = 0; t < 8; t++) {
+                final int thread = t;
+                results.add(executor.submit(new Callable<Boolean>() {
+                    public Boolean call() {
+                        for (int i = 0; i < 2000; i++) {
+                            String key = "key" + (i % 300);
+                            String value = key + "-" + new String(new char[i % 200]);
+                            cache.set(key, value, 0);
+                            Object read = cache.get("key" + ((i + thread) % 300));
+                            if (read != null && !((String) read).startsWith("key" + ((i + thread) % 300) + "-")) {
+                                return false;
+                            }
+                        }
+                        return true;
+                    }
+                }));
+            }
+            for (Future<Boolean> result : results) {
+                assertThat(result.get()).isTrue();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertThat(cache.allocated()).isLessThanOrEqualTo(32 * 1024);
+    }
+
+    @Test
+    public void verifySizes() {
+        assertThat(OffHeapCacheImpl.parseSize("2g")).isEqualTo(2L * 1024 * 1024 * 1024);
+        assertThat(OffHeapCacheImpl.parseSize("512M")).isEqualTo(512L * 1024 * 1024);
+        assertThat(OffHeapCacheImpl.parseSize("64kb")).isEqualTo(64L * 1024);
+        assertThat(OffHeapCacheImpl.parseSize("1000")).isEqualTo(1000L);
+    }
+}
@@ -0,0 +1,93 @@
+package play.classloading.enhancers;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import play.PlayBuilder;
+import play.classloading.ApplicationClasses.ApplicationClass;
+import play.mvc.Before;
+import play.mvc.Controller;
+import play.libs.IO;
+import play.vfs.VirtualFile;
+
+import java.io.File;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class InvokerEnhancerTest {
+
+    @BeforeClass
+    public static void setUp() {
+        new PlayBuilder().build();
+    }
+
+    public static class Actions extends Controller {
+
+        public static String checked;
+
+        public static String echo(String[] values, int count) {
+            return values[0] + count;
+        }
+
+        public static long twice(long value) {
+            return value * 2;
+        }
+
+        @Before
+        static void check(boolean flag) {
+            checked = "checked " + flag;
+        }
+
+        static void helper() {
+        }
+    }
+
+    static Class<?> enhance(final Class<?> type) throws Exception {
+        final ApplicationClass<?> applicationClass = new ApplicationClass<Object>();
+        applicationClass.name = type.getName();
+        applicationClass.javaFile = VirtualFile.open(new File(type.getSimpleName() + ".java"));
+        applicationClass.enhancedByteCode = IO.readContent(type.getClassLoader().getResourceAsStream(type.getName().replace('.', '/') + ".class"));
+        new InvokerEnhancer().enhanceThisClass(applicationClass);
+        return new ClassLoader(type.getClassLoader()) {
+
+            @Override
+            protected synchronized Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+                if (name.equals(type.getName())) {
+                    Class<?> loaded = findLoadedClass(name);
+                    if (loaded == null) {
+                        loaded = defineClass(name, applicationClass.enhancedByteCode, 0, applicationClass.enhancedByteCode.length);
+                    }
+                    return loaded;
+                }
+                return super.loadClass(name, resolve);
+            }
+        }.loadClass(type.getName());
+    }
+
+    static int index(InvokerEnhancer.DirectInvoker invoker, String name, Class<?>... parameterTypes) {
+        return java.util.Arrays.asList(invoker.$methods()).indexOf(InvokerEnhancer.signature(name, parameterTypes));
+    }
+
+    @Test
+    public void verifyThatActionsAndInterceptorsAreInvokedDirectly() throws Exception {
+        Class<?> enhanced = enhance(Actions.class);
+        InvokerEnhancer.DirectInvoker invoker = (InvokerEnhancer.DirectInvoker) enhanced.newInstance();
+
+        int echo = index(invoker, "echo", String[].class, int.class);
+        assertThat(echo).isGreaterThanOrEqualTo(0);
+        assertThat(invoker.$invoke(echo, new Object[]{new String[]{"a"}, 3})).isEqualTo("a3");
+
+        int twice = index(invoker, "twice", long.class);
+        assertThat(invoker.$invoke(twice, new Object[]{21L})).isEqualTo(42L);
+
+        int check = index(invoker, "check", boolean.class);
+        assertThat(invoker.$invoke(check, new Object[]{true})).isNull();
+        assertThat(enhanced.getDeclaredField("checked").get(null)).isEqualTo("checked true");
+    }
+
+    @Test
+    public void verifyThatOtherMethodsAreNotListed() throws Exception {
+        InvokerEnhancer.DirectInvoker invoker = (InvokerEnhancer.DirectInvoker) enhance(Actions.class).newInstance();
+        assertThat(index(invoker, "helper")).isEqualTo(-1);
+        assertThat(index(invoker, "twice", int.class)).isEqualTo(-1);
+    }
+}
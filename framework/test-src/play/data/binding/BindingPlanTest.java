@@ -0,0 +1,100 @@
+package play.data.binding;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import play.Play;
+import play.PlayBuilder;
+import play.classloading.ApplicationClassloader;
+import play.data.binding.types.DateBinder;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Type;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class BindingPlanTest {
+
+    public static class UpperCaseBinder implements TypeBinder<String> {
+        public String bind(String name, Annotation[] annotations, String value, Class<?> actualClass, Type genericType) {
+            return value.toUpperCase();
+        }
+    }
+
+    static void action(@As(",") List<String> tags, @As(binder = UpperCaseBinder.class) String code, Date date) {
+    }
+
+    static Annotation[] annotations(int parameter) throws Exception {
+        return BindingPlanTest.class.getDeclaredMethod("action", List.class, String.class, Date.class).getParameterAnnotations()[parameter];
+    }
+
+    public static class CountingBinder implements TypeBinder<String> {
+        int values;
+
+        public String bind(String name, Annotation[] annotations, String value, Class<?> actualClass, Type genericType) {
+            return value + (++values);
+        }
+    }
+
+    static void counted(@As(binder = CountingBinder.class) String value) {
+    }
+
+    ApplicationClassloader classloader;
+
+    @Before
+    public void setUp() {
+        new PlayBuilder().build();
+        classloader = Play.classloader;
+        // No application classes, so no @Global binders
+        Play.classloader = null;
+    }
+
+    @After
+    public void tearDown() {
+        Play.classloader = classloader;
+    }
+
+    @Test
+    public void verifyThatPlansAreCached() throws Exception {
+        BindingPlan plan = BindingPlan.of(Date.class, Date.class, annotations(2));
+        assertThat(plan.binder).isInstanceOf(DateBinder.class);
+        assertThat(plan.pluginsMayBind).isFalse();
+        assertThat(BindingPlan.of(Date.class, Date.class, annotations(2))).isSameAs(plan);
+
+        Binder.register(Date.class, new DateBinder());
+        assertThat(BindingPlan.of(Date.class, Date.class, annotations(2))).isNotSameAs(plan);
+    }
+
+    @Test
+    public void verifyAsAnnotations() throws Exception {
+        BindingPlan tags = BindingPlan.of(List.class, null, annotations(0));
+        assertThat(tags.separator).isEqualTo(",");
+        assertThat(tags.profiles).containsOnly(",");
+        assertThat(tags.binder).isNull();
+
+        BindingPlan code = BindingPlan.of(String.class, String.class, annotations(1));
+        assertThat(code.separator).isNull();
+        assertThat(code.binderClass).isEqualTo(UpperCaseBinder.class);
+        assertThat(code.binder()).isInstanceOf(UpperCaseBinder.class);
+        assertThat(Binder.directBind("code", annotations(1), "abc", String.class, String.class)).isEqualTo("ABC");
+    }
+
+    @Test
+    public void verifyThatAsBindersAreInstantiatedForEachValue() throws Exception {
+        Annotation[] annotations = BindingPlanTest.class.getDeclaredMethod("counted", String.class).getParameterAnnotations()[0];
+        assertThat(Binder.directBind("value", annotations, "a", String.class, String.class)).isEqualTo("a1");
+        assertThat(Binder.directBind("value", annotations, "b", String.class, String.class)).isEqualTo("b1");
+    }
+
+    @Test
+    public void verifyThatDateFormatsAreReusedAndStrict() throws Exception {
+        SimpleDateFormat format = AnnotationHelper.getDateFormat("yyyy-MM-dd", Locale.ENGLISH);
+        assertThat(AnnotationHelper.getDateFormat("yyyy-MM-dd", Locale.ENGLISH)).isSameAs(format);
+        assertThat(AnnotationHelper.getDateFormat("yyyy-MM-dd", Locale.FRENCH)).isNotSameAs(format);
+        assertThat(format.isLenient()).isFalse();
+    }
+}
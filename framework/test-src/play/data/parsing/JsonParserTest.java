@@ -0,0 +1,136 @@
+package play.data.parsing;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import play.Play;
+import play.PlayBuilder;
+import play.classloading.ApplicationClassloader;
+import play.data.binding.Binder;
+import play.data.binding.JsonBody;
+import play.mvc.Http;
+import play.mvc.Scope;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.util.Map;
+
+import com.google.gson.stream.JsonReader;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class JsonParserTest {
+
+    static Map<String, String[]> parse(String json) throws Exception {
+        return JsonParser.parse(new JsonReader(new StringReader(json)));
+    }
+
+    static Map<String, String[]> parseBody(String json) throws Exception {
+        return JsonParser.parse(new ByteArrayInputStream(json.getBytes("utf-8")), "utf-8");
+    }
+
+    public static class Client {
+        String name;
+        int age;
+    }
+
+    static void create(@JsonBody Client client) {
+    }
+
+    ApplicationClassloader classloader;
+
+    @Before
+    public void setUp() {
+        new PlayBuilder().build();
+        classloader = Play.classloader;
+        // No application classes, so no @Global binders
+        Play.classloader = null;
+    }
+
+    @After
+    public void tearDown() {
+        Play.classloader = classloader;
+        Http.Request.current.remove();
+        Scope.Params.current.remove();
+    }
+
+    @Test
+    public void verifyThatObjectsAreFlattened() throws Exception {
+        Map<String, String[]> params = parse("{\"name\": \"bob\", \"age\": 42, \"admin\": true, \"nick\": null,"
+                + " \"address\": {\"city\": \"Paris\", \"geo\": {\"lat\": 1.5}},"
+                + " \"tags\": [\"a\", \"b\"], \"pets\": [{\"name\": \"rex\"}, {\"name\": \"tom\"}], \"empty\": {}}");
+        assertThat(params.get("name")).containsOnly("bob");
+        assertThat(params.get("age")).containsOnly("42");
+        assertThat(params.get("admin")).containsOnly("true");
+        assertThat(params.get("address.city")).containsOnly("Paris");
+        assertThat(params.get("address.geo.lat")).containsOnly("1.5");
+        assertThat(params.get("tags")).isEqualTo(new String[]{"a", "b"});
+        assertThat(params.get("pets[0].name")).containsOnly("rex");
+        assertThat(params.get("pets[1].name")).containsOnly("tom");
+        assertThat(params).hasSize(8);
+    }
+
+    static Scope.Params params(InputStream body) {
+        Http.Request request = Http.Request.createRequest(null, Http.Verb.POST, "/clients", "", "application/json; charset=utf-8",
+                body, null, null, false, 80, "localhost", false, null, null);
+        Http.Request.current.set(request);
+        Scope.Params params = new Scope.Params();
+        Scope.Params.current.set(params);
+        return params;
+    }
+
+    static Scope.Params params(String json) throws Exception {
+        return params(new ByteArrayInputStream(json.getBytes("utf-8")));
+    }
+
+    @Test
+    public void verifyThatOtherDocumentsGiveNoParams() throws Exception {
+        assertThat(parseBody("[1, 2]")).isEmpty();
+        assertThat(parseBody("\"text\"")).isEmpty();
+        assertThat(parseBody("{\"name\": ")).isEmpty();
+        assertThat(parseBody("")).isEmpty();
+    }
+
+    @Test
+    public void verifyThatTheRawBodyIsReadWhenAskedFor() throws Exception {
+        Scope.Params params = params("{\"name\": \"bob\"}");
+        assertThat(params.get("name")).isEqualTo("bob");
+        assertThat(params.all().keySet()).containsOnly("name");
+        assertThat(params.get("body")).isEqualTo("{\"name\": \"bob\"}");
+        params = params("[1, 2]");
+        assertThat(params.getAll("body")).containsOnly("[1, 2]");
+        // A field named body is not replaced
+        params = params("{\"body\": \"text\"}");
+        assertThat(params.getAll("body")).containsOnly("text");
+    }
+
+    @Test
+    public void verifyThatSpilledBodiesAreReadAgain() throws Exception {
+        File file = File.createTempFile("body", ".json");
+        try {
+            FileOutputStream out = new FileOutputStream(file);
+            out.write("{\"name\": \"bob\", \"age\": 42}".getBytes("utf-8"));
+            out.close();
+            Scope.Params params = params(new FileInputStream(file));
+            assertThat(params.get("age")).isEqualTo("42");
+            assertThat(params.get("body")).isEqualTo("{\"name\": \"bob\", \"age\": 42}");
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void verifyThatJsonBodiesAreBoundOnceParsed() throws Exception {
+        Scope.Params params = params("{\"name\": \"bob\", \"age\": 42}");
+        // A @Before reading the params
+        assertThat(params.get("name")).isEqualTo("bob");
+        Client client = (Client) Binder.bind("client", Client.class, Client.class,
+                JsonParserTest.class.getDeclaredMethod("create", Client.class).getParameterAnnotations()[0], params.all());
+        assertThat(client.name).isEqualTo("bob");
+        assertThat(client.age).isEqualTo(42);
+    }
+}
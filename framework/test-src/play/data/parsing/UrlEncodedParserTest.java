@@ -0,0 +1,37 @@
+package play.data.parsing;
+
+import org.junit.Test;
+
+import java.util.Map;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class UrlEncodedParserTest {
+
+    @Test
+    public void verifyQueryStringParsing() {
+        Map<String, String[]> params = UrlEncodedParser.parseQueryString("a=1&b=x+y&a=2&c&d=&=e&&f%5B0%5D=%C3%A9", "utf-8");
+        assertThat(params.get("a")).containsOnly("1", "2");
+        assertThat(params.get("a")[0]).isEqualTo("1");
+        assertThat(params.get("b")).containsOnly("x y");
+        assertThat(params.get("c")).containsOnly((String) null);
+        assertThat(params.get("d")).containsOnly("");
+        assertThat(params.get("f[0]")).containsOnly("é");
+        assertThat(params).hasSize(5);
+    }
+
+    @Test
+    public void verifyThatCharsetParamIsUsedForDecoding() {
+        Map<String, String[]> params = UrlEncodedParser.parseQueryString("name=%E9&_charset_=ISO-8859-1", "utf-8");
+        assertThat(params.get("name")).containsOnly("é");
+        assertThat(params.get("_charset_")).containsOnly("ISO-8859-1");
+
+        params = UrlEncodedParser.parseQueryString("_charset_=unknown&name=%C3%A9", "utf-8");
+        assertThat(params.get("name")).containsOnly("é");
+    }
+
+    @Test
+    public void verifyEmptyQueryString() {
+        assertThat(UrlEncodedParser.parseQueryString("", "utf-8")).isEmpty();
+    }
+}
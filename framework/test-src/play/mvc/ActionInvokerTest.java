@@ -0,0 +1,64 @@
+package play.mvc;
+
+import org.junit.After;
+import org.junit.Test;
+import play.Play;
+import play.PlayBuilder;
+import play.libs.F;
+import play.mvc.results.RenderTemplate;
+import play.templates.GroovyTemplate;
+import play.templates.GroovyTemplateCompiler;
+
+import java.io.ByteArrayOutputStream;
+import java.net.URLDecoder;
+import java.util.HashMap;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class ActionInvokerTest {
+
+    @After
+    public void tearDown() {
+        Play.configuration.remove("play.templates.streaming");
+        Play.secretKey = null;
+        Http.Request.current.remove();
+        Http.Response.current.remove();
+        Scope.Session.current.remove();
+        Scope.Flash.current.remove();
+    }
+
+    @Test
+    public void verifyThatStreamedFormsHaveTheTokenOfTheSessionCookie() throws Exception {
+        new PlayBuilder().build();
+        Play.configuration.setProperty("play.templates.streaming", "true");
+        Play.secretKey = "secret";
+        Http.Request request = Http.Request.createRequest(null, Http.Verb.GET, "/", "", null, null, null, null, false, 80, "localhost", false, null, null);
+        Http.Response response = new Http.Response();
+        final ByteArrayOutputStream chunks = new ByteArrayOutputStream();
+        response.onWriteChunk(new F.Action<Object>() {
+            public void invoke(Object chunk) {
+                byte[] bytes = (byte[]) chunk;
+                chunks.write(bytes, 0, bytes.length);
+            }
+        });
+        Http.Request.current.set(request);
+        Http.Response.current.set(response);
+        // A fresh session
+        Scope.Session.current.set(Scope.Session.restore());
+        Scope.Flash.current.set(Scope.Flash.restore());
+
+        GroovyTemplate t = new GroovyTemplate("Template_form", "<form>#{authenticityToken /}</form>");
+        new GroovyTemplateCompiler().compile(t);
+        RenderTemplate result = new RenderTemplate(t, new HashMap<String, Object>(), "text/html");
+        assertThat(result.isStreamed()).isTrue();
+
+        ActionInvoker.saveScopes(result);
+        result.apply(request, response);
+
+        String token = Scope.Session.current().getAuthenticityToken();
+        assertThat(chunks.toString("utf-8")).contains("value=\"" + token + "\"");
+        Http.Cookie cookie = response.cookies.get(Scope.COOKIE_PREFIX + "_SESSION");
+        assertThat(cookie).isNotNull();
+        assertThat(URLDecoder.decode(cookie.value, "utf-8")).contains(token);
+    }
+}
@@ -0,0 +1,72 @@
+package play.mvc;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import play.PlayBuilder;
+
+import java.io.IOException;
+import java.lang.reflect.Method;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class ActionPlanTest {
+
+    @BeforeClass
+    public static void setUp() {
+        new PlayBuilder().build();
+    }
+
+    static class Interceptors {
+
+        @Catch
+        static void any(Exception e) {
+        }
+
+        @Catch({IOException.class, IllegalStateException.class})
+        static void some(Exception e) {
+        }
+
+        @Finally
+        static void withThrowable(Throwable t) {
+        }
+
+        @Finally
+        static void withoutThrowable() {
+        }
+    }
+
+    static Method method(String name, Class<?>... parameterTypes) throws Exception {
+        return Interceptors.class.getDeclaredMethod(name, parameterTypes);
+    }
+
+    @Test
+    public void verifyCatchesWithoutExceptionsHandleAllExceptions() throws Exception {
+        ActionPlan.CatchCall any = new ActionPlan.CatchCall(method("any", Exception.class));
+        assertThat(any.handles(new RuntimeException())).isTrue();
+        assertThat(any.handles(new IOException())).isTrue();
+        assertThat(any.handles(new Error())).isFalse();
+    }
+
+    @Test
+    public void verifyCatchesHandleTheirExceptionsAndSubclasses() throws Exception {
+        ActionPlan.CatchCall some = new ActionPlan.CatchCall(method("some", Exception.class));
+        assertThat(some.handles(new IOException())).isTrue();
+        assertThat(some.handles(new java.io.FileNotFoundException())).isTrue();
+        assertThat(some.handles(new IllegalStateException())).isTrue();
+        assertThat(some.handles(new IllegalArgumentException())).isFalse();
+    }
+
+    @Test
+    public void verifyFinallyParameters() throws Exception {
+        assertThat(new ActionPlan.Call(method("withoutThrowable"), ActionPlan.Invokers.NONE).takesThrowable()).isFalse();
+        assertThat(new ActionPlan.Call(method("withoutThrowable"), ActionPlan.Invokers.NONE).parameterNames).isEmpty();
+        assertThat(new ActionPlan.Call(method("withThrowable", Throwable.class), ActionPlan.Invokers.NONE).takesThrowable()).isTrue();
+    }
+
+    @Test
+    public void verifyThatPlansAreCachedOncePerAction() {
+        assertThat(ActionPlan.key("controllers.Application.index")).isEqualTo("application.index");
+        assertThat(ActionPlan.key("APPLICATION.Index")).isEqualTo("application.index");
+        assertThat(ActionPlan.key("admin.Users.list")).isEqualTo("admin.users.list");
+    }
+}
@@ -0,0 +1,39 @@
+package play.mvc;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import play.PlayBuilder;
+
+import java.io.ByteArrayInputStream;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class ParamsTest {
+
+    @Before
+    public void setUp() {
+        new PlayBuilder().build();
+        Http.Request.current.set(Http.Request.createRequest(null, Http.Verb.GET, "/", "", null, new ByteArrayInputStream(new byte[0]), null, null, false, 80, "localhost", false, null, null));
+    }
+
+    @After
+    public void tearDown() {
+        Http.Request.current.remove();
+    }
+
+    @Test
+    public void verifyThatNullNamesAreAccepted() {
+        Scope.Params params = new Scope.Params();
+        assertThat(params.get(null)).isNull();
+        assertThat(params.getAll(null)).isNull();
+        assertThat(params._contains(null)).isFalse();
+        params.put(null, "none");
+        params.put("name", "bob");
+        assertThat(params._contains(null)).isTrue();
+        assertThat(params.get(null)).isEqualTo("none");
+        assertThat(params.getAll(null)).containsOnly("none");
+        assertThat(params.get("name")).isEqualTo("bob");
+        assertThat(params.sub("name")).isEmpty();
+    }
+}
@@ -0,0 +1,146 @@
+package play.mvc;
+
+import org.junit.Test;
+import play.Play;
+import play.PlayBuilder;
+import play.libs.IO;
+import play.mvc.results.RenderStatic;
+import play.vfs.VirtualFile;
+
+import java.io.File;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class RouterImplTest {
+
+    private static RouterImpl router(String content) throws Exception {
+        new PlayBuilder().build();
+        File file = File.createTempFile("RouterImplTest", ".routes");
+        file.deleteOnExit();
+        IO.writeContent(content, file);
+        return new RouterImpl(VirtualFile.open(file), "");
+    }
+
+    @Test
+    public void verifyThatTheFirstMatchingRouteWins() throws Exception {
+        RouterImpl router = router(
+                "GET     /                       Application.index\n" +
+                "GET     /users/{<[0-9]+>id}     Users.show\n" +
+                "GET     /users/new              Users.blank\n" +
+                "GET     /users/{name}           Users.byName\n" +
+                "POST    /users                  Users.create\n" +
+                "GET     /{<.*>path}             Application.catchAll\n" +
+                "*       /{controller}/{action}  {controller}.{action}\n");
+
+        assertThat(router.route(Http.Verb.GET, "/").get("action")).isEqualTo("Application.index");
+        Map<String, String> args = router.route(Http.Verb.GET, "/users/42");
+        assertThat(args.get("action")).isEqualTo("Users.show");
+        assertThat(args.get("id")).isEqualTo("42");
+        assertThat(router.route(Http.Verb.GET, "/users/new").get("action")).isEqualTo("Users.blank");
+        assertThat(router.route(Http.Verb.GET, "/users/bob").get("action")).isEqualTo("Users.byName");
+        assertThat(router.route(Http.Verb.POST, "/users").get("action")).isEqualTo("Users.create");
+        assertThat(router.route(Http.Verb.GET, "/users").get("action")).isEqualTo("Application.catchAll");
+        assertThat(router.route(Http.Verb.HEAD, "/users/42").get("action")).isEqualTo("Users.show");
+        assertThat(router.route(Http.Verb.PUT, "/users/bob").get("action")).isEqualTo("{controller}.{action}");
+        assertThat(router.route(Http.Verb.PUT, "/a/b/c")).isEmpty();
+    }
+
+    @Test
+    public void verifyThatAddedRoutesAreIndexed() throws Exception {
+        RouterImpl router = router("GET     /users/{id}     Users.show\n");
+        assertThat(router.route(Http.Verb.GET, "/users/me").get("action")).isEqualTo("Users.show");
+        router.addRoute(0, EnumSet.of(Http.Verb.GET), "/users/me", "Users.me", null, null);
+        assertThat(router.route(Http.Verb.GET, "/users/me").get("action")).isEqualTo("Users.me");
+    }
+
+    @Test
+    public void verifyOptionalAndHostRoutes() throws Exception {
+        RouterImpl router = router(
+                "GET     /items/?                    Items.index\n" +
+                "GET     {client}.example.com/home   Clients.home\n" +
+                "GET     /home                       Application.home\n");
+        assertThat(router.route(Http.Verb.GET, "/items").get("action")).isEqualTo("Items.index");
+        assertThat(router.route(Http.Verb.GET, "/items/").get("action")).isEqualTo("Items.index");
+        Map<String, String> args = router.route(Http.Verb.GET, "/home", null, "acme.example.com");
+        assertThat(args.get("action")).isEqualTo("Clients.home");
+        assertThat(args.get("client")).isEqualTo("acme");
+        assertThat(router.route(Http.Verb.GET, "/home", null, "other.org").get("action")).isEqualTo("Application.home");
+    }
+
+    @Test
+    public void verifyStaticRoutes() throws Exception {
+        RouterImpl router = router(
+                "GET     /public/        staticDir:public\n" +
+                "GET     /{action}       Application.{action}\n");
+        Http.Request request = Http.Request.createRequest(null, Http.Verb.GET, "/public/app.js", "", null, null, "/public/app.js", null, false, 80, "", false, null, null);
+        try {
+            router.routeOnlyStatic(request);
+            throw new AssertionError("Expected a static file");
+        } catch (RenderStatic e) {
+            assertThat(e.file).isEqualTo("public/app.js");
+        }
+        request = Http.Request.createRequest(null, Http.Verb.GET, "/index", "", null, null, "/index", null, false, 80, "", false, null, null);
+        router.routeOnlyStatic(request);
+    }
+
+    @Test
+    public void verifyStaticSegments() throws Exception {
+        RouterImpl router = router(
+                "GET     /a/b/{id}       A.b\n" +
+                "GET     /a/b            A.list\n" +
+                "GET     /a/b/?          A.optional\n" +
+                "GET     /a.b/c          A.dot\n");
+        assertThat(RouteTrie.staticSegments(router.routes.get(0))).containsExactly("a", "b");
+        assertThat(RouteTrie.staticSegments(router.routes.get(1))).containsExactly("a", "b");
+        assertThat(RouteTrie.staticSegments(router.routes.get(2))).containsExactly("a");
+        assertThat(RouteTrie.staticSegments(router.routes.get(3))).isEmpty();
+        assertThat(router.getIndex().candidates(Http.Verb.GET, "/a/b/1")).isEqualTo(new int[] {0, 1, 2, 3});
+        assertThat(router.getIndex().candidates(Http.Verb.GET, "/x")).isEqualTo(new int[] {3});
+        assertThat(router.getIndex().candidates(Http.Verb.POST, "/a/b/1")).isEmpty();
+    }
+
+    @Test
+    public void verifyReverseRouting() throws Exception {
+        RouterImpl router = router(
+                "GET     /                           Application.index\n" +
+                "GET     /users/{<[0-9]+>id}         Users.show\n" +
+                "GET     /users/{id}/posts/{slug}    Posts.show\n" +
+                "GET     /public/                    staticDir:public\n" +
+                "*       /{controller}/{action}      {controller}.{action}\n");
+        assertThat(router.getActionIndex().candidates("users.SHOW")).isEqualTo(new int[] {1, 4});
+        assertThat(router.getActionIndex().candidates("Admin.list")).isEqualTo(new int[] {4});
+        assertThat(router.getActionIndex().staticDirs).isEqualTo(new int[] {3});
+
+        // In DEV mode a route matching the same action twice is an error
+        Play.mode = Play.Mode.PROD;
+
+        Map<String, Object> args = new HashMap<String, Object>();
+        args.put("id", "42");
+        assertThat(router.reverse("Users.show", Http.Verb.GET, args).getUri("utf-8").getPath()).isEqualTo("/users/42");
+
+        args = new HashMap<String, Object>();
+        args.put("id", "7");
+        args.put("slug", "hello world");
+        args.put("page", "2");
+        assertThat(router.reverse("Posts.show", Http.Verb.GET, args).getUri("utf-8").toString()).isEqualTo("/users/7/posts/hello+world?page=2");
+
+        assertThat(router.reverse("Admin.list", Http.Verb.GET, new HashMap<String, Object>()).getUri("utf-8").getPath()).isEqualTo("/admin/list");
+
+        router.addRoute(0, EnumSet.of(Http.Verb.GET), "/admin", "Admin.list", null, null);
+        assertThat(router.reverse("Admin.list", Http.Verb.GET, new HashMap<String, Object>()).getUri("utf-8").getPath()).isEqualTo("/admin");
+        Play.mode = Play.Mode.DEV;
+    }
+
+    @Test
+    public void verifyPathTemplates() {
+        ActionDefinition.PathTemplate template = new ActionDefinition.PathTemplate("/a/{<[0-9]{2}>year}/{name}-{name}/{x");
+        Map<String, String> values = new HashMap<String, String>();
+        values.put("year", "12");
+        values.put("name", "n");
+        assertThat(template.build(values)).isEqualTo("/a/12/n-n/{x");
+        assertThat(template.build(new HashMap<String, String>())).isEqualTo("/a/{<[0-9]{2}>year}/{name}-{name}/{x");
+    }
+}
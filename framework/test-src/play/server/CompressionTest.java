@@ -0,0 +1,80 @@
+package play.server;
+
+import org.apache.commons.io.IOUtils;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.handler.codec.embedder.EncoderEmbedder;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import play.PlayBuilder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Properties;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class CompressionTest {
+
+    @BeforeClass
+    public static void setUp() {
+        Properties config = new Properties();
+        config.setProperty("http.compression", "true");
+        new PlayBuilder().withConfiguration(config).build();
+    }
+
+    @Test
+    public void verifyNegotiation() {
+        assertThat(Compression.negotiate(null)).isNull();
+        assertThat(Compression.negotiate("gzip, deflate")).isEqualTo("gzip");
+        assertThat(Compression.negotiate("deflate")).isEqualTo("deflate");
+        assertThat(Compression.negotiate("gzip;q=0.5, deflate")).isEqualTo("deflate");
+        assertThat(Compression.negotiate("gzip;q=0, deflate;q=0")).isNull();
+        assertThat(Compression.negotiate("*")).isEqualTo("gzip");
+        assertThat(Compression.negotiate("identity")).isNull();
+    }
+
+    @Test
+    public void verifyCompressibleTypes() {
+        assertThat(Compression.isCompressible("text/html; charset=utf-8")).isTrue();
+        assertThat(Compression.isCompressible("application/json")).isTrue();
+        assertThat(Compression.isCompressible("image/png")).isFalse();
+        assertThat(Compression.isCompressible(null)).isFalse();
+    }
+
+    @Test
+    public void verifyInMemoryCompression() throws Exception {
+        byte[] content = text().getBytes("utf-8");
+        byte[] gzip = Compression.compress(content, Compression.GZIP);
+        assertThat(gzip.length).isLessThan(content.length);
+        assertThat(IOUtils.toByteArray(new GZIPInputStream(new ByteArrayInputStream(gzip)))).isEqualTo(content);
+        byte[] deflate = Compression.compress(content, Compression.DEFLATE);
+        assertThat(IOUtils.toByteArray(new InflaterInputStream(new ByteArrayInputStream(deflate)))).isEqualTo(content);
+    }
+
+    @Test
+    public void verifyStreamingCompression() throws Exception {
+        EncoderEmbedder<ChannelBuffer> compressor = Compression.newCompressor(Compression.GZIP);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] content = text().getBytes("utf-8");
+        for (int i = 0; i < 3; i++) {
+            ChannelBuffer compressed = Compression.compress(compressor, ChannelBuffers.wrappedBuffer(content));
+            assertThat(compressed.readable()).isTrue();
+            compressed.readBytes(out, compressed.readableBytes());
+        }
+        ChannelBuffer end = Compression.finish(compressor);
+        end.readBytes(out, end.readableBytes());
+        byte[] expected = (text() + text() + text()).getBytes("utf-8");
+        assertThat(IOUtils.toByteArray(new GZIPInputStream(new ByteArrayInputStream(out.toByteArray())))).isEqualTo(expected);
+    }
+
+    private static String text() {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 200; i++) {
+            text.append("<li>Item ").append(i).append("</li>\n");
+        }
+        return text.toString();
+    }
+}
@@ -0,0 +1,105 @@
+package play.server;
+
+import org.jboss.netty.handler.codec.http.DefaultHttpRequest;
+import org.jboss.netty.handler.codec.http.HttpMethod;
+import org.jboss.netty.handler.codec.http.HttpRequest;
+import org.jboss.netty.handler.codec.http.HttpVersion;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import play.Play;
+import play.PlayBuilder;
+import play.mvc.Http;
+
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectOutputStream;
+import java.util.Map;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class NettyHeadersTest {
+
+    @BeforeClass
+    public static void setUp() {
+        new PlayBuilder().build();
+        Play.mode = Play.Mode.DEV;
+    }
+
+    @Test
+    public void verifyHeaderLookups() {
+        HttpRequest request = new DefaultHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.GET, "/");
+        request.addHeader("Accept", "text/html");
+        request.addHeader("X-Values", "a");
+        request.addHeader("X-Values", "b");
+
+        Map<String, Http.Header> headers = NettyHeaders.headers(request);
+        Http.Header accept = headers.get("accept");
+        assertThat(accept.value()).isEqualTo("text/html");
+        assertThat(headers.get("accept")).isSameAs(accept);
+        assertThat(headers.get("x-values").values).containsExactly("a", "b");
+        assertThat(headers.get("Accept")).isNull();
+        assertThat(headers.containsKey("authorization")).isFalse();
+
+        // Materializing keeps the headers already read
+        assertThat(headers.size()).isEqualTo(2);
+        assertThat(headers.get("accept")).isSameAs(accept);
+        headers.put("accept", new Http.Header("accept", "application/json"));
+        assertThat(headers.get("accept").value()).isEqualTo("application/json");
+    }
+
+    @Test
+    public void verifyCookieLookups() {
+        HttpRequest request = new DefaultHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.GET, "/");
+        request.addHeader("Cookie", "PLAY_SESSION=abc; lang=fr");
+
+        Map<String, Http.Cookie> cookies = NettyHeaders.cookies(request);
+        Http.Cookie session = cookies.get("PLAY_SESSION");
+        assertThat(session.value).isEqualTo("abc");
+        assertThat(cookies.get("PLAY_SESSION")).isSameAs(session);
+        assertThat(cookies.get("missing")).isNull();
+        assertThat(cookies.containsKey("lang")).isTrue();
+        assertThat(cookies.size()).isEqualTo(2);
+        cookies.put("lang", new Http.Cookie());
+        assertThat(cookies.get("PLAY_SESSION")).isSameAs(session);
+
+        assertThat(NettyHeaders.cookies(new DefaultHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.GET, "/")).get("PLAY_SESSION")).isNull();
+    }
+
+    @Test
+    public void verifyCookieParsing() {
+        Map<String, Http.Cookie> cookies = NettyHeaders.parseCookies("PLAY_SESSION=abc-def; lang=fr ;flag; lang=en");
+        assertThat(cookies.size()).isEqualTo(3);
+        assertThat(cookies.get("PLAY_SESSION").value).isEqualTo("abc-def");
+        assertThat(cookies.get("PLAY_SESSION").path).isNull();
+        assertThat(cookies.get("lang").value).isEqualTo("fr");
+        assertThat(cookies.get("flag").value).isEqualTo("");
+
+        cookies = NettyHeaders.parseCookies("$Version=1; name=\"quoted value\"; $Path=/");
+        assertThat(cookies.get("name").value).isEqualTo("quoted value");
+        assertThat(cookies.get("name").path).isEqualTo("/");
+
+        assertThat(NettyHeaders.parseCookies(null)).isEmpty();
+    }
+
+    @Test
+    public void verifyThatViewsAreSerializable() throws Exception {
+        HttpRequest request = new DefaultHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.GET, "/");
+        request.addHeader("Cookie", "a=b");
+        ObjectOutputStream out = new ObjectOutputStream(new ByteArrayOutputStream());
+        out.writeObject(NettyHeaders.headers(request));
+        out.writeObject(NettyHeaders.cookies(request));
+        out.close();
+    }
+
+    @Test
+    public void verifyHostParsing() {
+        assertThat(PlayHandler.isLoopbackHost("127.0.0.1")).isTrue();
+        assertThat(PlayHandler.isLoopbackHost("127.0.0.1:9000")).isTrue();
+        assertThat(PlayHandler.isLoopbackHost("127.0.0.1.example.com")).isFalse();
+        assertThat(PlayHandler.isLoopbackHost("localhost")).isFalse();
+        assertThat(PlayHandler.isLoopbackHost(null)).isFalse();
+
+        assertThat(PlayHandler.stripAddress("/10.0.0.1:1234")).isEqualTo("10.0.0.1");
+        assertThat(PlayHandler.stripAddress("fe80:0:0:0:0:0:0:1%1")).isEqualTo("fe80:0:0:0:0:0:0:1");
+        assertThat(PlayHandler.stripAddress("10.0.0.1")).isEqualTo("10.0.0.1");
+    }
+}
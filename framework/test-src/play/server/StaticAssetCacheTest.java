@@ -0,0 +1,70 @@
+package play.server;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import play.Play;
+import play.PlayBuilder;
+import play.libs.IO;
+import play.mvc.Http;
+
+import java.io.File;
+import java.util.Properties;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class StaticAssetCacheTest {
+
+    @BeforeClass
+    public static void setUp() {
+        Properties config = new Properties();
+        config.setProperty("http.staticCache.size", "100");
+        config.setProperty("http.staticCache.maxFileSize", "50");
+        new PlayBuilder().withConfiguration(config).build();
+        Play.mode = Play.Mode.DEV;
+        Http.Response.current.set(new Http.Response());
+        StaticAssetCache.clear();
+    }
+
+    @Test
+    public void verifyThatStaleAssetsAreReloadedInDevMode() throws Exception {
+        File file = createFile("0123456789");
+        StaticAssetCache.Asset asset = StaticAssetCache.put("/public/a.txt", file);
+        assertThat(asset).isNotNull();
+        assertThat(asset.content).isEqualTo("0123456789".getBytes());
+        assertThat(asset.contentType).startsWith("text/plain");
+        assertThat(StaticAssetCache.get("/public/a.txt")).isSameAs(asset);
+
+        IO.write("changed".getBytes(), file);
+        file.setLastModified(asset.lastModified + 2000);
+        assertThat(StaticAssetCache.get("/public/a.txt")).isNull();
+        StaticAssetCache.clear();
+    }
+
+    @Test
+    public void verifyThatLargeFilesAreNotCached() throws Exception {
+        File file = createFile("01234567890123456789012345678901234567890123456789-too-long");
+        assertThat(StaticAssetCache.put("/public/large.txt", file)).isNull();
+        assertThat(StaticAssetCache.get("/public/large.txt")).isNull();
+    }
+
+    @Test
+    public void verifyThatLeastRecentlyUsedAssetsAreEvicted() throws Exception {
+        StaticAssetCache.put("/public/1.txt", createFile("0123456789012345678901234567890123456789"));
+        StaticAssetCache.put("/public/2.txt", createFile("0123456789012345678901234567890123456789"));
+        assertThat(StaticAssetCache.get("/public/1.txt")).isNotNull();
+        StaticAssetCache.put("/public/3.txt", createFile("0123456789012345678901234567890123456789"));
+
+        assertThat(StaticAssetCache.size()).isLessThanOrEqualTo(100);
+        assertThat(StaticAssetCache.get("/public/1.txt")).isNotNull();
+        assertThat(StaticAssetCache.get("/public/2.txt")).isNull();
+        assertThat(StaticAssetCache.get("/public/3.txt")).isNotNull();
+        StaticAssetCache.clear();
+    }
+
+    private static File createFile(String content) throws Exception {
+        File file = File.createTempFile("StaticAssetCacheTest", ".txt");
+        file.deleteOnExit();
+        IO.write(content.getBytes(), file);
+        return file;
+    }
+}
@@ -0,0 +1,69 @@
+package play.server;
+
+import org.apache.commons.io.IOUtils;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.handler.codec.embedder.DecoderEmbedder;
+import org.jboss.netty.handler.codec.http.HttpHeaders;
+import org.jboss.netty.handler.codec.http.HttpRequest;
+import org.jboss.netty.handler.codec.http.HttpRequestDecoder;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import play.Play;
+import play.PlayBuilder;
+
+import java.io.File;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class StreamChunkAggregatorTest {
+
+    @BeforeClass
+    public static void setUp() {
+        new PlayBuilder().build();
+        Play.tmpDir = new File(System.getProperty("java.io.tmpdir"));
+    }
+
+    @Test
+    public void verifyThatSmallBodiesStayInMemory() throws Exception {
+        HttpRequest request = post(100, 1000, chunked("hello ", "world"));
+        assertThat(request.getContent() instanceof FileChannelBuffer).isFalse();
+        assertThat(request.getContent().toString("utf-8")).isEqualTo("hello world");
+        assertThat(request.getHeader(HttpHeaders.Names.CONTENT_LENGTH)).isEqualTo("11");
+        assertThat(request.getHeader(HttpHeaders.Names.TRANSFER_ENCODING)).isNull();
+    }
+
+    @Test
+    public void verifyThatLargeBodiesAreSpilledToDisk() throws Exception {
+        HttpRequest request = post(8, 1000, chunked("hello ", "world"));
+        assertThat(request.getContent()).isInstanceOf(FileChannelBuffer.class);
+        String body = IOUtils.toString(((FileChannelBuffer) request.getContent()).getInputStream(), "utf-8");
+        assertThat(body).isEqualTo("hello world");
+        assertThat(request.getHeader(HttpHeaders.Names.CONTENT_LENGTH)).isEqualTo("11");
+    }
+
+    @Test
+    public void verifyThatOversizedBodiesAreRejected() throws Exception {
+        HttpRequest request = post(4, 8, chunked("hello ", "world"));
+        assertThat(request.getHeader(HttpHeaders.Names.WARNING)).isEqualTo("play.netty.content.length.exceeded");
+        assertThat(request.getContent().readable()).isFalse();
+    }
+
+    private static String chunked(String... chunks) {
+        StringBuilder body = new StringBuilder();
+        for (String chunk : chunks) {
+            body.append(Integer.toHexString(chunk.length())).append("\r\n").append(chunk).append("\r\n");
+        }
+        return body.append("0\r\n\r\n").toString();
+    }
+
+    private static HttpRequest post(int memoryThreshold, int maxContentLength, String chunkedBody) throws Exception {
+        DecoderEmbedder<HttpRequest> embedder = new DecoderEmbedder<HttpRequest>(
+                new HttpRequestDecoder(), new StreamChunkAggregator(maxContentLength, memoryThreshold));
+        String request = "POST /upload HTTP/1.1\r\nHost: localhost\r\nTransfer-Encoding: chunked\r\n\r\n" + chunkedBody;
+        embedder.offer(ChannelBuffers.wrappedBuffer(request.getBytes("utf-8")));
+        HttpRequest decoded = embedder.poll();
+        assertThat(decoded).isNotNull();
+        assertThat(embedder.poll()).isNull();
+        return decoded;
+    }
+}
@@ -0,0 +1,60 @@
+package play.templates;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class EncodedPrintWriterTest {
+
+    @Test
+    public void verifyThatTextAndEncodedTextAreWrittenInOrder() throws Exception {
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        EncodedPrintWriter out = new EncodedPrintWriter(stream, "utf-8");
+        out.print("<p>");
+        out.writeEncoded("héllo ".getBytes("utf-8"));
+        out.print(42);
+        out.writeEncoded("</p>".getBytes("utf-8"));
+        assertThat(stream.size()).isEqualTo(0);
+        out.flush();
+        assertThat(new String(stream.toByteArray(), "utf-8")).isEqualTo("<p>héllo 42</p>");
+    }
+
+    @Test
+    public void verifyThatSurrogatePairsSplitBetweenWritesAreEncoded() throws Exception {
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        EncodedPrintWriter out = new EncodedPrintWriter(stream, "utf-8");
+        String clef = "𝄞";
+        out.print("a" + clef.charAt(0));
+        out.print(clef.charAt(1) + "b");
+        out.flush();
+        assertThat(new String(stream.toByteArray(), "utf-8")).isEqualTo("a" + clef + "b");
+    }
+
+    @Test
+    public void verifyThatOutputIsWrittenInBlocks() throws Exception {
+        final List<Integer> blocks = new ArrayList<Integer>();
+        OutputStream stream = new OutputStream() {
+            @Override
+            public void write(int b) {
+                blocks.add(1);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+                blocks.add(len);
+            }
+        };
+        EncodedPrintWriter out = new EncodedPrintWriter(stream, "iso-8859-1", 16);
+        out.print("0123456789");
+        out.print("0123456789");
+        out.writeEncoded(new byte[20]);
+        out.print("0123");
+        out.flush();
+        assertThat(blocks).containsExactly(16, 4, 20, 4);
+    }
+}
@@ -0,0 +1,91 @@
+package play.templates;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import play.PlayBuilder;
+import play.cache.Cache;
+import play.cache.EhCacheImpl;
+
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class FragmentCacheTest {
+
+    @BeforeClass
+    public static void setUp() {
+        new PlayBuilder().build();
+        Cache.cacheImpl = EhCacheImpl.getInstance();
+        if (Cache.cacheImpl == null) {
+            Cache.cacheImpl = EhCacheImpl.newInstance();
+        }
+    }
+
+    @Test
+    public void verifyThatFragmentsAreRenderedOnce() {
+        final AtomicInteger renderings = new AtomicInteger();
+        Callable<String> render = new Callable<String>() {
+            public String call() {
+                return "fragment " + renderings.incrementAndGet();
+            }
+        };
+        long hits = FragmentCache.hits.get();
+        assertThat(FragmentCache.get("FragmentCacheTest_once", "10s", render)).isEqualTo("fragment 1");
+        assertThat(FragmentCache.get("FragmentCacheTest_once", "10s", render)).isEqualTo("fragment 1");
+        assertThat(FragmentCache.hits.get() - hits).isEqualTo(1);
+        assertThat(renderings.get()).isEqualTo(1);
+    }
+
+    @Test
+    public void verifyThatConcurrentMissesWaitForTheFirstRendering() throws Exception {
+        final CountDownLatch rendering = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger renderings = new AtomicInteger();
+        final Callable<String> render = new Callable<String>() {
+            public String call() throws Exception {
+                renderings.incrementAndGet();
+                rendering.countDown();
+                release.await(5, TimeUnit.SECONDS);
+                return "slow";
+            }
+        };
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<String> first = executor.submit(new Callable<String>() {
+                public String call() {
+                    return FragmentCache.get("FragmentCacheTest_flight", null, render);
+                }
+            });
+            assertThat(rendering.await(5, TimeUnit.SECONDS)).isTrue();
+            long waits = FragmentCache.waits.get();
+            Future<String> second = executor.submit(new Callable<String>() {
+                public String call() {
+                    return FragmentCache.get("FragmentCacheTest_flight", null, render);
+                }
+            });
+            Thread.sleep(100);
+            release.countDown();
+            assertThat(first.get(5, TimeUnit.SECONDS)).isEqualTo("slow");
+            assertThat(second.get(5, TimeUnit.SECONDS)).isEqualTo("slow");
+            assertThat(renderings.get()).isEqualTo(1);
+            assertThat(FragmentCache.waits.get() - waits).isEqualTo(1);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void verifyVaryingKeys() {
+        assertThat(FragmentCache.key("menu", null)).isEqualTo("menu");
+        assertThat(FragmentCache.key("menu", "fr")).isEqualTo("menu|fr");
+        assertThat(FragmentCache.key("menu", Arrays.asList("fr", 12))).isEqualTo("menu|fr|12");
+        assertThat(FragmentCache.key("menu", new Object[]{"fr", 12})).isEqualTo("menu|fr|12");
+    }
+}
@@ -0,0 +1,59 @@
+package play.templates;
+
+import org.junit.Test;
+
+import java.util.Date;
+import java.util.List;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class GroovyTemplateCompilerTest {
+
+    public static class Item {
+        public String content;
+        public Date postedAt;
+        public List<String> tags;
+
+        public String getTitle() {
+            return content;
+        }
+
+        public String format(String pattern) {
+            return pattern;
+        }
+    }
+
+    @Test
+    public void verifyThatTypedExtensionCallsAreDirect() {
+        GroovyTemplateCompiler compiler = new GroovyTemplateCompiler();
+        compiler.argTypes.put("item", Item.class);
+        String extensions = JavaExtensions.class.getName();
+        assertThat(compiler.directExtensionCall("item.content.nl2br()")).isEqualTo(extensions + ".nl2br(item.content)");
+        assertThat(compiler.directExtensionCall("item.title.escape()")).isEqualTo(extensions + ".escape(item.title)");
+        assertThat(compiler.directExtensionCall("item.postedAt.format('dd MMM yy')")).isEqualTo(extensions + ".format(item.postedAt, 'dd MMM yy')");
+        assertThat(compiler.directExtensionCall("item.tags.size().pluralize()")).isEqualTo(extensions + ".pluralize(item.tags.size())");
+        assertThat(compiler.directExtensionCall("item.content.escape().nl2br()")).isEqualTo(extensions + ".nl2br(" + extensions + ".escape(item.content))");
+    }
+
+    @Test
+    public void verifyThatOtherExpressionsStayDynamic() {
+        GroovyTemplateCompiler compiler = new GroovyTemplateCompiler();
+        compiler.argTypes.put("item", Item.class);
+        // Unknown type
+        assertThat(compiler.directExtensionCall("other.content.nl2br()")).isNull();
+        assertThat(compiler.directExtensionCall("item.unknown.nl2br()")).isNull();
+        // Not an extension call
+        assertThat(compiler.directExtensionCall("item.content")).isNull();
+        assertThat(compiler.directExtensionCall("item.content.nl2br() + 'x'")).isNull();
+        // A method of the class itself
+        assertThat(compiler.directExtensionCall("item.format('x')")).isNull();
+        // Indexed or with arguments in the middle
+        assertThat(compiler.directExtensionCall("item.tags[0].capFirst()")).isNull();
+    }
+
+    @Test
+    public void verifySplittingOfArguments() {
+        assertThat(GroovyTemplateCompiler.splitTopLevel("a:Map<String, Long>, b:String", ',')).containsExactly("a:Map<String, Long>", " b:String");
+        assertThat(GroovyTemplateCompiler.splitTopLevel("'a,b', f(1, 2)", ',')).containsExactly("'a,b'", " f(1, 2)");
+    }
+}
@@ -1,9 +1,21 @@
 package play.templates;
 
 import org.junit.Test;
+import play.Play;
 import play.PlayBuilder;
-
+import play.exceptions.TemplateExecutionException;
+import play.libs.F;
+import play.mvc.Http;
+import play.mvc.results.RenderTemplate;
+import play.vfs.VirtualFile;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.StringWriter;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import static org.fest.assertions.Assertions.assertThat;
@@ -29,6 +41,127 @@ public class GroovyTemplateTest {
 
     }
 
+    @Test
+    public void verifyThatStaticTextIsEncodedOnlyForEncodedOutputs() throws Exception {
+
+        new PlayBuilder().build();
+
+        String groovySrc = "<ul>#{list items:names, as:'name'}<li>${name}</li>#{/list}</ul>";
+
+        GroovyTemplate t = new GroovyTemplate("Template_128.html", groovySrc);
+        new GroovyTemplateCompiler().compile(t);
+        assertThat( t.compiledSource ).contains("out.print(\"<ul>\")");
+
+        Map<String, Object> args = new HashMap<String,Object>();
+        ArrayList<String> names = new ArrayList<String>();
+        names.add("Morten");
+        names.add("Guillaume");
+        args.put("names", names);
+        assertThat( t.render( args ) ).isEqualTo("<ul><li>Morten</li><li>Guillaume</li></ul>");
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final List<String> encoded = new ArrayList<String>();
+        EncodedPrintWriter out = new EncodedPrintWriter(bytes, "utf-8") {
+            @Override
+            public void writeEncoded(byte[] data) {
+                encoded.add(new String(data));
+                super.writeEncoded(data);
+            }
+        };
+        t.render( args, out );
+        out.flush();
+        assertThat( bytes.toString("utf-8") ).isEqualTo("<ul><li>Morten</li><li>Guillaume</li></ul>");
+        assertThat( encoded ).contains("<ul>", "</ul>");
+    }
+
+    @Test
+    public void verifyStreamedRendering() {
+
+        new PlayBuilder().build();
+
+        String groovySrc = "hello world: ${name}";
+
+        GroovyTemplate t = new GroovyTemplate("Template_124", groovySrc);
+        new GroovyTemplateCompiler().compile(t);
+
+        Map<String, Object> args = new HashMap<String,Object>();
+        args.put("name", "Morten");
+        StringWriter out = new StringWriter();
+        t.render( args, out );
+        assertThat( out.toString() ).isEqualTo("hello world: Morten");
+        assertThat( args.containsKey("out") ).isFalse();
+    }
+
+    @Test
+    public void verifyStreamedRenderingWithLayout() throws Exception {
+
+        new PlayBuilder().build();
+        File views = new File(System.getProperty("java.io.tmpdir"), "play-views-" + System.nanoTime());
+        views.mkdirs();
+        FileWriter layout = new FileWriter(new File(views, "main.html"));
+        layout.write("<html>#{get 'title' /}|#{doLayout /}|${name}</html>");
+        layout.close();
+        Play.templatesPath = new ArrayList<VirtualFile>();
+        Play.templatesPath.add(VirtualFile.open(views));
+        try {
+            String groovySrc = "#{extends 'main.html' /}#{set title:'Hello' /}hello world: ${name}";
+
+            GroovyTemplate t = new GroovyTemplate("Template_125", groovySrc);
+            new GroovyTemplateCompiler().compile(t);
+
+            Map<String, Object> args = new HashMap<String,Object>();
+            args.put("name", "Morten");
+            StringWriter out = new StringWriter();
+            t.render( args, out );
+            assertThat( out.toString() ).isEqualTo("<html>Hello|hello world: Morten|Morten</html>");
+            assertThat( t.render( args ) ).isEqualTo(out.toString());
+        } finally {
+            new File(views, "main.html").delete();
+            views.delete();
+            Play.templatesPath = null;
+        }
+    }
+
+    @Test
+    public void verifyStreamedRenderTemplates() throws Exception {
+
+        new PlayBuilder().build();
+        Play.configuration.setProperty("play.templates.streaming", "true");
+        Http.Request request = Http.Request.createRequest(null, Http.Verb.GET, "/", "", null, null, null, null, false, 80, "localhost", false, null, null);
+        Http.Response response = new Http.Response();
+        final ByteArrayOutputStream chunks = new ByteArrayOutputStream();
+        response.onWriteChunk(new F.Action<Object>() {
+            public void invoke(Object chunk) {
+                byte[] bytes = (byte[]) chunk;
+                chunks.write(bytes, 0, bytes.length);
+            }
+        });
+        Http.Request.current.set(request);
+        Http.Response.current.set(response);
+        try {
+            GroovyTemplate t = new GroovyTemplate("Template_126", "hello ${name.missing()}");
+            new GroovyTemplateCompiler().compile(t);
+
+            Map<String, Object> args = new HashMap<String,Object>();
+            args.put("name", "Morten");
+            RenderTemplate result = new RenderTemplate(t, args, "text/html");
+            try {
+                result.apply(request, response);
+                throw new AssertionError("The template should fail");
+            } catch (TemplateExecutionException e) {
+                assertThat( e.getTemplate() ).isSameAs(t);
+            }
+
+            t = new GroovyTemplate("Template_127", "hello ${name}");
+            new GroovyTemplateCompiler().compile(t);
+            new RenderTemplate(t, args, "text/html").apply(request, response);
+            assertThat( chunks.toString("utf-8") ).isEqualTo("hello Morten");
+        } finally {
+            Http.Request.current.remove();
+            Http.Response.current.remove();
+        }
+    }
+
     @Test
     public void verifyCompilingExtremelyLongLines() {
 
@@ -0,0 +1,49 @@
+package play.utils;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class HTTPTest {
+
+    @Test
+    public void verifySingleRanges() {
+        assertThat(HTTP.parseRange("bytes=0-499", 1000)).containsExactly(new HTTP.ByteRange(0, 499));
+        assertThat(HTTP.parseRange("bytes=500-", 1000)).containsExactly(new HTTP.ByteRange(500, 999));
+        assertThat(HTTP.parseRange("bytes=-200", 1000)).containsExactly(new HTTP.ByteRange(800, 999));
+        assertThat(HTTP.parseRange("bytes=900-5000", 1000)).containsExactly(new HTTP.ByteRange(900, 999));
+        assertThat(HTTP.parseRange("bytes=-5000", 1000)).containsExactly(new HTTP.ByteRange(0, 999));
+        assertThat(HTTP.parseRange("bytes=0-0", 1000).get(0).length()).isEqualTo(1);
+    }
+
+    @Test
+    public void verifyMultipleRangesAreSortedAndCoalesced() {
+        List<HTTP.ByteRange> ranges = HTTP.parseRange("bytes=500-599, 0-99,100-199,550-650", 1000);
+        assertThat(ranges).containsExactly(new HTTP.ByteRange(0, 199), new HTTP.ByteRange(500, 650));
+    }
+
+    @Test
+    public void verifyUnsatisfiableRanges() {
+        assertThat(HTTP.parseRange("bytes=1000-", 1000)).isEmpty();
+        assertThat(HTTP.parseRange("bytes=-0", 1000)).isEmpty();
+        assertThat(HTTP.parseRange("bytes=0-10", 0)).isEmpty();
+    }
+
+    @Test
+    public void verifyInvalidRangesAreIgnored() {
+        assertThat(HTTP.parseRange(null, 1000)).isNull();
+        assertThat(HTTP.parseRange("items=0-10", 1000)).isNull();
+        assertThat(HTTP.parseRange("bytes=10-5", 1000)).isNull();
+        assertThat(HTTP.parseRange("bytes=abc", 1000)).isNull();
+        assertThat(HTTP.parseRange("bytes=0-10,x-", 1000)).isNull();
+        assertThat(HTTP.parseRange("bytes=", 1000)).isNull();
+        assertThat(HTTP.parseRange("bytes= , ", 1000)).isNull();
+    }
+
+    @Test
+    public void verifyContentRange() {
+        assertThat(new HTTP.ByteRange(0, 499).toContentRange(1000)).isEqualTo("bytes 0-499/1000");
+    }
+}
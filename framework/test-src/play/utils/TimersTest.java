@@ -0,0 +1,112 @@
+package play.utils;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import play.PlayBuilder;
+import play.libs.F;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class TimersTest {
+
+    @BeforeClass
+    public static void setUp() {
+        new PlayBuilder().build();
+    }
+
+    static final Executor direct = new Executor() {
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    @Test
+    public void verifyThatTimeoutsAreRedeemed() throws Exception {
+        F.Timeout timeout = F.Timeout(20);
+        assertThat(timeout.get(5, TimeUnit.SECONDS)).isSameAs(timeout);
+        assertThat(timeout.isDone()).isTrue();
+        assertThat(timeout.cancel(false)).isFalse();
+    }
+
+    @Test
+    public void verifyThatCancelledTimeoutsAreDoneWithoutBeingRedeemed() throws Exception {
+        F.Timeout timeout = F.Timeout(50);
+        final AtomicBoolean called = new AtomicBoolean();
+        timeout.onRedeem(new F.Action<F.Promise<F.Timeout>>() {
+            public void invoke(F.Promise<F.Timeout> result) {
+                called.set(true);
+            }
+        });
+        assertThat(timeout.cancel(false)).isTrue();
+        assertThat(timeout.isCancelled()).isTrue();
+        assertThat(timeout.isDone()).isTrue();
+        assertThat(called.get()).isTrue();
+        assertThat(timeout.cancel(false)).isFalse();
+        try {
+            timeout.get();
+            throw new AssertionError("The timeout should be cancelled");
+        } catch (CancellationException e) {
+            // Expected
+        }
+        Thread.sleep(150);
+        assertThat(timeout.getOrNull()).isNull();
+    }
+
+    @Test
+    public void verifyThatCancelsRacingTheTimerAreNotLost() throws Exception {
+        List<F.Timeout> timeouts = new ArrayList<F.Timeout>();
+        List<Boolean> cancelled = new ArrayList<Boolean>();
+        for (int i = 0; i < 200; i++) {
+            F.Timeout timeout = F.Timeout(1);
+            timeouts.add(timeout);
+            if (i % 10 == 0) {
+                Thread.sleep(1);
+            }
+            cancelled.add(timeout.cancel(false));
+        }
+        Thread.sleep(200);
+        for (int i = 0; i < timeouts.size(); i++) {
+            F.Timeout timeout = timeouts.get(i);
+            // Either cancelled or redeemed, never both
+            assertThat(timeout.isDone()).isTrue();
+            assertThat(timeout.isCancelled()).isEqualTo(cancelled.get(i));
+            if (!cancelled.get(i)) {
+                assertThat(timeout.get()).isSameAs(timeout);
+            }
+        }
+    }
+
+    @Test
+    public void verifyDelayedTasks() throws Exception {
+        final CountDownLatch ran = new CountDownLatch(1);
+        Future<String> future = Timers.schedule(new Callable<String>() {
+            public String call() {
+                ran.countDown();
+                return "done";
+            }
+        }, 20, direct);
+        assertThat(future.get(5, TimeUnit.SECONDS)).isEqualTo("done");
+        assertThat(ran.getCount()).isEqualTo(0);
+
+        final AtomicBoolean cancelledRan = new AtomicBoolean();
+        future = Timers.schedule(new Callable<String>() {
+            public String call() {
+                cancelledRan.set(true);
+                return "cancelled";
+            }
+        }, 50, direct);
+        assertThat(future.cancel(false)).isTrue();
+        Thread.sleep(150);
+        assertThat(cancelledRan.get()).isFalse();
+    }
+}
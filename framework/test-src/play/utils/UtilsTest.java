@@ -0,0 +1,63 @@
+package play.utils;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class UtilsTest {
+
+    static Map<String, String[]> params(Map<String, String[]> params) {
+        params.put("user", new String[]{"1"});
+        params.put("user.name", new String[]{"bob"});
+        params.put("user.roles[0]", new String[]{"admin"});
+        params.put("userId", new String[]{"2"});
+        params.put("users.name", new String[]{"alice"});
+        return params;
+    }
+
+    @Test
+    public void verifyThatSortedMapsArePrefixViews() {
+        Map<String, String[]> params = params(new TreeMap<String, String[]>());
+        Map<String, String[]> user = Utils.Maps.startingWith(params, "user.");
+        assertThat(user instanceof SortedMap).isTrue();
+        assertThat(user.keySet()).containsOnly("user.name", "user.roles[0]");
+        assertThat(Utils.Maps.startingWith(params, "user[")).isEmpty();
+    }
+
+    @Test
+    public void verifyThatNullKeysAreKeptFirst() {
+        Map<String, String[]> params = params(new TreeMap<String, String[]>(Utils.Maps.NULLS_FIRST));
+        params.put(null, new String[]{"none"});
+        assertThat(params.get(null)).containsOnly("none");
+        assertThat(params.keySet().iterator().next()).isNull();
+        Map<String, String[]> user = Utils.Maps.startingWith(params, "user.");
+        assertThat(user instanceof SortedMap).isTrue();
+        assertThat(user.keySet()).containsOnly("user.name", "user.roles[0]");
+        TreeMap<String, String[]> sorted = Utils.Maps.sorted(params);
+        assertThat(sorted.comparator()).isSameAs(Utils.Maps.NULLS_FIRST);
+        assertThat(sorted.get(null)).containsOnly("none");
+        HashMap<String, String[]> unsorted = new HashMap<String, String[]>(params);
+        assertThat(Utils.Maps.startingWith(unsorted, "user.").keySet()).containsOnly("user.name", "user.roles[0]");
+    }
+
+    @Test
+    public void verifyThatOtherMapsAreFiltered() {
+        Map<String, String[]> params = params(new HashMap<String, String[]>());
+        assertThat(Utils.Maps.startingWith(params, "user.").keySet()).containsOnly("user.name", "user.roles[0]");
+        assertThat(Utils.filterParams(params, "user")).hasSize(2);
+    }
+
+    @Test
+    public void verifyMergingValues() {
+        Map<String, String[]> params = new HashMap<String, String[]>();
+        Utils.Maps.mergeValueInMap(params, "a", new String[]{"1", "2"});
+        Utils.Maps.mergeValueInMap(params, "a", new String[]{"3"});
+        Utils.Maps.mergeValueInMap(params, "a", "4");
+        assertThat(params.get("a")).isEqualTo(new String[]{"1", "2", "3", "4"});
+    }
+}
@@ -0,0 +1,55 @@
+import org.junit.*;
+import java.util.*;
+import play.*;
+import play.test.*;
+import play.vfs.*;
+import play.templates.*;
+import models.*;
+
+public class TemplatesBenchmarkTest extends UnitTest {
+
+    @Before
+    public void setup() {
+        Fixtures.deleteDatabase();
+        Fixtures.loadModels("data.yml");
+    }
+
+    @After
+    public void reset() {
+        Play.configuration.remove("play.templates.compilation");
+    }
+
+    @Test
+    public void compareDynamicAndStaticCompilation() {
+        Post post = Post.find("order by postedAt desc").first();
+        BaseTemplate dynamic = compile("dynamic");
+        BaseTemplate statical = compile("static");
+        for (String as : Arrays.asList("full", "home", "teaser")) {
+            Map<String, Object> args = new HashMap<String, Object>();
+            args.put("_post", post);
+            args.put("_as", as);
+            assertEquals(dynamic.render(args), statical.render(args));
+            Logger.info("display.html as %s: %sms dynamic, %sms static", as, time(dynamic, args), time(statical, args));
+        }
+    }
+
+    BaseTemplate compile(String mode) {
+        Play.configuration.setProperty("play.templates.compilation", mode);
+        VirtualFile file = Play.getVirtualFile("app/views/tags/display.html");
+        BaseTemplate template = new GroovyTemplate(file.relativePath(), file.contentAsString());
+        new GroovyTemplateCompiler().compile(template);
+        return template;
+    }
+
+    long time(BaseTemplate template, Map<String, Object> args) {
+        for (int i = 0; i < 500; i++) {
+            template.render(new HashMap<String, Object>(args));
+        }
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < 2000; i++) {
+            template.render(new HashMap<String, Object>(args));
+        }
+        return System.currentTimeMillis() - start;
+    }
+
+}